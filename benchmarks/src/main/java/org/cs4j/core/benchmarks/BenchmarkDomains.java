@@ -0,0 +1,165 @@
+package org.cs4j.core.benchmarks;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.domains.DockyardRobot;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.GridPathFinding;
+import org.cs4j.core.domains.Pancakes;
+import org.cs4j.core.domains.TopSpin;
+import org.cs4j.core.domains.VacuumRobot;
+import org.cs4j.core.generators.PivotsDBGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Creates the domains which are measured by the benchmarks
+ *
+ * The instances are fixed and are read from the resources of the module (instances/<domain>.in), so the results of
+ * different runs can be compared. The heuristic data which is too large to be stored with the module is read from
+ * the files given by the following system properties (which should be passed to the forked JVMs using -jvmArgsAppend):
+ *  cs4j.pdb-78-files - The value of the pdb-78-files parameter of FifteenPuzzle
+ *  cs4j.pdb-555-files - The value of the pdb-555-files parameter of FifteenPuzzle
+ *  cs4j.topspin-pdb-data - The pdb-data parameters of TopSpin, separated by ';' (if not given, h is 0)
+ *
+ * The pivots of the DH heuristics of GridPathFinding are computed for the fixed map when the domain is created.
+ */
+final class BenchmarkDomains {
+
+    private static final int PIVOTS_COUNT = 10;
+    private static final int RANDOM_PIVOTS_COUNT = 5;
+
+    private BenchmarkDomains() { }
+
+    /**
+     * Opens the fixed instance of the given domain
+     *
+     * @param domainName The name of the domain
+     *
+     * @return A stream of the instance
+     */
+    private static InputStream _openInstance(String domainName) throws IOException {
+        String resource = "/instances/" + domainName + ".in";
+        InputStream is = BenchmarkDomains.class.getResourceAsStream(resource);
+        if (is == null) {
+            System.out.println("[ERROR] Can't find the instance " + resource);
+            throw new IOException();
+        }
+        return is;
+    }
+
+    /**
+     * Reads a required system property
+     *
+     * @param name The name of the property
+     *
+     * @return The value of the property
+     */
+    private static String _requiredProperty(String name) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            System.out.println("[ERROR] Please specify -D" + name + " (use -jvmArgsAppend)");
+            throw new IllegalArgumentException();
+        }
+        return value;
+    }
+
+    private static SearchDomain _createFifteenPuzzle(String heuristic) throws IOException {
+        FifteenPuzzle domain = new FifteenPuzzle(BenchmarkDomains._openInstance("fifteenpuzzle"));
+        switch (heuristic) {
+            case "md": {
+                domain.setAdditionalParameter("heuristic", "md");
+                break;
+            }
+            case "pdb78": {
+                domain.setAdditionalParameter("heuristic", "pdb-78");
+                domain.setAdditionalParameter("pdb-78-files",
+                        BenchmarkDomains._requiredProperty("cs4j.pdb-78-files"));
+                break;
+            }
+            case "pdb555": {
+                domain.setAdditionalParameter("heuristic", "pdb-555");
+                domain.setAdditionalParameter("pdb-555-files",
+                        BenchmarkDomains._requiredProperty("cs4j.pdb-555-files"));
+                break;
+            }
+            default: {
+                System.out.println("[ERROR] Unknown heuristic for fifteenpuzzle: " + heuristic);
+                throw new IllegalArgumentException();
+            }
+        }
+        return domain;
+    }
+
+    private static SearchDomain _createTopSpin() throws IOException {
+        TopSpin domain = new TopSpin(BenchmarkDomains._openInstance("topspin"));
+        String pdbData = System.getProperty("cs4j.topspin-pdb-data");
+        if (pdbData != null) {
+            for (String current : pdbData.split(";")) {
+                domain.setAdditionalParameter("pdb-data", current.trim());
+            }
+        }
+        return domain;
+    }
+
+    private static SearchDomain _createGridPathFinding(String heuristic) throws IOException {
+        GridPathFinding domain = new GridPathFinding(BenchmarkDomains._openInstance("gridpathfinding"));
+        domain.setAdditionalParameter("heuristic", heuristic);
+        if (!heuristic.equals("md")) {
+            // Compute the pivots of the map
+            File pivotsFile = File.createTempFile("cs4j-benchmarks-", ".pivots.pdb");
+            pivotsFile.deleteOnExit();
+            new PivotsDBGenerator().computeAndStorePivotsEfficiently(
+                    domain.getGridWidth(),
+                    domain.getGridHeight(),
+                    domain.getGridMap(),
+                    BenchmarkDomains.PIVOTS_COUNT,
+                    pivotsFile.getPath());
+            domain.setAdditionalParameter("pivots-distances-db-file", pivotsFile.getPath());
+            if (heuristic.equals("dh-random-pivots")) {
+                domain.setAdditionalParameter("random-pivots-count", BenchmarkDomains.RANDOM_PIVOTS_COUNT + "");
+            }
+            domain.setAdditionalParameter("pivots-count", BenchmarkDomains.PIVOTS_COUNT + "");
+        }
+        return domain;
+    }
+
+    /**
+     * Creates a domain by its benchmark name
+     *
+     * @param name The name of the domain, optionally followed by ':' and the name of the heuristic (e.g.
+     *             fifteenpuzzle:pdb78, gridpathfinding:tdh-furthest)
+     *
+     * @return The created domain
+     */
+    static SearchDomain create(String name) throws IOException {
+        int separator = name.indexOf(':');
+        String domainName = (separator == -1) ? name : name.substring(0, separator);
+        String heuristic = (separator == -1) ? "md" : name.substring(separator + 1);
+        switch (domainName) {
+            case "fifteenpuzzle": {
+                return BenchmarkDomains._createFifteenPuzzle(heuristic);
+            }
+            case "pancakes": {
+                return new Pancakes(BenchmarkDomains._openInstance("pancakes"));
+            }
+            case "topspin": {
+                return BenchmarkDomains._createTopSpin();
+            }
+            case "gridpathfinding": {
+                return BenchmarkDomains._createGridPathFinding(heuristic);
+            }
+            case "vacuumrobot": {
+                return new VacuumRobot(BenchmarkDomains._openInstance("vacuumrobot"));
+            }
+            case "dockyardrobot": {
+                return new DockyardRobot(BenchmarkDomains._openInstance("dockyardrobot"));
+            }
+            default: {
+                System.out.println("[ERROR] Unknown domain: " + domainName);
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.cs4j.core.benchmarks;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchDomain.Operator;
+import org.cs4j.core.collections.PackedElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations which the search algorithms perform for each generated node: applying an operator,
+ * computing the heuristic, packing and unpacking a state and enumerating the operators of a state.
+ *
+ * The states are collected by a (seeded) random walk from the initial state of the fixed instance of each domain, and
+ * each invocation takes the next state of the walk, so the measurement isn't biased toward a single state.
+ *
+ * Run with -prof gc in order to get the allocation per operation (gc.alloc.rate.norm).
+ *
+ * The default domains need no external files. The domains whose heuristics are read from PDB files should be given
+ * explicitly together with the files (see BenchmarkDomains), e.g.:
+ *  -p domain=fifteenpuzzle:pdb78,fifteenpuzzle:pdb555,topspin -jvmArgsAppend "-Dcs4j.pdb-78-files=..."
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainBenchmark {
+
+    // The maximum length of the walk
+    private static final int STATES_COUNT = 1024;
+    private static final long SEED = 1;
+
+    @Param({
+            "fifteenpuzzle:md",
+            "pancakes",
+            "gridpathfinding:md",
+            "gridpathfinding:tdh-furthest",
+            "gridpathfinding:dh-md-average-md-if-dh-is-0",
+            "gridpathfinding:dh-random-pivot",
+            "gridpathfinding:dh-random-pivots",
+            "gridpathfinding:random-dh-md",
+            "vacuumrobot",
+            "dockyardrobot"})
+    public String domain;
+
+    private SearchDomain searchDomain;
+    // The states of the walk and the operator which is applied on each one of them
+    private SearchDomain.State[] states;
+    private Operator[] operators;
+    private PackedElement[] packed;
+    // The actual length of the walk (shorter than STATES_COUNT if the walk reached a state with no operators)
+    private int walkLength;
+    private int current;
+
+    @Setup
+    public void setup() throws IOException {
+        this.searchDomain = BenchmarkDomains.create(this.domain);
+        this.states = new SearchDomain.State[DomainBenchmark.STATES_COUNT];
+        this.operators = new Operator[DomainBenchmark.STATES_COUNT];
+        this.packed = new PackedElement[DomainBenchmark.STATES_COUNT];
+        Random random = new Random(DomainBenchmark.SEED);
+        SearchDomain.State state = this.searchDomain.initialState();
+        this.walkLength = 0;
+        for (int i = 0; i < DomainBenchmark.STATES_COUNT; ++i) {
+            int numOperators = this.searchDomain.getNumOperators(state);
+            // A dead end: the walk can't continue
+            if (numOperators == 0) {
+                break;
+            }
+            this.states[i] = state;
+            this.operators[i] = this.searchDomain.getOperator(state, random.nextInt(numOperators));
+            this.packed[i] = this.searchDomain.pack(state);
+            state = this.searchDomain.applyOperator(state, this.operators[i]);
+            ++this.walkLength;
+        }
+        if (this.walkLength == 0) {
+            throw new IllegalStateException("The initial state of " + this.domain + " has no operators");
+        }
+        this.current = 0;
+    }
+
+    /**
+     * @return The index of the state to use in the current invocation
+     */
+    private int _next() {
+        if (++this.current == this.walkLength) {
+            this.current = 0;
+        }
+        return this.current;
+    }
+
+    @Benchmark
+    public SearchDomain.State applyOperator() {
+        int i = this._next();
+        return this.searchDomain.applyOperator(this.states[i], this.operators[i]);
+    }
+
+    /**
+     * The heuristic of a newly generated child (as the search algorithms see it)
+     *
+     * NOTE: Some domains compute the heuristic while the operator is applied and some when getH is first called, so
+     *       the cost of the heuristic itself is the difference from applyOperator
+     */
+    @Benchmark
+    public double getH() {
+        int i = this._next();
+        return this.searchDomain.applyOperator(this.states[i], this.operators[i]).getH();
+    }
+
+    @Benchmark
+    public PackedElement pack() {
+        return this.searchDomain.pack(this.states[this._next()]);
+    }
+
+    @Benchmark
+    public SearchDomain.State unpack() {
+        return this.searchDomain.unpack(this.packed[this._next()]);
+    }
+
+    @Benchmark
+    public int getOperators(Blackhole blackhole) {
+        SearchDomain.State state = this.states[this._next()];
+        int numOperators = this.searchDomain.getNumOperators(state);
+        for (int i = 0; i < numOperators; ++i) {
+            blackhole.consume(this.searchDomain.getOperator(state, i));
+        }
+        return numOperators;
+    }
+}
@@ -0,0 +1,342 @@
+package org.cs4j.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread-safe writer of result rows (each row is an array of numbers, one for each column), which can be used by
+ * all the threads of an experiment instead of a file per thread
+ *
+ * The rows are passed through a bounded queue to a single writing thread, which writes them in batches to a CSV file
+ * and optionally to a binary file. The files are flushed periodically (and at close), so the rows of a crashed
+ * experiment which were written until the last flush are kept. If the queue is full, the writing threads wait until
+ * the writer catches up.
+ *
+ * The binary file contains a header (the BINARY_MAGIC int, the number of columns and the names of the columns in
+ * modified UTF-8) followed by the rows, each one as a fixed number of doubles: since all the rows have the same size,
+ * each column can be read directly (see readBinaryColumns).
+ */
+public class BufferedResultsWriter {
+
+    public static final int BINARY_MAGIC = 0x43524553;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+    // Tells the writing thread to stop
+    private static final double[] END_OF_ROWS = new double[0];
+
+    private final String[] columns;
+    private final BlockingQueue<double[]> queue;
+    private final long flushIntervalMillis;
+    private final Writer csv;
+    // Null if no binary file is written
+    private final DataOutputStream binary;
+    private final Thread writerThread;
+
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * The constructor of the class - writes the headers of the outputs
+     *
+     * @param csv The writer of the CSV rows (closed by close())
+     * @param binary The stream of the binary rows (null if only CSV should be written; closed by close())
+     * @param columns The names of the columns
+     * @param queueCapacity The maximum number of rows which wait to be written
+     * @param flushIntervalMillis The maximum time between two flushes of the outputs
+     *
+     * @throws IOException If the headers couldn't be written
+     */
+    public BufferedResultsWriter(Writer csv, OutputStream binary, String[] columns, int queueCapacity,
+                                 long flushIntervalMillis) throws IOException {
+        if (columns.length == 0) {
+            System.out.println("[ERROR] At least one column is required");
+            throw new IllegalArgumentException();
+        }
+        if (queueCapacity < 1 || flushIntervalMillis < 1) {
+            System.out.println("[ERROR] The queue capacity and the flush interval must be positive");
+            throw new IllegalArgumentException();
+        }
+        this.columns = columns.clone();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.csv = csv;
+        this._writeCsvRow(this.columns);
+        if (binary != null) {
+            this.binary = new DataOutputStream(binary);
+            this.binary.writeInt(BufferedResultsWriter.BINARY_MAGIC);
+            this.binary.writeInt(this.columns.length);
+            for (String column : this.columns) {
+                this.binary.writeUTF(column);
+            }
+        } else {
+            this.binary = null;
+        }
+        // The headers are flushed immediately, so even an empty experiment leaves valid files
+        this._flush();
+        this.failure = null;
+        this.closed = false;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BufferedResultsWriter.this._writeRows();
+            }
+        }, "results-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * The constructor of the class - creates (or overrides) the output files and writes their headers
+     *
+     * @param csvFileName The name of the CSV file
+     * @param binaryFileName The name of the binary file (null if only CSV should be written)
+     * @param columns The names of the columns
+     * @param queueCapacity The maximum number of rows which wait to be written
+     * @param flushIntervalMillis The maximum time between two flushes of the files
+     *
+     * @throws IOException If the files couldn't be created
+     */
+    public BufferedResultsWriter(String csvFileName, String binaryFileName, String[] columns, int queueCapacity,
+                                 long flushIntervalMillis) throws IOException {
+        this(new BufferedWriter(new FileWriter(csvFileName)),
+                (binaryFileName != null) ? new BufferedOutputStream(new FileOutputStream(binaryFileName)) : null,
+                columns, queueCapacity, flushIntervalMillis);
+    }
+
+    /**
+     * The constructor of the class (CSV only, with the default queue capacity and flush interval)
+     *
+     * @param csvFileName The name of the CSV file
+     * @param columns The names of the columns
+     *
+     * @throws IOException If the file couldn't be created
+     */
+    public BufferedResultsWriter(String csvFileName, String[] columns) throws IOException {
+        this(csvFileName, null, columns, BufferedResultsWriter.DEFAULT_QUEUE_CAPACITY,
+                BufferedResultsWriter.DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @return The names of the columns
+     */
+    public String[] getColumns() {
+        return this.columns.clone();
+    }
+
+    /**
+     * Queues a row to be written (waits if the queue is full)
+     *
+     * NOTE: The row is written later, so it must not be changed after the call
+     *
+     * @param row The values of the columns
+     *
+     * @throws IOException If a previous write failed (the rows which are queued after a failure are discarded)
+     */
+    public void write(double[] row) throws IOException {
+        if (row.length != this.columns.length) {
+            System.out.println("[ERROR] Expected " + this.columns.length + " columns but got " + row.length);
+            throw new IllegalArgumentException();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        // The row is queued under the lock, so no row can follow the end mark which is queued by close()
+        synchronized (this) {
+            if (this.closed) {
+                throw new IOException("The writer is closed");
+            }
+            try {
+                this.queue.put(row);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while queueing a row", e);
+            }
+        }
+    }
+
+    /**
+     * Writes all the queued rows and closes the files
+     *
+     * @throws IOException If writing a row or closing one of the files failed
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        try {
+            this.queue.put(BufferedResultsWriter.END_OF_ROWS);
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the results", e);
+        } finally {
+            this.csv.close();
+            if (this.binary != null) {
+                this.binary.close();
+            }
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * The loop of the writing thread: takes the queued rows in batches and flushes the files at least once in
+     * flushIntervalMillis (if something was written)
+     */
+    private void _writeRows() {
+        List<double[]> batch = new ArrayList<>();
+        long nextFlush = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.flushIntervalMillis);
+        boolean dirty = false;
+        while (true) {
+            double[] first;
+            try {
+                first = this.queue.poll(Math.max(nextFlush - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // Only close() stops the writer
+                continue;
+            }
+            boolean end = false;
+            if (first != null) {
+                batch.add(first);
+                this.queue.drainTo(batch);
+                for (double[] row : batch) {
+                    if (row == BufferedResultsWriter.END_OF_ROWS) {
+                        end = true;
+                    } else if (this.failure == null) {
+                        try {
+                            this._writeRow(row);
+                            dirty = true;
+                        } catch (IOException e) {
+                            this._fail(e);
+                        }
+                    }
+                }
+                batch.clear();
+            }
+            if (end || System.nanoTime() >= nextFlush) {
+                if (dirty && this.failure == null) {
+                    try {
+                        this._flush();
+                    } catch (IOException e) {
+                        this._fail(e);
+                    }
+                }
+                dirty = false;
+                nextFlush = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.flushIntervalMillis);
+            }
+            if (end) {
+                return;
+            }
+        }
+    }
+
+    private void _writeRow(double[] row) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(row[i]);
+        }
+        sb.append('\n');
+        this.csv.write(sb.toString());
+        if (this.binary != null) {
+            for (double value : row) {
+                this.binary.writeDouble(value);
+            }
+        }
+    }
+
+    private void _writeCsvRow(String[] values) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append('\n');
+        this.csv.write(sb.toString());
+    }
+
+    private void _flush() throws IOException {
+        this.csv.flush();
+        if (this.binary != null) {
+            this.binary.flush();
+        }
+    }
+
+    private void _fail(IOException e) {
+        System.out.println("[ERROR] Failed writing the results: " + e.getMessage());
+        this.failure = e;
+    }
+
+    /**
+     * Reads a binary results file
+     *
+     * NOTE: A partially written last row (e.g. of a crashed experiment) is ignored
+     *
+     * @param fileName The name of the file
+     *
+     * @return The values of each column (by the names of the columns, in their order in the file)
+     *
+     * @throws IOException If the file couldn't be read or isn't a binary results file
+     */
+    public static Map<String, double[]> readBinaryColumns(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != BufferedResultsWriter.BINARY_MAGIC) {
+                throw new IOException("Not a binary results file: " + fileName);
+            }
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; ++i) {
+                names[i] = in.readUTF();
+            }
+            List<double[]> rows = new ArrayList<>();
+            double[] row = new double[names.length];
+            int index = 0;
+            while (true) {
+                try {
+                    row[index++] = in.readDouble();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (index == names.length) {
+                    rows.add(row);
+                    row = new double[names.length];
+                    index = 0;
+                }
+            }
+            Map<String, double[]> columns = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; ++i) {
+                double[] column = new double[rows.size()];
+                for (int j = 0; j < column.length; ++j) {
+                    column[j] = rows.get(j)[i];
+                }
+                columns.put(names[i], column);
+            }
+            return columns;
+        }
+    }
+}
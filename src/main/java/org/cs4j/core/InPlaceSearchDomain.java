@@ -0,0 +1,53 @@
+package org.cs4j.core;
+
+/**
+ * A search domain which can generate states into states supplied by the caller, and pack them into a buffer
+ * supplied by the caller.
+ *
+ * Search algorithms which support this interface keep a few reusable (scratch) states and a single packing buffer
+ * for the whole search, so expanding a node whose children are all duplicates allocates nothing - a new node (and a
+ * new packed key) is created only for a child which is actually new.
+ *
+ * NOTE: The states passed to the functions of this interface must have been created by createScratchState()
+ */
+public interface InPlaceSearchDomain extends SearchDomain {
+
+    /**
+     * Creates a state which can be overwritten later by applyOperator(State, Operator, State) and
+     * unpack(long[], State)
+     *
+     * @return The created state (its content is undefined)
+     */
+    State createScratchState();
+
+    /**
+     * @return The number of longs each state of the domain is packed into (the size of the packing buffer)
+     */
+    int getPackedLongsCount();
+
+    /**
+     * Applies the specified operator to the specified state and stores the result in the given child state
+     * (including its h and d values)
+     *
+     * @param state The state to apply the operator on (isn't changed)
+     * @param op The operator to apply
+     * @param child The state to overwrite with the result (mustn't be the same object as state)
+     */
+    void applyOperator(State state, Operator op, State child);
+
+    /**
+     * Packs the specified state into the given buffer (the same words are returned by pack(State).getInternal())
+     *
+     * @param state The state to pack
+     * @param words The buffer to fill (of size getPackedLongsCount())
+     */
+    void pack(State state, long[] words);
+
+    /**
+     * Unpacks the given packed words into the given state (including its h and d values)
+     *
+     * @param words The packed words of the state
+     * @param state The state to overwrite
+     */
+    void unpack(long[] words, State state);
+}
@@ -0,0 +1,35 @@
+package org.cs4j.core;
+
+/**
+ * A search domain which tells which sequences of operators are redundant, so depth-first algorithms (which have no
+ * closed list) can avoid generating them.
+ *
+ * Each operator has a type (an int between 0 and getOperatorTypesCount()-1) and the domain gives a table which tells
+ * for each pair of types whether applying an operator of the second type right after an operator of the first type
+ * is redundant (e.g. an operator followed by its inverse). The table is looked up once for each generated child,
+ * instead of creating and comparing the reverse operator.
+ *
+ * NOTE: The table must be safe - a pruned sequence must have an equivalent sequence (reaching the same state with at
+ *       most the same cost) which isn't pruned
+ */
+public interface MovePruningSearchDomain extends SearchDomain {
+
+    /**
+     * @return The number of the types of the operators
+     */
+    int getOperatorTypesCount();
+
+    /**
+     * @param state A state
+     * @param index The index of an operator of the state (as in getOperator(state, index))
+     *
+     * @return The type of the operator
+     */
+    int getOperatorType(State state, int index);
+
+    /**
+     * @return The pruning table: table[previous][current] is true if an operator of type current mustn't be applied
+     *         right after an operator of type previous (the table mustn't be changed by the caller)
+     */
+    boolean[][] getMovePruningTable();
+}
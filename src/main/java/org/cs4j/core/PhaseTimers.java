@@ -0,0 +1,162 @@
+package org.cs4j.core;
+
+/**
+ * Estimates the time a search spends in each one of its phases (generation of the children, open list, closed list
+ * and reconstruction of the solution) by sampled timers: the clock is read only in one of every sampleInterval calls
+ * of each phase, and the total time of the phase is extrapolated from the timed calls.
+ *
+ * Usage:
+ *  long start = timers.start(Phase.OPEN_LIST);
+ *  ... (the measured operation)
+ *  timers.stop(Phase.OPEN_LIST, start);
+ *
+ * The DISABLED timers don't read the clock and don't count anything, so algorithms can always call them.
+ *
+ * NOTE: The timers aren't thread-safe, each search should use its own instance
+ */
+public final class PhaseTimers {
+
+    /**
+     * The timed phases of a search
+     */
+    public enum Phase {
+        // Applying the operators - the domains compute the heuristic values of the children while applying them
+        GENERATION,
+        // Adding, polling and updating nodes in the open list
+        OPEN_LIST,
+        // Looking up and adding nodes in the closed list
+        CLOSED_LIST,
+        // Building the path of the found solution
+        RECONSTRUCTION
+    }
+
+    // Returned by start() if the current call isn't timed
+    public static final long NOT_SAMPLED = -1;
+
+    // Timers which never read the clock
+    public static final PhaseTimers DISABLED = new PhaseTimers();
+
+    private final int sampleInterval;
+    // All the arrays are indexed by the ordinals of the phases
+    private final long[] calls;
+    private final long[] sampledCalls;
+    private final long[] sampledNanos;
+    private final int[] untilNextSample;
+
+    /**
+     * The constructor of the disabled timers
+     */
+    private PhaseTimers() {
+        this.sampleInterval = 0;
+        this.calls = null;
+        this.sampledCalls = null;
+        this.sampledNanos = null;
+        this.untilNextSample = null;
+    }
+
+    /**
+     * The constructor of the class
+     *
+     * @param sampleInterval The number of calls of a phase between two timed calls (1 means all the calls are timed)
+     */
+    public PhaseTimers(int sampleInterval) {
+        if (sampleInterval < 1) {
+            System.out.println("[ERROR] Invalid sample interval (must be at least 1): " + sampleInterval);
+            throw new IllegalArgumentException();
+        }
+        int phasesCount = Phase.values().length;
+        this.sampleInterval = sampleInterval;
+        this.calls = new long[phasesCount];
+        this.sampledCalls = new long[phasesCount];
+        this.sampledNanos = new long[phasesCount];
+        // The first call of each phase is timed (so phases which occur once, like the reconstruction, are measured)
+        this.untilNextSample = new int[phasesCount];
+    }
+
+    /**
+     * @return Whether the timers measure anything
+     */
+    public boolean isEnabled() {
+        return this.sampleInterval > 0;
+    }
+
+    /**
+     * Marks the start of a call of a phase
+     *
+     * @param phase The phase
+     *
+     * @return The value to pass to stop() - the current time if the call is timed and NOT_SAMPLED otherwise
+     */
+    public long start(Phase phase) {
+        if (this.sampleInterval == 0) {
+            return PhaseTimers.NOT_SAMPLED;
+        }
+        int index = phase.ordinal();
+        ++this.calls[index];
+        if (--this.untilNextSample[index] > 0) {
+            return PhaseTimers.NOT_SAMPLED;
+        }
+        this.untilNextSample[index] = this.sampleInterval;
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a call of a phase
+     *
+     * @param phase The phase
+     * @param startNanos The value returned by the matching call of start()
+     */
+    public void stop(Phase phase, long startNanos) {
+        if (startNanos != PhaseTimers.NOT_SAMPLED) {
+            int index = phase.ordinal();
+            this.sampledNanos[index] += System.nanoTime() - startNanos;
+            ++this.sampledCalls[index];
+        }
+    }
+
+    /**
+     * @param phase The phase
+     *
+     * @return The number of calls of the phase
+     */
+    public long getCalls(Phase phase) {
+        return this.isEnabled() ? this.calls[phase.ordinal()] : 0;
+    }
+
+    /**
+     * @param phase The phase
+     *
+     * @return The number of timed calls of the phase
+     */
+    public long getSampledCalls(Phase phase) {
+        return this.isEnabled() ? this.sampledCalls[phase.ordinal()] : 0;
+    }
+
+    /**
+     * @param phase The phase
+     *
+     * @return The estimated total time of all the calls of the phase (in nanoseconds)
+     */
+    public long getEstimatedNanos(Phase phase) {
+        if (!this.isEnabled()) {
+            return 0;
+        }
+        int index = phase.ordinal();
+        if (this.sampledCalls[index] == 0) {
+            return 0;
+        }
+        return (long) ((double) this.sampledNanos[index] * this.calls[index] / this.sampledCalls[index]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            sb.append(phase.name().toLowerCase()).append(": ");
+            sb.append(this.getEstimatedNanos(phase) / 1000000).append("ms (");
+            sb.append(this.getCalls(phase)).append(" calls, ");
+            sb.append(this.getSampledCalls(phase)).append(" timed)\n");
+        }
+        return sb.toString();
+    }
+}
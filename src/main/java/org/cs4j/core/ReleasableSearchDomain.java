@@ -0,0 +1,19 @@
+package org.cs4j.core;
+
+/**
+ * A search domain which holds references to shared heuristic tables (see HeuristicTableRegistry)
+ *
+ * The registry keeps a table loaded as long as some domain holds a reference to it, so whoever creates an instance of
+ * such a domain (e.g. an experiment which loads an instance per job, or a parallel algorithm which replicates the
+ * domain for its workers) should release the instance once it is no longer used.
+ */
+public interface ReleasableSearchDomain extends SearchDomain {
+
+    /**
+     * Releases the references of this instance to its heuristic tables (a table is dropped from the registry once
+     * all the instances which use it released it)
+     *
+     * NOTE: The instance mustn't be searched after the call
+     */
+    void releaseHeuristicTables();
+}
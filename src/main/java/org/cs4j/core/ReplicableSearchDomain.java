@@ -0,0 +1,24 @@
+package org.cs4j.core;
+
+/**
+ * A search domain which can create more instances of the same problem, such that each instance can be used by a
+ * different thread.
+ *
+ * Parallel search algorithms give each worker thread its own instance (thread-confined), so the domain itself doesn't
+ * have to be thread-safe. Data which isn't modified during the search (e.g. the map, PDBs and pivot distances) can be
+ * shared by all the instances.
+ *
+ * NOTE: The states of all the instances must be packed in the same way, since a state packed by one instance may be
+ *       unpacked by another
+ */
+public interface ReplicableSearchDomain extends SearchDomain {
+
+    /**
+     * Creates a new instance of the domain with the same initial state, goals, heuristic and parameters
+     *
+     * NOTE: The function is called before the search starts (by the thread which owns this instance)
+     *
+     * @return The created instance
+     */
+    SearchDomain replicate();
+}
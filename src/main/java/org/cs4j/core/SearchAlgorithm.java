@@ -34,4 +34,19 @@ public interface SearchAlgorithm extends SearchConfigurable {
      * @return search results
      */
     SearchResult search(SearchDomain domain);
+
+    /**
+     * Sets the resources budget of the next searches (a search which exceeds the budget stops and returns a partial
+     * result)
+     *
+     * @param budget The budget to use
+     */
+    void setBudget(SearchBudget budget);
+
+    /**
+     * Sets the listener which receives the events of the next searches
+     *
+     * @param listener The listener to use (null in order to stop reporting the events)
+     */
+    void setListener(SearchListener listener);
 }
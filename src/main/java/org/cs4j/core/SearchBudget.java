@@ -0,0 +1,230 @@
+package org.cs4j.core;
+
+/**
+ * Limits on the resources which a single search may use: wall time, number of expanded nodes, number of generated
+ * nodes and (approximate) used heap bytes.
+ *
+ * A search which exceeds one of the limits stops gracefully and returns the (partial) result it has reached so far;
+ * the result tells which limit was exceeded (see {@link SearchResult#getExceededLimit()}).
+ *
+ * The counters are compared on every check, while the clock and the heap (which are more expensive to read) are read
+ * only once in checkInterval checks.
+ *
+ * The budget itself is immutable and can be shared by several algorithms; the state of a single search is kept by
+ * the {@link Monitor} returned by {@link #start()}. Algorithms which run several phases (e.g. NR and then AR) use a
+ * single monitor for all the phases, so the limits apply to the whole search, and don't start another phase after
+ * a phase was stopped by the budget.
+ */
+public final class SearchBudget {
+
+    /**
+     * The limits which can be exceeded
+     */
+    public enum Limit {
+        WALL_TIME,
+        EXPANDED,
+        GENERATED,
+        HEAP
+    }
+
+    public static final int DEFAULT_CHECK_INTERVAL = 1024;
+
+    // A negative value means no limit
+    public static final SearchBudget UNLIMITED = new SearchBudget(-1, -1, -1, -1);
+
+    private final long maxWallTimeMillis;
+    private final long maxExpanded;
+    private final long maxGenerated;
+    private final long maxHeapBytes;
+    private final int checkInterval;
+
+    /**
+     * The constructor of the class
+     *
+     * @param maxWallTimeMillis The maximum wall time of the search (in milliseconds)
+     * @param maxExpanded The maximum number of expanded nodes
+     * @param maxGenerated The maximum number of generated nodes
+     * @param maxHeapBytes The maximum number of used heap bytes
+     * @param checkInterval The number of checks between two reads of the clock and of the heap
+     *
+     * NOTE: A negative value means no limit
+     */
+    public SearchBudget(long maxWallTimeMillis, long maxExpanded, long maxGenerated, long maxHeapBytes,
+                        int checkInterval) {
+        if (checkInterval < 1) {
+            System.out.println("[ERROR] Invalid check interval (must be at least 1): " + checkInterval);
+            throw new IllegalArgumentException();
+        }
+        this.maxWallTimeMillis = maxWallTimeMillis;
+        this.maxExpanded = maxExpanded;
+        this.maxGenerated = maxGenerated;
+        this.maxHeapBytes = maxHeapBytes;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * The constructor of the class (with the default check interval)
+     *
+     * @param maxWallTimeMillis The maximum wall time of the search (in milliseconds)
+     * @param maxExpanded The maximum number of expanded nodes
+     * @param maxGenerated The maximum number of generated nodes
+     * @param maxHeapBytes The maximum number of used heap bytes
+     *
+     * NOTE: A negative value means no limit
+     */
+    public SearchBudget(long maxWallTimeMillis, long maxExpanded, long maxGenerated, long maxHeapBytes) {
+        this(maxWallTimeMillis, maxExpanded, maxGenerated, maxHeapBytes, SearchBudget.DEFAULT_CHECK_INTERVAL);
+    }
+
+    public SearchBudget withMaxWallTimeMillis(long maxWallTimeMillis) {
+        return new SearchBudget(maxWallTimeMillis, this.maxExpanded, this.maxGenerated, this.maxHeapBytes,
+                this.checkInterval);
+    }
+
+    public SearchBudget withMaxExpanded(long maxExpanded) {
+        return new SearchBudget(this.maxWallTimeMillis, maxExpanded, this.maxGenerated, this.maxHeapBytes,
+                this.checkInterval);
+    }
+
+    public SearchBudget withMaxGenerated(long maxGenerated) {
+        return new SearchBudget(this.maxWallTimeMillis, this.maxExpanded, maxGenerated, this.maxHeapBytes,
+                this.checkInterval);
+    }
+
+    public SearchBudget withMaxHeapBytes(long maxHeapBytes) {
+        return new SearchBudget(this.maxWallTimeMillis, this.maxExpanded, this.maxGenerated, maxHeapBytes,
+                this.checkInterval);
+    }
+
+    public SearchBudget withCheckInterval(int checkInterval) {
+        return new SearchBudget(this.maxWallTimeMillis, this.maxExpanded, this.maxGenerated, this.maxHeapBytes,
+                checkInterval);
+    }
+
+    public long getMaxWallTimeMillis() {
+        return this.maxWallTimeMillis;
+    }
+
+    public long getMaxExpanded() {
+        return this.maxExpanded;
+    }
+
+    public long getMaxGenerated() {
+        return this.maxGenerated;
+    }
+
+    public long getMaxHeapBytes() {
+        return this.maxHeapBytes;
+    }
+
+    public int getCheckInterval() {
+        return this.checkInterval;
+    }
+
+    /**
+     * @return Whether the budget has no limits (so the searches don't have to check it)
+     */
+    public boolean isUnlimited() {
+        return this.maxWallTimeMillis < 0 && this.maxExpanded < 0 && this.maxGenerated < 0 && this.maxHeapBytes < 0;
+    }
+
+    /**
+     * Starts tracking a search (the wall time is measured from this call)
+     *
+     * @return The monitor of the search
+     */
+    public Monitor start() {
+        return new Monitor(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget{wall-time=" + this.maxWallTimeMillis + "ms, expanded=" + this.maxExpanded +
+                ", generated=" + this.maxGenerated + ", heap=" + this.maxHeapBytes + "B}";
+    }
+
+    /**
+     * Tracks the resources used by a single search
+     *
+     * NOTE: A monitor isn't thread-safe, parallel searches should check it from a single thread (or synchronize)
+     */
+    public static final class Monitor {
+        private final SearchBudget budget;
+        private final long startNanos;
+        private int untilNextCheck;
+        private Limit exceededLimit;
+        // The counters of the completed phases of the search
+        private long previousExpanded;
+        private long previousGenerated;
+
+        private Monitor(SearchBudget budget) {
+            this.budget = budget;
+            this.startNanos = System.nanoTime();
+            this.untilNextCheck = budget.checkInterval;
+            this.exceededLimit = null;
+            this.previousExpanded = 0;
+            this.previousGenerated = 0;
+        }
+
+        /**
+         * Adds the counters of a completed phase of the search (the next phase counts from zero)
+         *
+         * @param phase The result of the completed phase
+         */
+        public void completePhase(SearchResult phase) {
+            this.previousExpanded += phase.getExpanded();
+            this.previousGenerated += phase.getGenerated();
+        }
+
+        /**
+         * Checks whether the search exceeded one of the limits of the budget
+         *
+         * @param expanded The number of nodes the current phase of the search expanded so far
+         * @param generated The number of nodes the current phase of the search generated so far
+         *
+         * @return Whether the search should stop
+         */
+        public boolean isExceeded(long expanded, long generated) {
+            if (this.exceededLimit != null) {
+                return true;
+            }
+            if (this.budget.maxExpanded >= 0 && this.previousExpanded + expanded >= this.budget.maxExpanded) {
+                this.exceededLimit = Limit.EXPANDED;
+            } else if (this.budget.maxGenerated >= 0 &&
+                    this.previousGenerated + generated >= this.budget.maxGenerated) {
+                this.exceededLimit = Limit.GENERATED;
+            } else if (--this.untilNextCheck <= 0) {
+                this.untilNextCheck = this.budget.checkInterval;
+                if (this.budget.maxWallTimeMillis >= 0 &&
+                        (System.nanoTime() - this.startNanos) / 1000000 >= this.budget.maxWallTimeMillis) {
+                    this.exceededLimit = Limit.WALL_TIME;
+                } else if (this.budget.maxHeapBytes >= 0) {
+                    Runtime runtime = Runtime.getRuntime();
+                    // Includes garbage which wasn't collected yet, so this is an upper bound of the live data
+                    if (runtime.totalMemory() - runtime.freeMemory() >= this.budget.maxHeapBytes) {
+                        this.exceededLimit = Limit.HEAP;
+                    }
+                }
+            }
+            if (this.exceededLimit != null) {
+                System.out.println("[WARNING] Search budget exceeded (" + this.exceededLimit + ")");
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return Whether one of the limits was exceeded
+         */
+        public boolean wasExceeded() {
+            return this.exceededLimit != null;
+        }
+
+        /**
+         * @return The limit which was exceeded or null if no limit was exceeded
+         */
+        public Limit getExceededLimit() {
+            return this.exceededLimit;
+        }
+    }
+}
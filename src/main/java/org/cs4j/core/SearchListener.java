@@ -0,0 +1,59 @@
+package org.cs4j.core;
+
+/**
+ * Receives the events of a running search, e.g. in order to see the progress of a search which blows up (the size
+ * of the open list over time, the rate of the expansions, the f layers which were expanded so far etc.)
+ *
+ * The algorithms call the listener only if one was set (see {@link SearchAlgorithm#setListener(SearchListener)}),
+ * so a search without a listener pays only a single null check for each event. The events are reported by the
+ * thread which runs the search; the parallel algorithms (e.g. HDAstar) report only the start and the end of the
+ * search.
+ *
+ * Algorithms which run several phases (e.g. NR and then AR) report all the phases as a single search.
+ *
+ * NOTE: The listener is called on the hot path of the search, so it should only update a few counters and do the
+ *       rest of the work once in a while (see {@link org.cs4j.core.metrics.SamplingSearchListener})
+ */
+public interface SearchListener {
+
+    /**
+     * Called once at the start of a search (after the timer of the search was started)
+     *
+     * @param algorithmName The name of the algorithm which runs the search
+     */
+    void searchStarted(String algorithmName);
+
+    /**
+     * Called for each expanded node
+     *
+     * @param g The g value of the expanded node
+     * @param h The h value of the expanded node
+     * @param openSize The number of nodes in the open list (0 for algorithms without an open list)
+     */
+    void nodeExpanded(double g, double h, int openSize);
+
+    /**
+     * Called for each generated node (after the expansion of its parent was reported)
+     *
+     * @param g The g value of the generated node
+     * @param h The h value of the generated node
+     */
+    void nodeGenerated(double g, double h);
+
+    /**
+     * Called for each generated node whose state was already reached by the search
+     */
+    void duplicateFound();
+
+    /**
+     * Called for each node which is returned from the closed list to the open list
+     */
+    void nodeReopened();
+
+    /**
+     * Called once at the end of a search
+     *
+     * @param result The result of the search
+     */
+    void searchFinished(SearchResult result);
+}
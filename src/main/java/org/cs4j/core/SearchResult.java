@@ -105,6 +105,27 @@ public interface SearchResult {
      */
     public long getCpuTimeMillis();
 
+    /**
+     * Returns the wall time in nanoseconds (measured by a monotonic clock).
+     *
+     * @return the wall time in nanoseconds
+     */
+    long getWallTimeNanos();
+
+    /**
+     * Returns the CPU time of the searching thread in nanoseconds.
+     *
+     * @return the CPU time in nanoseconds (0 if the JVM doesn't measure the CPU time of threads)
+     */
+    long getCpuTimeNanos();
+
+    /**
+     * Returns the estimated times of the phases of the search
+     *
+     * @return The timers of the phases (PhaseTimers.DISABLED if the algorithm didn't time its phases)
+     */
+    PhaseTimers getPhaseTimers();
+
     /**
      * Returns the number of seconds passed since the start of the run
      *
@@ -112,6 +133,13 @@ public interface SearchResult {
      */
     long getPassedTimeInSeconds();
 
+    /**
+     * Returns the limit of the search budget which stopped the search
+     *
+     * @return The exceeded limit or null if the search wasn't stopped by its budget
+     */
+    SearchBudget.Limit getExceededLimit();
+
     /**
      * Increases the statistics by the values of the previous search
      */
@@ -0,0 +1,181 @@
+package org.cs4j.core;
+
+import org.cs4j.core.SearchResult.Solution;
+
+/**
+ * The numeric columns which describe a search result in the results files of the experiments
+ *
+ * A schema is an ordered selection of the columns; it gives the values of a result in the same order, including the
+ * values of runs which found no solution and of runs which ran out of memory (in which case there is no result).
+ */
+public final class SearchResultSchema {
+
+    /**
+     * The available columns: each column has a short name (the one used in the headers of the results files) and
+     * knows how to extract its value from a result
+     */
+    public enum Column {
+        // 1 if a solution was found, 0 if not and -1 if the search ran out of memory
+        SOLVED("Slv") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return (solution != null) ? 1 : 0;
+            }
+        },
+        LENGTH("Dep") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return (solution != null) ? solution.getLength() : -1;
+            }
+        },
+        COST("Cst") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return (solution != null) ? solution.getCost() : -1;
+            }
+        },
+        GENERATED("Gen") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getGenerated();
+            }
+        },
+        FIRST_ITERATION_EXPANDED("FExp") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getFirstIterationExpanded();
+            }
+        },
+        EXPANDED("Exp") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getExpanded();
+            }
+        },
+        DUPLICATES("Dup") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getDuplicates();
+            }
+        },
+        UPDATED_IN_OPEN("Oup") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getUpdatedInOpen();
+            }
+        },
+        REOPENED("Rep") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getReopened();
+            }
+        },
+        ITERATIONS("Itc") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getIterationsCount();
+            }
+        },
+        WALL_TIME_MILLIS("Tme") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getWallTimeMillis();
+            }
+        },
+        CPU_TIME_MILLIS("Cpu") {
+            @Override
+            double getValue(SearchResult result, Solution solution) {
+                return result.getCpuTimeMillis();
+            }
+        };
+
+        private final String shortName;
+
+        Column(String shortName) {
+            this.shortName = shortName;
+        }
+
+        public String getShortName() {
+            return this.shortName;
+        }
+
+        /**
+         * @param result The result of the search
+         * @param solution The first solution of the result (null if no solution was found)
+         *
+         * @return The value of the column
+         */
+        abstract double getValue(SearchResult result, Solution solution);
+
+        /**
+         * @return The value of the column for a search which ran out of memory
+         */
+        double getOutOfMemoryValue() {
+            switch (this) {
+                case SOLVED:
+                case LENGTH:
+                case COST: {
+                    return -1;
+                }
+                default: {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private final Column[] columns;
+
+    /**
+     * The constructor of the class
+     *
+     * @param columns The columns of the schema (in their order in the results)
+     */
+    public SearchResultSchema(Column... columns) {
+        if (columns.length == 0) {
+            System.out.println("[ERROR] A schema must contain at least one column");
+            throw new IllegalArgumentException();
+        }
+        this.columns = columns.clone();
+    }
+
+    /**
+     * @return The number of columns in the schema
+     */
+    public int getColumnsCount() {
+        return this.columns.length;
+    }
+
+    /**
+     * @param prefix A prefix to add to each name (e.g. AR- for the columns of the runs with reopening)
+     *
+     * @return The (short) names of the columns
+     */
+    public String[] getColumnNames(String prefix) {
+        String[] names = new String[this.columns.length];
+        for (int i = 0; i < this.columns.length; ++i) {
+            names[i] = prefix + this.columns[i].getShortName();
+        }
+        return names;
+    }
+
+    /**
+     * @param result The result of the search or null if the search ran out of memory
+     *
+     * @return The values of the columns
+     */
+    public double[] getValues(SearchResult result) {
+        double[] values = new double[this.columns.length];
+        if (result == null) {
+            for (int i = 0; i < this.columns.length; ++i) {
+                values[i] = this.columns[i].getOutOfMemoryValue();
+            }
+            return values;
+        }
+        Solution solution = result.hasSolution() ? result.getSolutions().get(0) : null;
+        for (int i = 0; i < this.columns.length; ++i) {
+            values[i] = this.columns[i].getValue(result, solution);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,35 @@
+package org.cs4j.core;
+
+/**
+ * A search domain whose states can be changed in place by an operator and restored by undoing it.
+ *
+ * Depth-first algorithms keep a single state for the whole path: a child is generated by applying the operator on
+ * the state of its parent and the parent is restored by undoing the operator, so only the part of the state which
+ * the operator changes is written (instead of copying the whole parent into the state of the child).
+ *
+ * The operators are undone in the reverse order of their application: each state keeps what is required for
+ * restoring it (e.g. its previous h and d values, which are restored exactly rather than recomputed).
+ *
+ * NOTE: The states passed to the functions of this interface must have been created by copy(State) or by
+ *       initialState()
+ */
+public interface UndoableSearchDomain extends SearchDomain {
+
+    /**
+     * Applies the specified operator to the specified state itself (including its h and d values)
+     *
+     * @param state The state to change
+     * @param op The operator to apply (an operator of the state)
+     *
+     * @return The cost of the operator (the value of op.getCost(child, parent) when the child is generated by
+     *         applyOperator(State, Operator))
+     */
+    double applyInPlace(State state, Operator op);
+
+    /**
+     * Undoes the last operator which was applied to the state by applyInPlace(State, Operator) and wasn't undone yet
+     *
+     * @param state The state to restore
+     */
+    void undo(State state);
+}
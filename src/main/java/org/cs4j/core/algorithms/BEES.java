@@ -1,11 +1,15 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.collections.BinHeap;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -57,6 +61,13 @@ public class BEES implements SearchAlgorithm {
     // Whether to perform reopening of nodes
     private boolean reopen;
 
+    private SearchBudget budget;
+    // Tracks the budget of the current search (shared by all the phases of the search)
+    private SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     // open is implemented as a binary heap and actually contains nodes ordered by their dHat(n) values
     // Note that this list contains only nodes which support the following rule: fHat(n) <= C
     private BinHeap<Node> open;
@@ -65,7 +76,7 @@ public class BEES implements SearchAlgorithm {
     // Inconsistent list
     protected Map<PackedElement, Node> incons;
     // Closed list
-    private Map<PackedElement, Node> closed;
+    private ClosedList<Node> closed;
 
     /**
      * Initializes all the data structures required for the search, especially OPEN, FOCAL, CLEANUP and CLOSED lists
@@ -87,7 +98,7 @@ public class BEES implements SearchAlgorithm {
         }
 
         if (clearClosed || this.closed == null) {
-            this.closed = new HashMap<>();
+            this.closed = new PackedClosedList<>();
         }
     }
 
@@ -99,6 +110,7 @@ public class BEES implements SearchAlgorithm {
         this.maxCost = Double.MAX_VALUE;
         this.reopen = true;
         this.rerun = RERUN_TYPES.NO_RERUN;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     @Override
@@ -133,6 +145,16 @@ public class BEES implements SearchAlgorithm {
         this.closed.put(node.packed, node);
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
         return BEES.BEESPossibleParameters;
@@ -212,6 +234,9 @@ public class BEES implements SearchAlgorithm {
 
         // Loop while there is no solution and there are states in the OPEN list
         while ((goal == null) && this.canContinueRunning()) {
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
             // Take a node from the OPEN list (nodes are sorted according to the 'u' function)
             Node currentNode = this._selectNode();
             // Debug ...
@@ -223,6 +248,9 @@ public class BEES implements SearchAlgorithm {
             currentState = domain.unpack(currentNode.packed);
             // expand the node (since, if its g satisfies the goal test - it would be already returned)
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Go over all the successors of the state
             for (int i = 0; i < domain.getNumOperators(currentState); ++i) {
                 // Get the current operator
@@ -235,6 +263,10 @@ public class BEES implements SearchAlgorithm {
                 ++result.generated;
                 // Get it by applying the operator on the parent state
                 State childState = domain.applyOperator(currentState, op);
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentNode.g + op.getCost(childState, currentState),
+                            childState.getH());
+                }
                 // Create a search node for this state
                 Node childNode = new Node(childState, currentNode, currentState, op, op.reverse(currentState));
 
@@ -258,6 +290,9 @@ public class BEES implements SearchAlgorithm {
                 if (this.closed.containsKey(childNode.packed)) {
                     // Count the duplicates
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Take the duplicate node
                     Node dupChildNode = this.closed.get(childNode.packed);
                     // Consider only duplicates with higher g-value
@@ -279,6 +314,9 @@ public class BEES implements SearchAlgorithm {
                             // Return to OPEN list only if reopening is allowed
                             if (this.reopen) {
                                 ++result.reopened;
+                                if (this.listener != null) {
+                                    this.listener.nodeReopened();
+                                }
                                 if (dupChildNode.fHat <= this.maxCost) {
                                     this.open.add(dupChildNode);
                                 }
@@ -367,11 +405,13 @@ public class BEES implements SearchAlgorithm {
             }
             // Search without cleaning open/closed
             currentResult = this._search(false);
+            this.budgetMonitor.completePhase(currentResult);
             // Add current iteration
             ((SearchResultImpl) accumulatorResult).addIteration(1, this.maxCost,
                     currentResult.getExpanded(), currentResult.getGenerated());
-            // We will break here if we found a valid solution, or if AR was performed and there is no solution ...
-            if (currentResult.hasSolution() || this.reopen) {
+            // We will break here if we found a valid solution, or if AR was performed and there is no solution, or if
+            // the budget was exceeded ...
+            if (currentResult.hasSolution() || this.reopen || this.budgetMonitor.wasExceeded()) {
                 ((SearchResultImpl)currentResult).addIterations((SearchResultImpl)accumulatorResult);
                 // Note that the finalResult is still based on only the previous counters, thus, adding to local will
                 // reveal to the total value of counters
@@ -406,7 +446,26 @@ public class BEES implements SearchAlgorithm {
 
 
     public SearchResult search(SearchDomain domain) {
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        SearchResult result = this._searchAllPhases(domain);
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs all the phases of the search
+     *
+     * @param domain The domain to search
+     *
+     * @return The result of the search
+     */
+    private SearchResult _searchAllPhases(SearchDomain domain) {
         this.domain = domain;
+        this.budgetMonitor = this.budget.start();
         // Perform initialization of all the data structures used during the search
         this._initDataStructures(true, true, true);
         switch (this.rerun) {
@@ -417,8 +476,9 @@ public class BEES implements SearchAlgorithm {
             case NRR1: {
                 // First search with NR (clear Open)
                 SearchResult nrResult = this._search(true);
-                // Run from scratch if required
-                if (!nrResult.hasSolution()) {
+                this.budgetMonitor.completePhase(nrResult);
+                // Run from scratch if required (and if the budget allows)
+                if (!nrResult.hasSolution() && !this.budgetMonitor.wasExceeded()) {
                     System.out.println("[INFO] PTS Failed with NR, tries again with AR from scratch");
                     this.reopen = true;
                     SearchResult arResult = this._search(true);
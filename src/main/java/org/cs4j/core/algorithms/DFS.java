@@ -1,8 +1,12 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -20,10 +24,14 @@ public class DFS implements SearchAlgorithm {
     private List<SearchDomain.Operator> path = new ArrayList<>(3);
     private List<SearchDomain.State> statesPath = new ArrayList<>(3);
     // Visited list (seen states)
-    private Map<PackedElement, Node> visited;
+    private ClosedList<Node> visited;
 
     private Stack<Node> stack;
 
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     @Override
     public String getName() {
         return "dfs";
@@ -34,7 +42,17 @@ public class DFS implements SearchAlgorithm {
      */
     private void _initDataStructures() {
         this.stack = new Stack<>();
-        this.visited = new HashMap<>();
+        this.visited = new PackedClosedList<>();
+    }
+
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
     }
 
     @Override
@@ -56,6 +74,10 @@ public class DFS implements SearchAlgorithm {
 
         SearchResultImpl result = new SearchResultImpl();
         result.startTimer();
+        SearchBudget.Monitor budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
 
         // Let's instantiate the initial state
         SearchDomain.State state = domain.initialState();
@@ -65,6 +87,9 @@ public class DFS implements SearchAlgorithm {
         this.stack.push(initNode);
 
         while (!this.stack.isEmpty()) {
+            if (result.isBudgetExceeded(budgetMonitor)) {
+                break;
+            }
             Node currentNode = this.stack.pop();
             // Extract the state from the packed value of the node
             state = domain.unpack(currentNode.packed);
@@ -93,6 +118,10 @@ public class DFS implements SearchAlgorithm {
             if (!this.visited.containsKey(currentNode.packed)) {
                 // Add to visited
                 this.visited.put(currentNode.packed, currentNode);
+                if (this.listener != null) {
+                    // The g values aren't kept by DFS
+                    this.listener.nodeExpanded(0, state.getH(), this.stack.size());
+                }
 
                 // Auxiliary stack to visit neighbors in the order they appear by applying the operators
                 // alternatively: iterate through the generated neighbours in reverse order
@@ -106,8 +135,16 @@ public class DFS implements SearchAlgorithm {
                     }
                     SearchDomain.State childState = domain.applyOperator(state, op);
                     Node childNode = new Node(childState, currentNode, op, op.reverse(state));
+                    if (this.listener != null) {
+                        // The g values aren't kept by DFS (the parent was reported with g = 0)
+                        this.listener.nodeGenerated(op.getCost(childState, state), childState.getH());
+                    }
                     // Ignore if duplicate
-                    if (!this.visited.containsKey(childNode.packed)) {
+                    if (this.visited.containsKey(childNode.packed)) {
+                        if (this.listener != null) {
+                            this.listener.duplicateFound();
+                        }
+                    } else {
                         auxiliaryStack.push(childNode);
                         //System.out.println(childState.dumpState());
                         // Debug
@@ -134,6 +171,9 @@ public class DFS implements SearchAlgorithm {
             result.addSolution(solution);
         }
 
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
         return result;
     }
 
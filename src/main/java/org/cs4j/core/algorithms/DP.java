@@ -1,7 +1,9 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.collections.*;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -24,6 +26,8 @@ public class DP  implements SearchAlgorithm {
         DP.DPPossibleParameters.put("weight", Double.class);
         DP.DPPossibleParameters.put("reopen", Boolean.class);
         DP.DPPossibleParameters.put("emptyFocalRatio", Integer.class);
+        DP.DPPossibleParameters.put("heap-type", String.class);
+        DP.DPPossibleParameters.put("bucket-resolution", Double.class);
     }
 
     // The domain for the search
@@ -31,7 +35,7 @@ public class DP  implements SearchAlgorithm {
     // Open list (frontier)
     private BinHeapF<Node> open = new BinHeapF<>(new NodeComparator());
     // Closed list (seen states)
-    private Map<PackedElement, Node> closed;
+    private ClosedList<Node> closed;
 
     // TODO ...
     private HeapType heapType;
@@ -41,6 +45,9 @@ public class DP  implements SearchAlgorithm {
 
     public enum HeapType {BIN, BUCKET}
 
+    // The width of a bucket (in units of f) if a bucket queue is used in order to track the minimal f
+    private double bucketResolution;
+
     // For Dynamic Potential Bound
     protected double weight;
     // Whether to perform reopening of states
@@ -48,6 +55,11 @@ public class DP  implements SearchAlgorithm {
     //when to empty Focal
     private int emptyFocalRatio;
 
+    private SearchBudget budget;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     /**
      * Sets the default values for the relevant fields of the algorithm
      */
@@ -56,6 +68,8 @@ public class DP  implements SearchAlgorithm {
         this.weight = 1.0;
         this.reopen = true;
         this.emptyFocalRatio = Integer.MAX_VALUE;
+        this.bucketResolution = 1.0;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     protected DP(double maxCost, HeapType heapType) {
@@ -89,31 +103,26 @@ public class DP  implements SearchAlgorithm {
     }
 
     /**
-     * Creates a heap according to the required type (Builder design pattern)
+     * Creates the open list according to the required type (Builder design pattern): the nodes are always ordered by
+     * their potential, while the type determines the queue which orders them by f (in order to track the minimal f)
      *
      * @param heapType Type of the required heap (choose from the available types)
-     * @param size Initial size of the heap
      *
-     * NOTE: In case of unknown type, null is returned (no exception is thrown)
      * @return The created heap
      */
-    private SearchQueue<Node> buildHeap(HeapType heapType, int size) {
-        SearchQueue<Node> heap = null;
+    private BinHeapF<Node> buildHeap(HeapType heapType) {
         switch (heapType) {
             case BUCKET:
-                heap = new BucketHeap<>(size, QID);
-                break;
-            case BIN:
-                heap = new BinHeapF<>(new NodeComparator());
-                break;
+                return new BinHeapF<>(new NodeComparator(),
+                        new BucketQueue<>(new FNodeComparator(), this.bucketResolution, QID));
+            default:
+                return new BinHeapF<>(new NodeComparator());
         }
-        return heap;
     }
 
     private void _initDataStructures() {
-        this.open = new BinHeapF<>(new NodeComparator());
-        //this.open = buildHeap(heapType, 100);
-        this.closed = new HashMap<>();
+        this.open = this.buildHeap(this.heapType);
+        this.closed = new PackedClosedList<>();
     }
 
     @Override
@@ -124,6 +133,10 @@ public class DP  implements SearchAlgorithm {
         this._initDataStructures();
         SearchResultImpl result = new SearchResultImpl();
         result.startTimer();
+        SearchBudget.Monitor budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
 
         // Let's instantiate the initial state
         SearchDomain.State currentState = domain.initialState();
@@ -140,6 +153,9 @@ public class DP  implements SearchAlgorithm {
         forntierLoop:
         // Loop over the frontier
         while (!this.open.isEmpty()) {
+            if (result.isBudgetExceeded(budgetMonitor)) {
+                break;
+            }
             // Take the first state (still don't remove it)
             Node currentNode;
             currentNode = this.open.peek();
@@ -164,6 +180,9 @@ public class DP  implements SearchAlgorithm {
 
             // Expand the current node
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Go over all the possible operators and apply them
             for (int i = 0; i < domain.getNumOperators(currentState); ++i) {
                 SearchDomain.Operator op = domain.getOperator(currentState, i);
@@ -178,12 +197,19 @@ public class DP  implements SearchAlgorithm {
                     break forntierLoop;
                 }
                 SearchDomain.State childState = domain.applyOperator(currentState, op);
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentNode.g + op.getCost(childState, currentState),
+                            childState.getH());
+                }
                 Node childNode = new Node(childState, currentNode, currentState, op, op.reverse(currentState));
 
                 // Treat duplicates
                 if (this.closed.containsKey(childNode.packed)) {
                     // Count the duplicates
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Get the previous copy of this node (and extract it)
                     Node dupChildNode = this.closed.get(childNode.packed);
                     // Take the h value from the previous version of the node (for case of randomization of h values)
@@ -230,6 +256,9 @@ public class DP  implements SearchAlgorithm {
                                 // Return to OPEN list only if reopening is allowed
                                 if (this.reopen) {
                                     ++result.reopened;
+                                    if (this.listener != null) {
+                                        this.listener.nodeReopened();
+                                    }
                                     this.open.add(dupChildNode);
                                 }
                                 this.closed.put(dupChildNode.packed, dupChildNode);
@@ -285,9 +314,22 @@ public class DP  implements SearchAlgorithm {
             result.addSolution(solution);
         }
 
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
         return result;
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
         return DP.DPPossibleParameters;
@@ -314,6 +356,31 @@ public class DP  implements SearchAlgorithm {
                 this.emptyFocalRatio = Integer.parseInt(value);
                 break;
             }
+            case "heap-type": {
+                switch (value) {
+                    case "bin": {
+                        this.heapType = HeapType.BIN;
+                        break;
+                    }
+                    case "bucket": {
+                        this.heapType = HeapType.BUCKET;
+                        break;
+                    }
+                    default: {
+                        System.out.println("[ERROR] The heap type can be 'bin' or 'bucket' (got " + value + ")");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                break;
+            }
+            case "bucket-resolution": {
+                this.bucketResolution = Double.parseDouble(value);
+                if (!(this.bucketResolution > 0)) {
+                    System.out.println("[ERROR] The bucket resolution must be > 0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
             default: {
                 throw new NotImplementedException();
             }
@@ -418,6 +485,21 @@ public class DP  implements SearchAlgorithm {
         }
     }
 
+    /**
+     * The comparator of the nodes by f (smaller is preferred) and then by g (bigger is preferred)
+     */
+    protected final class FNodeComparator implements Comparator<Node> {
+
+        @Override
+        public int compare(final Node a, final Node b) {
+            if (a.f < b.f) return -1;
+            if (a.f > b.f) return 1;
+            if (a.g > b.g) return -1;
+            if (a.g < b.g) return 1;
+            return 0;
+        }
+    }
+
     /**
      * The nodes comparator class
      */
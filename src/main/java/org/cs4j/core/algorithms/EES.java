@@ -2,9 +2,11 @@ package org.cs4j.core.algorithms;
 
 import com.sun.istack.internal.NotNull;
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
 import org.cs4j.core.collections.*;
@@ -54,8 +56,17 @@ public class EES implements SearchAlgorithm {
     // Inconsistent list
     protected Map<PackedElement, Node> incons;
     // Closed list
-    // private LongObjectOpenHashMap<Node> closed;
-    protected Map<PackedElement, Node> closed;
+    protected ClosedList<Node> closed;
+
+    // By default, a search is stopped after 180 seconds
+    private static final SearchBudget DEFAULT_BUDGET = SearchBudget.UNLIMITED.withMaxWallTimeMillis(180 * 1000);
+
+    protected SearchBudget budget;
+    // Tracks the budget of the current search (shared by all the phases of the search)
+    protected SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    protected SearchListener listener;
 
     /**
      * Initializes all the data structures required for the search, especially OPEN, FOCAL, CLEANUP and CLOSED lists
@@ -72,8 +83,7 @@ public class EES implements SearchAlgorithm {
                         new CleanupNodeComparator(),
                         EES.CLEANUP_ID);
 
-        //this.closed = new LongObjectOpenHashMap<>();
-        this.closed = new HashMap<>();
+        this.closed = new PackedClosedList<>();
     }*/
 
 
@@ -85,6 +95,7 @@ public class EES implements SearchAlgorithm {
         // Default values
         this.weight = 1.0;
         this.reopen = true;
+        this.budget = EES.DEFAULT_BUDGET;
     }
 
     @Override
@@ -163,26 +174,29 @@ public class EES implements SearchAlgorithm {
 
         // Go to the parent of the duplicate node and remove the duplicated node from the parent's children
         if (dupChildNode.parent != null) {
-            dupChildNode.parent.children.remove(dupChildNode.packed);
-            dupChildNode.parent = null;
+            dupChildNode.parent._removeChild(dupChildNode);
         }
 
         //              (children)
         // duplicate ->            children
 
-        // Go to the children of the duplicate and update their parent to the new child
-        // Take all the children of the found duplicate and update their parent node
-        for (Node grandSon : dupChildNode.children.values()) {
-            grandSon.parent = newChildNode;
-            newChildNode.children.put(grandSon.packed, grandSon);
-        }
-
-        // Finally, we can destroy the duplicate node
-        dupChildNode.children.clear();
+        // Go to the children of the duplicate and update their parent to the new child (this also destroys the
+        // children list of the duplicate node)
+        dupChildNode._moveChildrenTo(newChildNode);
 
         // Add the child node to be a child of its parent
-        newParentNode.children.put(newChildNode.packed, newChildNode);
+        newParentNode._addChild(newChildNode);
+
+    }
+
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
 
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
     }
 
     @Override
@@ -230,8 +244,7 @@ public class EES implements SearchAlgorithm {
         }
 
         if (clearClosed || this.closed == null) {
-            //this.closed = new LongObjectOpenHashMap<>();
-            this.closed = new HashMap<>();
+            this.closed = new PackedClosedList<>();
         }
     }
 
@@ -261,9 +274,7 @@ public class EES implements SearchAlgorithm {
             // First, take the best node from the open list (best f^)
             Node oldBest = this.gequeue.peekOpen();
 
-            // Debug
-            if (result.getPassedTimeInSeconds() > 180) {
-                System.out.println("[WARNING] Time overflow (" + result.getPassedTimeInSeconds() + ")");
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
                 break;
             }
 
@@ -296,6 +307,9 @@ public class EES implements SearchAlgorithm {
 
             // Here, we decided to expand the node
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(bestNode.g, bestNode.h, this.gequeue.size());
+            }
             int numOps = domain.getNumOperators(state);
 
             // Go over all the possible operators
@@ -308,6 +322,9 @@ public class EES implements SearchAlgorithm {
                 ++result.generated;
                 // Apply the operator and extract the child state
                 State childState = domain.applyOperator(state, op);
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(bestNode.g + op.getCost(childState, state), childState.getH());
+                }
                 // Create the child node
                 Node childNode = new Node(childState, bestNode, state, op, op.reverse(state));
 
@@ -321,6 +338,9 @@ public class EES implements SearchAlgorithm {
                 // ==> This means it is in CLOSED (and maybe in OPEN too!) - a duplicate was found!
                 if (this.closed.containsKey(childNode.packed)) {
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Extract the duplicate
                     Node dupChildNode = this.closed.get(childNode.packed);
                     // In case the node should be re-considered
@@ -344,6 +364,9 @@ public class EES implements SearchAlgorithm {
                             // If re-opening is allowed: insert the node back to lists (OPEN, FOCAL and CLEANUP)
                             if (this.reopen) {
                                 ++result.reopened;
+                                if (this.listener != null) {
+                                    this.listener.nodeReopened();
+                                }
 
                                 // Update all the pointers
                                 this._updateParentAndChildPointers(dupChildNode, bestNode, childNode);
@@ -365,12 +388,11 @@ public class EES implements SearchAlgorithm {
 
                                     // Go to the parent of the duplicate node and remove this node from its children
                                     if (dupChildNode.parent != null) {
-                                        dupChildNode.parent.children.remove(dupChildNode.packed);
+                                        dupChildNode.parent._removeChild(dupChildNode);
                                     }
 
                                     // Update the parent of the duplicate node
-                                    dupChildNode.parent = childNode.parent;
-                                    dupChildNode.parent.children.put(dupChildNode.packed, dupChildNode);
+                                    childNode.parent._addChild(dupChildNode);
                                 } else {
 
                                     // Update all the pointers
@@ -393,7 +415,7 @@ public class EES implements SearchAlgorithm {
                 // New node - not in CLOSED
                 } else {
                     this._insertNode(childNode, oldBest);
-                    bestNode.children.put(childNode.packed, childNode);
+                    bestNode._addChild(childNode);
                 }
             }
 
@@ -468,11 +490,14 @@ public class EES implements SearchAlgorithm {
         this.gequeue.updateFocal(null, initNode, 0);
     }
 
-    @Override
-    public SearchResult search(SearchDomain domain) {
+    /**
+     * Runs a single search from the initial state (all the data structures are cleared)
+     *
+     * @return The result of the search
+     */
+    protected SearchResult _searchFromScratch() {
         // Init all the queues relevant to search (destroy previous results)
         this._initDataStructures(true, true, true);
-        this.domain = domain;
 
         // Perform the relevant preparation ...
         this.prepareForSearch();
@@ -481,6 +506,20 @@ public class EES implements SearchAlgorithm {
         return this._search(false, false, Integer.MAX_VALUE);
     }
 
+    @Override
+    public SearchResult search(SearchDomain domain) {
+        this.domain = domain;
+        this.budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        SearchResult result = this._searchFromScratch();
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
     /**
      * This comparator is used in order to sort the cleanup list on F
      */
@@ -603,8 +642,10 @@ public class EES implements SearchAlgorithm {
 
         private Node parent;
 
-        // The immediate children of the node
-        private Map<PackedElement, Node> children;
+        // The immediate children of the node are linked through their nextSibling fields, starting from firstChild
+        // (instead of a map of children per node, which costs much more memory than the node itself)
+        private Node firstChild;
+        private Node nextSibling;
 
         // Public in order to be used by subclassed (specifically EESwithNRR
         public PackedElement packed;
@@ -688,6 +729,55 @@ public class EES implements SearchAlgorithm {
             assert this.dHat >= 0;
         }
 
+        /**
+         * Adds a node to the children of this node (and updates its parent)
+         *
+         * @param child The node to add (which isn't a child of any node)
+         */
+        private void _addChild(Node child) {
+            child.parent = this;
+            child.nextSibling = this.firstChild;
+            this.firstChild = child;
+        }
+
+        /**
+         * Removes a node from the children of this node (the number of children is bounded by the branching factor,
+         * so the list is searched)
+         *
+         * @param child The child to remove
+         */
+        private void _removeChild(Node child) {
+            if (this.firstChild == child) {
+                this.firstChild = child.nextSibling;
+            } else {
+                Node previous = this.firstChild;
+                while (previous != null && previous.nextSibling != child) {
+                    previous = previous.nextSibling;
+                }
+                if (previous != null) {
+                    previous.nextSibling = child.nextSibling;
+                }
+            }
+            child.parent = null;
+            child.nextSibling = null;
+        }
+
+        /**
+         * Re-parents all the children of this node to another node (the whole subtrees are moved, since the children
+         * keep their own children)
+         *
+         * @param other The new parent of the children
+         */
+        private void _moveChildrenTo(Node other) {
+            Node child = this.firstChild;
+            while (child != null) {
+                Node next = child.nextSibling;
+                other._addChild(child);
+                child = next;
+            }
+            this.firstChild = null;
+        }
+
         /**
          * The constructor of the class
          *
@@ -703,7 +793,8 @@ public class EES implements SearchAlgorithm {
             this.op = op;
             this.pop = pop;
             this.parent = parent;
-            this.children = new HashMap<>();
+            this.firstChild = null;
+            this.nextSibling = null;
 
             // Calculate the cost of the node:
             double cost = (op != null) ? op.getCost(state, parentState) : 0;
@@ -769,7 +860,7 @@ public class EES implements SearchAlgorithm {
 
         @Override
         public int hashCode() {
-            return (int)this.packed.getLongsSum();
+            return this.packed.hashCode();
         }
 
         @Override
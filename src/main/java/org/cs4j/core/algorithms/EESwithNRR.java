@@ -255,7 +255,12 @@ public class EESwithNRR extends EES {
         // This is the result for the first NR
         this.reopen = false;
 
-        SearchResult nrResult = super.search(domain);
+        SearchResult nrResult = this._searchFromScratch();
+        this.budgetMonitor.completePhase(nrResult);
+        // The budget was exceeded - don't start another phase
+        if (this.budgetMonitor.wasExceeded()) {
+            return nrResult;
+        }
 
         if (nrResult.hasSolution()) {
             // Get current solution and check if it is sufficient
@@ -272,7 +277,7 @@ public class EESwithNRR extends EES {
         // Now, search with reopening
         this.reopen = true;
 
-        SearchResult arResult = super.search(domain);
+        SearchResult arResult = this._searchFromScratch();
 
         if (arResult.hasSolution()) {
             // Add previous iteration of NR in any case (TODO: Required?)
@@ -326,6 +331,7 @@ public class EESwithNRR extends EES {
                         // Use the last solution cost for pruning (by F value)?
                         // TODO? Last cost?? The heuristic function is not monotonic!
                         maxPreviousCost);
+            this.budgetMonitor.completePhase(currentResult);
             // Add current iteration
             accumulatorResult.addIteration(1, maxPreviousCost,
                     currentResult.getExpanded(), currentResult.getGenerated());
@@ -351,10 +357,19 @@ public class EESwithNRR extends EES {
                 shouldReturn = true;
             }
 
+            // The budget was exceeded - don't start another phase
+            if (this.budgetMonitor.wasExceeded()) {
+                shouldReturn = true;
+            }
+
             // Now check if we should return
             if (shouldReturn) {
                 // A safety
                 if (!currentResult.hasSolution()) {
+                    // Count the phase which was stopped by the budget (this also marks the returned result)
+                    if (this.budgetMonitor.wasExceeded()) {
+                        accumulatorResult.increase(currentResult);
+                    }
                     currentResult = lastResult;
                 }
                 // Note that the finalResult is still based on only the previous counters, thus, adding to local will
@@ -393,6 +408,9 @@ public class EESwithNRR extends EES {
             for (Node current : this.incons.values()) {
                 // Insert the node to open+focal+cleanup!
                 this._insertNodeNoCleanupForICL(current, oldBest);
+                if (this.listener != null) {
+                    this.listener.nodeReopened();
+                }
             }
 
             ////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -450,6 +468,10 @@ public class EESwithNRR extends EES {
         SearchResult toReturn = null;
 
         this.domain = domain;
+        this.budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
         // Set general values
         double deviatedWeight = this.weight * this.wAdmissibilityDeviation;
         if (this.weight != deviatedWeight) {
@@ -480,6 +502,9 @@ public class EESwithNRR extends EES {
         }
         // Restore the value of this.reopen
         this.reopen = previousReopenValue;
+        if (this.listener != null) {
+            this.listener.searchFinished(toReturn);
+        }
         // Return the calculated value
         return toReturn;
     }
@@ -0,0 +1,791 @@
+package org.cs4j.core.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cs4j.core.ReleasableSearchDomain;
+import org.cs4j.core.ReplicableSearchDomain;
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchDomain.Operator;
+import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
+import org.cs4j.core.SearchResult;
+import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
+import org.cs4j.core.collections.BinHeap;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
+import org.cs4j.core.collections.PackedElement;
+import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+
+/**
+ * Hash Distributed A* (HDA*): a parallel A* search
+ *
+ * Each worker thread owns an open list and a partition of the closed list: a state is owned by the worker which is
+ * selected by the hash of its packed value. A generated child is sent to its owner through the (lock-free) queue of
+ * the owner, and only the owner checks it for duplicates and adds it to its open list.
+ *
+ * Each worker uses its own instance of the domain (see ReplicableSearchDomain). If the domain can't be replicated,
+ * all the workers share it and the calls to the domain are serialized.
+ *
+ * The nodes which are sent to each worker are buffered and sent in batches, in order to reduce the synchronization
+ * between the workers.
+ *
+ * Termination: the algorithm counts the work which remains - the sent nodes which weren't received yet and the nodes
+ * in all the open lists. A worker adds its sent nodes to the counter before it subtracts the nodes it expanded (or
+ * discarded), and the subtractions are deferred until the worker flushes its buffers, so the counter never
+ * underestimates the remaining work: it reaches 0 only when all the workers are idle and no nodes are in transit.
+ *
+ * Order of expansions: by default, each worker expands its own best node (lowest f and then highest g), so the
+ * workers may expand nodes which the sequential A* never expands, and reopen nodes whose g improves later. A node is
+ * expanded again only if its g has dropped since its last expansion.
+ *
+ * Optionally (the global-order parameter), the workers expand (approximately) in the global order of the sequential
+ * A*: each worker publishes the best node in its open list, after it has sent the buffered nodes which are better,
+ * and a worker expands its best node only if it isn't worse than the nodes published by all the other workers and
+ * than the bounds of their inboxes (the sender of a batch lowers the bound of the inbox of the receiver); otherwise
+ * it waits. This prunes most of the extra expansions and reopenings, but serializes the search: only the workers
+ * whose nodes tie for the global minimum make progress, while the others spin, and each expansion reads the values of
+ * all the workers. The published values may be stale, so the order isn't exact (but the worker with the best node
+ * always proceeds, so the workers can't all wait).
+ *
+ * Optimality: the workers don't expand their nodes in the global order of f, so a goal which is found first isn't
+ * necessarily optimal. The best goal found so far is kept as an incumbent and nodes whose f isn't lower than its
+ * cost are pruned; when the search terminates each node was either expanded or pruned, so (given an admissible
+ * heuristic) the incumbent is optimal.
+ *
+ * A listener (see SearchListener) is told only about the start and the end of the search, since the nodes are
+ * expanded concurrently by the workers.
+ */
+public class HDAstar implements SearchAlgorithm {
+
+    private static final int QID = 0;
+
+    // The maximum number of nodes which are buffered for a single worker before they are sent
+    private static final int BATCH_SIZE = 64;
+    // The maximum number of expansions between two flushes of the buffers of a worker
+    private static final int FLUSH_INTERVAL = 256;
+
+    private static final Map<String, Class> HDAstarPossibleParameters;
+
+    private static final SearchBudget DEFAULT_BUDGET = SearchBudget.UNLIMITED.withMaxWallTimeMillis(120 * 1000);
+
+    // Declare the parameters that can be tuned before running the search
+    static
+    {
+        HDAstarPossibleParameters = new HashMap<>();
+        HDAstar.HDAstarPossibleParameters.put("threads", Integer.class);
+        HDAstar.HDAstarPossibleParameters.put("max-cost", Double.class);
+        HDAstar.HDAstarPossibleParameters.put("global-order", Boolean.class);
+    }
+
+    // The number of worker threads
+    private int threadsCount;
+    // Nodes whose f value isn't lower than this cost are pruned
+    private double maxCost;
+    // Whether a worker expands its best node only if no other worker has a better node
+    private boolean globalOrder;
+
+    // The domain for the search (used by the calling thread only)
+    private SearchDomain domain;
+    private Worker[] workers;
+
+    // The number of nodes which are in transit or in any of the open lists
+    private AtomicLong remainingNodes;
+    // Whether the workers should stop (on termination, exceeded budget or failure of a worker)
+    private volatile boolean stopped;
+    // The first failure of a worker (if any)
+    private volatile Throwable failure;
+
+    private SearchBudget budget;
+    // The monitor is shared by all the workers (each worker checks it under its lock on every flush)
+    private SearchBudget.Monitor budgetMonitor;
+    // The counters which were reported by all the workers so far
+    private AtomicLong reportedExpanded;
+    private AtomicLong reportedGenerated;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
+    // The best goal found so far and its cost (the cost is read by all the workers - for pruning)
+    private Node incumbent;
+    private volatile double incumbentCost;
+
+    /**
+     * A default constructor of the class (a worker for each available processor)
+     */
+    public HDAstar() {
+        this.threadsCount = Runtime.getRuntime().availableProcessors();
+        this.maxCost = Double.MAX_VALUE;
+        this.globalOrder = false;
+        this.budget = HDAstar.DEFAULT_BUDGET;
+    }
+
+    @Override
+    public String getName() {
+        return "hdastar";
+    }
+
+    /**
+     * Creates the instances of the domain for the workers
+     *
+     * @param domain The searched domain
+     *
+     * @return An array of instances: an instance for each worker
+     */
+    private SearchDomain[] _createWorkersDomains(SearchDomain domain) {
+        SearchDomain[] domains = new SearchDomain[this.threadsCount];
+        if (domain instanceof ReplicableSearchDomain) {
+            // The first worker can use the given instance (it isn't used by this thread during the search)
+            domains[0] = domain;
+            for (int i = 1; i < this.threadsCount; ++i) {
+                domains[i] = ((ReplicableSearchDomain)domain).replicate();
+            }
+        } else {
+            if (this.threadsCount > 1) {
+                System.out.println("[WARNING] The domain can't be replicated - the calls to the domain " +
+                        "will be serialized");
+            }
+            SearchDomain synchronizedDomain = new SynchronizedSearchDomain(domain);
+            for (int i = 0; i < this.threadsCount; ++i) {
+                domains[i] = synchronizedDomain;
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Returns the index of the worker which owns the given state
+     *
+     * NOTE: The high bits of the hash are used, since the closed list of the worker selects a bucket by the low bits
+     *       (otherwise all the states of a worker would be placed in a small part of its closed list)
+     *
+     * @param packed The packed state
+     *
+     * @return The index of the owner
+     */
+    private int _getOwner(PackedElement packed) {
+        return (int)(((packed.hashCode() & 0xffffffffL) * this.workers.length) >>> 32);
+    }
+
+    /**
+     * Updates the incumbent if the given goal is better
+     *
+     * @param goal The found goal
+     */
+    private synchronized void _updateIncumbent(Node goal) {
+        if (goal.g < this.incumbentCost) {
+            this.incumbent = goal;
+            this.incumbentCost = goal.g;
+        }
+    }
+
+    /**
+     * Compares two nodes by the order of the open lists: lower f first and then higher g
+     *
+     * @return Whether a node with f1 and g1 isn't worse than a node with f2 and g2
+     */
+    private static boolean _isNotWorse(double f1, double g1, double f2, double g2) {
+        return f1 < f2 || (f1 == f2 && g1 >= g2);
+    }
+
+    /**
+     * Runs the workers and waits for all of them to finish
+     */
+    private void _runWorkers() {
+        Thread[] threads = new Thread[this.workers.length];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(this.workers[i], "hdastar-worker-" + i);
+            threads[i].start();
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < threads.length; ++i) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                // Stop all the workers, but still wait for them to finish
+                this.stopped = true;
+                interrupted = true;
+                --i;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure != null) {
+            throw new IllegalStateException("A HDA* worker failed", this.failure);
+        }
+    }
+
+    @Override
+    public SearchResult search(SearchDomain domain) {
+        this.domain = domain;
+        SearchResultImpl result = new SearchResultImpl();
+        SearchDomain[] domains = this._createWorkersDomains(domain);
+        this.workers = new Worker[this.threadsCount];
+        for (int i = 0; i < this.threadsCount; ++i) {
+            this.workers[i] = new Worker(i, domains[i]);
+        }
+        this.remainingNodes = new AtomicLong();
+        this.stopped = false;
+        this.failure = null;
+        this.incumbent = null;
+        this.incumbentCost = this.maxCost;
+        this.reportedExpanded = new AtomicLong();
+        this.reportedGenerated = new AtomicLong();
+
+        result.startTimer();
+        // The workers check the budget only once in a flush, so the clock and the heap are read on every check
+        this.budgetMonitor = this.budget.withCheckInterval(1).start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+
+        // Let's instantiate the initial state and send it to its owner
+        State initialState = domain.initialState();
+        Node initNode = new Node(domain.pack(initialState), null, 0, initialState.getH(), null, null);
+        this.remainingNodes.incrementAndGet();
+        this.workers[this._getOwner(initNode.packed)].inbox.add(Collections.singletonList(initNode));
+        this._runWorkers();
+
+        result.stopTimer();
+
+        for (Worker worker : this.workers) {
+            result.expanded += worker.expanded;
+            result.generated += worker.generated;
+            result.duplicates += worker.duplicates;
+            result.opupdated += worker.opupdated;
+            result.reopened += worker.reopened;
+        }
+        // The replicas of the domain (but not the given domain) are no longer used
+        for (int i = 1; i < domains.length; ++i) {
+            if (domains[i] != domain && domains[i] instanceof ReleasableSearchDomain) {
+                ((ReleasableSearchDomain) domains[i]).releaseHeuristicTables();
+            }
+        }
+        result.setExceededLimit(this.budgetMonitor.getExceededLimit());
+
+        // If a goal was found: update the solution
+        if (this.incumbent != null) {
+            Node goal = this.incumbent;
+            SolutionImpl solution = new SolutionImpl(this.domain);
+            List<Operator> path = new ArrayList<>();
+            List<State> statesPath = new ArrayList<>();
+            double cost = 0;
+
+            State currentState = domain.unpack(goal.packed);
+            for (Node currentNode = goal; currentNode != null; currentNode = currentNode.parent) {
+                statesPath.add(currentState);
+                // If op of current node is not null that means that p has a parent
+                if (currentNode.op != null) {
+                    State parentState = domain.unpack(currentNode.parent.packed);
+                    path.add(currentNode.op);
+                    cost += currentNode.op.getCost(currentState, parentState);
+                    currentState = parentState;
+                }
+            }
+            // The actual size of the found path can be only lower the G value of the found goal
+            assert cost <= goal.g;
+            if (cost - goal.g < 0) {
+                System.out.println("[INFO] Goal G is higher that the actual cost " +
+                        "(G: " + goal.g + ", Actual: " + cost + ")");
+            }
+            // If the optimal cost is known - verify the found solution
+            double optimalCost = domain.getOptimalSolutionCost();
+            if (optimalCost > 0 && Math.abs(cost - optimalCost) > 1e-6 && !this.stopped) {
+                System.out.println("[WARNING] HDA* found a solution of cost " + cost + " but the optimal cost is " +
+                        optimalCost);
+            }
+
+            Collections.reverse(path);
+            solution.addOperators(path);
+
+            Collections.reverse(statesPath);
+            solution.addStates(statesPath);
+
+            solution.setCost(cost);
+            result.addSolution(solution);
+        }
+
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Map<String, Class> getPossibleParameters() {
+        return HDAstar.HDAstarPossibleParameters;
+    }
+
+    @Override
+    public void setAdditionalParameter(String parameterName, String value) {
+        switch (parameterName) {
+            case "threads": {
+                this.threadsCount = Integer.parseInt(value);
+                if (this.threadsCount <= 0) {
+                    System.out.println("[ERROR] The number of threads must be > 0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
+            case "max-cost": {
+                this.maxCost = Double.parseDouble(value);
+                if (this.maxCost <= 0) {
+                    System.out.println("[ERROR] The maximum possible cost must be >= 0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
+            case "global-order": {
+                this.globalOrder = Boolean.parseBoolean(value);
+                break;
+            }
+            default: {
+                throw new NotImplementedException();
+            }
+        }
+    }
+
+    /**
+     * A worker of the search: owns an open list and a partition of the closed list
+     *
+     * All the fields (and the nodes which are owned by the worker) are accessed only by the thread of the worker,
+     * except of the inbox
+     */
+    private final class Worker implements Runnable {
+        // The batches of nodes which were sent to this worker by the other workers
+        private final Queue<List<Node>> inbox;
+        // A bound of the nodes in the inbox (none of them is better): lowered by the senders and reset by the worker
+        // before it receives the nodes
+        private final AtomicReference<Bound> inboxBound;
+
+        private final int index;
+        private final SearchDomain domain;
+        private final BinHeap<Node> open;
+        private final ClosedList<Node> closed;
+
+        // The nodes which weren't sent yet to each of the other workers (indexed by the worker)
+        private final List<List<Node>> outboxes;
+        // The number of nodes which should be subtracted from the global counter on the next flush
+        private long deferredDecrements;
+        private int expandedSinceFlush;
+
+        private long expanded;
+        private long generated;
+        private long duplicates;
+        private long opupdated;
+        private long reopened;
+        // The counters which were already added to the global counters
+        private long reportedExpanded;
+        private long reportedGenerated;
+
+        // The f and g of the best node which is buffered in the outboxes (f is Double.MAX_VALUE after a flush)
+        private double outboxesBestF;
+        private double outboxesBestG;
+        // The f and g of the best node in the open list of this worker (f is Double.MAX_VALUE if the list is empty),
+        // read by all the workers
+        private volatile double bestF;
+        private volatile double bestG;
+
+        /**
+         * The constructor of the class
+         *
+         * @param index The index of the worker
+         * @param domain The instance of the domain which is used by this worker only
+         */
+        private Worker(int index, SearchDomain domain) {
+            this.inbox = new ConcurrentLinkedQueue<>();
+            this.inboxBound = new AtomicReference<>(Bound.NONE);
+            this.index = index;
+            this.domain = domain;
+            this.open = new BinHeap<>(new NodeComparator(), HDAstar.QID);
+            this.closed = new PackedClosedList<>();
+            this.outboxesBestF = Double.MAX_VALUE;
+            this.bestF = Double.MAX_VALUE;
+            this.outboxes = new ArrayList<>(HDAstar.this.threadsCount);
+            for (int i = 0; i < HDAstar.this.threadsCount; ++i) {
+                this.outboxes.add(new ArrayList<Node>(HDAstar.BATCH_SIZE));
+            }
+        }
+
+        /**
+         * Sends a node to the worker which owns its state
+         *
+         * @param node The node to send
+         */
+        private void send(Node node) {
+            int owner = HDAstar.this._getOwner(node.packed);
+            if (owner == this.index) {
+                // Count the node - by canceling a deferred decrement if possible
+                if (this.deferredDecrements > 0) {
+                    --this.deferredDecrements;
+                } else {
+                    HDAstar.this.remainingNodes.incrementAndGet();
+                }
+                this.receive(node);
+            } else {
+                List<Node> outbox = this.outboxes.get(owner);
+                outbox.add(node);
+                if (HDAstar.this.globalOrder &&
+                        !HDAstar._isNotWorse(this.outboxesBestF, this.outboxesBestG, node.getF(), node.g)) {
+                    this.outboxesBestF = node.getF();
+                    this.outboxesBestG = node.g;
+                }
+                if (outbox.size() >= HDAstar.BATCH_SIZE) {
+                    this._flushOutbox(owner);
+                }
+            }
+        }
+
+        /**
+         * Sends the buffered nodes of the given worker (the nodes are counted before they are sent)
+         *
+         * @param owner The index of the worker to send the nodes to
+         */
+        private void _flushOutbox(int owner) {
+            List<Node> outbox = this.outboxes.get(owner);
+            HDAstar.this.remainingNodes.addAndGet(outbox.size());
+            Worker receiver = HDAstar.this.workers[owner];
+            receiver.inbox.add(outbox);
+            // Lower the bound of the inbox only after the nodes were added (so the bound never misses them)
+            if (HDAstar.this.globalOrder) {
+                this._lowerInboxBound(receiver, outbox);
+            }
+            this.outboxes.set(owner, new ArrayList<Node>(HDAstar.BATCH_SIZE));
+        }
+
+        /**
+         * Lowers the bound of the inbox of a worker to the best node of a batch which was sent to it
+         *
+         * @param receiver The worker which received the batch
+         * @param batch The sent nodes
+         */
+        private void _lowerInboxBound(Worker receiver, List<Node> batch) {
+            Node best = batch.get(0);
+            for (Node node : batch) {
+                if (!HDAstar._isNotWorse(best.getF(), best.g, node.getF(), node.g)) {
+                    best = node;
+                }
+            }
+            Bound bound = null;
+            Bound current;
+            while (!HDAstar._isNotWorse((current = receiver.inboxBound.get()).f, current.g, best.getF(), best.g)) {
+                if (bound == null) {
+                    bound = new Bound(best.getF(), best.g);
+                }
+                if (receiver.inboxBound.compareAndSet(current, bound)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Sends all the buffered nodes and only then subtracts the deferred decrements from the global counter
+         */
+        private void flush() {
+            for (int i = 0; i < this.outboxes.size(); ++i) {
+                if (!this.outboxes.get(i).isEmpty()) {
+                    this._flushOutbox(i);
+                }
+            }
+            if (this.deferredDecrements > 0) {
+                HDAstar.this.remainingNodes.addAndGet(-this.deferredDecrements);
+                this.deferredDecrements = 0;
+            }
+            this.outboxesBestF = Double.MAX_VALUE;
+            this.expandedSinceFlush = 0;
+        }
+
+        /**
+         * Treats a node which was sent to this worker (the worker owns the state of the node)
+         *
+         * @param node The received node
+         */
+        private void receive(Node node) {
+            // Prune (the node is discounted, since it won't be added to the open list)
+            if (node.getF() >= HDAstar.this.incumbentCost) {
+                ++this.deferredDecrements;
+                return;
+            }
+            Node dup = this.closed.get(node.packed);
+            // The node is new (hasn't been reached yet)
+            if (dup == null) {
+                this.closed.put(node.packed, node);
+                this.open.add(node);
+                return;
+            }
+            ++this.duplicates;
+            // A shorter path to the node wasn't found
+            if (dup.g <= node.g) {
+                ++this.deferredDecrements;
+                return;
+            }
+            // Update the duplicate with the new values - we reached it via a shorter path
+            dup.g = node.g;
+            dup.op = node.op;
+            dup.pop = node.pop;
+            dup.parent = node.parent;
+            // In case the duplicate is also in the open list - let's just update it there (since we updated g)
+            if (dup.getIndex(HDAstar.QID) != -1) {
+                ++this.opupdated;
+                this.open.update(dup);
+                ++this.deferredDecrements;
+                // Otherwise, reopen the node (the nodes aren't expanded exactly in the order of f, so reopening is
+                // required)
+            } else {
+                ++this.reopened;
+                this.open.add(dup);
+            }
+        }
+
+        /**
+         * Expands a node (or prunes it)
+         *
+         * @param currentNode The node to expand
+         */
+        private void expand(Node currentNode) {
+            // Prune
+            if (currentNode.getF() >= HDAstar.this.incumbentCost) {
+                return;
+            }
+            // The node was already expanded with the same g (the children would be the same)
+            if (currentNode.g >= currentNode.expandedG) {
+                return;
+            }
+            currentNode.expandedG = currentNode.g;
+            // Extract the state from the packed value of the node
+            State currentState = this.domain.unpack(currentNode.packed);
+            // Check for goal condition (the goal isn't expanded)
+            if (this.domain.isGoal(currentState)) {
+                HDAstar.this._updateIncumbent(currentNode);
+                return;
+            }
+            ++this.expanded;
+            int numOperators = this.domain.getNumOperators(currentState);
+            for (int i = 0; i < numOperators; ++i) {
+                Operator op = this.domain.getOperator(currentState, i);
+                // Try to avoid loops
+                if (op.equals(currentNode.pop)) {
+                    continue;
+                }
+                State childState = this.domain.applyOperator(currentState, op);
+                // Here we actually generated a new state
+                ++this.generated;
+                double childG = currentNode.g + op.getCost(childState, currentState);
+                double childH = childState.getH();
+                // Prune
+                if (childG + childH >= HDAstar.this.incumbentCost) {
+                    continue;
+                }
+                this.send(new Node(this.domain.pack(childState), currentNode, childG, childH, op,
+                        op.reverse(currentState)));
+            }
+        }
+
+        /**
+         * Reports the counters of the worker and checks whether the whole search exceeded its budget
+         *
+         * @return Whether the search should stop
+         */
+        private boolean isBudgetExceeded() {
+            long expanded = HDAstar.this.reportedExpanded.addAndGet(this.expanded - this.reportedExpanded);
+            long generated = HDAstar.this.reportedGenerated.addAndGet(this.generated - this.reportedGenerated);
+            this.reportedExpanded = this.expanded;
+            this.reportedGenerated = this.generated;
+            synchronized (HDAstar.this.budgetMonitor) {
+                return HDAstar.this.budgetMonitor.isExceeded(expanded, generated);
+            }
+        }
+
+        /**
+         * Publishes the best node of the open list of this worker
+         *
+         * NOTE: The buffered nodes which are better than the published one must be sent first (otherwise, the other
+         *       workers may wait for nodes which aren't in any open list)
+         *
+         * @param best The best node in the open list (or null if the list is empty)
+         */
+        private void publishBest(Node best) {
+            if (this.outboxesBestF != Double.MAX_VALUE && (best == null ||
+                    !HDAstar._isNotWorse(best.getF(), best.g, this.outboxesBestF, this.outboxesBestG))) {
+                this.flush();
+            }
+            if (best == null) {
+                this.bestF = Double.MAX_VALUE;
+            } else {
+                this.bestG = best.g;
+                this.bestF = best.getF();
+            }
+        }
+
+        /**
+         * @param node A node of this worker
+         *
+         * @return Whether the node isn't worse than the best nodes of all the other workers (as published by them) and
+         *         than the nodes which weren't received yet
+         */
+        private boolean isGloballyBest(Node node) {
+            double f = node.getF();
+            for (Worker worker : HDAstar.this.workers) {
+                Bound inboxBound = worker.inboxBound.get();
+                if (!HDAstar._isNotWorse(f, node.g, inboxBound.f, inboxBound.g)) {
+                    return false;
+                }
+                if (worker != this && !HDAstar._isNotWorse(f, node.g, worker.bestF, worker.bestG)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!HDAstar.this.stopped) {
+                    // First, receive all the nodes which were sent to this worker
+                    if (HDAstar.this.globalOrder) {
+                        this.inboxBound.set(Bound.NONE);
+                    }
+                    List<Node> received;
+                    while ((received = this.inbox.poll()) != null) {
+                        for (Node node : received) {
+                            this.receive(node);
+                        }
+                    }
+                    Node currentNode = this.open.peek();
+                    if (HDAstar.this.globalOrder) {
+                        this.publishBest(currentNode);
+                    }
+                    if (currentNode == null) {
+                        this.flush();
+                        // No work remains in the whole system
+                        if (HDAstar.this.remainingNodes.get() == 0) {
+                            break;
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    // Wait while other workers have better nodes (the sent nodes can be required by them)
+                    if (HDAstar.this.globalOrder && currentNode.getF() < HDAstar.this.incumbentCost &&
+                            !this.isGloballyBest(currentNode)) {
+                        this.flush();
+                        Thread.yield();
+                        continue;
+                    }
+                    this.open.poll();
+                    this.expand(currentNode);
+                    ++this.deferredDecrements;
+
+                    // Don't delay the nodes of the other workers for too long
+                    if (++this.expandedSinceFlush >= HDAstar.FLUSH_INTERVAL) {
+                        this.flush();
+                        if (this.isBudgetExceeded()) {
+                            HDAstar.this.stopped = true;
+                        }
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                HDAstar.this.failure = e;
+                HDAstar.this.stopped = true;
+            }
+        }
+    }
+
+    /**
+     * The node class
+     *
+     * NOTE: The fields of a node are modified only by the worker which owns it (or before the node is sent)
+     */
+    private final class Node extends SearchQueueElementImpl {
+        private double g;
+        private final double h;
+
+        private Operator op;
+        private Operator pop;
+
+        private Node parent;
+        private final PackedElement packed;
+
+        // The g value of the node when it was last expanded (Double.MAX_VALUE if it wasn't expanded yet)
+        private double expandedG;
+
+        /**
+         * The constructor of the class
+         *
+         * @param packed The packed state which this node represents
+         * @param parent The parent node
+         * @param g The g value of the node
+         * @param h The h value of the node
+         * @param op The operator which generated the node
+         * @param pop The reverse operator of op
+         */
+        private Node(PackedElement packed, Node parent, double g, double h, Operator op, Operator pop) {
+            // Size of key
+            super(1);
+            this.packed = packed;
+            this.parent = parent;
+            this.g = g;
+            this.h = h;
+            this.op = op;
+            this.pop = pop;
+            this.expandedG = Double.MAX_VALUE;
+        }
+
+        @Override
+        public double getF() {
+            return this.g + this.h;
+        }
+    }
+
+    /**
+     * The f and g values of a node which bound a set of nodes (an immutable value - replaced atomically)
+     */
+    private static final class Bound {
+        // The bound of an empty set
+        private static final Bound NONE = new Bound(Double.MAX_VALUE, 0);
+
+        private final double f;
+        private final double g;
+
+        private Bound(double f, double g) {
+            this.f = f;
+            this.g = g;
+        }
+    }
+
+    /**
+     * The nodes comparator class
+     */
+    private final class NodeComparator implements Comparator<Node> {
+
+        @Override
+        public int compare(final Node a, final Node b) {
+            // First compare by f (smaller is preferred), then by g (bigger is preferred)
+            if (a.getF() < b.getF()) return -1;
+            if (a.getF() > b.getF()) return 1;
+            if (a.g > b.g) return -1;
+            if (a.g < b.g) return 1;
+            return 0;
+        }
+    }
+}
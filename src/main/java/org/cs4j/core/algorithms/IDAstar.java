@@ -16,22 +16,64 @@
  */
 package org.cs4j.core.algorithms;
 
+import org.cs4j.core.InPlaceSearchDomain;
+import org.cs4j.core.MovePruningSearchDomain;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
+import org.cs4j.core.UndoableSearchDomain;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
+import org.cs4j.core.collections.TranspositionTable;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Iterative Deepening A* Search
  *
+ * The memory of the search is linear in the depth of the solution: if the domain is an UndoableSearchDomain, the
+ * whole path is kept in a single state (each child is generated by applying the operator to it and the parent is
+ * restored by undoing the operator), otherwise if the domain is an InPlaceSearchDomain, the children are generated
+ * into a reusable state for each depth (so an iteration allocates no states). If the domain is a
+ * MovePruningSearchDomain, redundant sequences of operators are pruned by a table lookup.
+ *
+ * Optionally, a bounded transposition table prunes states which were already reached in the current iteration with
+ * a lower or equal cost. The table pays off only if pruning the transpositions saves more than the lookups cost:
+ * each lookup packs, hashes and probes the state at a random location of the table, which takes about 30ns while
+ * the table fits in the caches and about 100ns when it doesn't. This is more than generating a 15-puzzle state with
+ * the Manhattan distance (so there, a table of 1M entries is about 2 times slower even though it halves the number
+ * of expanded nodes, and a small table is still slower), but less than an expansion with an expensive heuristic
+ * (e.g. PDBs which don't fit in the caches) or in a domain with many short cycles.
+ *
  * @author Matthew Hatem
  */
 public class IDAstar implements SearchAlgorithm {
+
+    private static final Map<String, Class> IDAstarPossibleParameters;
+
+    // The results of checking a state (see _visit)
+    private static final int PRUNED = 0;
+    private static final int GOAL = 1;
+    private static final int EXPAND = 2;
+    // The type of a redundant operator (see _getOperatorType)
+    private static final int PRUNED_TYPE = -2;
+
+    // Declare the parameters that can be tuned before running the search
+    static
+    {
+        IDAstarPossibleParameters = new HashMap<>();
+        IDAstar.IDAstarPossibleParameters.put("weight", Double.class);
+        IDAstar.IDAstarPossibleParameters.put("in-place-expansion", Boolean.class);
+        IDAstar.IDAstarPossibleParameters.put("move-pruning", Boolean.class);
+        IDAstar.IDAstarPossibleParameters.put("transposition-table-size", Integer.class);
+    }
+
     // The domain for the search
     private SearchDomain domain;
 
@@ -42,6 +84,34 @@ public class IDAstar implements SearchAlgorithm {
     private double bound;
     private double minNextF;
 
+    // Whether to generate the children into reusable states (relevant only if the domain is an InPlaceSearchDomain)
+    private boolean inPlaceExpansion;
+    // Whether to prune by the table of the domain (relevant only if the domain is a MovePruningSearchDomain)
+    private boolean movePruning;
+    // The maximum number of entries in the transposition table (0 means no table is used)
+    private int transpositionTableSize;
+
+    // The domain as an UndoableSearchDomain (null if the path isn't kept in a single state)
+    private UndoableSearchDomain undoableDomain;
+    // The domain as an InPlaceSearchDomain (null if the children aren't generated into reusable states)
+    private InPlaceSearchDomain inPlaceDomain;
+    // The state of each depth of the current path (used only in case of in place expansion, grows on demand)
+    private State[] pathStates;
+    // The domain as a MovePruningSearchDomain and its table (both null if move pruning isn't used)
+    private MovePruningSearchDomain movePruningDomain;
+    private boolean[][] movePruningTable;
+    // The transposition table of the current search (null if it isn't used) and a buffer for packing the states
+    private TranspositionTable transpositions;
+    private long[] packed;
+
+    private SearchBudget budget;
+    private SearchBudget.Monitor budgetMonitor;
+    // Whether the budget has to be checked (false if it has no limits)
+    private boolean checkBudget;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     /**
      * The default constructor of the class
      */
@@ -52,6 +122,10 @@ public class IDAstar implements SearchAlgorithm {
     protected IDAstar(double weight) {
         this.solution = new SolutionImpl();
         this.weight = weight;
+        this.inPlaceExpansion = true;
+        this.movePruning = true;
+        this.transpositionTableSize = 0;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     @Override
@@ -59,77 +133,279 @@ public class IDAstar implements SearchAlgorithm {
         return "idastar";
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
-        return null;
+        return IDAstar.IDAstarPossibleParameters;
     }
 
     @Override
     public void setAdditionalParameter(String parameterName, String value) {
-        throw new NotImplementedException();
+        switch (parameterName) {
+            case "weight": {
+                this.weight = Double.parseDouble(value);
+                if (this.weight < 1.0d) {
+                    System.out.println("[ERROR] The weight must be >= 1.0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
+            case "in-place-expansion": {
+                this.inPlaceExpansion = Boolean.parseBoolean(value);
+                break;
+            }
+            case "move-pruning": {
+                this.movePruning = Boolean.parseBoolean(value);
+                break;
+            }
+            case "transposition-table-size": {
+                this.transpositionTableSize = Integer.parseInt(value);
+                if (this.transpositionTableSize < 0) {
+                    System.out.println("[ERROR] The transposition table size must be >= 0 (0 disables the table)");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
+            default: {
+                throw new NotImplementedException();
+            }
+        }
+    }
+
+    /**
+     * Initializes the (per search) data structures according to the domain and the parameters
+     *
+     * @param domain The searched domain
+     */
+    private void _initDataStructures(SearchDomain domain) {
+        this.domain = domain;
+        this.solution = new SolutionImpl();
+        this.undoableDomain = null;
+        this.inPlaceDomain = null;
+        this.pathStates = null;
+        if (this.inPlaceExpansion && domain instanceof UndoableSearchDomain) {
+            this.undoableDomain = (UndoableSearchDomain) domain;
+        } else if (this.inPlaceExpansion && domain instanceof InPlaceSearchDomain) {
+            this.inPlaceDomain = (InPlaceSearchDomain) domain;
+            this.pathStates = new State[0];
+        }
+        if (this.movePruning && domain instanceof MovePruningSearchDomain) {
+            this.movePruningDomain = (MovePruningSearchDomain) domain;
+            this.movePruningTable = this.movePruningDomain.getMovePruningTable();
+        } else {
+            this.movePruningDomain = null;
+            this.movePruningTable = null;
+        }
+        this.transpositions = null;
+        this.packed = null;
+        if (this.transpositionTableSize > 0) {
+            if (domain instanceof InPlaceSearchDomain) {
+                InPlaceSearchDomain packingDomain = (InPlaceSearchDomain) domain;
+                this.transpositions = new TranspositionTable(
+                        this.transpositionTableSize, packingDomain.getPackedLongsCount());
+                this.packed = new long[packingDomain.getPackedLongsCount()];
+            } else {
+                // The table keeps the packed words of the states, so the length of the words must be fixed
+                System.out.println("[WARNING] The domain can't be packed into a buffer, " +
+                        "no transposition table is used");
+            }
+        }
+    }
+
+    /**
+     * Returns the reusable state of the given depth of the path (the states are created on demand)
+     *
+     * @param depth The depth
+     *
+     * @return The state of the depth
+     */
+    private State _getPathState(int depth) {
+        if (depth >= this.pathStates.length) {
+            int previousLength = this.pathStates.length;
+            this.pathStates = Arrays.copyOf(this.pathStates, Math.max(depth + 1, previousLength * 2));
+            for (int i = previousLength; i < this.pathStates.length; ++i) {
+                this.pathStates[i] = this.inPlaceDomain.createScratchState();
+            }
+        }
+        return this.pathStates[depth];
     }
 
     @Override
     public SearchResult search(SearchDomain domain) {
         this.result = new SearchResultImpl();
+        this._initDataStructures(domain);
         State root = domain.initialState();
         this.result.startTimer();
+        this.budgetMonitor = this.budget.start();
+        this.checkBudget = !this.budget.isUnlimited();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        if (this.undoableDomain != null) {
+            // The path is kept in a copy of the root (the initial state of the domain isn't changed)
+            root = domain.copy(root);
+        } else if (this.inPlaceDomain != null) {
+            // The root is copied into the state of depth 0 (the initial state of the domain isn't changed)
+            long[] packedRoot = new long[this.inPlaceDomain.getPackedLongsCount()];
+            this.inPlaceDomain.pack(root, packedRoot);
+            root = this._getPathState(0);
+            this.inPlaceDomain.unpack(packedRoot, root);
+        }
         this.bound = this.weight * root.getH();
         int i = 0;
+        boolean goalWasFound;
         do {
             this.minNextF = -1;
-            boolean goalWasFound = this.dfs(domain, root, 0, null);
-            System.out.println("min next f: " + minNextF ) ;
-            System.out.println("next");
-            this.result.addIteration(i, this.bound, this.result.expanded, this.result.generated);
+            if (this.transpositions != null) {
+                this.transpositions.startIteration();
+            }
+            if (this.undoableDomain != null) {
+                goalWasFound = this._dfsUndoable(root, 0, null, -1);
+            } else {
+                goalWasFound = this._dfs(root, 0, 0, null, -1);
+            }
+            this.result.addIteration(i++, this.bound, this.result.expanded, this.result.generated);
             this.bound = this.minNextF;
-            if (goalWasFound) {
+            // No f value exceeded the bound - the whole (finite) tree was searched
+            if (goalWasFound || this.minNextF < 0 || this.budgetMonitor.wasExceeded()) {
                 break;
             }
         } while (true);
         this.result.stopTimer();
-        this.result.addSolution(this.solution);
+        // The search may be stopped by the budget before a goal was found
+        if (goalWasFound) {
+            this.result.addSolution(this.solution);
+        }
+        if (this.listener != null) {
+            this.listener.searchFinished(this.result);
+        }
         return this.result;
     }
 
     /**
-     * A single iteration of the IDA*
+     * Checks whether a state should be expanded: records the lowest f value which exceeds the bound, looks up the
+     * transposition table and checks the budget
      *
-     * @param domain The domain on which the search is performed
-     * @param parent The parent state
-     * @param cost The cost to reach the parent state
-     * @param pop The reverse operator?
+     * @param state The state
+     * @param cost The cost to reach the state
+     * @param pop The reverse of the operator which generated the state (null for the root)
      *
-     * @return Whether a solution was found
+     * @return GOAL if the state is a goal (within the bound), EXPAND if it should be expanded and PRUNED otherwise
      */
-    private boolean dfs(SearchDomain domain, State parent, double cost, Operator pop) {
-        double f = cost + this.weight * parent.getH();
-    
-        if (f <= this.bound && domain.isGoal(parent)) {
+    private int _visit(State state, double cost, Operator pop) {
+        double f = cost + this.weight * state.getH();
+
+        if (f <= this.bound && this.domain.isGoal(state)) {
             this.solution.setCost(f);
             this.solution.addOperator(pop);
-            return true;
+            return IDAstar.GOAL;
         }
 
         if (f > this.bound) {
             // Let's record the lowest value of f that is greater than the bound
             if (this.minNextF < 0 || f < this.minNextF)
                 this.minNextF = f;
-            return false;
+            return IDAstar.PRUNED;
+        }
+
+        // The state was already searched in this iteration with a lower (or the same) cost
+        if (this.transpositions != null) {
+            ((InPlaceSearchDomain) this.domain).pack(state, this.packed);
+            if (!this.transpositions.visit(this.packed, cost)) {
+                ++this.result.duplicates;
+                if (this.listener != null) {
+                    this.listener.duplicateFound();
+                }
+                return IDAstar.PRUNED;
+            }
+        }
+
+        // The budget stops the whole search (all the remaining calls return immediately)
+        if (this.checkBudget && this.result.isBudgetExceeded(this.budgetMonitor)) {
+            return IDAstar.PRUNED;
         }
 
         // Expand the current node
-        ++result.expanded;
-        int numOps = domain.getNumOperators(parent);
-        for (int i = 0; i < numOps; ++i) {
-    	    Operator op = domain.getOperator(parent, i);
+        ++this.result.expanded;
+        if (this.listener != null) {
+            // There is no open list (the current path is on the stack)
+            this.listener.nodeExpanded(cost, state.getH(), 0);
+        }
+        return IDAstar.EXPAND;
+    }
+
+    /**
+     * @param state The state whose operators are generated
+     * @param i The index of the operator
+     * @param op The operator
+     * @param pop The reverse of the operator which generated the state (null for the root)
+     * @param previousType The type of the operator which generated the state (-1 for the root or if move pruning
+     *                     isn't used)
+     *
+     * @return The type of the operator (-1 if move pruning isn't used) or PRUNED_TYPE if the operator is redundant
+     */
+    private int _getOperatorType(State state, int i, Operator op, Operator pop, int previousType) {
+        if (this.movePruningTable != null) {
+            int type = this.movePruningDomain.getOperatorType(state, i);
+            // Bypass redundant sequences of operators
+            if (previousType >= 0 && this.movePruningTable[previousType][type]) {
+                return IDAstar.PRUNED_TYPE;
+            }
+            return type;
+        } else if (op.equals(pop)) {
             // Bypass reverse operators
-            if (op.equals(pop)) {
+            return IDAstar.PRUNED_TYPE;
+        }
+        return -1;
+    }
+
+    /**
+     * A single iteration of the IDA* (the children are generated into new states or into the reusable states of
+     * their depths)
+     *
+     * @param parent The parent state
+     * @param depth The depth of the parent state (the index of its reusable state in case of in place expansion)
+     * @param cost The cost to reach the parent state
+     * @param pop The reverse of the operator which generated the parent state (null for the root)
+     * @param previousType The type of the operator which generated the parent state (-1 for the root or if move
+     *                     pruning isn't used)
+     *
+     * @return Whether a solution was found
+     */
+    private boolean _dfs(State parent, int depth, double cost, Operator pop, int previousType) {
+        int visit = this._visit(parent, cost, pop);
+        if (visit != IDAstar.EXPAND) {
+            return visit == IDAstar.GOAL;
+        }
+        int numOps = this.domain.getNumOperators(parent);
+        for (int i = 0; i < numOps; ++i) {
+            Operator op = this.domain.getOperator(parent, i);
+            int type = this._getOperatorType(parent, i, op, pop, previousType);
+            if (type == IDAstar.PRUNED_TYPE) {
                 continue;
             }
             ++result.generated;
-            State child = domain.applyOperator(parent, op);
-            boolean goal = this.dfs(domain, child, op.getCost(child, parent) + cost, op.reverse(parent));
+            State child;
+            if (this.inPlaceDomain != null) {
+                child = this._getPathState(depth + 1);
+                this.inPlaceDomain.applyOperator(parent, op, child);
+            } else {
+                child = this.domain.applyOperator(parent, op);
+            }
+            if (this.listener != null) {
+                this.listener.nodeGenerated(cost + op.getCost(child, parent), child.getH());
+            }
+            // The cost and the reverse operator are computed before the child state is overwritten by its siblings
+            boolean goal = this._dfs(child, depth + 1, op.getCost(child, parent) + cost, op.reverse(parent), type);
             if (goal) {
                 this.solution.addOperator(op);
                 return true;
@@ -139,4 +415,46 @@ public class IDAstar implements SearchAlgorithm {
         // No solution was found
         return false;
     }
+
+    /**
+     * A single iteration of the IDA* which keeps the whole path in a single state (each child is generated by
+     * applying its operator to the state, and the operator is undone after the child was searched)
+     *
+     * @param state The state (of the parent)
+     * @param cost The cost to reach the state
+     * @param pop The reverse of the operator which generated the state (null for the root)
+     * @param previousType The type of the operator which generated the state (-1 for the root or if move pruning
+     *                     isn't used)
+     *
+     * @return Whether a solution was found (the state is then left at the goal)
+     */
+    private boolean _dfsUndoable(State state, double cost, Operator pop, int previousType) {
+        int visit = this._visit(state, cost, pop);
+        if (visit != IDAstar.EXPAND) {
+            return visit == IDAstar.GOAL;
+        }
+        int numOps = this.domain.getNumOperators(state);
+        for (int i = 0; i < numOps; ++i) {
+            Operator op = this.domain.getOperator(state, i);
+            int type = this._getOperatorType(state, i, op, pop, previousType);
+            if (type == IDAstar.PRUNED_TYPE) {
+                continue;
+            }
+            ++result.generated;
+            // The reverse operator is computed before the state is changed
+            Operator reverse = op.reverse(state);
+            double childCost = cost + this.undoableDomain.applyInPlace(state, op);
+            if (this.listener != null) {
+                this.listener.nodeGenerated(childCost, state.getH());
+            }
+            if (this._dfsUndoable(state, childCost, reverse, type)) {
+                this.solution.addOperator(op);
+                return true;
+            }
+            this.undoableDomain.undo(state);
+        }
+
+        // No solution was found
+        return false;
+    }
 }
@@ -1,13 +1,17 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
 import org.cs4j.core.collections.BinHeap;
 import org.cs4j.core.collections.BucketHeap;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import org.cs4j.core.collections.SearchQueue;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -53,7 +57,7 @@ public class PHS implements SearchAlgorithm {
     // Open list (frontier)
     private SearchQueue<Node> open;
     // Closed list (seen states)
-    private Map<PackedElement, Node> closed;
+    private ClosedList<Node> closed;
 
     protected double maxCost;
     // Whether to perform reopening of states
@@ -61,6 +65,13 @@ public class PHS implements SearchAlgorithm {
     // Whether to re-run the algorithm with AR if solution not found and currently NR
     private boolean rerun;
 
+    private SearchBudget budget;
+    // Tracks the budget of the current search (shared by all the phases of the search)
+    private SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     /**
      * The default Constructor for PHS (AR and maximum cost of DOUBLE.MAX_VALUE)
      */
@@ -71,6 +82,7 @@ public class PHS implements SearchAlgorithm {
         this.reopen = true;
         // Initially, no rerun is allowed if NR failed
         this.reopen = false;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     @Override
@@ -103,7 +115,17 @@ public class PHS implements SearchAlgorithm {
     private void _initDataStructures() {
         // (Initial size is 100)
         this.open = buildHeap(heapType, 100);
-        this.closed = new HashMap<>();
+        this.closed = new PackedClosedList<>();
+    }
+
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
     }
 
     @Override
@@ -157,6 +179,9 @@ public class PHS implements SearchAlgorithm {
 
         // Loop over the frontier
         while ((goal == null) && !this.open.isEmpty()) {
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
             // Take the first state (still don't remove it)
             Node currentNode = this.open.poll();
             // Extract the state from the packed value of the node
@@ -164,6 +189,9 @@ public class PHS implements SearchAlgorithm {
 
             // Expand the current node
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Go over all the possible operators and apply them
             for (int i = 0; i < domain.getNumOperators(currentState); ++i) {
                 Operator op = domain.getOperator(currentState, i);
@@ -174,6 +202,10 @@ public class PHS implements SearchAlgorithm {
                 // Here we actually generate a new state
                 ++result.generated;
                 State childState = domain.applyOperator(currentState, op);
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentNode.g + op.getCost(childState, currentState),
+                            childState.getH());
+                }
                 Node childNode = new Node(childState, currentNode, currentState, op, op.reverse(currentState));
 
                 // Ignore the node if its f value is too big
@@ -191,6 +223,9 @@ public class PHS implements SearchAlgorithm {
                 if (this.closed.containsKey(childNode.packed)) {
                     // Count the duplicates
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Get the previous copy of this node (and extract it)
                     Node dupChildNode = this.closed.get(childNode.packed);
                     // All this is relevant only if we reached the node via a cheaper path
@@ -216,6 +251,9 @@ public class PHS implements SearchAlgorithm {
                                 // Return to OPEN list only if reopening is allowed
                                 if (this.reopen) {
                                     ++result.reopened;
+                                    if (this.listener != null) {
+                                        this.listener.nodeReopened();
+                                    }
                                     this.open.add(dupChildNode);
                                 }
                             }
@@ -276,8 +314,28 @@ public class PHS implements SearchAlgorithm {
     }
 
     public SearchResult search(SearchDomain domain) {
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        SearchResult result = this._searchAllPhases(domain);
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs all the phases of the search
+     *
+     * @param domain The domain to search
+     *
+     * @return The result of the search
+     */
+    private SearchResult _searchAllPhases(SearchDomain domain) {
+        this.budgetMonitor = this.budget.start();
         SearchResult toReturn = this._search(domain);
-        if (!toReturn.hasSolution() && (!this.reopen && this.rerun)) {
+        this.budgetMonitor.completePhase(toReturn);
+        if (!toReturn.hasSolution() && (!this.reopen && this.rerun) && !this.budgetMonitor.wasExceeded()) {
             System.out.println("[INFO] PHS Failed with NR, tries again with AR");
             this.reopen = true;
             SearchResult toReturnAR = this._search(domain);
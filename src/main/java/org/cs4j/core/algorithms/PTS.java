@@ -1,12 +1,17 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.collections.BinHeap;
 import org.cs4j.core.collections.BucketHeap;
+import org.cs4j.core.collections.BucketQueue;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import org.cs4j.core.collections.SearchQueue;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -30,7 +35,7 @@ public class PTS implements SearchAlgorithm {
 
     // OPEN and CLOSED lists
     private SearchQueue<Node> open;
-    private Map<PackedElement, Node> closed;
+    private ClosedList<Node> closed;
 
     // Inconsistent list
     protected Map<PackedElement, Node> incons;
@@ -40,6 +45,13 @@ public class PTS implements SearchAlgorithm {
     // Whether reopening is allowed
     private boolean reopen;
 
+    private SearchBudget budget;
+    // Tracks the budget of the current search (shared by all the phases of the search)
+    private SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     // Defines the available types of reruning the search if searching with NR failed
     private enum RERUN_TYPES {
         // Stop the search (no rerun is available)
@@ -55,6 +67,13 @@ public class PTS implements SearchAlgorithm {
     // The type of re-runing to apply if the search failed to run with NR (no solution of the required cost was found)
     private RERUN_TYPES rerun;
 
+    public enum HeapType {BIN, BUCKET}
+
+    // The type of the open list (a bucket queue can be used only if a max cost is set)
+    private HeapType heapType;
+    // The width of a bucket (in units of the inverse potential h / (C - g)) if a bucket queue is used
+    private double bucketResolution;
+
     private static final Map<String, Class> PTSPossibleParameters;
 
     // Declare the parameters that can be tunes before running the search
@@ -65,6 +84,8 @@ public class PTS implements SearchAlgorithm {
         PTS.PTSPossibleParameters.put("max-cost", Double.class);
         PTS.PTSPossibleParameters.put("reopen", Boolean.class);
         PTS.PTSPossibleParameters.put("nrr-type", String.class);
+        PTS.PTSPossibleParameters.put("heap-type", String.class);
+        PTS.PTSPossibleParameters.put("bucket-resolution", Double.class);
     }
 
     public PTS() {
@@ -72,6 +93,9 @@ public class PTS implements SearchAlgorithm {
         this.maxCost = Double.MAX_VALUE;
         this.reopen = true;
         this.rerun = RERUN_TYPES.NO_RERUN;
+        this.heapType = HeapType.BIN;
+        this.bucketResolution = 0.001;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     @Override
@@ -88,13 +112,24 @@ public class PTS implements SearchAlgorithm {
      */
     private void _initDataStructures(boolean clearOpen, boolean clearIncons, boolean clearClosed) {
         if (clearOpen || this.open == null) {
-            this.open = new BinHeap<>(new PTS.NodeComparator(), 0);
+            if (this.heapType == HeapType.BUCKET) {
+                // Without a max cost all the ranks h / (C - g) are ~0, so all the nodes would be placed in a single
+                // (mixed) bucket
+                if (this.maxCost == Double.MAX_VALUE) {
+                    System.out.println("[ERROR] A bucket heap requires a max-cost");
+                    throw new IllegalArgumentException();
+                }
+                // The bins are by g (a single unit of cost each)
+                this.open = new BucketQueue<>(new PTS.NodeComparator(), this.bucketResolution, 1.0, 0);
+            } else {
+                this.open = new BinHeap<>(new PTS.NodeComparator(), 0);
+            }
         }
         if (clearIncons || this.incons == null) {
             this.incons = new HashMap<>();
         }
         if (clearClosed || this.closed == null) {
-            this.closed = new HashMap<>();
+            this.closed = new PackedClosedList<>();
         }
     }
 
@@ -105,6 +140,16 @@ public class PTS implements SearchAlgorithm {
         this._initDataStructures(true, true, true);
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
         return PTS.PTSPossibleParameters;
@@ -144,6 +189,31 @@ public class PTS implements SearchAlgorithm {
                 }
                 break;
             }
+            case "heap-type": {
+                switch (value) {
+                    case "bin": {
+                        this.heapType = HeapType.BIN;
+                        break;
+                    }
+                    case "bucket": {
+                        this.heapType = HeapType.BUCKET;
+                        break;
+                    }
+                    default: {
+                        System.out.println("[ERROR] The heap type can be 'bin' or 'bucket' (got " + value + ")");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                break;
+            }
+            case "bucket-resolution": {
+                this.bucketResolution = Double.parseDouble(value);
+                if (!(this.bucketResolution > 0)) {
+                    System.out.println("[ERROR] The bucket resolution must be > 0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
             default: {
                 System.err.println("No such parameter: " + parameterName + " (value: " + value + ")");
                 throw new NotImplementedException();
@@ -191,12 +261,18 @@ public class PTS implements SearchAlgorithm {
 
         // Loop while there is no solution and there are states in the OPEN list
         while ((goal == null) && !this.open.isEmpty()) {
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
             // Take a node from the OPEN list (nodes are sorted according to the 'u' function)
             Node currentNode = this.open.poll();
             // Extract a state from the node
             currentState = domain.unpack(currentNode.packed);
             // expand the node (since, if its g satisfies the goal test - it would be already returned)
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Go over all the successors of the state
             for (int i = 0; i < domain.getNumOperators(currentState); ++i) {
                 // Get the current operator
@@ -209,6 +285,10 @@ public class PTS implements SearchAlgorithm {
                 ++result.generated;
                 // Get it by applying the operator on the parent state
                 State childState = domain.applyOperator(currentState, op);
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentNode.g + op.getCost(childState, currentState),
+                            childState.getH());
+                }
                 // Create a search node for this state
                 Node childNode = new Node(childState, currentNode, currentState, op, op.reverse(currentState));
 
@@ -232,6 +312,9 @@ public class PTS implements SearchAlgorithm {
                 if (this.closed.containsKey(childNode.packed)) {
                     // Count the duplicates
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Take the duplicate node
                     Node dupChildNode = this.closed.get(childNode.packed);
                     if (dupChildNode.getF() > childNode.getF()) {
@@ -253,6 +336,9 @@ public class PTS implements SearchAlgorithm {
                                 // Return to OPEN list only if reopening is allowed
                                 if (this.reopen) {
                                     ++result.reopened;
+                                    if (this.listener != null) {
+                                        this.listener.nodeReopened();
+                                    }
                                     this.open.add(dupChildNode);
                                 } else {
                                     // Maybe, we will want to expand these states later
@@ -338,11 +424,13 @@ public class PTS implements SearchAlgorithm {
                 this.reopen = true;
             }
             currentResult = this._search(domain, false);
+            this.budgetMonitor.completePhase(currentResult);
             // Add current iteration
             ((SearchResultImpl) accumulatorResult).addIteration(1, this.maxCost,
                     currentResult.getExpanded(), currentResult.getGenerated());
-            // We will break here if we found a valid solution, or if AR was performed and there is no solution ...
-            if (currentResult.hasSolution() || this.reopen) {
+            // We will break here if we found a valid solution, or if AR was performed and there is no solution, or if
+            // the budget was exceeded ...
+            if (currentResult.hasSolution() || this.reopen || this.budgetMonitor.wasExceeded()) {
                 ((SearchResultImpl)currentResult).addIterations((SearchResultImpl)accumulatorResult);
                 // Note that the finalResult is still based on only the previous counters, thus, adding to local will
                 // reveal to the total value of counters
@@ -375,6 +463,25 @@ public class PTS implements SearchAlgorithm {
 
 
     public SearchResult search(SearchDomain domain) {
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        SearchResult result = this._searchAllPhases(domain);
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs all the phases of the search
+     *
+     * @param domain The domain to search
+     *
+     * @return The result of the search
+     */
+    private SearchResult _searchAllPhases(SearchDomain domain) {
+        this.budgetMonitor = this.budget.start();
         // Perform initialization of all the data structures used during the search
         this._initDataStructures(true, true, true);
         switch (this.rerun) {
@@ -384,8 +491,9 @@ public class PTS implements SearchAlgorithm {
             }
             case NRR1: {
                 SearchResult nrResult = this._search(domain, true);
-                // Run from scratch if required
-                if (!nrResult.hasSolution()) {
+                this.budgetMonitor.completePhase(nrResult);
+                // Run from scratch if required (and if the budget allows)
+                if (!nrResult.hasSolution() && !this.budgetMonitor.wasExceeded()) {
                     System.out.println("[INFO] PTS Failed with NR, tries again with AR from scratch");
                     this.reopen = true;
                     SearchResult arResult = this._search(domain, true);
@@ -489,9 +597,16 @@ public class PTS implements SearchAlgorithm {
             return this.secondaryIndex[key];
         }
 
+        /**
+         * The rank of level 0 is the inverse of the potential (C - g) / h, so lower ranks are preferred (as required
+         * by BucketQueue) and the rank of a node whose h is 0 is 0
+         */
         @Override
         public double getRank(int level) {
-            return (level == 0) ? this.getF() : this.g;
+            if (level == 0) {
+                return (this.h == 0) ? 0 : this.h / (PTS.this.maxCost - this.g);
+            }
+            return this.g;
         }
     }
 
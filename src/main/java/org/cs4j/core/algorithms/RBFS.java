@@ -22,10 +22,12 @@ import java.util.List;
 import java.util.Map;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -40,6 +42,11 @@ public class RBFS implements SearchAlgorithm {
 	private SearchDomain domain;
   private Node goal;
   private double weight;
+
+  private SearchBudget budget;
+  private SearchBudget.Monitor budgetMonitor;
+  // Receives the events of the searches (null if no listener is set)
+  private SearchListener listener;
   
   private List<Operator> path = new ArrayList<Operator>(3);
   
@@ -49,6 +56,7 @@ public class RBFS implements SearchAlgorithm {
   
   public RBFS(double w) {
     this.weight = w;
+    this.budget = SearchBudget.UNLIMITED;
   }
 
   @Override
@@ -56,6 +64,16 @@ public class RBFS implements SearchAlgorithm {
     return "rbfs";
   }
 
+  @Override
+  public void setBudget(SearchBudget budget) {
+    this.budget = budget;
+  }
+
+  @Override
+  public void setListener(SearchListener listener) {
+    this.listener = listener;
+  }
+
   @Override
   public Map<String, Class> getPossibleParameters() {
     return null;
@@ -72,6 +90,10 @@ public class RBFS implements SearchAlgorithm {
     
   	result = new SearchResultImpl();
     result.startTimer();
+    budgetMonitor = budget.start();
+    if (listener != null) {
+      listener.searchStarted(getName());
+    }
     
     State initialState = domain.initialState();
     Node initialNode = new Node(initialState);
@@ -91,11 +113,15 @@ public class RBFS implements SearchAlgorithm {
     	result.addSolution(solution);
     }
 
+    if (listener != null) {
+      listener.searchFinished(result);
+    }
     return result;
   }
   
   private double rbfs(Node n, double u) {
-    if (goal != null) { 
+    // stop on goal or when the budget is exceeded
+    if (goal != null || result.isBudgetExceeded(budgetMonitor)) {
       return Double.MAX_VALUE;
     }
     
@@ -108,6 +134,10 @@ public class RBFS implements SearchAlgorithm {
     
     // generate all successors
     result.expanded++;
+    if (listener != null) {
+      // There is no open list (the virtual fringe is on the stack)
+      listener.nodeExpanded(n.g, n.state.getH(), 0);
+    }
     List<Node> succ = new ArrayList<Node>();
     int numOps = domain.getNumOperators(n.state);
     for (int i = 0; i < numOps; i++) {
@@ -117,6 +147,9 @@ public class RBFS implements SearchAlgorithm {
       }
       result.generated++;
       State childState = domain.applyOperator(n.state, op);
+      if (listener != null) {
+        listener.nodeGenerated(n.g + op.getCost(childState, n.state), childState.getH());
+      }
       succ.add(new Node(childState, n, n.state, op, op.reverse(n.state)));
     }
     
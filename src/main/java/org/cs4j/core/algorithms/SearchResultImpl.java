@@ -21,6 +21,8 @@ import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.cs4j.core.PhaseTimers;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
@@ -44,12 +46,24 @@ public class SearchResultImpl implements SearchResult {
     // Number of states that were actually re-opened
     public long reopened;
 
-    private long startWallTimeMillis;
-    private long startCpuTimeMillis;
-    private long stopWallTimeMillis;
-    private long stopCpuTimeMillis;
+    // Looked up once (the lookup isn't free and the timers may be started and stopped many times)
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = SearchResultImpl.THREAD_BEAN.isCurrentThreadCpuTimeSupported();
 
-    private long previousWallTimeMillis = 0;
+    // The wall times are read from System.nanoTime() which (unlike the time of day) is monotonic
+    private long startWallTimeNanos;
+    private long startCpuTimeNanos;
+    private long stopWallTimeNanos;
+    private long stopCpuTimeNanos;
+
+    // The times of the previous phases of the search (see copyCounters and increase)
+    private long previousWallTimeNanos = 0;
+    private long previousCpuTimeNanos = 0;
+
+    private PhaseTimers phaseTimers = PhaseTimers.DISABLED;
+
+    // The limit of the budget which stopped the search (null if the search wasn't stopped)
+    private SearchBudget.Limit exceededLimit = null;
 
     public List<Iteration> iterations = new ArrayList<>();
     private List<Solution> solutions = new ArrayList<>();
@@ -108,12 +122,31 @@ public class SearchResultImpl implements SearchResult {
 
     @Override
     public long getWallTimeMillis() {
-        return this.previousWallTimeMillis + (this.stopWallTimeMillis - this.startWallTimeMillis) ;
+        return this.getWallTimeNanos() / 1000000;
     }
 
     @Override
     public long getCpuTimeMillis() {
-        return (long)((stopCpuTimeMillis - startCpuTimeMillis) * 0.000001);
+        return this.getCpuTimeNanos() / 1000000;
+    }
+
+    @Override
+    public long getWallTimeNanos() {
+        return this.previousWallTimeNanos + (this.stopWallTimeNanos - this.startWallTimeNanos);
+    }
+
+    @Override
+    public long getCpuTimeNanos() {
+        return this.previousCpuTimeNanos + (this.stopCpuTimeNanos - this.startCpuTimeNanos);
+    }
+
+    @Override
+    public PhaseTimers getPhaseTimers() {
+        return this.phaseTimers;
+    }
+
+    public void setPhaseTimers(PhaseTimers phaseTimers) {
+        this.phaseTimers = phaseTimers;
     }
 
     public void addSolution(Solution solution) {
@@ -143,7 +176,11 @@ public class SearchResultImpl implements SearchResult {
         this.generated = other.getGenerated();
         this.reopened = other.getReopened();
         this.opupdated = other.getUpdatedInOpen();
-        this.previousWallTimeMillis = other.getWallTimeMillis();
+        this.previousWallTimeNanos = other.getWallTimeNanos();
+        this.previousCpuTimeNanos = other.getCpuTimeNanos();
+        if (this.exceededLimit == null) {
+            this.exceededLimit = other.getExceededLimit();
+        }
     }
 
     // TODO: Add to Interface?
@@ -152,36 +189,67 @@ public class SearchResultImpl implements SearchResult {
         this.generated -= previous.getGenerated();
         this.reopened -= previous.getReopened();
         this.opupdated -= previous.getUpdatedInOpen();
-        this.previousWallTimeMillis -= previous.getWallTimeMillis();
+        this.previousWallTimeNanos -= previous.getWallTimeNanos();
+        this.previousCpuTimeNanos -= previous.getCpuTimeNanos();
     }
 
     public void increase(SearchResult previous) {
+        if (this.exceededLimit == null) {
+            this.exceededLimit = previous.getExceededLimit();
+        }
         this.expanded += previous.getExpanded();
         this.generated += previous.getGenerated();
         this.reopened += previous.getReopened();
         this.opupdated += previous.getUpdatedInOpen();
-        this.previousWallTimeMillis += previous.getWallTimeMillis();
+        this.previousWallTimeNanos += previous.getWallTimeNanos();
+        this.previousCpuTimeNanos += previous.getCpuTimeNanos();
     }
 
     public void startTimer() {
-        this.startWallTimeMillis = System.currentTimeMillis();
-        this.startCpuTimeMillis = getCpuTime();
+        this.startWallTimeNanos = System.nanoTime();
+        this.startCpuTimeNanos = getCpuTime();
     }
 
     public void stopTimer() {
-        this.stopWallTimeMillis = System.currentTimeMillis();
-        this.stopCpuTimeMillis = getCpuTime();
+        this.stopWallTimeNanos = System.nanoTime();
+        this.stopCpuTimeNanos = getCpuTime();
     }
 
+    /**
+     * @return The CPU time of the current thread in nanoseconds (0 if the JVM doesn't measure it)
+     */
     public long getCpuTime() {
-        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
-        return bean.isCurrentThreadCpuTimeSupported() ?
-                bean.getCurrentThreadCpuTime() : -1L;
+        return SearchResultImpl.CPU_TIME_SUPPORTED ? SearchResultImpl.THREAD_BEAN.getCurrentThreadCpuTime() : 0L;
     }
 
     public long getPassedTimeInSeconds() {
-        // Divide by 1000 to convert from ms. to sec.
-        return (System.currentTimeMillis() - this.startWallTimeMillis) / 1000;
+        // Divide by 10^9 to convert from ns. to sec.
+        return (System.nanoTime() - this.startWallTimeNanos) / 1000000000;
+    }
+
+    @Override
+    public SearchBudget.Limit getExceededLimit() {
+        return this.exceededLimit;
+    }
+
+    public void setExceededLimit(SearchBudget.Limit exceededLimit) {
+        this.exceededLimit = exceededLimit;
+    }
+
+    /**
+     * Checks whether the search exceeded its budget (according to the current counters) and if so, records the
+     * exceeded limit
+     *
+     * @param monitor The monitor of the budget of the search
+     *
+     * @return Whether the search should stop
+     */
+    public boolean isBudgetExceeded(SearchBudget.Monitor monitor) {
+        if (monitor.isExceeded(this.expanded, this.generated)) {
+            this.exceededLimit = monitor.getExceededLimit();
+            return true;
+        }
+        return false;
     }
 
   /*
@@ -244,6 +312,9 @@ public class SearchResultImpl implements SearchResult {
         sb.append("Nodes Expanded: ");sb.append(this.expanded);sb.append("\n");
         sb.append("Total Wall Time: "+this.getWallTimeMillis());sb.append("\n");
         sb.append("Total CPU Time: "+this.getCpuTimeMillis());sb.append("\n");
+        if (this.phaseTimers.isEnabled()) {
+            sb.append(this.phaseTimers);
+        }
         if (this.solutions.size() > 0) {
             sb.append(this.solutions.get(0));
         }
@@ -0,0 +1,96 @@
+package org.cs4j.core.algorithms;
+
+import java.util.Map;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.collections.PackedElement;
+
+/**
+ * A wrapper of a search domain, which serializes all the calls to the domain.
+ *
+ * Parallel search algorithms use the wrapper when the domain can't be replicated (isn't a ReplicableSearchDomain),
+ * so the search remains correct, although the calls to the domain don't run in parallel.
+ */
+final class SynchronizedSearchDomain implements SearchDomain {
+
+    private final SearchDomain domain;
+
+    /**
+     * The constructor of the class
+     *
+     * @param domain The domain to wrap
+     */
+    SynchronizedSearchDomain(SearchDomain domain) {
+        this.domain = domain;
+    }
+
+    @Override
+    public synchronized State initialState() {
+        return this.domain.initialState();
+    }
+
+    @Override
+    public synchronized boolean isGoal(State state) {
+        return this.domain.isGoal(state);
+    }
+
+    @Override
+    public synchronized int getNumOperators(State state) {
+        return this.domain.getNumOperators(state);
+    }
+
+    @Override
+    public synchronized Operator getOperator(State state, int index) {
+        return this.domain.getOperator(state, index);
+    }
+
+    @Override
+    public synchronized State applyOperator(State state, Operator op) {
+        return this.domain.applyOperator(state, op);
+    }
+
+    @Override
+    public synchronized State copy(State state) {
+        return this.domain.copy(state);
+    }
+
+    @Override
+    public synchronized PackedElement pack(State state) {
+        return this.domain.pack(state);
+    }
+
+    @Override
+    public synchronized State unpack(PackedElement packed) {
+        return this.domain.unpack(packed);
+    }
+
+    @Override
+    public synchronized String dumpStatesCollection(State[] states) {
+        return this.domain.dumpStatesCollection(states);
+    }
+
+    @Override
+    public synchronized boolean isCurrentHeuristicConsistent() {
+        return this.domain.isCurrentHeuristicConsistent();
+    }
+
+    @Override
+    public synchronized void setOptimalSolutionCost(double cost) {
+        this.domain.setOptimalSolutionCost(cost);
+    }
+
+    @Override
+    public synchronized double getOptimalSolutionCost() {
+        return this.domain.getOptimalSolutionCost();
+    }
+
+    @Override
+    public synchronized Map<String, Class> getPossibleParameters() {
+        return this.domain.getPossibleParameters();
+    }
+
+    @Override
+    public synchronized void setAdditionalParameter(String parameterName, String value) {
+        this.domain.setAdditionalParameter(parameterName, value);
+    }
+}
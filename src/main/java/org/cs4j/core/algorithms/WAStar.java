@@ -17,21 +17,32 @@
 package org.cs4j.core.algorithms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.cs4j.core.InPlaceSearchDomain;
+import org.cs4j.core.PhaseTimers;
+import org.cs4j.core.PhaseTimers.Phase;
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
 import org.cs4j.core.collections.BinHeap;
-import org.cs4j.core.collections.BucketHeap;
 import org.cs4j.core.collections.BucketHeap.BucketHeapElement;
+import org.cs4j.core.collections.BucketQueue;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.CompactClosedList;
+import org.cs4j.core.collections.CompactNodeStore;
+import org.cs4j.core.collections.CompactOpenList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import org.cs4j.core.collections.Pair;
 import org.cs4j.core.collections.SearchQueue;
@@ -58,6 +69,11 @@ public class WAStar implements SearchAlgorithm {
         WAStar.WAStarPossibleParameters.put("reopen", Boolean.class);
         WAStar.WAStarPossibleParameters.put("max-cost", Double.class);
         WAStar.WAStarPossibleParameters.put("bpmx", Boolean.class);
+        WAStar.WAStarPossibleParameters.put("in-place-expansion", Boolean.class);
+        WAStar.WAStarPossibleParameters.put("compact-nodes", Boolean.class);
+        WAStar.WAStarPossibleParameters.put("heap-type", String.class);
+        WAStar.WAStarPossibleParameters.put("bucket-resolution", Double.class);
+        WAStar.WAStarPossibleParameters.put("phase-timers-interval", Integer.class);
     }
 
     // The domain for the search
@@ -65,13 +81,21 @@ public class WAStar implements SearchAlgorithm {
     // Open list (frontier)
     private SearchQueue<Node> open;
     // Closed list (seen states)
-    private Map<PackedElement, Node> closed;
+    private ClosedList<Node> closed;
+
+    // The data structures which are used instead of open and closed if the nodes are compact
+    private CompactNodeStore compactNodes;
+    private CompactOpenList compactOpen;
+    private CompactClosedList compactClosed;
 
     // TODO ...
     private HeapType heapType;
 
     public enum HeapType {BIN, BUCKET}
 
+    // The width of a bucket (in units of wf) if a bucket queue is used
+    private double bucketResolution;
+
     // For weighted A*
     protected double weight;
     // Whether to perform reopening of states
@@ -81,6 +105,27 @@ public class WAStar implements SearchAlgorithm {
 
     protected boolean useBPMX;
 
+    // Whether to generate the children into reusable states (relevant only if the domain is an InPlaceSearchDomain)
+    private boolean inPlaceExpansion;
+
+    // Whether to keep the nodes in a CompactNodeStore instead of Node objects (requires an InPlaceSearchDomain)
+    private boolean useCompactNodes;
+
+    // By default, a search is stopped after 120 seconds
+    private static final SearchBudget DEFAULT_BUDGET = SearchBudget.UNLIMITED.withMaxWallTimeMillis(120 * 1000);
+
+    private SearchBudget budget;
+    // Tracks the budget of the current search
+    private SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
+    // The number of calls of a phase between two timed calls (0 means the phases aren't timed)
+    private int phaseTimersInterval;
+    // The timers of the phases of the current search
+    private PhaseTimers phaseTimers;
+
     /**
      * Sets the default values for the relevant fields of the algorithm
      */
@@ -90,6 +135,11 @@ public class WAStar implements SearchAlgorithm {
         this.reopen = true;
         this.maxCost = Double.MAX_VALUE;
         this.useBPMX = false;
+        this.inPlaceExpansion = true;
+        this.useCompactNodes = false;
+        this.bucketResolution = 1.0;
+        this.budget = WAStar.DEFAULT_BUDGET;
+        this.phaseTimersInterval = 0;
     }
 
 
@@ -130,7 +180,7 @@ public class WAStar implements SearchAlgorithm {
         SearchQueue<Node> heap = null;
         switch (heapType) {
             case BUCKET:
-                heap = new BucketHeap<>(size, QID);
+                heap = new BucketQueue<>(new NodeComparator(), this.bucketResolution, QID);
                 break;
             case BIN:
                 heap = new BinHeap<>(new NodeComparator(), 0);
@@ -141,41 +191,148 @@ public class WAStar implements SearchAlgorithm {
 
     private void _initDataStructures() {
         this.open = buildHeap(heapType, 100);
-        this.closed = new HashMap<>();
+        this.closed = new PackedClosedList<>();
     }
 
-    @Override
-    public SearchResult search(SearchDomain domain) {
-        this.domain = domain;
-        Node goal = null;
-        // Initialize all the data structures required for the search
-        this._initDataStructures();
-        SearchResultImpl result = new SearchResultImpl();
-        result.startTimer();
+    /**
+     * Initializes the data structures of a search with compact nodes
+     *
+     * @param wordsCount The number of longs each state of the domain is packed into
+     */
+    private void _initCompactDataStructures(int wordsCount) {
+        this.compactNodes = new CompactNodeStore(wordsCount);
+        this.compactOpen = new CompactOpenList(this.compactNodes, this.weight);
+        this.compactClosed = new CompactClosedList(this.compactNodes, 1024);
+    }
 
-        // Let's instantiate the initial state
-        State currentState = domain.initialState();
-        // Create a graph node from this state
-        Node initNode = new Node(currentState);
+    /**
+     * Treats a generated child whose state was already reached (is in the closed list)
+     *
+     * @param dupChildNode The node previously created for the state of the child
+     * @param currentNode The expanded node
+     * @param childG The g value of the child via the expanded node
+     * @param childH The h value of the child
+     * @param op The operator which generated the child
+     * @param pop The reverse operator of op
+     * @param edgeCost The cost of op
+     * @param result The result to update the counters of
+     */
+    private void _treatDuplicate(Node dupChildNode, Node currentNode, double childG, double childH,
+                                 Operator op, Operator pop, double edgeCost, SearchResultImpl result) {
+        // Count the duplicates
+        ++result.duplicates;
+        if (this.listener != null) {
+            this.listener.duplicateFound();
+        }
 
-        // And add it to the frontier
-        this.open.add(initNode);
-        // The nodes are ordered in the closed list by their packed values
-        this.closed.put(initNode.packed, initNode);
+        // Propagate the H value to child (in case of BPMX)
+        if (this.useBPMX) {
+            dupChildNode.h = Math.max(dupChildNode.h, currentNode.h - edgeCost);
+        }
+
+        double childWf = childG + (this.weight * childH);
+        // Found a shorter path to the node
+        if (dupChildNode.g > childG) {
+            // Check that the f actually decreases
+            if (dupChildNode.getWf() > childWf) {
+                // Do nothing
+            } else {
+                if (this.domain.isCurrentHeuristicConsistent()) {
+                    assert false;
+                }
+                return;
+            }
+
+            // In any case update the duplicate with the new values - we reached it via a shorter path
+            dupChildNode.g = childG;
+            dupChildNode.op = op;
+            dupChildNode.pop = pop;
+            dupChildNode.parent = currentNode;
+
+            // Node in closed but we get duplicate
+            if (this.weight == 1.0 &&
+                    dupChildNode.getIndex(this.open.getKey()) == -1 &&
+                    this.domain.isCurrentHeuristicConsistent()) {
+                assert false;
+            }
 
+
+            // In case the duplicate is also in the open list - let's just update it there
+            // (since we updated g)
+            if (dupChildNode.getIndex(this.open.getKey()) != -1) {
+                ++result.opupdated;
+                long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                this.open.update(dupChildNode);
+                this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+                // Otherwise, consider to reopen the node
+            } else {
+                // For debugging issues!
+                if (this.weight == 1.0 && this.domain.isCurrentHeuristicConsistent()) {
+                    assert false;
+                }
+
+                // Return to OPEN list only if reopening is allowed
+                if (this.reopen) {
+                    ++result.reopened;
+                    if (this.listener != null) {
+                        this.listener.nodeReopened();
+                    }
+                    long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                    this.open.add(dupChildNode);
+                    this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+                }
+            }
+        } else {
+            // A shorter path has not been found, but let's update the node in open if its h increased
+            if (this.useBPMX) {
+                if (dupChildNode.getIndex(this.open.getKey()) != -1) {
+                    long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                    this.open.update(dupChildNode);
+                    this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a new node (whose state hasn't been reached yet) to the open and closed lists
+     *
+     * @param childNode The node to add
+     * @param currentNode The expanded node (the parent of childNode)
+     * @param edgeCost The cost of the operator which generated the node
+     */
+    private void _addNewNode(Node childNode, Node currentNode, double edgeCost) {
+        // Propagate the H value to child (in case of BPMX)
+        if (this.useBPMX) {
+            childNode.h = Math.max(childNode.h,  currentNode.h - edgeCost);
+        }
+        long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+        this.open.add(childNode);
+        this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+        timer = this.phaseTimers.start(Phase.CLOSED_LIST);
+        this.closed.put(childNode.packed, childNode);
+        this.phaseTimers.stop(Phase.CLOSED_LIST, timer);
+    }
+
+    /**
+     * The main loop of the search, which generates a new state object (and a new node) for each child
+     *
+     * @param result The result to update during the search
+     *
+     * @return The found goal node or null if no goal was found
+     */
+    private Node _search(SearchResultImpl result) {
         // Loop over the frontier
         while (!this.open.isEmpty()) {
 
-            // Debug
-
-            if (result.getPassedTimeInSeconds() > 120) {
-                System.out.println("[WARNING] Time overflow (" + result.getPassedTimeInSeconds() + ")");
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
                 break;
             }
 
-
             // Take the first state (still don't remove it)
+            long timer = this.phaseTimers.start(Phase.OPEN_LIST);
             Node currentNode = this.open.poll();
+            this.phaseTimers.stop(Phase.OPEN_LIST, timer);
 
             // Prune
             if (currentNode.getRf() >= this.maxCost) {
@@ -183,19 +340,21 @@ public class WAStar implements SearchAlgorithm {
             }
 
             // Extract the state from the packed value of the node
-            currentState = domain.unpack(currentNode.packed);
+            State currentState = domain.unpack(currentNode.packed);
 
             //System.out.println(currentState.dumpStateShort());
             // Check for goal condition
             if (domain.isGoal(currentState)) {
-                goal = currentNode;
-                break;
+                return currentNode;
             }
 
             List<Pair<State, Node>> children = new ArrayList<>();
 
             // Expand the current node
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Stores parent h-cost (from path-max)
             double bestHValue = 0.0d;
             // First, let's generate all the children
@@ -206,10 +365,15 @@ public class WAStar implements SearchAlgorithm {
                 if (op.equals(currentNode.pop)) {
                     continue;
                 }
+                timer = this.phaseTimers.start(Phase.GENERATION);
                 State childState = domain.applyOperator(currentState, op);
+                this.phaseTimers.stop(Phase.GENERATION, timer);
                 Node childNode = new Node(childState, currentNode, currentState, op, op.reverse(currentState));
                 // Here we actually generated a new state
                 ++result.generated;
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(childNode.g, childNode.h);
+                }
                 // Perform only if BPMX is required
                 if (this.useBPMX) {
                     bestHValue = Math.max(bestHValue, childNode.h - op.getCost(childState, currentState));
@@ -238,94 +402,483 @@ public class WAStar implements SearchAlgorithm {
                 }
 
                 // Treat duplicates
-                if (this.closed.containsKey(childNode.packed)) {
-                    // Count the duplicates
-                    ++result.duplicates;
-                    // Get the previous copy of this node (and extract it)
-                    Node dupChildNode = this.closed.get(childNode.packed);
+                timer = this.phaseTimers.start(Phase.CLOSED_LIST);
+                Node dupChildNode = this.closed.get(childNode.packed);
+                this.phaseTimers.stop(Phase.CLOSED_LIST, timer);
+                if (dupChildNode != null) {
+                    this._treatDuplicate(dupChildNode, currentNode, childNode.g, childNode.h,
+                            childNode.op, childNode.pop, edgeCost, result);
+                    // Otherwise, the node is new (hasn't been reached yet)
+                } else {
+                    this._addNewNode(childNode, currentNode, edgeCost);
+                }
+            }
+        }
+        return null;
+    }
 
-                    // Propagate the H value to child (in case of BPMX)
-                    if (this.useBPMX) {
-                        dupChildNode.h = Math.max(dupChildNode.h, currentNode.h - edgeCost);
+    /**
+     * The main loop of the search, which generates the children into reusable states and packs them into a reusable
+     * buffer - a node (and a packed element) is allocated only for a child whose state wasn't reached yet
+     *
+     * @param inPlaceDomain The searched domain
+     * @param result The result to update during the search
+     *
+     * @return The found goal node or null if no goal was found
+     */
+    private Node _searchInPlace(InPlaceSearchDomain inPlaceDomain, SearchResultImpl result) {
+        State currentState = inPlaceDomain.createScratchState();
+        // The children of the currently expanded node (the arrays grow on demand)
+        State[] childStates = new State[0];
+        Operator[] childOps = new Operator[0];
+        long[] packedChild = new long[inPlaceDomain.getPackedLongsCount()];
+
+        // Loop over the frontier
+        while (!this.open.isEmpty()) {
+
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
+
+            long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+            Node currentNode = this.open.poll();
+            this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+
+            // Prune
+            if (currentNode.getRf() >= this.maxCost) {
+                continue;
+            }
+
+            // Extract the state from the packed value of the node (into the reusable state)
+            inPlaceDomain.unpack(currentNode.packed.getInternal(), currentState);
+
+            // Check for goal condition
+            if (inPlaceDomain.isGoal(currentState)) {
+                return currentNode;
+            }
+
+            // Expand the current node
+            ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
+            // Stores parent h-cost (from path-max)
+            double bestHValue = 0.0d;
+            int numOperators = inPlaceDomain.getNumOperators(currentState);
+            if (numOperators > childStates.length) {
+                childStates = Arrays.copyOf(childStates, numOperators);
+                childOps = Arrays.copyOf(childOps, numOperators);
+                for (int i = 0; i < numOperators; ++i) {
+                    if (childStates[i] == null) {
+                        childStates[i] = inPlaceDomain.createScratchState();
                     }
+                }
+            }
+            // First, let's generate all the children
+            int childrenCount = 0;
+            for (int i = 0; i < numOperators; ++i) {
+                Operator op = inPlaceDomain.getOperator(currentState, i);
+                // Try to avoid loops
+                if (op.equals(currentNode.pop)) {
+                    continue;
+                }
+                State childState = childStates[childrenCount];
+                timer = this.phaseTimers.start(Phase.GENERATION);
+                inPlaceDomain.applyOperator(currentState, op, childState);
+                this.phaseTimers.stop(Phase.GENERATION, timer);
+                childOps[childrenCount++] = op;
+                // Here we actually generated a new state
+                ++result.generated;
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentNode.g + op.getCost(childState, currentState),
+                            childState.getH());
+                }
+                // Perform only if BPMX is required
+                if (this.useBPMX) {
+                    bestHValue = Math.max(bestHValue, childState.getH() - op.getCost(childState, currentState));
+                }
+            }
+
+            // Update the H Value of the parent in case of BPMX
+            if (this.useBPMX) {
+                currentNode.h = Math.max(currentNode.h, bestHValue);
+                // Prune
+                if (currentNode.getRf() >= this.maxCost) {
+                    continue;
+                }
+            }
+
+            for (int i = 0; i < childrenCount; ++i) {
+                State childState = childStates[i];
+                Operator op = childOps[i];
+                double edgeCost = op.getCost(childState, currentState);
+                double childG = currentNode.g + edgeCost;
+                double childH = childState.getH();
+
+                // Prune
+                if (childG + childH >= this.maxCost) {
+                    continue;
+                }
+
+                inPlaceDomain.pack(childState, packedChild);
+                // Treat duplicates
+                timer = this.phaseTimers.start(Phase.CLOSED_LIST);
+                Node dupChildNode = this.closed.get(packedChild);
+                this.phaseTimers.stop(Phase.CLOSED_LIST, timer);
+                if (dupChildNode != null) {
+                    this._treatDuplicate(dupChildNode, currentNode, childG, childH,
+                            op, op.reverse(currentState), edgeCost, result);
+                    // Otherwise, the node is new (hasn't been reached yet) - only now a node is allocated
+                } else {
+                    PackedElement packed = (packedChild.length == 1) ?
+                            new PackedElement(packedChild[0]) :
+                            new PackedElement(packedChild);
+                    Node childNode = new Node(packed, currentNode, childG, childH, op, op.reverse(currentState));
+                    this._addNewNode(childNode, currentNode, edgeCost);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Treats a generated child whose state was already reached, in a search with compact nodes (see _treatDuplicate)
+     *
+     * @param dup The handle of the node previously created for the state of the child
+     * @param current The handle of the expanded node
+     * @param childG The g value of the child via the expanded node
+     * @param childH The h value of the child
+     * @param operatorIndex The index of the operator which generated the child
+     * @param edgeCost The cost of the operator
+     * @param result The result to update the counters of
+     */
+    private void _treatCompactDuplicate(int dup, int current, double childG, double childH,
+                                        int operatorIndex, double edgeCost, SearchResultImpl result) {
+        CompactNodeStore nodes = this.compactNodes;
+        // Count the duplicates
+        ++result.duplicates;
+        if (this.listener != null) {
+            this.listener.duplicateFound();
+        }
+
+        // Propagate the H value to child (in case of BPMX)
+        if (this.useBPMX) {
+            nodes.setH(dup, Math.max(nodes.getH(dup), nodes.getH(current) - edgeCost));
+        }
+
+        double dupWf = nodes.getG(dup) + (this.weight * nodes.getH(dup));
+        double childWf = childG + (this.weight * childH);
+        // Found a shorter path to the node
+        if (nodes.getG(dup) > childG) {
+            // Check that the f actually decreases
+            if (dupWf <= childWf) {
+                if (this.domain.isCurrentHeuristicConsistent()) {
+                    assert false;
+                }
+                return;
+            }
+
+            // In any case update the duplicate with the new values - we reached it via a shorter path
+            nodes.setG(dup, childG);
+            nodes.setOperatorIndex(dup, operatorIndex);
+            nodes.setParent(dup, current);
+
+            // Node in closed but we get duplicate
+            if (this.weight == 1.0 && !this.compactOpen.contains(dup) && this.domain.isCurrentHeuristicConsistent()) {
+                assert false;
+            }
 
-                    // Found a shorter path to the node
-                    if (dupChildNode.g > childNode.g) {
-                        // Check that the f actually decreases
-                        if (dupChildNode.getWf() > childNode.getWf()) {
-                            // Do nothing
-                        } else {
-                            if (this.domain.isCurrentHeuristicConsistent()) {
-                                assert false;
-                            }
-                            continue;
-                        }
-
-                        // In any case update the duplicate with the new values - we reached it via a shorter path
-                        dupChildNode.g = childNode.g;
-                        dupChildNode.op = childNode.op;
-                        dupChildNode.pop = childNode.pop;
-                        dupChildNode.parent = childNode.parent;
-
-                        // Node in closed but we get duplicate
-                        if (this.weight == 1.0 &&
-                                dupChildNode.getIndex(this.open.getKey()) == -1 &&
-                                this.domain.isCurrentHeuristicConsistent()) {
-                            System.out.println(dupChildNode.getWf() + " " + childNode.getWf());
-                            System.out.println(dupChildNode.getRf() + " " + childNode.getRf());
-                            System.out.println(dupChildNode.g + " " + childNode.g);
-                            System.out.println(dupChildNode.h + " " + childNode.h);
-                            //System.out.println(dupChildNode.parent.packed.getFirst());
-                            //System.out.println(dupChildNode.packed.getFirst());
-                            //System.out.println(domain.unpack(dupChildNode.parent.packed).dumpState());
-                            //System.out.println(domain.unpack(childNode.parent.packed).dumpState());
-                            assert false;
-                        }
-
-
-                        // In case the duplicate is also in the open list - let's just update it there
-                        // (since we updated g)
-                        if (dupChildNode.getIndex(this.open.getKey()) != -1) {
-                            ++result.opupdated;
-                            this.open.update(dupChildNode);
-                            // Otherwise, consider to reopen the node
-                        } else {
-                            // For debugging issues!
-                            if (this.weight == 1.0 && this.domain.isCurrentHeuristicConsistent()) {
-                                assert false;
-                            }
-
-                            // Return to OPEN list only if reopening is allowed
-                            if (this.reopen) {
-                                ++result.reopened;
-                                this.open.add(dupChildNode);
-                            }
-                        }
-                    } else {
-                        // A shorter path has not been found, but let's update the node in open if its h increased
-                        if (this.useBPMX) {
-                            if (dupChildNode.getIndex(this.open.getKey()) != -1) {
-                                this.open.update(dupChildNode);
-                            }
-                        }
+            // In case the duplicate is also in the open list - let's just update it there
+            // (since we updated g)
+            if (this.compactOpen.contains(dup)) {
+                ++result.opupdated;
+                long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                this.compactOpen.update(dup);
+                this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+                // Otherwise, consider to reopen the node
+            } else if (this.reopen) {
+                ++result.reopened;
+                if (this.listener != null) {
+                    this.listener.nodeReopened();
+                }
+                long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                this.compactOpen.add(dup);
+                this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+            }
+        } else if (this.useBPMX && this.compactOpen.contains(dup)) {
+            // A shorter path has not been found, but let's update the node in open if its h increased
+            long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+            this.compactOpen.update(dup);
+            this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+        }
+    }
+
+    /**
+     * The main loop of the search with compact nodes: the nodes are kept in a CompactNodeStore and are addressed by
+     * int handles (see _searchInPlace for the generation of the children)
+     *
+     * NOTE: A node keeps the index of the operator which generated it instead of the reverse operator, so loops are
+     *       avoided by comparing each child to the parent of the expanded node
+     *
+     * @param inPlaceDomain The searched domain
+     * @param result The result to update during the search
+     *
+     * @return The handle of the found goal node or NO_NODE if no goal was found
+     */
+    private int _searchCompact(InPlaceSearchDomain inPlaceDomain, SearchResultImpl result) {
+        CompactNodeStore nodes = this.compactNodes;
+        State currentState = inPlaceDomain.createScratchState();
+        // The children of the currently expanded node (the arrays grow on demand)
+        State[] childStates = new State[0];
+        int[] childOperators = new int[0];
+        long[] packedChild = new long[nodes.getWordsCount()];
+
+        // Let's instantiate the initial state and add it to the frontier
+        State initialState = inPlaceDomain.initialState();
+        inPlaceDomain.pack(initialState, packedChild);
+        int initNode = nodes.add(packedChild, 0, initialState.getH(), CompactNodeStore.NO_NODE, -1);
+        this.compactOpen.add(initNode);
+        this.compactClosed.add(initNode);
+
+        // Loop over the frontier
+        while (!this.compactOpen.isEmpty()) {
+
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
+
+            long timer = this.phaseTimers.start(Phase.OPEN_LIST);
+            int currentNode = this.compactOpen.poll();
+            this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+            double currentG = nodes.getG(currentNode);
+
+            // Prune
+            if (currentG + nodes.getH(currentNode) >= this.maxCost) {
+                continue;
+            }
+
+            // Extract the state from the packed value of the node (into the reusable state)
+            nodes.getWords(currentNode, packedChild);
+            inPlaceDomain.unpack(packedChild, currentState);
+
+            // Check for goal condition
+            if (inPlaceDomain.isGoal(currentState)) {
+                return currentNode;
+            }
+
+            // Expand the current node
+            ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentG, nodes.getH(currentNode), this.compactOpen.size());
+            }
+            int parentNode = nodes.getParent(currentNode);
+            // Stores parent h-cost (from path-max)
+            double bestHValue = 0.0d;
+            int numOperators = inPlaceDomain.getNumOperators(currentState);
+            if (numOperators > childStates.length) {
+                childStates = Arrays.copyOf(childStates, numOperators);
+                childOperators = Arrays.copyOf(childOperators, numOperators);
+                for (int i = 0; i < numOperators; ++i) {
+                    if (childStates[i] == null) {
+                        childStates[i] = inPlaceDomain.createScratchState();
                     }
+                }
+            }
+            // First, let's generate all the children
+            int childrenCount = 0;
+            for (int i = 0; i < numOperators; ++i) {
+                Operator op = inPlaceDomain.getOperator(currentState, i);
+                State childState = childStates[childrenCount];
+                timer = this.phaseTimers.start(Phase.GENERATION);
+                inPlaceDomain.applyOperator(currentState, op, childState);
+                this.phaseTimers.stop(Phase.GENERATION, timer);
+                // Try to avoid loops
+                if (parentNode != CompactNodeStore.NO_NODE) {
+                    inPlaceDomain.pack(childState, packedChild);
+                    if (nodes.equalsAt(parentNode, packedChild)) {
+                        continue;
+                    }
+                }
+                childOperators[childrenCount++] = i;
+                // Here we actually generated a new state
+                ++result.generated;
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(currentG + op.getCost(childState, currentState), childState.getH());
+                }
+                // Perform only if BPMX is required
+                if (this.useBPMX) {
+                    bestHValue = Math.max(bestHValue, childState.getH() - op.getCost(childState, currentState));
+                }
+            }
+
+            // Update the H Value of the parent in case of BPMX
+            if (this.useBPMX) {
+                nodes.setH(currentNode, Math.max(nodes.getH(currentNode), bestHValue));
+                // Prune
+                if (currentG + nodes.getH(currentNode) >= this.maxCost) {
+                    continue;
+                }
+            }
+
+            for (int i = 0; i < childrenCount; ++i) {
+                State childState = childStates[i];
+                Operator op = inPlaceDomain.getOperator(currentState, childOperators[i]);
+                double edgeCost = op.getCost(childState, currentState);
+                double childG = currentG + edgeCost;
+                double childH = childState.getH();
+
+                // Prune
+                if (childG + childH >= this.maxCost) {
+                    continue;
+                }
+
+                inPlaceDomain.pack(childState, packedChild);
+                // Treat duplicates
+                timer = this.phaseTimers.start(Phase.CLOSED_LIST);
+                int dupChildNode = this.compactClosed.get(packedChild);
+                this.phaseTimers.stop(Phase.CLOSED_LIST, timer);
+                if (dupChildNode != CompactNodeStore.NO_NODE) {
+                    this._treatCompactDuplicate(dupChildNode, currentNode, childG, childH,
+                            childOperators[i], edgeCost, result);
                     // Otherwise, the node is new (hasn't been reached yet)
                 } else {
                     // Propagate the H value to child (in case of BPMX)
                     if (this.useBPMX) {
-                        childNode.h = Math.max(childNode.h,  currentNode.h - edgeCost);
+                        childH = Math.max(childH, nodes.getH(currentNode) - edgeCost);
                     }
-                    this.open.add(childNode);
-                    this.closed.put(childNode.packed, childNode);
+                    int childNode = nodes.add(packedChild, childG, childH, currentNode, childOperators[i]);
+                    timer = this.phaseTimers.start(Phase.OPEN_LIST);
+                    this.compactOpen.add(childNode);
+                    this.phaseTimers.stop(Phase.OPEN_LIST, timer);
+                    timer = this.phaseTimers.start(Phase.CLOSED_LIST);
+                    this.compactClosed.add(childNode);
+                    this.phaseTimers.stop(Phase.CLOSED_LIST, timer);
                 }
             }
         }
+        return CompactNodeStore.NO_NODE;
+    }
+
+    /**
+     * Adds a solution to the result, given the path of the found goal
+     *
+     * @param path The operators of the path (from the goal backwards)
+     * @param statesPath The states of the path (from the goal backwards)
+     * @param cost The actual cost of the path
+     * @param goalG The g value of the found goal
+     * @param result The result to add the solution to
+     */
+    private void _addSolution(List<Operator> path, List<State> statesPath, double cost, double goalG,
+                              SearchResultImpl result) {
+        SolutionImpl solution = new SolutionImpl(this.domain);
+        // The actual size of the found path can be only lower the G value of the found goal
+        assert cost <= goalG;
+        if (cost - goalG < 0) {
+            System.out.println("[INFO] Goal G is higher that the actual cost " +
+                    "(G: " + goalG +  ", Actual: " + cost + ")");
+        }
+
+        Collections.reverse(path);
+        solution.addOperators(path);
+
+        Collections.reverse(statesPath);
+        solution.addStates(statesPath);
+
+        solution.setCost(cost);
+        result.addSolution(solution);
+    }
+
+    /**
+     * Performs the search with compact nodes (see _searchCompact)
+     *
+     * @param inPlaceDomain The domain to search
+     * @param result The result to update during the search
+     */
+    private void _searchWithCompactNodes(InPlaceSearchDomain inPlaceDomain, SearchResultImpl result) {
+        this._initCompactDataStructures(inPlaceDomain.getPackedLongsCount());
+        result.startTimer();
+        this.budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        int goal = this._searchCompact(inPlaceDomain, result);
+        result.stopTimer();
+
+        // If a goal was found: update the solution
+        if (goal != CompactNodeStore.NO_NODE) {
+            long timer = this.phaseTimers.start(Phase.RECONSTRUCTION);
+            List<Operator> path = new ArrayList<>();
+            List<State> statesPath = new ArrayList<>();
+            double cost = 0;
+            State currentState = inPlaceDomain.unpack(this.compactNodes.getPacked(goal));
+            for (int currentNode = goal;
+                 currentNode != CompactNodeStore.NO_NODE;
+                 currentNode = this.compactNodes.getParent(currentNode)) {
+                statesPath.add(currentState);
+                int parentNode = this.compactNodes.getParent(currentNode);
+                // The node has a parent, so the operator can be restored from the parent state
+                if (parentNode != CompactNodeStore.NO_NODE) {
+                    State parentState = inPlaceDomain.unpack(this.compactNodes.getPacked(parentNode));
+                    Operator op = inPlaceDomain.getOperator(
+                            parentState, this.compactNodes.getOperatorIndex(currentNode));
+                    path.add(op);
+                    cost += op.getCost(currentState, parentState);
+                    currentState = parentState;
+                }
+            }
+            this._addSolution(path, statesPath, cost, this.compactNodes.getG(goal), result);
+            this.phaseTimers.stop(Phase.RECONSTRUCTION, timer);
+        }
+    }
+
+    @Override
+    public SearchResult search(SearchDomain domain) {
+        this.domain = domain;
+        SearchResultImpl result = new SearchResultImpl();
+        this.phaseTimers = (this.phaseTimersInterval > 0) ?
+                new PhaseTimers(this.phaseTimersInterval) :
+                PhaseTimers.DISABLED;
+        result.setPhaseTimers(this.phaseTimers);
+        if (this.useCompactNodes) {
+            if (domain instanceof InPlaceSearchDomain) {
+                this._searchWithCompactNodes((InPlaceSearchDomain)domain, result);
+                if (this.listener != null) {
+                    this.listener.searchFinished(result);
+                }
+                return result;
+            }
+            System.out.println("[WARNING] The domain doesn't support in-place expansion - compact nodes aren't used");
+        }
+        Node goal;
+        // Initialize all the data structures required for the search
+        this._initDataStructures();
+        result.startTimer();
+        this.budgetMonitor = this.budget.start();
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+
+        // Let's instantiate the initial state
+        State currentState = domain.initialState();
+        // Create a graph node from this state
+        Node initNode = new Node(currentState);
+
+        // And add it to the frontier
+        this.open.add(initNode);
+        // The nodes are ordered in the closed list by their packed values
+        this.closed.put(initNode.packed, initNode);
+
+        if (this.inPlaceExpansion && domain instanceof InPlaceSearchDomain) {
+            goal = this._searchInPlace((InPlaceSearchDomain)domain, result);
+        } else {
+            goal = this._search(result);
+        }
 
         result.stopTimer();
 
         // If a goal was found: update the solution
         if (goal != null) {
-            SolutionImpl solution = new SolutionImpl(this.domain);
+            long timer = this.phaseTimers.start(Phase.RECONSTRUCTION);
             List<Operator> path = new ArrayList<>();
             List<State> statesPath = new ArrayList<>();
             // System.out.println("[INFO] Solved - Generating output path.");
@@ -344,26 +897,26 @@ public class WAStar implements SearchAlgorithm {
                 }
                 statesPath.add(domain.unpack(currentNode.packed));
             }
-            // The actual size of the found path can be only lower the G value of the found goal
-            assert cost <= goal.g;
-            if (cost - goal.g < 0) {
-                System.out.println("[INFO] Goal G is higher that the actual cost " +
-                        "(G: " + goal.g +  ", Actual: " + cost + ")");
-            }
-
-            Collections.reverse(path);
-            solution.addOperators(path);
-
-            Collections.reverse(statesPath);
-            solution.addStates(statesPath);
-
-            solution.setCost(cost);
-            result.addSolution(solution);
+            this._addSolution(path, statesPath, cost, goal.g, result);
+            this.phaseTimers.stop(Phase.RECONSTRUCTION, timer);
         }
 
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
         return result;
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
         return WAStar.WAStarPossibleParameters;
@@ -386,6 +939,39 @@ public class WAStar implements SearchAlgorithm {
                 this.reopen = Boolean.parseBoolean(value);
                 break;
             }
+            case "heap-type": {
+                switch (value) {
+                    case "bin": {
+                        this.heapType = HeapType.BIN;
+                        break;
+                    }
+                    case "bucket": {
+                        this.heapType = HeapType.BUCKET;
+                        break;
+                    }
+                    default: {
+                        System.out.println("[ERROR] The heap type can be 'bin' or 'bucket' (got " + value + ")");
+                        throw new IllegalArgumentException();
+                    }
+                }
+                break;
+            }
+            case "bucket-resolution": {
+                this.bucketResolution = Double.parseDouble(value);
+                if (!(this.bucketResolution > 0)) {
+                    System.out.println("[ERROR] The bucket resolution must be > 0");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
+            case "compact-nodes": {
+                this.useCompactNodes = Boolean.parseBoolean(value);
+                break;
+            }
+            case "in-place-expansion": {
+                this.inPlaceExpansion = Boolean.parseBoolean(value);
+                break;
+            }
             case "bpmx": {
                 this.useBPMX = Boolean.parseBoolean(value);
                 if (this.useBPMX) {
@@ -401,6 +987,14 @@ public class WAStar implements SearchAlgorithm {
                 }
                 break;
             }
+            case "phase-timers-interval": {
+                this.phaseTimersInterval = Integer.parseInt(value);
+                if (this.phaseTimersInterval < 0) {
+                    System.out.println("[ERROR] The phase timers interval must be >= 0 (0 disables the timers)");
+                    throw new IllegalArgumentException();
+                }
+                break;
+            }
             default: {
                 throw new NotImplementedException();
             }
@@ -438,6 +1032,28 @@ public class WAStar implements SearchAlgorithm {
             this.op = op;
         }
 
+        /**
+         * A constructor of the class for a node whose g and h values were already computed
+         *
+         * @param packed The packed state which this node represents
+         * @param parent The parent node
+         * @param g The g value of the node
+         * @param h The h value of the node
+         * @param op The operator which generated the node
+         * @param pop The reverse operator of op
+         */
+        private Node(PackedElement packed, Node parent, double g, double h, Operator op, Operator pop) {
+            // Size of key
+            super(1);
+            this.secondaryIndex = new int[(heapType == HeapType.BUCKET) ? 2 : 1];
+            this.g = g;
+            this.h = h;
+            this.parent = parent;
+            this.packed = packed;
+            this.pop = pop;
+            this.op = op;
+        }
+
         /**
          * @return The value of the weighted evaluation function
          */
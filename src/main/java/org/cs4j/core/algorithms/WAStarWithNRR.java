@@ -17,13 +17,17 @@
 package org.cs4j.core.algorithms;
 
 import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchDomain.Operator;
 import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.SearchListener;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.algorithms.SearchResultImpl.SolutionImpl;
 import org.cs4j.core.collections.BinHeap;
 import org.cs4j.core.collections.BucketHeap.BucketHeapElement;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
 import org.cs4j.core.collections.PackedElement;
 import org.cs4j.core.collections.Pair;
 import org.cs4j.core.collections.SearchQueue;
@@ -72,7 +76,7 @@ public class WAStarWithNRR implements SearchAlgorithm {
     protected Map<PackedElement, Node> incons;
 
     // Closed list (seen states)
-    protected Map<PackedElement, Node> closed;
+    protected ClosedList<Node> closed;
 
     // TODO ...
     protected HeapType heapType;
@@ -88,6 +92,13 @@ public class WAStarWithNRR implements SearchAlgorithm {
 
     protected boolean useBPMX;
 
+    private SearchBudget budget;
+    // Tracks the budget of the current search (shared by all the phases of the search)
+    private SearchBudget.Monitor budgetMonitor;
+
+    // Receives the events of the searches (null if no listener is set)
+    private SearchListener listener;
+
     // Defines the available types of reruning the search if searching with NR failed
     private enum RERUN_TYPES {
         // Stop the search (no rerun is available)
@@ -113,6 +124,7 @@ public class WAStarWithNRR implements SearchAlgorithm {
         // By default, we never reopen for any iteration
         this.iterationToStartReopening = Integer.MAX_VALUE;
         this.rerun = RERUN_TYPES.NO_RERUN;
+        this.budget = SearchBudget.UNLIMITED;
     }
 
     @Override
@@ -135,10 +147,20 @@ public class WAStarWithNRR implements SearchAlgorithm {
             this.incons = new HashMap<>();
         }
         if (clearClosed || this.closed == null) {
-            this.closed = new HashMap<>();
+            this.closed = new PackedClosedList<>();
         }
     }
 
+    @Override
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
     @Override
     public Map<String, Class> getPossibleParameters() {
         return WAStarWithNRR.WAStarWithNRRPossibleParameters;
@@ -280,6 +302,10 @@ public class WAStarWithNRR implements SearchAlgorithm {
 
         // Loop over the frontier
         while (!this.open.isEmpty()) {
+            if (result.isBudgetExceeded(this.budgetMonitor)) {
+                break;
+            }
+
             // Take the first state (still don't remove it)
             Node currentNode = this.open.poll();
             assert currentNode.getIndex(1) != -1;
@@ -304,6 +330,9 @@ public class WAStarWithNRR implements SearchAlgorithm {
 
             // Expand the current node
             ++result.expanded;
+            if (this.listener != null) {
+                this.listener.nodeExpanded(currentNode.g, currentNode.h, this.open.size());
+            }
             // Stores parent h-cost (from path-max)
             double bestHValue = 0.0d;
             // First, let's generate all the children
@@ -322,6 +351,9 @@ public class WAStarWithNRR implements SearchAlgorithm {
                 }
                 // Here we actually generated a new state
                 ++result.generated;
+                if (this.listener != null) {
+                    this.listener.nodeGenerated(childNode.g, childNode.h);
+                }
                 // Perform only if BPMX is required
                 if (this.useBPMX) {
                     bestHValue = Math.max(bestHValue, childNode.h - op.getCost(childState, currentState));
@@ -353,6 +385,9 @@ public class WAStarWithNRR implements SearchAlgorithm {
                 if (this.closed.containsKey(childNode.packed)) {
                     // Count the duplicates
                     ++result.duplicates;
+                    if (this.listener != null) {
+                        this.listener.duplicateFound();
+                    }
                     // Get the previous copy of this node (and extract it)
                     Node dupChildNode = this.closed.get(childNode.packed);
 
@@ -402,6 +437,9 @@ public class WAStarWithNRR implements SearchAlgorithm {
                                 // Always Reopen: Perform standard reopening
                             } else {
                                 ++result.reopened;
+                                if (this.listener != null) {
+                                    this.listener.nodeReopened();
+                                }
                                 this.open.add(dupChildNode);
                             }
                             // Update CLEANUP in any case (even if not reopen!)
@@ -490,6 +528,11 @@ public class WAStarWithNRR implements SearchAlgorithm {
                 // Bound is infinity (first search)
                 Integer.MAX_VALUE,
                 nrResult);
+        this.budgetMonitor.completePhase(nrResult);
+        // The budget was exceeded - don't start another phase
+        if (this.budgetMonitor.wasExceeded()) {
+            return nrResult;
+        }
         if (nrResult.hasSolution()) {
             // Get current solution and check if it is sufficient
             SearchResult.Solution currentSolution = nrResult.getSolutions().get(0);
@@ -562,6 +605,7 @@ public class WAStarWithNRR implements SearchAlgorithm {
                     reopen,
                     maxPreviousCost,
                     currentResult);
+            this.budgetMonitor.completePhase(currentResult);
             // Add current iteration
             accumulatorResult.addIteration(1, maxPreviousCost,
                     currentResult.getExpanded(), currentResult.getGenerated());
@@ -595,10 +639,19 @@ public class WAStarWithNRR implements SearchAlgorithm {
                 }
             }
 
+            // The budget was exceeded - don't start another phase
+            if (this.budgetMonitor.wasExceeded()) {
+                shouldReturn = true;
+            }
+
             // Now check if we should return
             if (shouldReturn) {
                 // A safety
                 if (!currentResult.hasSolution()) {
+                    // Count the phase which was stopped by the budget (this also marks the returned result)
+                    if (this.budgetMonitor.wasExceeded()) {
+                        accumulatorResult.increase(currentResult);
+                    }
                     currentResult = lastResult;
                 }
                 // Note that the finalResult is still based on only the previous counters, thus, adding to local will
@@ -621,6 +674,9 @@ public class WAStarWithNRR implements SearchAlgorithm {
             // Now, Move all states from incons to open
             for (Node current : this.incons.values()) {
                 this.open.add(current);
+                if (this.listener != null) {
+                    this.listener.nodeReopened();
+                }
             }
             this.incons.clear();
             System.out.println("[INFO] Open now contains " + this.open.size() + " states; runs again");
@@ -651,7 +707,26 @@ public class WAStarWithNRR implements SearchAlgorithm {
     }
 
     public SearchResult search(SearchDomain domain) {
+        if (this.listener != null) {
+            this.listener.searchStarted(this.getName());
+        }
+        SearchResult result = this._searchAllPhases(domain);
+        if (this.listener != null) {
+            this.listener.searchFinished(result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs all the phases of the search (according to the rerun type)
+     *
+     * @param domain The domain to search
+     *
+     * @return The result of the search
+     */
+    private SearchResult _searchAllPhases(SearchDomain domain) {
         this.domain = domain;
+        this.budgetMonitor = this.budget.start();
         // Set general values
         double deviatedWeight = this.weight * this.wAdmissibilityDeviation;
         if (this.weight != deviatedWeight) {
@@ -764,7 +839,7 @@ public class WAStarWithNRR implements SearchAlgorithm {
                 }
                 this.incons.clear();
                 if (this.restartClosedList) {
-                    this.closed = new HashMap<>();
+                    this.closed = new PackedClosedList<>();
                 }
                 System.out.println("[INFO] Calling another search iteration (maxCost = " + maxPreviousCost + ", bestF: " + bestF + ")");
             } else {
@@ -784,10 +859,13 @@ public class WAStarWithNRR implements SearchAlgorithm {
                         if (previousResult != null) {
                             ++previousResult.reopened;
                         }
+                        if (this.listener != null) {
+                            this.listener.nodeReopened();
+                        }
                     }
                     this.incons.clear();
                     if (this.restartClosedList) {
-                        this.closed = new HashMap<>();
+                        this.closed = new PackedClosedList<>();
                     }
                     continue;
                 }
@@ -0,0 +1,179 @@
+package org.cs4j.core.auxiliary;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchDomain.Operator;
+import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.domains.DockyardRobot;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.GridPathFinding;
+import org.cs4j.core.domains.Pancakes;
+import org.cs4j.core.domains.TopSpin;
+import org.cs4j.core.domains.VacuumRobot;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * This class measures the quality of the hash of the packed states, as it is seen by the closed lists
+ *
+ * For each given domain instance, the states reachable from the initial state are collected (by a breadth-first
+ * traversal) and their packed representations are distributed into a power-of-2 table (as done by the closed lists).
+ * Then, the following values are reported both for the old additive hash (sum of the packed words) and for the
+ * current mixing hash of {@link PackedElement}:
+ *  1. The number of distinct hash values
+ *  2. The average length of the chain which is scanned on a successful lookup
+ *  3. The length of the longest chain
+ *
+ * Usage: PackedElementCollisionsMeasuring [-states N] domain:instance-file [domain:instance-file ...]
+ * where domain is one of: fifteenpuzzle, pancakes, topspin, gridpathfinding, vacuumrobot, dockyardrobot
+ */
+public class PackedElementCollisionsMeasuring {
+
+    private final static int DEFAULT_STATES_COUNT = 1000000;
+    private final static double LOAD_FACTOR = 0.75;
+
+    /**
+     * Creates a domain by its name (heuristics remain in their default settings)
+     *
+     * @param domainName The name of the domain
+     * @param instanceFile The file which contains the instance
+     *
+     * @return The created domain
+     */
+    private static SearchDomain _createDomain(String domainName, String instanceFile) throws IOException {
+        InputStream is = new FileInputStream(instanceFile);
+        switch (domainName.toLowerCase()) {
+            case "fifteenpuzzle": {
+                return new FifteenPuzzle(is);
+            }
+            case "pancakes": {
+                return new Pancakes(is);
+            }
+            case "topspin": {
+                return new TopSpin(is);
+            }
+            case "gridpathfinding": {
+                return new GridPathFinding(is);
+            }
+            case "vacuumrobot": {
+                return new VacuumRobot(is);
+            }
+            case "dockyardrobot": {
+                return new DockyardRobot(is);
+            }
+            default: {
+                is.close();
+                System.out.println("[ERROR] Unknown domain: " + domainName);
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /**
+     * Collects the packed representations of the states which are the closest to the initial state
+     *
+     * @param domain The domain to traverse
+     * @param maxStatesCount The maximum number of states to collect
+     *
+     * @return The collected (distinct) packed states
+     */
+    private static List<PackedElement> _collectPackedStates(SearchDomain domain, int maxStatesCount) {
+        Set<PackedElement> seen = new HashSet<>();
+        List<PackedElement> toReturn = new ArrayList<>();
+        Queue<State> queue = new ArrayDeque<>();
+        State initialState = domain.initialState();
+        PackedElement initialPacked = domain.pack(initialState);
+        seen.add(initialPacked);
+        toReturn.add(initialPacked);
+        queue.add(initialState);
+        while (!queue.isEmpty() && toReturn.size() < maxStatesCount) {
+            State state = queue.poll();
+            for (int i = 0; i < domain.getNumOperators(state) && toReturn.size() < maxStatesCount; ++i) {
+                Operator op = domain.getOperator(state, i);
+                State child = domain.applyOperator(state, op);
+                PackedElement packed = domain.pack(child);
+                if (seen.add(packed)) {
+                    toReturn.add(packed);
+                    queue.add(child);
+                }
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Distributes the given hashes into a power-of-2 table and prints the statistics of the distribution
+     *
+     * @param title The title of the printed line
+     * @param hashes The hashes to distribute
+     */
+    private static void _printStatistics(String title, int[] hashes) {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < hashes.length) {
+            capacity <<= 1;
+        }
+        int[] chains = new int[capacity];
+        Set<Integer> distinctHashes = new HashSet<>();
+        for (int hash : hashes) {
+            ++chains[hash & (capacity - 1)];
+            distinctHashes.add(hash);
+        }
+        long scannedOnLookups = 0;
+        int longestChain = 0;
+        for (int chain : chains) {
+            // Looking up all the elements of the chain scans 1 + 2 + ... + chain elements
+            scannedOnLookups += (long)chain * (chain + 1) / 2;
+            longestChain = Math.max(longestChain, chain);
+        }
+        System.out.println(String.format("  %-8s distinct hashes: %d/%d, average lookup chain: %.3f, longest chain: %d",
+                title, distinctHashes.size(), hashes.length, (double)scannedOnLookups / hashes.length,
+                longestChain));
+    }
+
+    public static void measure(String domainName, String instanceFile, int maxStatesCount) throws IOException {
+        SearchDomain domain = PackedElementCollisionsMeasuring._createDomain(domainName, instanceFile);
+        List<PackedElement> packedStates =
+                PackedElementCollisionsMeasuring._collectPackedStates(domain, maxStatesCount);
+        int[] additiveHashes = new int[packedStates.size()];
+        int[] mixingHashes = new int[packedStates.size()];
+        for (int i = 0; i < packedStates.size(); ++i) {
+            int sum = (int)packedStates.get(i).getLongsSum();
+            // The old hash as it was spread by java.util.HashMap
+            additiveHashes[i] = sum ^ (sum >>> 16);
+            mixingHashes[i] = packedStates.get(i).hashCode();
+        }
+        System.out.println("[INFO] " + domainName + " (" + instanceFile + "): " + packedStates.size() + " states, " +
+                packedStates.get(0).getLongsCount() + " longs per state");
+        PackedElementCollisionsMeasuring._printStatistics("additive", additiveHashes);
+        PackedElementCollisionsMeasuring._printStatistics("mixing", mixingHashes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxStatesCount = PackedElementCollisionsMeasuring.DEFAULT_STATES_COUNT;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-states")) {
+            maxStatesCount = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i == args.length) {
+            System.out.println("Usage: PackedElementCollisionsMeasuring [-states N] " +
+                    "domain:instance-file [domain:instance-file ...]");
+            return;
+        }
+        for (; i < args.length; ++i) {
+            int separator = args[i].indexOf(':');
+            PackedElementCollisionsMeasuring.measure(
+                    args[i].substring(0, separator),
+                    args[i].substring(separator + 1),
+                    maxStatesCount);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.cs4j.core.auxiliary;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchDomain.Operator;
+import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.domains.Pancakes;
+import org.cs4j.core.domains.VacuumRobot;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * This class measures the number of states which are generated (and packed) per second, with and without the
+ * verification of the packing (the verify-packing parameter of the domain)
+ *
+ * The states are generated by a random walk from the initial state: all the children of the current state are
+ * generated and packed (as done by the search algorithms when a node is expanded), and then the walk continues from
+ * a random child. Each measurement is preceded by a warm-up walk.
+ *
+ * Usage: PackingThroughputMeasuring [-states N] domain:instance-file [domain:instance-file ...]
+ * where domain is one of: pancakes, vacuumrobot
+ */
+public class PackingThroughputMeasuring {
+
+    private final static int DEFAULT_STATES_COUNT = 2000000;
+    private final static long SEED = 1;
+
+    /**
+     * Creates a domain by its name
+     *
+     * @param domainName The name of the domain
+     * @param instanceFile The file which contains the instance
+     *
+     * @return The created domain
+     */
+    private static SearchDomain _createDomain(String domainName, String instanceFile) throws IOException {
+        try (InputStream is = new FileInputStream(instanceFile)) {
+            switch (domainName.toLowerCase()) {
+                case "pancakes": {
+                    return new Pancakes(is);
+                }
+                case "vacuumrobot": {
+                    return new VacuumRobot(is);
+                }
+                default: {
+                    System.out.println("[ERROR] Unknown domain: " + domainName);
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates (and packs) the given number of states by a random walk
+     *
+     * @param domain The domain to generate the states of
+     * @param statesCount The number of states to generate
+     *
+     * @return A checksum of the packed states (so the packing can't be optimized away)
+     */
+    private static long _generate(SearchDomain domain, int statesCount) {
+        Random random = new Random(PackingThroughputMeasuring.SEED);
+        State current = domain.initialState();
+        long checksum = 0;
+        int generated = 0;
+        while (generated < statesCount) {
+            int numOperators = domain.getNumOperators(current);
+            State next = null;
+            int nextIndex = random.nextInt(numOperators);
+            for (int i = 0; i < numOperators; ++i) {
+                Operator op = domain.getOperator(current, i);
+                State child = domain.applyOperator(current, op);
+                PackedElement packed = domain.pack(child);
+                checksum += packed.hashCode();
+                ++generated;
+                if (i == nextIndex) {
+                    next = child;
+                }
+            }
+            current = next;
+        }
+        return checksum;
+    }
+
+    /**
+     * Measures the throughput of the domain with the given verification mode and prints it
+     *
+     * @return The number of generated states per second
+     */
+    private static double _measure(SearchDomain domain, boolean verifyPacking, int statesCount) {
+        domain.setAdditionalParameter("verify-packing", Boolean.toString(verifyPacking));
+        // Warm-up
+        PackingThroughputMeasuring._generate(domain, statesCount / 4);
+        long start = System.nanoTime();
+        long checksum = PackingThroughputMeasuring._generate(domain, statesCount);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double perSecond = statesCount / seconds;
+        System.out.println(String.format("  verify-packing=%-5s %,.0f generated states per second " +
+                "(%d states in %.3f seconds, checksum %d)", verifyPacking, perSecond, statesCount, seconds, checksum));
+        return perSecond;
+    }
+
+    public static void measure(String domainName, String instanceFile, int statesCount) throws IOException {
+        SearchDomain domain = PackingThroughputMeasuring._createDomain(domainName, instanceFile);
+        System.out.println("[INFO] " + domainName + " (" + instanceFile + ")");
+        double withVerification = PackingThroughputMeasuring._measure(domain, true, statesCount);
+        double withoutVerification = PackingThroughputMeasuring._measure(domain, false, statesCount);
+        System.out.println(String.format("  speedup without verification: %.2fx",
+                withoutVerification / withVerification));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int statesCount = PackingThroughputMeasuring.DEFAULT_STATES_COUNT;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-states")) {
+            statesCount = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i == args.length) {
+            System.out.println("Usage: PackingThroughputMeasuring [-states N] " +
+                    "domain:instance-file [domain:instance-file ...]");
+            return;
+        }
+        for (; i < args.length; ++i) {
+            int separator = args[i].indexOf(':');
+            PackingThroughputMeasuring.measure(
+                    args[i].substring(0, separator),
+                    args[i].substring(separator + 1),
+                    statesCount);
+        }
+    }
+}
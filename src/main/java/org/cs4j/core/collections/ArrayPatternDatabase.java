@@ -0,0 +1,28 @@
+package org.cs4j.core.collections;
+
+/**
+ * A pattern database which is stored in a dense byte array on the heap (the entry of rank i is stored at index i)
+ */
+public final class ArrayPatternDatabase extends PatternDatabase {
+
+    private final byte[] values;
+
+    /**
+     * The constructor of the class
+     *
+     * @param values The values of the PDB (the array isn't copied)
+     */
+    public ArrayPatternDatabase(byte[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return this.values.length;
+    }
+
+    @Override
+    public int get(long index) {
+        return this.values[(int)index] & 0xff;
+    }
+}
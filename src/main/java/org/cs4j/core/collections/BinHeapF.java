@@ -12,11 +12,22 @@ public class BinHeapF<E extends SearchQueueElement> implements SearchQueue<E> {
 
     private HashMap<Double, Integer> countF = new HashMap<>();
     private double fmin;
-    private BinHeap<E> heapF;
+    private SearchQueue<E> heapF;
     private BinHeap<E> heap;
 
     public BinHeapF(Comparator<E> cmp) {
-        this.heapF = new BinHeap<>(new FComparator(), 0);
+        this(cmp, null);
+    }
+
+    /**
+     * A constructor which allows to choose the queue that orders the elements by f
+     *
+     * @param cmp The comparator of the main heap (uses key 1 of the elements)
+     * @param heapF The queue which orders the elements by f (must use key 0 of the elements); if null - a binary heap
+     *              is used
+     */
+    public BinHeapF(Comparator<E> cmp, SearchQueue<E> heapF) {
+        this.heapF = (heapF != null) ? heapF : new BinHeap<>(new FComparator(), 0);
         this.heap =new BinHeap<>(cmp, 1);
     }
 
@@ -151,7 +162,10 @@ public class BinHeapF<E extends SearchQueueElement> implements SearchQueue<E> {
     }
 
     private void test(){
-        BinHeap list = heapF;
+        if (!(heapF instanceof BinHeap)) {
+            return;
+        }
+        BinHeap list = (BinHeap)heapF;
 //        System.out.println(heap.size());
         Iterator it = countF.entrySet().iterator();
         while (it.hasNext()) {
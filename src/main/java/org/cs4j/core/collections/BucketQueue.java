@@ -0,0 +1,446 @@
+package org.cs4j.core.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.cs4j.core.collections.BucketHeap.BucketHeapElement;
+
+/**
+ * A two-level bucket queue.
+ *
+ * The elements are placed in buckets according to their primary rank (getRank(0), lower is preferred) and inside
+ * each bucket in bins according to their secondary rank (getRank(1), higher is preferred). The ranks are quantised
+ * at a configurable resolution, so non-integer ranks (e.g. f values of domains with real costs) are supported, and
+ * each bin keeps its elements in a small heap, which is ordered by the given comparator - so the order of the
+ * elements is exact and not only up to the resolution.
+ *
+ * NOTE: The comparator must order the elements by their primary rank (ascending) and then by their secondary rank
+ *       (descending); it can break the remaining ties in any way.
+ *
+ * When all the elements of a bucket have the same primary rank (e.g. the f values of a unit cost domain), their order
+ * is determined by the bins, and the bins of such domains contain equal elements only - so adding and removing an
+ * element take O(1). A bucket whose elements have different primary ranks keeps all of them in a single heap.
+ *
+ * The ranges of both levels grow (in both directions) on demand, and the bins are allocated lazily and released when
+ * their bucket becomes empty. Elements whose primary rank isn't finite are kept in an additional bucket, which is
+ * placed after all the other buckets.
+ *
+ * The index of an element (for the key of the queue) is its position in the heap of its bin and its secondary index
+ * is the id of its bin.
+ */
+public final class BucketQueue<E extends BucketHeapElement> implements SearchQueue<E> {
+
+    // The maximum number of slots in a single level (the range of the ranks divided by the resolution)
+    private static final int MAX_SLOTS = 1 << 24;
+    private static final int INITIAL_SLOTS = 16;
+
+    private final Comparator<E> cmp;
+    private final double primaryResolution;
+    private final double secondaryResolution;
+    private final int key;
+
+    // The buckets by their numbers (floor(rank / resolution))
+    private Slots<Bucket<E>> buckets;
+    // The bucket of the elements whose primary rank isn't finite (always mixed)
+    private Bucket<E> overflow;
+    // There is no non-empty bucket whose number is lower
+    private long minBucket;
+
+    // The bins by their ids (ids of released bins are reused)
+    private List<Bin<E>> bins;
+    private int[] freeBinIds;
+    private int freeBinIdsCount;
+
+    private int size;
+
+    /**
+     * The constructor of the class
+     *
+     * @param cmp The comparator of the elements (see the NOTE above)
+     * @param primaryResolution The width of a bucket (in units of the primary rank)
+     * @param secondaryResolution The width of a bin (in units of the secondary rank)
+     * @param key The key of the queue (the index of the element which is used by the queue)
+     */
+    public BucketQueue(Comparator<E> cmp, double primaryResolution, double secondaryResolution, int key) {
+        if (!(primaryResolution > 0) || !(secondaryResolution > 0)) {
+            throw new IllegalArgumentException("The resolution of a bucket queue must be positive");
+        }
+        this.cmp = cmp;
+        this.primaryResolution = primaryResolution;
+        this.secondaryResolution = secondaryResolution;
+        this.key = key;
+        this.clear();
+    }
+
+    /**
+     * A constructor of the class which uses the same resolution for both levels
+     *
+     * @param cmp The comparator of the elements
+     * @param resolution The width of a bucket and of a bin
+     * @param key The key of the queue
+     */
+    public BucketQueue(Comparator<E> cmp, double resolution, int key) {
+        this(cmp, resolution, resolution, key);
+    }
+
+    @Override
+    public int getKey() {
+        return this.key;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void clear() {
+        this.buckets = new Slots<>();
+        this.overflow = new Bucket<>();
+        this.overflow.mixed = true;
+        this.minBucket = Long.MAX_VALUE;
+        this.bins = new ArrayList<>();
+        this.freeBinIds = new int[BucketQueue.INITIAL_SLOTS];
+        this.freeBinIdsCount = 0;
+        this.size = 0;
+    }
+
+    @Override
+    public void add(E e) {
+        double rank = e.getRank(0);
+        Bucket<E> bucket;
+        if (Double.isInfinite(rank) || Double.isNaN(rank)) {
+            bucket = this.overflow;
+        } else {
+            long number = BucketQueue.getNumber(rank, this.primaryResolution);
+            bucket = this.buckets.get(number);
+            if (bucket == null) {
+                bucket = new Bucket<>();
+                this.buckets.put(number, bucket);
+            }
+            // The bucket precedes all the non-empty buckets
+            if (number < this.minBucket || this.size == this.overflow.size) {
+                this.minBucket = number;
+            }
+        }
+
+        // A bucket which becomes non-empty isn't mixed until an element of another rank is added to it
+        if (bucket.size == 0 && bucket != this.overflow) {
+            bucket.mixed = false;
+            bucket.rank = rank;
+        } else if (!bucket.mixed && bucket.rank != rank) {
+            this._mix(bucket);
+        }
+
+        Bin<E> bin;
+        if (!bucket.mixed) {
+            double secondaryRank = e.getRank(1);
+            if (Double.isInfinite(secondaryRank) || Double.isNaN(secondaryRank)) {
+                this._mix(bucket);
+            } else {
+                long number = BucketQueue.getNumber(secondaryRank, this.secondaryResolution);
+                bin = bucket.bins.get(number);
+                if (bin == null) {
+                    bin = this._createBin(bucket);
+                    bucket.bins.put(number, bin);
+                }
+                // The bin precedes all the non-empty bins of the bucket
+                if (number > bucket.maxBin || bucket.size == 0) {
+                    bucket.maxBin = number;
+                }
+                this._addToBin(bin, e);
+                return;
+            }
+        }
+        if (bucket.mixedBin == null) {
+            bucket.mixedBin = this._createBin(bucket);
+        }
+        this._addToBin(bucket.mixedBin, e);
+    }
+
+    @Override
+    public E poll() {
+        if (this.size == 0) {
+            return null;
+        }
+        return this._removeAt(this._getFirstBin(this._getFirstBucket()), 0);
+    }
+
+    @Override
+    public E peek() {
+        if (this.size == 0) {
+            return null;
+        }
+        return this._getFirstBin(this._getFirstBucket()).heap.get(0);
+    }
+
+    @Override
+    public void update(E e) {
+        this.remove(e);
+        this.add(e);
+    }
+
+    @Override
+    public E remove(E e) {
+        int index = e.getIndex(this.key);
+        int binId = e.getSecondaryIndex(this.key);
+        if (index < 0 || binId < 0 || binId >= this.bins.size()) {
+            throw new IllegalArgumentException();
+        }
+        Bin<E> bin = this.bins.get(binId);
+        if (bin == null || index >= bin.heap.size() || bin.heap.get(index) != e) {
+            throw new IllegalArgumentException();
+        }
+        return this._removeAt(bin, index);
+    }
+
+    /**
+     * @return The number of the slot of the given rank
+     */
+    private static long getNumber(double rank, double resolution) {
+        double number = Math.floor(rank / resolution);
+        if (number < Long.MIN_VALUE || number > Long.MAX_VALUE) {
+            throw new IllegalStateException("The rank " + rank + " is too large for the resolution of the queue");
+        }
+        return (long)number;
+    }
+
+    /**
+     * @return The first non-empty bucket (the queue mustn't be empty)
+     */
+    private Bucket<E> _getFirstBucket() {
+        if (this.size == this.overflow.size) {
+            return this.overflow;
+        }
+        for (; ; ++this.minBucket) {
+            Bucket<E> bucket = this.buckets.get(this.minBucket);
+            if (bucket != null && bucket.size > 0) {
+                return bucket;
+            }
+        }
+    }
+
+    /**
+     * @return The first non-empty bin of the given (non-empty) bucket
+     */
+    private Bin<E> _getFirstBin(Bucket<E> bucket) {
+        if (bucket.mixed) {
+            return bucket.mixedBin;
+        }
+        for (; ; --bucket.maxBin) {
+            Bin<E> bin = bucket.bins.get(bucket.maxBin);
+            if (bin != null && !bin.heap.isEmpty()) {
+                return bin;
+            }
+        }
+    }
+
+    /**
+     * Moves all the elements of the given bucket to a single bin (its elements have different primary ranks)
+     */
+    private void _mix(Bucket<E> bucket) {
+        if (bucket.mixedBin == null) {
+            bucket.mixedBin = this._createBin(bucket);
+        }
+        for (Object item : bucket.bins.items) {
+            if (item != null) {
+                @SuppressWarnings("unchecked")
+                Bin<E> bin = (Bin<E>)item;
+                for (E e : bin.heap) {
+                    this._addToBin(bucket.mixedBin, e);
+                    // The element is only moved
+                    --bucket.size;
+                    --this.size;
+                }
+                this._releaseBin(bin);
+            }
+        }
+        bucket.bins = new Slots<>();
+        bucket.mixed = true;
+    }
+
+    private Bin<E> _createBin(Bucket<E> bucket) {
+        int id;
+        if (this.freeBinIdsCount > 0) {
+            id = this.freeBinIds[--this.freeBinIdsCount];
+        } else {
+            id = this.bins.size();
+            this.bins.add(null);
+        }
+        Bin<E> bin = new Bin<>(id, bucket);
+        this.bins.set(id, bin);
+        return bin;
+    }
+
+    private void _releaseBin(Bin<E> bin) {
+        this.bins.set(bin.id, null);
+        if (this.freeBinIdsCount == this.freeBinIds.length) {
+            this.freeBinIds = Arrays.copyOf(this.freeBinIds, this.freeBinIdsCount << 1);
+        }
+        this.freeBinIds[this.freeBinIdsCount++] = bin.id;
+    }
+
+    /**
+     * Releases all the bins of an empty bucket
+     */
+    private void _releaseBins(Bucket<E> bucket) {
+        for (Object item : bucket.bins.items) {
+            if (item != null) {
+                @SuppressWarnings("unchecked")
+                Bin<E> bin = (Bin<E>)item;
+                this._releaseBin(bin);
+            }
+        }
+        bucket.bins = new Slots<>();
+        if (bucket.mixedBin != null) {
+            this._releaseBin(bucket.mixedBin);
+            bucket.mixedBin = null;
+        }
+    }
+
+    private void _addToBin(Bin<E> bin, E e) {
+        e.setSecondaryIndex(this.key, bin.id);
+        bin.heap.add(e);
+        this._pullUp(bin.heap, bin.heap.size() - 1);
+        ++bin.bucket.size;
+        ++this.size;
+    }
+
+    private E _removeAt(Bin<E> bin, int index) {
+        ArrayList<E> heap = bin.heap;
+        E e = heap.get(index);
+        E last = heap.remove(heap.size() - 1);
+        if (last != e) {
+            this._set(heap, index, last);
+            this._pullUp(heap, index);
+            this._pushDown(heap, last.getIndex(this.key));
+        }
+        e.setIndex(this.key, -1);
+        e.setSecondaryIndex(this.key, -1);
+        --this.size;
+        Bucket<E> bucket = bin.bucket;
+        if (--bucket.size == 0 && bucket != this.overflow) {
+            this._releaseBins(bucket);
+        }
+        return e;
+    }
+
+    private void _set(ArrayList<E> heap, int index, E e) {
+        heap.set(index, e);
+        e.setIndex(this.key, index);
+    }
+
+    private void _pullUp(ArrayList<E> heap, int index) {
+        E e = heap.get(index);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            E parentElement = heap.get(parent);
+            if (this.cmp.compare(e, parentElement) >= 0) {
+                break;
+            }
+            this._set(heap, index, parentElement);
+            index = parent;
+        }
+        this._set(heap, index, e);
+    }
+
+    private void _pushDown(ArrayList<E> heap, int index) {
+        E e = heap.get(index);
+        int size = heap.size();
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && this.cmp.compare(heap.get(child + 1), heap.get(child)) < 0) {
+                ++child;
+            }
+            E childElement = heap.get(child);
+            if (this.cmp.compare(childElement, e) >= 0) {
+                break;
+            }
+            this._set(heap, index, childElement);
+            index = child;
+        }
+        this._set(heap, index, e);
+    }
+
+    /**
+     * A bucket of the first level
+     */
+    private static final class Bucket<E> {
+        // Whether the elements have different primary ranks (and then all of them are in mixedBin)
+        private boolean mixed;
+        // The primary rank of all the elements (if the bucket isn't mixed)
+        private double rank;
+        private int size;
+        // The bins by their numbers (if the bucket isn't mixed)
+        private Slots<Bin<E>> bins = new Slots<>();
+        // There is no non-empty bin whose number is higher
+        private long maxBin;
+        private Bin<E> mixedBin;
+    }
+
+    /**
+     * A bin of the second level: a heap of elements
+     */
+    private static final class Bin<E> {
+        private final int id;
+        private final Bucket<E> bucket;
+        private final ArrayList<E> heap;
+
+        private Bin(int id, Bucket<E> bucket) {
+            this.id = id;
+            this.bucket = bucket;
+            this.heap = new ArrayList<>();
+        }
+    }
+
+    /**
+     * An array of lazily created items which are addressed by numbers: the range of the numbers grows on demand
+     */
+    private static final class Slots<T> {
+        private Object[] items = new Object[0];
+        // The number of the item at slot 0
+        private long base;
+
+        @SuppressWarnings("unchecked")
+        private T get(long number) {
+            long slot = number - this.base;
+            if (slot < 0 || slot >= this.items.length) {
+                return null;
+            }
+            return (T)this.items[(int)slot];
+        }
+
+        private void put(long number, T item) {
+            if (this.items.length == 0) {
+                this.items = new Object[BucketQueue.INITIAL_SLOTS];
+                // Leave some space for lower numbers
+                this.base = number - BucketQueue.INITIAL_SLOTS / 2;
+            } else if (number < this.base || number >= this.base + this.items.length) {
+                long low = Math.min(this.base, number);
+                long high = Math.max(this.base + this.items.length, number + 1);
+                if (high - low > BucketQueue.MAX_SLOTS) {
+                    throw new IllegalStateException("The range of the ranks is too large for the resolution of " +
+                            "the queue");
+                }
+                int length = (int)Math.min(BucketQueue.MAX_SLOTS, Math.max(high - low, 2L * this.items.length));
+                // Place the extra space in the direction of the growth
+                long base = (number < this.base) ? high - length : low;
+                Object[] items = new Object[length];
+                System.arraycopy(this.items, 0, items, (int)(this.base - base), this.items.length);
+                this.items = items;
+                this.base = base;
+            }
+            this.items[(int)(number - this.base)] = item;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.cs4j.core.collections;
+
+/**
+ * A closed list maps the packed representation of a state to the search node which represents it.
+ *
+ * The interface exposes the subset of {@link java.util.Map} operations the search algorithms actually use, so that
+ * the implementations can keep the packed keys in primitive long arrays instead of boxing them into hash map
+ * entries.
+ *
+ * @param <E> The type of the stored nodes
+ */
+public interface ClosedList<E> {
+
+    /**
+     * @param key The packed state to look for
+     *
+     * @return The node stored for the given state or null if the state isn't in the list
+     */
+    E get(PackedElement key);
+
+    /**
+     * Looks up a state by its packed words, without creating a {@link PackedElement} for it (e.g. when the words were
+     * packed into a reusable buffer)
+     *
+     * @param words The words of the packed state (as returned by {@link PackedElement#getInternal()})
+     *
+     * @return The node stored for the given state or null if the state isn't in the list
+     */
+    E get(long[] words);
+
+    /**
+     * @param key The packed state to look for
+     *
+     * @return Whether a node is stored for the given state
+     */
+    boolean containsKey(PackedElement key);
+
+    /**
+     * Stores a node for the given state (replaces the previous node if such exists)
+     *
+     * @param key The packed state
+     * @param value The node to store (mustn't be null)
+     *
+     * @return The previous node that was stored for the state or null if there was no such node
+     */
+    E put(PackedElement key, E value);
+
+    /**
+     * Removes the node stored for the given state
+     *
+     * @param key The packed state
+     *
+     * @return The removed node or null if the state isn't in the list
+     */
+    E remove(PackedElement key);
+
+    /**
+     * @return The number of states stored in the list
+     */
+    int size();
+
+    /**
+     * @return Whether the list is empty
+     */
+    boolean isEmpty();
+
+    /**
+     * Removes all the states from the list
+     */
+    void clear();
+}
@@ -0,0 +1,110 @@
+package org.cs4j.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * A closed list of the nodes of a {@link CompactNodeStore}.
+ *
+ * The list is an open addressing hash table (linear probing) of node handles only - the packed states are kept (once)
+ * by the store, so a stored node costs a single int slot.
+ * An empty slot is marked by NO_NODE; nodes are never removed.
+ */
+public final class CompactClosedList {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final CompactNodeStore store;
+
+    private int[] slots;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * The constructor of the class
+     *
+     * @param store The store which contains the nodes
+     * @param expectedSize The number of nodes which are expected to be stored in the list
+     */
+    public CompactClosedList(CompactNodeStore store, int expectedSize) {
+        this.store = store;
+        int capacity = 2;
+        while (capacity < CompactClosedList.MAX_CAPACITY && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        this._allocate(capacity);
+    }
+
+    private void _allocate(int capacity) {
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, CompactNodeStore.NO_NODE);
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @param words The packed state to look for
+     *
+     * @return The handle of the node stored for the state or NO_NODE if the state isn't in the list
+     */
+    public int get(long[] words) {
+        int slot = (int)PackedElement.hash(words, 0, words.length) & this.mask;
+        int handle;
+        while ((handle = this.slots[slot]) != CompactNodeStore.NO_NODE) {
+            if (this.store.equalsAt(handle, words)) {
+                return handle;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return CompactNodeStore.NO_NODE;
+    }
+
+    /**
+     * Adds a node to the list
+     *
+     * NOTE: The state of the node mustn't be in the list already (use get() first)
+     *
+     * @param handle The handle of the node to add
+     */
+    public void add(int handle) {
+        this._insert(handle, this.store.hashAt(handle));
+        if (++this.size > this.resizeThreshold) {
+            this._grow();
+        }
+    }
+
+    private void _insert(int handle, int hash) {
+        int slot = hash & this.mask;
+        while (this.slots[slot] != CompactNodeStore.NO_NODE) {
+            slot = (slot + 1) & this.mask;
+        }
+        this.slots[slot] = handle;
+    }
+
+    private void _grow() {
+        int capacity = this.slots.length;
+        if (capacity == CompactClosedList.MAX_CAPACITY) {
+            // Can't grow anymore - let the table fill up (always leaving a single empty slot to stop the probing)
+            if (this.size >= capacity - 1) {
+                throw new IllegalStateException("The closed list reached its maximum capacity");
+            }
+            this.resizeThreshold = capacity - 2;
+            return;
+        }
+        int[] oldSlots = this.slots;
+        this._allocate(capacity << 1);
+        for (int handle : oldSlots) {
+            if (handle != CompactNodeStore.NO_NODE) {
+                this._insert(handle, this.store.hashAt(handle));
+            }
+        }
+    }
+
+    /**
+     * @return The number of nodes stored in the list
+     */
+    public int size() {
+        return this.size;
+    }
+}
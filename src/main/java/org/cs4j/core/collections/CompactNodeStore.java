@@ -0,0 +1,209 @@
+package org.cs4j.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * A store of search nodes kept in parallel primitive arrays (struct-of-arrays) and addressed by int handles.
+ *
+ * For each node the store keeps its packed state, g and h values, the handle of its parent, the index of the operator
+ * which generated it (as returned by SearchDomain.getOperator(parent, index)) and its index in a
+ * {@link CompactOpenList}. That takes about 8 * wordsCount + 30 bytes per node, with no object headers and no
+ * references for the garbage collector to trace.
+ *
+ * Nodes are never removed, so the handle of a node is its insertion order (0, 1, 2, ...).
+ */
+public final class CompactNodeStore {
+
+    // The handle which represents "no node" (e.g. the parent of the initial node)
+    public static final int NO_NODE = -1;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    // The maximum size of a Java array (some VMs reserve a few header words in an array)
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int wordsCount;
+    private final int maxCapacity;
+
+    // The words of node i are [i * wordsCount, (i + 1) * wordsCount)
+    private long[] keys;
+    private double[] g;
+    private double[] h;
+    private int[] parents;
+    private byte[] operators;
+    private int[] heapIndexes;
+    private int size;
+
+    /**
+     * The constructor of the class
+     *
+     * @param wordsCount The number of longs each packed state consists of
+     * @param expectedSize The number of nodes which are expected to be stored
+     */
+    public CompactNodeStore(int wordsCount, int expectedSize) {
+        if (wordsCount < 1) {
+            throw new IllegalArgumentException("Packed states must consist of at least one long");
+        }
+        this.wordsCount = wordsCount;
+        this.maxCapacity = CompactNodeStore.MAX_ARRAY_SIZE / wordsCount;
+        int capacity = Math.max(2, Math.min(expectedSize, this.maxCapacity));
+        this.keys = new long[capacity * wordsCount];
+        this.g = new double[capacity];
+        this.h = new double[capacity];
+        this.parents = new int[capacity];
+        this.operators = new byte[capacity];
+        this.heapIndexes = new int[capacity];
+    }
+
+    /**
+     * A constructor of the class with the default initial capacity
+     *
+     * @param wordsCount The number of longs each packed state consists of
+     */
+    public CompactNodeStore(int wordsCount) {
+        this(wordsCount, CompactNodeStore.DEFAULT_CAPACITY);
+    }
+
+    private void _grow() {
+        int capacity = this.g.length;
+        if (capacity == this.maxCapacity) {
+            throw new IllegalStateException("The node store reached its maximum capacity (" + capacity + " nodes)");
+        }
+        // Grow by 1.5 in order to waste less memory on large searches
+        capacity = (int)Math.min((long)this.maxCapacity, capacity + (capacity >> 1));
+        this.keys = Arrays.copyOf(this.keys, capacity * this.wordsCount);
+        this.g = Arrays.copyOf(this.g, capacity);
+        this.h = Arrays.copyOf(this.h, capacity);
+        this.parents = Arrays.copyOf(this.parents, capacity);
+        this.operators = Arrays.copyOf(this.operators, capacity);
+        this.heapIndexes = Arrays.copyOf(this.heapIndexes, capacity);
+    }
+
+    /**
+     * Adds a new node to the store (the node isn't in the open list initially)
+     *
+     * @param words The packed state of the node (copied)
+     * @param g The g value of the node
+     * @param h The h value of the node
+     * @param parent The handle of the parent node (or NO_NODE)
+     * @param operatorIndex The index of the operator which generated the node (or -1 if there is no such operator)
+     *
+     * @return The handle of the new node
+     */
+    public int add(long[] words, double g, double h, int parent, int operatorIndex) {
+        if (operatorIndex > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Operator index is too large for the node store: " + operatorIndex);
+        }
+        if (this.size == this.g.length) {
+            this._grow();
+        }
+        int handle = this.size++;
+        System.arraycopy(words, 0, this.keys, handle * this.wordsCount, this.wordsCount);
+        this.g[handle] = g;
+        this.h[handle] = h;
+        this.parents[handle] = parent;
+        this.operators[handle] = (byte)operatorIndex;
+        this.heapIndexes[handle] = -1;
+        return handle;
+    }
+
+    /**
+     * @return The number of longs each packed state consists of
+     */
+    public int getWordsCount() {
+        return this.wordsCount;
+    }
+
+    /**
+     * @return The number of stored nodes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public double getG(int handle) {
+        return this.g[handle];
+    }
+
+    public void setG(int handle, double g) {
+        this.g[handle] = g;
+    }
+
+    public double getH(int handle) {
+        return this.h[handle];
+    }
+
+    public void setH(int handle, double h) {
+        this.h[handle] = h;
+    }
+
+    public int getParent(int handle) {
+        return this.parents[handle];
+    }
+
+    public void setParent(int handle, int parent) {
+        this.parents[handle] = parent;
+    }
+
+    public int getOperatorIndex(int handle) {
+        return this.operators[handle];
+    }
+
+    public void setOperatorIndex(int handle, int operatorIndex) {
+        if (operatorIndex > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Operator index is too large for the node store: " + operatorIndex);
+        }
+        this.operators[handle] = (byte)operatorIndex;
+    }
+
+    /**
+     * @return The index of the node in the open list or -1 if the node isn't in the open list
+     */
+    int getHeapIndex(int handle) {
+        return this.heapIndexes[handle];
+    }
+
+    void setHeapIndex(int handle, int heapIndex) {
+        this.heapIndexes[handle] = heapIndex;
+    }
+
+    /**
+     * Copies the packed state of the given node into the given buffer
+     *
+     * @param handle The handle of the node
+     * @param words The buffer to fill (of size getWordsCount())
+     */
+    public void getWords(int handle, long[] words) {
+        System.arraycopy(this.keys, handle * this.wordsCount, words, 0, this.wordsCount);
+    }
+
+    /**
+     * @param handle The handle of the node
+     *
+     * @return A new packed element which contains the packed state of the node
+     */
+    public PackedElement getPacked(int handle) {
+        long[] words = new long[this.wordsCount];
+        this.getWords(handle, words);
+        return new PackedElement(words);
+    }
+
+    /**
+     * @return Whether the packed state of the given node equals to the given words
+     */
+    public boolean equalsAt(int handle, long[] words) {
+        int base = handle * this.wordsCount;
+        for (int i = 0; i < this.wordsCount; ++i) {
+            if (this.keys[base + i] != words[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The hash of the packed state of the given node (equals to the hash of the PackedElement of the state)
+     */
+    int hashAt(int handle) {
+        return (int)PackedElement.hash(this.keys, handle * this.wordsCount, this.wordsCount);
+    }
+}
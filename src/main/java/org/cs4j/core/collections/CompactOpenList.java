@@ -0,0 +1,154 @@
+package org.cs4j.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * An open list of the nodes of a {@link CompactNodeStore}: a binary heap of node handles.
+ *
+ * The nodes are ordered by their weighted f value (g + weight * h; smaller is preferred) and then by their g value
+ * (bigger is preferred) - the order of the WAStar nodes comparator. The index of each node in the heap is kept by the
+ * store, so the position of a node can be updated after its g or h value has changed.
+ *
+ * The sifting is done exactly as in {@link BinHeap}, so both heaps break ties the same way.
+ */
+public final class CompactOpenList {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final CompactNodeStore store;
+    private final double weight;
+
+    private int[] heap;
+    private int size;
+
+    /**
+     * The constructor of the class
+     *
+     * @param store The store which contains the nodes
+     * @param weight The weight of the h value in the evaluation function
+     */
+    public CompactOpenList(CompactNodeStore store, double weight) {
+        this.store = store;
+        this.weight = weight;
+        this.heap = new int[CompactOpenList.DEFAULT_CAPACITY];
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return Whether the given node is in the open list
+     */
+    public boolean contains(int handle) {
+        return this.store.getHeapIndex(handle) != -1;
+    }
+
+    /**
+     * Adds a node to the open list
+     *
+     * @param handle The handle of the node to add
+     */
+    public void add(int handle) {
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.size << 1);
+        }
+        this._set(this.size, handle);
+        this._pullUp(this.size++);
+    }
+
+    /**
+     * Removes the best node from the open list
+     *
+     * @return The handle of the removed node or NO_NODE if the list is empty
+     */
+    public int poll() {
+        if (this.size == 0) {
+            return CompactNodeStore.NO_NODE;
+        }
+        int toReturn = this.heap[0];
+        this.store.setHeapIndex(toReturn, -1);
+        if (--this.size > 0) {
+            this._set(0, this.heap[this.size]);
+            this._pushDown(0);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Updates the position of a node whose g or h value has changed
+     *
+     * @param handle The handle of the node (must be in the open list)
+     */
+    public void update(int handle) {
+        int index = this.store.getHeapIndex(handle);
+        if (index < 0 || index >= this.size) {
+            throw new IllegalArgumentException();
+        }
+        this._pushDown(this._pullUp(index));
+    }
+
+    private double _getWf(int handle) {
+        return this.store.getG(handle) + this.weight * this.store.getH(handle);
+    }
+
+    /**
+     * @return Whether the node at index i precedes the node at index j
+     */
+    private boolean _precedes(int i, int j) {
+        int a = this.heap[i];
+        int b = this.heap[j];
+        double wfA = this._getWf(a);
+        double wfB = this._getWf(b);
+        if (wfA != wfB) {
+            return wfA < wfB;
+        }
+        return this.store.getG(a) > this.store.getG(b);
+    }
+
+    private void _set(int index, int handle) {
+        this.heap[index] = handle;
+        this.store.setHeapIndex(handle, index);
+    }
+
+    private void _swap(int i, int j) {
+        int handle = this.heap[i];
+        this._set(i, this.heap[j]);
+        this._set(j, handle);
+    }
+
+    private int _pullUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!this._precedes(i, parent)) {
+                break;
+            }
+            this._swap(i, parent);
+            i = parent;
+        }
+        return i;
+    }
+
+    private void _pushDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int smallest = i;
+            if (left < this.size && this._precedes(left, i)) {
+                smallest = left;
+            }
+            if (right < this.size && this._precedes(right, smallest)) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            this._swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.cs4j.core.collections;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A registry of the heuristic tables (PDBs, pivots distances, etc.) which are read from files
+ *
+ * Each table is read once per JVM: all the domains which use the same file (and the same layout of the table) get the
+ * same instance of the table, so N concurrent workers hold a single copy of the table instead of N copies. The tables
+ * are immutable after they are read, so they can be shared by any number of threads.
+ *
+ * The tables are reference-counted: each {@link #acquire} (or {@link #retain}) of a table should be matched by a
+ * {@link #release}; once all the references to a table are released, the table is dropped from the registry (and
+ * will be read again by the next acquire). The domains release their tables through
+ * {@link org.cs4j.core.ReleasableSearchDomain#releaseHeuristicTables()}.
+ */
+public final class HeuristicTableRegistry {
+
+    /**
+     * Reads a table from its file
+     */
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    /**
+     * A registered table
+     */
+    private static final class Entry {
+        private final String key;
+        private Object table;
+        private int references;
+
+        private Entry(String key) {
+            this.key = key;
+            this.table = null;
+            this.references = 0;
+        }
+    }
+
+    // All the access to the maps is synchronized on the class
+    private static final Map<String, Entry> ENTRIES_BY_KEY = new HashMap<>();
+    private static final Map<Object, Entry> ENTRIES_BY_TABLE = new IdentityHashMap<>();
+
+    private HeuristicTableRegistry() { }
+
+    /**
+     * @param fileName The name of the file of the table
+     * @param layout Distinguishes different tables which are read from the same file (e.g. mapped and on heap)
+     *
+     * @return The key of the table in the registry
+     */
+    private static String _getKey(String fileName, String layout) throws IOException {
+        return layout + ":" + new File(fileName).getCanonicalPath();
+    }
+
+    /**
+     * Returns the table which is read from the given file (the table is read only if it isn't registered yet)
+     *
+     * NOTE: Concurrent calls for the same table wait until the first call reads it
+     *
+     * @param fileName The name of the file of the table
+     * @param layout Distinguishes different tables which are read from the same file (e.g. mapped and on heap)
+     * @param loader Reads the table (called only if the table isn't registered)
+     *
+     * @return The table
+     *
+     * @throws IOException If the reading of the table failed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T acquire(String fileName, String layout, Loader<T> loader) throws IOException {
+        String key = HeuristicTableRegistry._getKey(fileName, layout);
+        Entry entry;
+        synchronized (HeuristicTableRegistry.class) {
+            entry = HeuristicTableRegistry.ENTRIES_BY_KEY.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                HeuristicTableRegistry.ENTRIES_BY_KEY.put(key, entry);
+            }
+            ++entry.references;
+        }
+        // Only the reading of this specific table is serialized
+        synchronized (entry) {
+            if (entry.table == null) {
+                boolean loaded = false;
+                try {
+                    Object table = loader.load();
+                    synchronized (HeuristicTableRegistry.class) {
+                        entry.table = table;
+                        HeuristicTableRegistry.ENTRIES_BY_TABLE.put(table, entry);
+                    }
+                    loaded = true;
+                } finally {
+                    if (!loaded) {
+                        HeuristicTableRegistry._unregister(entry);
+                    }
+                }
+            } else {
+                System.out.println("[INFO] Using the shared table of " + key);
+            }
+            return (T)entry.table;
+        }
+    }
+
+    /**
+     * Adds a reference to a registered table (e.g. when a domain shares the tables of another domain)
+     *
+     * @param table The table (tables which aren't registered - e.g. null - are ignored)
+     */
+    public static synchronized void retain(Object table) {
+        Entry entry = HeuristicTableRegistry.ENTRIES_BY_TABLE.get(table);
+        if (entry != null) {
+            ++entry.references;
+        }
+    }
+
+    /**
+     * Removes a reference to a registered table
+     *
+     * @param table The table (tables which aren't registered - e.g. null - are ignored)
+     */
+    public static void release(Object table) {
+        Entry entry;
+        synchronized (HeuristicTableRegistry.class) {
+            entry = HeuristicTableRegistry.ENTRIES_BY_TABLE.get(table);
+        }
+        if (entry != null) {
+            HeuristicTableRegistry._unregister(entry);
+        }
+    }
+
+    /**
+     * Removes a reference to the given entry (and drops the entry if it has no more references)
+     */
+    private static synchronized void _unregister(Entry entry) {
+        if (--entry.references == 0) {
+            HeuristicTableRegistry.ENTRIES_BY_KEY.remove(entry.key);
+            if (entry.table != null) {
+                HeuristicTableRegistry.ENTRIES_BY_TABLE.remove(entry.table);
+            }
+        }
+    }
+
+    /**
+     * @param fileName The name of the file of the table
+     * @param layout The layout of the table (as given to acquire)
+     *
+     * @return The number of references to the table (0 if the table isn't registered)
+     */
+    public static synchronized int getReferencesCount(String fileName, String layout) throws IOException {
+        Entry entry = HeuristicTableRegistry.ENTRIES_BY_KEY.get(HeuristicTableRegistry._getKey(fileName, layout));
+        return (entry == null) ? 0 : entry.references;
+    }
+}
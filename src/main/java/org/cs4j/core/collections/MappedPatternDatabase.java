@@ -0,0 +1,65 @@
+package org.cs4j.core.collections;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A pattern database which is stored in a memory-mapped file (the entry of rank i is stored at byte i of the file)
+ *
+ * A single mapping is limited to 2GB, so the file is mapped in segments of 2^30 bytes.
+ * The mapping remains valid after the channel is closed.
+ */
+public final class MappedPatternDatabase extends PatternDatabase {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final long entriesCount;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The constructor of the class
+     *
+     * @param channel The channel of the file to map
+     * @param entriesCount The number of entries in the PDB
+     * @param mode The mode of the mapping (READ_WRITE is used only while a PDB file is converted)
+     *
+     * @throws IOException If the mapping failed
+     */
+    MappedPatternDatabase(FileChannel channel, long entriesCount, FileChannel.MapMode mode) throws IOException {
+        this.entriesCount = entriesCount;
+        int segmentsCount = (int)((entriesCount + SEGMENT_MASK) >>> SEGMENT_BITS);
+        this.segments = new MappedByteBuffer[segmentsCount];
+        for (int i = 0; i < segmentsCount; ++i) {
+            long start = (long)i << SEGMENT_BITS;
+            this.segments[i] = channel.map(mode, start, Math.min(SEGMENT_MASK + 1, entriesCount - start));
+        }
+    }
+
+    /**
+     * Stores a value in the table (the table must be mapped in READ_WRITE mode)
+     */
+    public void put(long index, byte value) {
+        this.segments[(int)(index >>> SEGMENT_BITS)].put((int)(index & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Flushes the written values to the underlying file
+     */
+    public void force() {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return this.entriesCount;
+    }
+
+    @Override
+    public int get(long index) {
+        return this.segments[(int)(index >>> SEGMENT_BITS)].get((int)(index & SEGMENT_MASK)) & 0xff;
+    }
+}
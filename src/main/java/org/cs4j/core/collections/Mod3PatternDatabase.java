@@ -0,0 +1,85 @@
+package org.cs4j.core.collections;
+
+/**
+ * A pattern database which stores only the value of each entry modulo 3, five entries in each byte (3^5 = 243), on
+ * the heap - i.e. 1.6 bits per entry
+ *
+ * In a consistent PDB, the values of a state and of its parent differ by at most 1 - so the exact value of a state is
+ * the single value of {parent - 1, parent, parent + 1} that has the stored residue (see get(index, parentValue)). The
+ * value of a state without a parent must be found by the domain (e.g. by a descent to the abstract goal, where each
+ * step moves to a neighbour whose residue is smaller by 1).
+ *
+ * NOTE: Only PDBs in which any move changes the value by at most 1 can be stored in this way
+ */
+public final class Mod3PatternDatabase extends PatternDatabase {
+
+    private static final int ENTRIES_PER_BYTE = 5;
+    // RESIDUES[b][i] is the residue of the i-th entry stored in a byte whose (unsigned) value is b
+    private static final byte[][] RESIDUES = new byte[256][Mod3PatternDatabase.ENTRIES_PER_BYTE];
+    // The weight of the i-th entry in a byte: 3^i
+    private static final int[] POWERS = {1, 3, 9, 27, 81};
+
+    static {
+        for (int b = 0; b < 243; ++b) {
+            for (int i = 0; i < Mod3PatternDatabase.ENTRIES_PER_BYTE; ++i) {
+                Mod3PatternDatabase.RESIDUES[b][i] = (byte)((b / Mod3PatternDatabase.POWERS[i]) % 3);
+            }
+        }
+    }
+
+    private final long entriesCount;
+    private final byte[] values;
+
+    /**
+     * Compresses a table
+     *
+     * NOTE: The table must be consistent (see the documentation of the class), this isn't checked
+     *
+     * @param source The table to compress
+     */
+    public Mod3PatternDatabase(PatternDatabase source) {
+        this.entriesCount = source.getEntriesCount();
+        long bytesCount = (this.entriesCount + Mod3PatternDatabase.ENTRIES_PER_BYTE - 1) /
+                Mod3PatternDatabase.ENTRIES_PER_BYTE;
+        if (bytesCount > PatternDatabase.MAX_ARRAY_ENTRIES) {
+            throw new IllegalArgumentException("Too many entries for a mod-3 PDB: " + this.entriesCount);
+        }
+        this.values = new byte[(int)bytesCount];
+        for (int byteIndex = 0; byteIndex < this.values.length; ++byteIndex) {
+            int packed = 0;
+            long first = (long)byteIndex * Mod3PatternDatabase.ENTRIES_PER_BYTE;
+            for (int i = 0; i < Mod3PatternDatabase.ENTRIES_PER_BYTE && first + i < this.entriesCount; ++i) {
+                packed += (source.get(first + i) % 3) * Mod3PatternDatabase.POWERS[i];
+            }
+            this.values[byteIndex] = (byte)packed;
+        }
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return this.entriesCount;
+    }
+
+    /**
+     * @param index The rank of the abstract state
+     *
+     * @return The value of the abstract state modulo 3
+     */
+    @Override
+    public int get(long index) {
+        return Mod3PatternDatabase.RESIDUES[this.values[(int)(index / Mod3PatternDatabase.ENTRIES_PER_BYTE)] & 0xff]
+                [(int)(index % Mod3PatternDatabase.ENTRIES_PER_BYTE)];
+    }
+
+    @Override
+    public boolean requiresParentValue() {
+        return true;
+    }
+
+    @Override
+    public int get(long index, int parentValue) {
+        // The difference between the value and the parent value (between -1 and 1) modulo 3
+        int delta = (this.get(index) - parentValue % 3 + 3) % 3;
+        return parentValue + ((delta == 2) ? -1 : delta);
+    }
+}
@@ -0,0 +1,231 @@
+package org.cs4j.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * A closed list for domains whose states are packed into a fixed number (> 1) of longs.
+ *
+ * The list is an open addressing hash table (linear probing); the words of all the stored states are kept
+ * consecutively in a single primitive long array (slot i occupies the words [i * wordsCount, (i + 1) * wordsCount))
+ * and the nodes are kept in a parallel array.
+ * An empty slot is marked by a null node, and removals are done by backward shifting (no tombstones are left).
+ *
+ * @param <E> The type of the stored nodes
+ */
+@SuppressWarnings("unchecked")
+public final class MultiLongClosedList<E> implements ClosedList<E> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final int wordsCount;
+    private final int maxCapacity;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * The constructor of the class
+     *
+     * @param wordsCount The number of longs each packed state consists of
+     * @param expectedSize The number of states which are expected to be stored in the list
+     */
+    public MultiLongClosedList(int wordsCount, int expectedSize) {
+        if (wordsCount < 1) {
+            throw new IllegalArgumentException("Packed states must consist of at least one long");
+        }
+        this.wordsCount = wordsCount;
+        // The keys array is indexed by int, so the capacity is bounded by the number of words too
+        this.maxCapacity = Math.min(MAX_CAPACITY, Integer.highestOneBit(Integer.MAX_VALUE / wordsCount));
+        this._allocate(this._capacityFor(expectedSize));
+    }
+
+    /**
+     * A constructor of the class with the default initial capacity
+     *
+     * @param wordsCount The number of longs each packed state consists of
+     */
+    public MultiLongClosedList(int wordsCount) {
+        this(wordsCount, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of states which are expected to be stored in the table
+     *
+     * @return The smallest power of 2 that can hold the given number of states without resizing
+     */
+    private int _capacityFor(int expectedSize) {
+        int capacity = 2;
+        while (capacity < this.maxCapacity && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void _allocate(int capacity) {
+        this.keys = new long[capacity * this.wordsCount];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return Whether the key stored in the given slot equals to the given words
+     */
+    private boolean _equalsAt(int slot, long[] words) {
+        int base = slot * this.wordsCount;
+        for (int i = 0; i < this.wordsCount; ++i) {
+            if (this.keys[base + i] != words[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the slot which contains the given key
+     *
+     * @param words The words of the key to look for
+     * @param hash The hash of the key (as computed by {@link PackedElement#hash(long[], int, int)})
+     *
+     * @return The index of the slot or -1 if the key isn't stored in the table
+     */
+    private int _find(long[] words, int hash) {
+        int slot = hash & this.mask;
+        while (this.values[slot] != null) {
+            if (this._equalsAt(slot, words)) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Extracts the words of the given key and validates their count
+     */
+    private long[] _wordsOf(PackedElement key) {
+        long[] words = key.getInternal();
+        if (words.length != this.wordsCount) {
+            throw new IllegalArgumentException("Expected a state packed into " + this.wordsCount + " longs, " +
+                    "got " + words.length);
+        }
+        return words;
+    }
+
+    @Override
+    public E get(PackedElement key) {
+        int slot = this._find(this._wordsOf(key), key.hashCode());
+        return (slot == -1) ? null : (E)this.values[slot];
+    }
+
+    @Override
+    public E get(long[] words) {
+        if (words.length != this.wordsCount) {
+            throw new IllegalArgumentException("Expected a state packed into " + this.wordsCount + " longs, " +
+                    "got " + words.length);
+        }
+        int slot = this._find(words, (int)PackedElement.hash(words, 0, this.wordsCount));
+        return (slot == -1) ? null : (E)this.values[slot];
+    }
+
+    @Override
+    public boolean containsKey(PackedElement key) {
+        return this._find(this._wordsOf(key), key.hashCode()) != -1;
+    }
+
+    @Override
+    public E put(PackedElement key, E value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null nodes can't be stored in the closed list");
+        }
+        long[] words = this._wordsOf(key);
+        // The hash of the element is cached, so there is no need to rehash the words
+        int slot = key.hashCode() & this.mask;
+        while (this.values[slot] != null) {
+            if (this._equalsAt(slot, words)) {
+                E previous = (E)this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        System.arraycopy(words, 0, this.keys, slot * this.wordsCount, this.wordsCount);
+        this.values[slot] = value;
+        if (++this.size > this.resizeThreshold) {
+            this._grow();
+        }
+        return null;
+    }
+
+    @Override
+    public E remove(PackedElement key) {
+        int slot = this._find(this._wordsOf(key), key.hashCode());
+        if (slot == -1) {
+            return null;
+        }
+        E removed = (E)this.values[slot];
+        // Shift back the following elements of the cluster, in order to keep all of them reachable
+        int gap = slot;
+        int current = (gap + 1) & this.mask;
+        while (this.values[current] != null) {
+            int ideal = (int)PackedElement.hash(this.keys, current * this.wordsCount, this.wordsCount) & this.mask;
+            if (((current - ideal) & this.mask) >= ((current - gap) & this.mask)) {
+                System.arraycopy(this.keys, current * this.wordsCount, this.keys, gap * this.wordsCount,
+                        this.wordsCount);
+                this.values[gap] = this.values[current];
+                gap = current;
+            }
+            current = (current + 1) & this.mask;
+        }
+        this.values[gap] = null;
+        --this.size;
+        return removed;
+    }
+
+    private void _grow() {
+        int capacity = this.values.length;
+        if (capacity == this.maxCapacity) {
+            // Can't grow anymore - let the table fill up (always leaving a single empty slot to stop the probing)
+            if (this.size >= capacity - 1) {
+                throw new IllegalStateException("The closed list reached its maximum capacity");
+            }
+            this.resizeThreshold = capacity - 2;
+            return;
+        }
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this._allocate(capacity << 1);
+        for (int i = 0; i < oldValues.length; ++i) {
+            if (oldValues[i] != null) {
+                int base = i * this.wordsCount;
+                int slot = (int)PackedElement.hash(oldKeys, base, this.wordsCount) & this.mask;
+                while (this.values[slot] != null) {
+                    slot = (slot + 1) & this.mask;
+                }
+                System.arraycopy(oldKeys, base, this.keys, slot * this.wordsCount, this.wordsCount);
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+}
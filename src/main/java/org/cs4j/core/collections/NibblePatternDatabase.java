@@ -0,0 +1,73 @@
+package org.cs4j.core.collections;
+
+/**
+ * A pattern database which stores each entry in 4 bits (two entries in each byte) on the heap
+ *
+ * The table stores values between 0 and 15: a table whose values are larger can still be stored if the domain stores
+ * a smaller transformation of each value which it can invert (e.g. the difference from another heuristic).
+ */
+public final class NibblePatternDatabase extends PatternDatabase {
+
+    // The maximum value which can be stored in a single entry
+    public static final int MAX_VALUE = 0xf;
+
+    private final long entriesCount;
+    private final byte[] values;
+
+    /**
+     * The constructor of the class - creates a table with all the values set to 0
+     *
+     * @param entriesCount The number of entries in the PDB
+     */
+    public NibblePatternDatabase(long entriesCount) {
+        if ((entriesCount + 1) / 2 > PatternDatabase.MAX_ARRAY_ENTRIES) {
+            throw new IllegalArgumentException("Too many entries for a nibble PDB: " + entriesCount);
+        }
+        this.entriesCount = entriesCount;
+        this.values = new byte[(int)((entriesCount + 1) / 2)];
+    }
+
+    /**
+     * Compresses a table whose values are at most 15
+     *
+     * @param source The table to compress
+     *
+     * @return The compressed table
+     *
+     * @throws IllegalArgumentException If a value of the table is larger than 15
+     */
+    public static NibblePatternDatabase compress(PatternDatabase source) {
+        NibblePatternDatabase compressed = new NibblePatternDatabase(source.getEntriesCount());
+        for (long index = 0; index < source.getEntriesCount(); ++index) {
+            compressed.put(index, source.get(index));
+        }
+        return compressed;
+    }
+
+    /**
+     * Stores a value in the table
+     *
+     * @param index The rank of the abstract state
+     * @param value The value to store (between 0 and 15)
+     *
+     * @throws IllegalArgumentException If the value can't be stored in 4 bits
+     */
+    public void put(long index, int value) {
+        if (value < 0 || value > NibblePatternDatabase.MAX_VALUE) {
+            throw new IllegalArgumentException("Value " + value + " (index " + index + ") doesn't fit in 4 bits");
+        }
+        int shift = (int)(index & 1) << 2;
+        int byteIndex = (int)(index >>> 1);
+        this.values[byteIndex] = (byte)((this.values[byteIndex] & ~(0xf << shift)) | (value << shift));
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return this.entriesCount;
+    }
+
+    @Override
+    public int get(long index) {
+        return (this.values[(int)(index >>> 1)] >>> ((int)(index & 1) << 2)) & 0xf;
+    }
+}
@@ -0,0 +1,84 @@
+package org.cs4j.core.collections;
+
+/**
+ * The default closed list of the search algorithms.
+ *
+ * The number of longs a state is packed into is known only after the domain packs the first state, so the list
+ * chooses the underlying table on the first insertion: a {@link SingleLongClosedList} for single-word states and a
+ * {@link MultiLongClosedList} otherwise.
+ *
+ * @param <E> The type of the stored nodes
+ */
+public final class PackedClosedList<E> implements ClosedList<E> {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 1024;
+
+    private final int expectedSize;
+    // Remains null until the first state is inserted
+    private ClosedList<E> table;
+
+    /**
+     * The constructor of the class
+     *
+     * @param expectedSize The number of states which are expected to be stored in the list
+     */
+    public PackedClosedList(int expectedSize) {
+        this.expectedSize = expectedSize;
+    }
+
+    /**
+     * A default constructor of the class
+     */
+    public PackedClosedList() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    @Override
+    public E get(PackedElement key) {
+        return (this.table == null) ? null : this.table.get(key);
+    }
+
+    @Override
+    public E get(long[] words) {
+        return (this.table == null) ? null : this.table.get(words);
+    }
+
+    @Override
+    public boolean containsKey(PackedElement key) {
+        return this.table != null && this.table.containsKey(key);
+    }
+
+    @Override
+    public E put(PackedElement key, E value) {
+        if (this.table == null) {
+            if (key.getLongsCount() == 1) {
+                this.table = new SingleLongClosedList<>(this.expectedSize);
+            } else {
+                this.table = new MultiLongClosedList<>(key.getLongsCount(), this.expectedSize);
+            }
+        }
+        return this.table.put(key, value);
+    }
+
+    @Override
+    public E remove(PackedElement key) {
+        return (this.table == null) ? null : this.table.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return (this.table == null) ? 0 : this.table.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        if (this.table != null) {
+            this.table.clear();
+        }
+    }
+}
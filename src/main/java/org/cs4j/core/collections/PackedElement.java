@@ -5,17 +5,26 @@ package org.cs4j.core.collections;
  *
  */
 public class PackedElement {
-    private long[] internal;
+    private final long[] internal;
+    // The hash is computed once (see hash(long[], int, int)) since the element is used as a key of the closed lists
+    private final int hash;
 
     public PackedElement(long internal) {
         this.internal = new long[]{internal};
+        this.hash = (int)PackedElement.mix(internal);
     }
 
     public PackedElement(long[] internal) {
         this.internal = new long[internal.length];
         System.arraycopy(internal, 0, this.internal, 0, internal.length);
+        this.hash = (int)PackedElement.hash(this.internal, 0, this.internal.length);
     }
 
+    /**
+     * NOTE: The returned array mustn't be modified (the hash of the element is cached)
+     *
+     * @return The packed words
+     */
     public long[] getInternal() {
         return this.internal;
     }
@@ -46,26 +55,74 @@ public class PackedElement {
         return toReturn;
     }
 
+    /**
+     * Scrambles the bits of a single packed word (the finalizer of MurmurHash3), such that states which differ in
+     * a few low bits only are spread over the whole range of the hash
+     *
+     * @param word The word to mix
+     *
+     * @return The mixed value
+     */
+    public static long mix(long word) {
+        word ^= word >>> 33;
+        word *= 0xff51afd7ed558ccdL;
+        word ^= word >>> 33;
+        word *= 0xc4ceb9fe1a85ec53L;
+        word ^= word >>> 33;
+        return word;
+    }
+
+    /**
+     * Calculates a hash of a packed state which is stored in a sub-range of a long array
+     *
+     * @param words The array that contains the words of the packed state
+     * @param offset The index of the first word of the state
+     * @param count The number of words the state consists of
+     *
+     * @return The calculated hash
+     */
+    public static long hash(long[] words, int offset, int count) {
+        if (count == 1) {
+            return PackedElement.mix(words[offset]);
+        }
+        long toReturn = count;
+        for (int i = offset; i < offset + count; ++i) {
+            toReturn = (toReturn ^ PackedElement.mix(words[i])) * 0x9e3779b97f4a7c15L;
+        }
+        return PackedElement.mix(toReturn);
+    }
+
+    /**
+     * NOTE: The value equals to (int)hash(getInternal(), 0, getLongsCount()), so the closed lists can use it instead
+     * of rehashing the words
+     */
     @Override
     public int hashCode() {
-        return (int)this.getLongsSum();
+        return this.hash;
     }
 
     @Override
     public boolean equals(Object object) {
-        try {
-            PackedElement other = (PackedElement)object;
-            if (other.internal.length != this.internal.length) {
-                return false;
-            }
-            for (int i = 0; i < this.internal.length; ++i) {
-                if (this.internal[i] != other.internal[i]) {
-                    return false;
-                }
-            }
+        if (this == object) {
             return true;
-        } catch (ClassCastException e) {
+        }
+        if (!(object instanceof PackedElement)) {
+            return false;
+        }
+        PackedElement other = (PackedElement)object;
+        // Different hashes can't be of equal elements - most of the unequal elements are filtered here
+        if (other.hash != this.hash || other.internal.length != this.internal.length) {
             return false;
         }
+        // Fast path for the most common case (most of the domains pack a state into a single long)
+        if (this.internal.length == 1) {
+            return this.internal[0] == other.internal[0];
+        }
+        for (int i = 0; i < this.internal.length; ++i) {
+            if (this.internal[i] != other.internal[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,222 @@
+package org.cs4j.core.collections;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A pattern database: a table of heuristic values indexed by the dense rank (0..N-1) of the abstract state.
+ *
+ * Two layouts of PDB files are supported:
+ *  1. Raw - the file contains the value of rank i at byte i (the TopSpin PDBs)
+ *  2. Indexed - the file contains (int rank, byte value) records, not necessarily ordered (the FifteenPuzzle PDBs)
+ *
+ * A table is stored either on the heap (see {@link ArrayPatternDatabase}) or in a memory-mapped file
+ * (see {@link MappedPatternDatabase}); the mapped tables aren't limited to 2GB and their pages are shared (through
+ * the page cache) by all the processes which map the same file.
+ *
+ * A table which was read can be compressed on the heap into 4 bits per entry (see {@link NibblePatternDatabase}) or
+ * into 1.6 bits per entry (see {@link Mod3PatternDatabase}).
+ */
+public abstract class PatternDatabase {
+
+    // The maximum size of a Java array (some VMs reserve a few header words in an array)
+    public static final long MAX_ARRAY_ENTRIES = Integer.MAX_VALUE - 8;
+
+    // The size of the buffer used for bulk reading of the PDB files
+    private static final int READ_BUFFER_SIZE = 1 << 22;
+    // The size of a single record of an indexed PDB file: int rank + byte value
+    private static final int INDEXED_RECORD_SIZE = 5;
+    // The suffix of the file that contains the raw version of an indexed PDB file
+    private static final String RAW_FILE_SUFFIX = ".raw";
+
+    /**
+     * @return The number of entries in the table
+     */
+    public abstract long getEntriesCount();
+
+    /**
+     * @param index The rank of the abstract state (must be between 0 and getEntriesCount() - 1)
+     *
+     * @return The heuristic value stored for the abstract state
+     */
+    public abstract int get(long index);
+
+    /**
+     * @return Whether the table can recover its values only given the values of the parent states (see
+     *         {@link #get(long, int)}), in which case get(index) returns only a partial information on the value
+     */
+    public boolean requiresParentValue() {
+        return false;
+    }
+
+    /**
+     * Returns the value of an abstract state given the value (in the same table) of the parent of the state
+     *
+     * The plain tables ignore the value of the parent; the compressed tables which store only a part of each value
+     * (see {@link Mod3PatternDatabase}) override this function
+     *
+     * @param index The rank of the abstract state (must be between 0 and getEntriesCount() - 1)
+     * @param parentValue The value of the parent state
+     *
+     * @return The heuristic value of the abstract state
+     */
+    public int get(long index, int parentValue) {
+        return this.get(index);
+    }
+
+    /**
+     * Reads a PDB which is stored in the raw layout
+     *
+     * @param fileName The name of the PDB file
+     * @param entriesCount The number of entries in the PDB
+     * @param mapped Whether to memory-map the file instead of reading it into the heap (tables which are too large
+     *               for a Java array are always mapped)
+     *
+     * @return The read PDB
+     *
+     * @throws IOException If something wrong occurred (e.g. the file is too short)
+     */
+    public static PatternDatabase readRaw(String fileName, long entriesCount, boolean mapped) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            if (file.length() < entriesCount) {
+                System.out.println("[ERROR] PDB " + fileName + " contains " + file.length() + " entries, " +
+                        "expected " + entriesCount);
+                throw new IOException("PDB file is too short: " + fileName);
+            }
+            if (mapped || entriesCount > PatternDatabase.MAX_ARRAY_ENTRIES) {
+                return new MappedPatternDatabase(file.getChannel(), entriesCount, FileChannel.MapMode.READ_ONLY);
+            }
+            byte[] values = new byte[(int)entriesCount];
+            ByteBuffer buffer = ByteBuffer.wrap(values);
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of PDB file: " + fileName);
+                }
+            }
+            return new ArrayPatternDatabase(values);
+        }
+    }
+
+    /**
+     * Creates (or truncates) a raw PDB file and maps it for writing (used by the PDB builders)
+     *
+     * @param fileName The name of the PDB file
+     * @param entriesCount The number of entries in the PDB
+     *
+     * @return The mapped PDB (its values should be set by put and flushed by force)
+     *
+     * @throws IOException If something wrong occurred
+     */
+    public static MappedPatternDatabase createRawMapped(String fileName, long entriesCount) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(0);
+            file.setLength(entriesCount);
+            return new MappedPatternDatabase(file.getChannel(), entriesCount, FileChannel.MapMode.READ_WRITE);
+        }
+    }
+
+    /**
+     * Reads a PDB which is stored in the indexed layout into the heap
+     *
+     * @param fileName The name of the PDB file
+     * @param entriesCount The number of entries in the PDB
+     *
+     * @return The read PDB
+     *
+     * @throws IOException If something wrong occurred (e.g. an invalid rank was found in the file)
+     */
+    public static PatternDatabase readIndexed(String fileName, long entriesCount) throws IOException {
+        if (entriesCount > PatternDatabase.MAX_ARRAY_ENTRIES) {
+            return PatternDatabase.readIndexedMapped(fileName, entriesCount);
+        }
+        byte[] values = new byte[(int)entriesCount];
+        PatternDatabase._readIndexedRecords(fileName, entriesCount, values, null);
+        return new ArrayPatternDatabase(values);
+    }
+
+    /**
+     * Memory-maps a PDB which is stored in the indexed layout
+     *
+     * Indexed files can't be mapped directly, so the PDB is converted once into a raw file (located near the
+     * original file, with a '.raw' suffix), which is mapped by this and any later call.
+     *
+     * @param fileName The name of the PDB file
+     * @param entriesCount The number of entries in the PDB
+     *
+     * @return The mapped PDB
+     *
+     * @throws IOException If something wrong occurred (e.g. an invalid rank was found in the file)
+     */
+    public static PatternDatabase readIndexedMapped(String fileName, long entriesCount) throws IOException {
+        File rawFile = new File(fileName + PatternDatabase.RAW_FILE_SUFFIX);
+        if (!rawFile.exists() || rawFile.lastModified() < new File(fileName).lastModified()) {
+            System.out.println("[INFO] Converting PDB " + fileName + " into " + rawFile.getPath());
+            // Write to a temporary file first, so that concurrent readers never see a partial table
+            File tmpFile = File.createTempFile(rawFile.getName(), ".tmp", rawFile.getAbsoluteFile().getParentFile());
+            try (RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw")) {
+                tmp.setLength(entriesCount);
+                MappedPatternDatabase converted =
+                        new MappedPatternDatabase(tmp.getChannel(), entriesCount, FileChannel.MapMode.READ_WRITE);
+                PatternDatabase._readIndexedRecords(fileName, entriesCount, null, converted);
+                converted.force();
+            }
+            Files.move(tmpFile.toPath(), rawFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return PatternDatabase.readRaw(rawFile.getPath(), entriesCount, true);
+    }
+
+    /**
+     * Reads all the records of an indexed PDB file (in bulks) and stores them either into the given array or into the
+     * given mapped table
+     */
+    private static void _readIndexedRecords(String fileName, long entriesCount,
+                                            byte[] array, MappedPatternDatabase mapped) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    PatternDatabase.READ_BUFFER_SIZE * PatternDatabase.INDEXED_RECORD_SIZE);
+            long read = 0;
+            while (read < entriesCount) {
+                buffer.clear();
+                long remainingBytes = (entriesCount - read) * PatternDatabase.INDEXED_RECORD_SIZE;
+                if (remainingBytes < buffer.capacity()) {
+                    buffer.limit((int)remainingBytes);
+                }
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        System.out.println("[ERROR] PDB " + fileName + " contains only " + read + " entries, " +
+                                "expected " + entriesCount);
+                        throw new IOException("Unexpected end of PDB file: " + fileName);
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    // Each permutation rank is stored as an (unsigned) int
+                    long hashValue = buffer.getInt() & 0xffffffffL;
+                    byte distance = buffer.get();
+                    if (hashValue >= entriesCount) {
+                        System.out.println("[ERROR] Invalid hash value found in PDB " + fileName +
+                                "(hash: " + hashValue + ", distance: " + distance + ")");
+                        throw new IOException();
+                    }
+                    if (array != null) {
+                        array[(int)hashValue] = distance;
+                    } else {
+                        mapped.put(hashValue, distance);
+                    }
+                    ++read;
+                }
+                System.out.print("\r[INFO] Read " + read + "/" + entriesCount + " values");
+            }
+            // Last new line
+            System.out.println();
+        }
+    }
+}
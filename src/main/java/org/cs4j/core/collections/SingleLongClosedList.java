@@ -0,0 +1,203 @@
+package org.cs4j.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * A closed list for domains whose states are packed into a single long.
+ *
+ * The list is an open addressing hash table (linear probing) that keeps the packed states in a primitive long array
+ * and the nodes in a parallel array - no wrapper object is allocated per stored state.
+ * An empty slot is marked by a null node, and removals are done by backward shifting (no tombstones are left).
+ *
+ * @param <E> The type of the stored nodes
+ */
+@SuppressWarnings("unchecked")
+public final class SingleLongClosedList<E> implements ClosedList<E> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * The constructor of the class
+     *
+     * @param expectedSize The number of states which are expected to be stored in the list
+     */
+    public SingleLongClosedList(int expectedSize) {
+        this._allocate(SingleLongClosedList._capacityFor(expectedSize));
+    }
+
+    /**
+     * A default constructor of the class
+     */
+    public SingleLongClosedList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of states which are expected to be stored in the table
+     *
+     * @return The smallest power of 2 that can hold the given number of states without resizing
+     */
+    private static int _capacityFor(int expectedSize) {
+        int capacity = 2;
+        while (capacity < MAX_CAPACITY && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void _allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int)(capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Finds the slot which contains the given key
+     *
+     * @param key The key to look for
+     *
+     * @return The index of the slot or -1 if the key isn't stored in the table
+     */
+    private int _find(long key) {
+        int slot = (int)PackedElement.mix(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * A version of {@link #get(PackedElement)} which works directly on the packed long
+     */
+    public E get(long key) {
+        int slot = this._find(key);
+        return (slot == -1) ? null : (E)this.values[slot];
+    }
+
+    /**
+     * A version of {@link #put(PackedElement, Object)} which works directly on the packed long
+     */
+    public E put(long key, E value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null nodes can't be stored in the closed list");
+        }
+        int slot = (int)PackedElement.mix(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                E previous = (E)this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.resizeThreshold) {
+            this._grow();
+        }
+        return null;
+    }
+
+    /**
+     * A version of {@link #remove(PackedElement)} which works directly on the packed long
+     */
+    public E remove(long key) {
+        int slot = this._find(key);
+        if (slot == -1) {
+            return null;
+        }
+        E removed = (E)this.values[slot];
+        // Shift back the following elements of the cluster, in order to keep all of them reachable
+        int gap = slot;
+        int current = (gap + 1) & this.mask;
+        while (this.values[current] != null) {
+            int ideal = (int)PackedElement.mix(this.keys[current]) & this.mask;
+            if (((current - ideal) & this.mask) >= ((current - gap) & this.mask)) {
+                this.keys[gap] = this.keys[current];
+                this.values[gap] = this.values[current];
+                gap = current;
+            }
+            current = (current + 1) & this.mask;
+        }
+        this.values[gap] = null;
+        --this.size;
+        return removed;
+    }
+
+    private void _grow() {
+        if (this.keys.length == MAX_CAPACITY) {
+            // Can't grow anymore - let the table fill up (always leaving a single empty slot to stop the probing)
+            if (this.size >= MAX_CAPACITY - 1) {
+                throw new IllegalStateException("The closed list reached its maximum capacity");
+            }
+            this.resizeThreshold = MAX_CAPACITY - 2;
+            return;
+        }
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this._allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != null) {
+                int slot = (int)PackedElement.mix(oldKeys[i]) & this.mask;
+                while (this.values[slot] != null) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public E get(PackedElement key) {
+        return this.get(key.getFirst());
+    }
+
+    @Override
+    public E get(long[] words) {
+        return this.get(words[0]);
+    }
+
+    @Override
+    public boolean containsKey(PackedElement key) {
+        return this._find(key.getFirst()) != -1;
+    }
+
+    @Override
+    public E put(PackedElement key, E value) {
+        return this.put(key.getFirst(), value);
+    }
+
+    @Override
+    public E remove(PackedElement key) {
+        return this.remove(key.getFirst());
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package org.cs4j.core.collections;
+
+/**
+ * A bounded transposition table for iterative deepening searches: keeps for each recorded (packed) state the lowest
+ * g value it was reached with during the current iteration, so a state which is reached again (in the same
+ * iteration) with a g value which isn't lower can be skipped - its subtree was (or is being) searched with at least
+ * the same remaining budget.
+ *
+ * The table is 2-way set associative: a state is kept in one of the two slots of its bucket. If both slots are
+ * occupied, the replaced slot is one which was recorded in a previous iteration (these are stale) or otherwise the
+ * one with the higher g value (which protects a smaller subtree). Starting an iteration invalidates all the entries
+ * in O(1), since each entry is stamped by the iteration which recorded it.
+ */
+public final class TranspositionTable {
+
+    private static final int WAYS = 2;
+
+    private final int wordsCount;
+    // The number of longs of a slot: the key, the g value (as raw bits) and the stamp of the iteration
+    private final int slotLength;
+    private final int bucketsMask;
+    // The slots of a bucket are adjacent (so a lookup usually reads a single cache line): the slots of bucket b start
+    // at entries[b*WAYS*slotLength]
+    private final long[] entries;
+    // A stamp of 0 marks an empty slot
+    private int currentIteration;
+
+    /**
+     * The constructor of the class
+     *
+     * @param capacity The maximum number of entries (rounded down to a power of 2, at least 2)
+     * @param wordsCount The number of longs each state is packed into
+     */
+    public TranspositionTable(int capacity, int wordsCount) {
+        if (capacity < TranspositionTable.WAYS || wordsCount < 1) {
+            System.out.println("[ERROR] Invalid transposition table (capacity: " + capacity +
+                    ", words: " + wordsCount + ")");
+            throw new IllegalArgumentException();
+        }
+        int bucketsCount = Integer.highestOneBit(capacity / TranspositionTable.WAYS);
+        this.wordsCount = wordsCount;
+        this.slotLength = wordsCount + 2;
+        this.bucketsMask = bucketsCount - 1;
+        this.entries = new long[bucketsCount * TranspositionTable.WAYS * this.slotLength];
+        // The slots are empty (and not current) even if no iteration was started
+        this.currentIteration = 1;
+    }
+
+    /**
+     * @return The number of entries the table can keep
+     */
+    public int getCapacity() {
+        return this.entries.length / this.slotLength;
+    }
+
+    /**
+     * Starts a new iteration: all the entries recorded so far become stale
+     */
+    public void startIteration() {
+        ++this.currentIteration;
+    }
+
+    private boolean _keyEquals(int slot, long[] words) {
+        for (int i = 0; i < this.wordsCount; ++i) {
+            if (this.entries[slot + i] != words[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double _getG(int slot) {
+        return Double.longBitsToDouble(this.entries[slot + this.wordsCount]);
+    }
+
+    private boolean _isCurrent(int slot) {
+        return this.entries[slot + this.wordsCount + 1] == this.currentIteration;
+    }
+
+    /**
+     * Looks up a state which is reached with the given g value, and records it if it should be searched
+     *
+     * @param words The packed state
+     * @param g The g value the state is reached with
+     *
+     * @return Whether the state should be searched (false if it was already reached with a g value which isn't
+     *         higher in the current iteration)
+     */
+    public boolean visit(long[] words, double g) {
+        int first = ((int) PackedElement.hash(words, 0, this.wordsCount) & this.bucketsMask) *
+                TranspositionTable.WAYS * this.slotLength;
+        int last = first + TranspositionTable.WAYS * this.slotLength;
+        int victim = -1;
+        for (int slot = first; slot < last; slot += this.slotLength) {
+            if (!this._isCurrent(slot)) {
+                // An empty or stale slot is the preferred victim
+                if (victim == -1 || this._isCurrent(victim)) {
+                    victim = slot;
+                }
+            } else if (this._keyEquals(slot, words)) {
+                if (this._getG(slot) <= g) {
+                    return false;
+                }
+                this.entries[slot + this.wordsCount] = Double.doubleToRawLongBits(g);
+                return true;
+            } else if (victim == -1 || (this._isCurrent(victim) && this._getG(slot) > this._getG(victim))) {
+                victim = slot;
+            }
+        }
+        System.arraycopy(words, 0, this.entries, victim, this.wordsCount);
+        this.entries[victim + this.wordsCount] = Double.doubleToRawLongBits(g);
+        this.entries[victim + this.wordsCount + 1] = this.currentIteration;
+        return true;
+    }
+}
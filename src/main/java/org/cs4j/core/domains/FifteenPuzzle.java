@@ -16,18 +16,22 @@
  */
 package org.cs4j.core.domains;
 
-import com.carrotsearch.hppc.LongByteHashMap;
+import org.cs4j.core.InPlaceSearchDomain;
+import org.cs4j.core.MovePruningSearchDomain;
+import org.cs4j.core.ReleasableSearchDomain;
+import org.cs4j.core.ReplicableSearchDomain;
 import org.cs4j.core.SearchDomain;
+import org.cs4j.core.UndoableSearchDomain;
+import org.cs4j.core.collections.HeuristicTableRegistry;
+import org.cs4j.core.collections.NibblePatternDatabase;
 import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.collections.PatternDatabase;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -37,7 +41,8 @@ import java.util.Map;
  *
  * @author Matthew Hatem
  */
-public final class FifteenPuzzle implements SearchDomain {
+public final class FifteenPuzzle implements ReplicableSearchDomain, InPlaceSearchDomain, UndoableSearchDomain,
+        MovePruningSearchDomain, ReleasableSearchDomain {
 
     private final int width = 4;
     private final int height = 4;
@@ -52,10 +57,14 @@ public final class FifteenPuzzle implements SearchDomain {
     private int mdUnit[][] = new int[this.tilesNumber][this.tilesNumber];
     // The pure difference in the Manhattan Distance when applying any kind of operator on any tile
     private int mdAddendsUnit[][][] = new int[this.tilesNumber][this.tilesNumber][this.tilesNumber];
+    // The cost of moving each tile (by the cost function, so the operators don't evaluate the function)
+    private double tileCosts[] = new double[this.tilesNumber];
     // The number of possible operators on any possible tile position
     private int operatorsCount[] = new int[tilesNumber];
     // The next tile we get after applying any possible operator on any tile
     private int operatorsNextTiles[][] = new int[tilesNumber][4];
+    // The direction of each operator (see MOVE_UP, ...)
+    private int operatorsTypes[][] = new int[tilesNumber][4];
     // The possible operators (each one is represented by the REACHED tile)
     private Operator possibleOperators[] = new Operator[this.tilesNumber];
 
@@ -76,25 +85,35 @@ public final class FifteenPuzzle implements SearchDomain {
 
     private HeuristicType heuristicType;
 
+    // Whether the PDBs are memory-mapped (from a raw copy of the PDB files) instead of being read into the heap
     private boolean pdbRemainsOnDisk;
 
-    // Used in case PDB remains cached on dist
-    private RandomAccessFile pdb7File;
-    private RandomAccessFile pdb8File;
+    /**
+     * The representation of a PDB in memory:
+     *  RAW - a byte per entry
+     *  NIBBLE - 4 bits per entry, which store (value - MD) / 2, where MD is the Manhattan distance of the tiles of the
+     *           pattern (the difference is always even, since moving a pattern tile changes its MD by 1, and it is
+     *           verified when the PDB is read)
+     *
+     * NOTE: The modulo-3 representation isn't supported since the additive PDBs aren't consistent (the value of a
+     *       state and of its parent may differ by more than 1)
+     */
+    private enum PDBEncoding {
+        RAW,
+        NIBBLE
+    }
 
-    // PDBs for 7-8 partitioning
-    private LongByteHashMap pdb7;
-    private LongByteHashMap pdb8;
+    // The encoding of each PDB of the partitioning (or a single encoding for all the PDBs)
+    private PDBEncoding[] pdbEncodings;
 
-    // Used in case PDB remains cached on dist
-    private RandomAccessFile pdb5_1File;
-    private RandomAccessFile pdb5_2File;
-    private RandomAccessFile pdb5_3File;
+    // PDBs for 7-8 partitioning (all the PDBs are shared through the HeuristicTableRegistry)
+    private PatternDatabase pdb7;
+    private PatternDatabase pdb8;
 
     // PDBs for 5-5-5 partitioning
-    private LongByteHashMap pdb5_1;
-    private LongByteHashMap pdb5_2;
-    private LongByteHashMap pdb5_3;
+    private PatternDatabase pdb5_1;
+    private PatternDatabase pdb5_2;
+    private PatternDatabase pdb5_3;
 
     private boolean useReflection;
     // Reflection via the diagonal
@@ -102,6 +121,56 @@ public final class FifteenPuzzle implements SearchDomain {
 
     private static final Map<String, Class> FifteenPuzzlePossibleParameters;
 
+    // The types of the operators (the directions of the moves of the blank): opposite moves sum to 3
+    private static final int MOVE_UP = 0;
+    private static final int MOVE_LEFT = 1;
+    private static final int MOVE_RIGHT = 2;
+    private static final int MOVE_DOWN = 3;
+    private static final int MOVE_TYPES_COUNT = 4;
+
+    // A move followed by the opposite move is redundant (there are no other redundant sequences of two moves)
+    private static final boolean[][] MOVE_PRUNING_TABLE = new boolean[FifteenPuzzle.MOVE_TYPES_COUNT][];
+
+    static {
+        for (int previous = 0; previous < FifteenPuzzle.MOVE_TYPES_COUNT; ++previous) {
+            FifteenPuzzle.MOVE_PRUNING_TABLE[previous] = new boolean[FifteenPuzzle.MOVE_TYPES_COUNT];
+            FifteenPuzzle.MOVE_PRUNING_TABLE[previous][FifteenPuzzle.MOVE_TYPES_COUNT - 1 - previous] = true;
+        }
+    }
+
+    /**
+     * A partitioning of the tiles into patterns, where each pattern is a sequence of tiles which is ranked in a
+     * single PDB (the blank isn't part of the rank)
+     */
+    private static final class Partitioning {
+        private final int[] firstTiles;
+        private final int[] lengths;
+        // The pattern of each tile (-1 for the blank) and the index of the tile in its pattern
+        private final int[] patternOfTile;
+        private final int[] indexInPattern;
+
+        private Partitioning(int[] firstTiles, int[] lengths, int tilesNumber) {
+            this.firstTiles = firstTiles;
+            this.lengths = lengths;
+            this.patternOfTile = new int[tilesNumber];
+            this.indexInPattern = new int[tilesNumber];
+            this.patternOfTile[0] = -1;
+            for (int pattern = 0; pattern < firstTiles.length; ++pattern) {
+                for (int i = 0; i < lengths[pattern]; ++i) {
+                    this.patternOfTile[firstTiles[pattern] + i] = pattern;
+                    this.indexInPattern[firstTiles[pattern] + i] = i;
+                }
+            }
+        }
+    }
+
+    private static final Partitioning PARTITIONING_78 = new Partitioning(new int[]{1, 8}, new int[]{7, 8}, 16);
+    private static final Partitioning PARTITIONING_555 =
+            new Partitioning(new int[]{1, 6, 11}, new int[]{5, 5, 5}, 16);
+
+    // RANK_FACTORS[k][i] is the weight of the i-th digit in the rank of a pattern of k tiles (see PermutationRanking)
+    private static final long[][] RANK_FACTORS = new long[9][];
+
     // Size of the PDB for 5 tiles
     private static final int TABLE_SIZE_PDB5 = 16 * 15 * 14 * 13 * 12;
     // Size of the PDB for the 7 first tiles
@@ -109,19 +178,19 @@ public final class FifteenPuzzle implements SearchDomain {
     // Size of the PDB for the 8 rest tiles
     private static final int TABLE_SIZE_PDB8 = 16 * 15 * 14 * 13 * 12 * 11 * 10 * 9;
 
-    // When reading some PDB create a map with the required size * PDB_ENTRIES_INCREASE
-    // (in order to disallow map copying)
-    private static final double PDB_ENTRIES_INCREASE = 1.1d;
-
     // Declare the parameters that can be tunes before running the search
     static
     {
         FifteenPuzzlePossibleParameters = new HashMap<>();
         FifteenPuzzlePossibleParameters.put("heuristic", String.class);
         FifteenPuzzlePossibleParameters.put("pdb-remains-on-disk", Boolean.class);
+        FifteenPuzzlePossibleParameters.put("pdb-encoding", String.class);
         FifteenPuzzlePossibleParameters.put("pdb-78-files", String.class);
         FifteenPuzzlePossibleParameters.put("pdb-555-files", String.class);
         FifteenPuzzlePossibleParameters.put("use-reflection", Boolean.class);
+        for (int k = 1; k < FifteenPuzzle.RANK_FACTORS.length; ++k) {
+            FifteenPuzzle.RANK_FACTORS[k] = PermutationRanking.rankFactors(16, k);
+        }
     }
 
     /**
@@ -171,6 +240,9 @@ public final class FifteenPuzzle implements SearchDomain {
      * Initializes the Manhattan distance heuristic table.
      */
     private void _initMD() {
+        for (int tile = 0; tile < this.tilesNumber; ++tile) {
+            this.tileCosts[tile] = this._getTileCost(tile);
+        }
 
         // First, calculate Manhattan distance between each pair of tiles
         for (int currentTile = 1; currentTile < this.tilesNumber; ++currentTile) {
@@ -240,18 +312,22 @@ public final class FifteenPuzzle implements SearchDomain {
             this.operatorsCount[i] = 0;
             // Move up
             if (i >= this.width) {
+                this.operatorsTypes[i][this.operatorsCount[i]] = FifteenPuzzle.MOVE_UP;
                 this.operatorsNextTiles[i][this.operatorsCount[i]++] = i - this.width;
             }
             // Move left
             if (i % this.width > 0) {
+                this.operatorsTypes[i][this.operatorsCount[i]] = FifteenPuzzle.MOVE_LEFT;
                 this.operatorsNextTiles[i][this.operatorsCount[i]++] = i - 1;
             }
             // Move right
             if (i % this.width < this.width - 1) {
+                this.operatorsTypes[i][this.operatorsCount[i]] = FifteenPuzzle.MOVE_RIGHT;
                 this.operatorsNextTiles[i][this.operatorsCount[i]++] = i + 1;
             }
             // Move down
             if (i < this.tilesNumber - this.width) {
+                this.operatorsTypes[i][this.operatorsCount[i]] = FifteenPuzzle.MOVE_DOWN;
                 this.operatorsNextTiles[i][this.operatorsCount[i]++] = i + this.width;
             }
             // In any case there cannot be more than 4 possible operators - so assert this
@@ -280,6 +356,8 @@ public final class FifteenPuzzle implements SearchDomain {
         this.pdb5_3 = null;
         // By default PDB is stored on memory ...
         this.pdbRemainsOnDisk = false;
+        // ... a byte per entry
+        this.pdbEncodings = new PDBEncoding[]{PDBEncoding.RAW};
     }
 
     @Override
@@ -386,9 +464,72 @@ public final class FifteenPuzzle implements SearchDomain {
             this.pdb7 = other.pdb7;
             this.pdb8 = other.pdb8;
             this.pdbRemainsOnDisk = other.pdbRemainsOnDisk;
+            this.pdbEncodings = other.pdbEncodings;
+            this._retainPDBs();
         }
     }
 
+    /**
+     * A constructor which is used by replicate(): all the data of the other instance is shared (it isn't modified
+     * after the initialization, so the instances can be used concurrently)
+     *
+     * @param other Instance to replicate
+     */
+    private FifteenPuzzle(FifteenPuzzle other) {
+        this.init = other.init;
+        this.md = other.md;
+        this.mdAddends = other.mdAddends;
+        this.mdUnit = other.mdUnit;
+        this.mdAddendsUnit = other.mdAddendsUnit;
+        this.tileCosts = other.tileCosts;
+        this.operatorsCount = other.operatorsCount;
+        this.operatorsNextTiles = other.operatorsNextTiles;
+        this.operatorsTypes = other.operatorsTypes;
+        this.possibleOperators = other.possibleOperators;
+        this.costFunction = other.costFunction;
+        this.heuristicType = other.heuristicType;
+        this.pdbRemainsOnDisk = other.pdbRemainsOnDisk;
+        this.pdbEncodings = other.pdbEncodings;
+        this.pdb7 = other.pdb7;
+        this.pdb8 = other.pdb8;
+        this.pdb5_1 = other.pdb5_1;
+        this.pdb5_2 = other.pdb5_2;
+        this.pdb5_3 = other.pdb5_3;
+        this.useReflection = other.useReflection;
+        this.reflectedIndexes = other.reflectedIndexes;
+        this._retainPDBs();
+    }
+
+    /**
+     * Adds references to the PDBs which are shared with another instance
+     */
+    private void _retainPDBs() {
+        HeuristicTableRegistry.retain(this.pdb7);
+        HeuristicTableRegistry.retain(this.pdb8);
+        HeuristicTableRegistry.retain(this.pdb5_1);
+        HeuristicTableRegistry.retain(this.pdb5_2);
+        HeuristicTableRegistry.retain(this.pdb5_3);
+    }
+
+    @Override
+    public void releaseHeuristicTables() {
+        HeuristicTableRegistry.release(this.pdb7);
+        HeuristicTableRegistry.release(this.pdb8);
+        HeuristicTableRegistry.release(this.pdb5_1);
+        HeuristicTableRegistry.release(this.pdb5_2);
+        HeuristicTableRegistry.release(this.pdb5_3);
+        this.pdb7 = null;
+        this.pdb8 = null;
+        this.pdb5_1 = null;
+        this.pdb5_2 = null;
+        this.pdb5_3 = null;
+    }
+
+    @Override
+    public SearchDomain replicate() {
+        return new FifteenPuzzle(this);
+    }
+
     /**
      * Computes the TOTAL Manhattan distance for the specified blank and tile configuration.
      *
@@ -407,56 +548,186 @@ public final class FifteenPuzzle implements SearchDomain {
             if (i == blank) {
                 continue;
             }
-            // The md array already contains the _getTileCost to moving the tile to the goal
-            sum += this.md[i][tiles[i]];
+            // The md array already contains the _getTileCost to moving the tile to the goal (both the arrays are
+            // indexed by the tile and then by its position, as in unpack)
+            if (function == COST_FUNCTION.UNIT) {
+                sum += this.mdUnit[tiles[i]][i];
+            } else {
+                sum += this.md[tiles[i]][i];
+            }
         }
         return sum;
     }
 
-    private double[] _computeHDNoMDFromDisk(TileState state) {
-       throw new NotImplementedException();
+    /**
+     * @return The partitioning of the tiles which is used by the current PDB heuristic
+     */
+    private Partitioning _getPartitioning() {
+        switch (this.heuristicType) {
+            case PDB78: {
+                return FifteenPuzzle.PARTITIONING_78;
+            }
+            case PDB555: {
+                return FifteenPuzzle.PARTITIONING_555;
+            }
+            default: {
+                throw new NotImplementedException();
+            }
+        }
     }
 
     /**
-     * This function is called in case the heuristic type is not Manhattan Distance
+     * @param pattern The index of the pattern in the current partitioning
      *
-     * @param state The state for which the values should be computed
-     *
-     * @return An array of the form {h, d}
+     * @return The PDB of the pattern
      */
-    private double[] _computeHDNoMD(TileState state) {
-        double h;
-        double d;
+    private PatternDatabase _getPatternPDB(int pattern) {
         switch (this.heuristicType) {
             case PDB78: {
-                h = this.pdb7.get(state.getHash7Index()) +
-                        this.pdb8.get(state.getHash8Index());
-                if (this.useReflection) {
-                    int hRef = this.pdb7.get(state.getHash7ReflectionIndex()) +
-                            this.pdb8.get(state.getHash8ReflectionIndex());
-                    h = Math.max(h, hRef);
-                }
-                d = h;
-                break;
+                return (pattern == 0) ? this.pdb7 : this.pdb8;
             }
             case PDB555: {
-                h = this.pdb5_1.get(state.getHash5_1Index()) +
-                        this.pdb5_2.get(state.getHash5_2Index()) +
-                        this.pdb5_3.get(state.getHash5_3Index());
-                if (this.useReflection) {
-                    int hRef = this.pdb5_1.get(state.getHash5_1ReflectIndex()) +
-                            this.pdb5_2.get(state.getHash5_2ReflectIndex()) +
-                            this.pdb5_3.get(state.getHash5_3ReflectIndex());
-                    h = Math.max(h, hRef);
-                }
-                d = h;
-                break;
+                return (pattern == 0) ? this.pdb5_1 : (pattern == 1) ? this.pdb5_2 : this.pdb5_3;
             }
             default: {
                 throw new NotImplementedException();
             }
         }
-        return new double[] {h, d};
+    }
+
+    /**
+     * @param state The state whose tiles positions are up to date
+     * @param firstTile The first tile of the pattern
+     * @param length The number of tiles in the pattern
+     * @param reflected Whether the pattern is a reflected one
+     *
+     * @return The Manhattan distance of the tiles of the pattern (in the space of the pattern)
+     */
+    private int _getPatternMD(TileState state, int firstTile, int length, boolean reflected) {
+        int md = 0;
+        for (int tile = firstTile; tile < firstTile + length; ++tile) {
+            int position = reflected ?
+                    this.reflectedIndexes[state.positionsOfTiles[this.reflectedIndexes[tile]]] :
+                    state.positionsOfTiles[tile];
+            md += this._computeManhattanDistance(position, tile);
+        }
+        return md;
+    }
+
+    /**
+     * Looks up the PDB value of a pattern (and decodes it if the PDB is compressed)
+     *
+     * @param state The state whose tiles positions are up to date
+     * @param partitioning The current partitioning
+     * @param pattern The index of the pattern in the partitioning
+     * @param rank The rank of the pattern
+     * @param reflected Whether the pattern is a reflected one
+     *
+     * @return The value of the pattern
+     */
+    private int _getPatternValue(TileState state, Partitioning partitioning, int pattern, long rank,
+                                 boolean reflected) {
+        PatternDatabase pdb = this._getPatternPDB(pattern);
+        if (pdb instanceof NibblePatternDatabase) {
+            return 2 * pdb.get(rank) +
+                    this._getPatternMD(state, partitioning.firstTiles[pattern], partitioning.lengths[pattern],
+                            reflected);
+        }
+        return pdb.get(rank);
+    }
+
+    /**
+     * Sums the cached PDB values of the given state into its h and d values
+     *
+     * @param state The state whose patternValues are up to date
+     */
+    private void _sumPatternValues(TileState state) {
+        int patternsCount = this._getPartitioning().firstTiles.length;
+        int h = 0;
+        for (int pattern = 0; pattern < patternsCount; ++pattern) {
+            h += state.patternValues[pattern];
+        }
+        if (this.useReflection) {
+            int hRef = 0;
+            for (int pattern = patternsCount; pattern < 2 * patternsCount; ++pattern) {
+                hRef += state.patternValues[pattern];
+            }
+            h = Math.max(h, hRef);
+        }
+        state.h = h;
+        state.d = h;
+    }
+
+    /**
+     * This function is called in case the heuristic type is not Manhattan Distance: it ranks all the patterns of the
+     * state (and the reflected ones, if reflection is used) and caches their ranks and PDB values in the state
+     *
+     * @param state The state for which the values should be computed
+     *
+     * @return An array of the form {h, d}
+     */
+    private double[] _computeHDNoMD(TileState state) {
+        Partitioning partitioning = this._getPartitioning();
+        int patternsCount = partitioning.firstTiles.length;
+        int slotsCount = this.useReflection ? 2 * patternsCount : patternsCount;
+        state.patternRanks = new long[slotsCount];
+        state.patternValues = new int[slotsCount];
+        for (int pattern = 0; pattern < patternsCount; ++pattern) {
+            int length = partitioning.lengths[pattern];
+            int firstTile = partitioning.firstTiles[pattern];
+            state.patternRanks[pattern] = state._getHashNIndex(length, firstTile);
+            state.patternValues[pattern] =
+                    this._getPatternValue(state, partitioning, pattern, state.patternRanks[pattern], false);
+            if (this.useReflection) {
+                state.patternRanks[patternsCount + pattern] = state._getHashNReflectionIndex(length, firstTile);
+                state.patternValues[patternsCount + pattern] = this._getPatternValue(state, partitioning, pattern,
+                        state.patternRanks[patternsCount + pattern], true);
+            }
+        }
+        this._sumPatternValues(state);
+        return new double[] {state.h, state.d};
+    }
+
+    /**
+     * Updates the cached rank and PDB value of a single pattern after one of its tiles was moved (the rest of the
+     * patterns aren't affected by the move, since the blank isn't part of the ranks)
+     *
+     * Only the digits of the moved tile and of the tiles of the same pattern which are located between the old and
+     * the new positions of the moved tile are changed, so the rank is updated in O(width) instead of O(k^2)
+     *
+     * @param state The state after the move (the tiles are already updated)
+     * @param partitioning The current partitioning
+     * @param slot The index of the pattern in the cached arrays of the state
+     * @param tile The moved tile (in the space of the pattern, i.e. reflected if the pattern is reflected)
+     * @param from The previous position of the tile (in the space of the pattern)
+     * @param to The new position of the tile (in the space of the pattern)
+     * @param reflected Whether the pattern is a reflected one
+     */
+    private void _updatePatternRank(TileState state, Partitioning partitioning, int slot,
+                                    int tile, int from, int to, boolean reflected) {
+        int pattern = partitioning.patternOfTile[tile];
+        int index = partitioning.indexInPattern[tile];
+        long[] factors = FifteenPuzzle.RANK_FACTORS[partitioning.lengths[pattern]];
+        long rank = state.patternRanks[slot];
+        // The moved tile now precedes (or follows) the tiles which are located between the two positions
+        int step = (to > from) ? 1 : -1;
+        int digitDelta = to - from;
+        for (int position = Math.min(from, to) + 1; position < Math.max(from, to); ++position) {
+            int other = reflected ?
+                    this.reflectedIndexes[state.tiles[this.reflectedIndexes[position]]] :
+                    state.tiles[position];
+            if (partitioning.patternOfTile[other] == pattern) {
+                int otherIndex = partitioning.indexInPattern[other];
+                if (otherIndex < index) {
+                    digitDelta -= step;
+                } else {
+                    rank += step * factors[otherIndex];
+                }
+            }
+        }
+        rank += digitDelta * factors[index];
+        state.patternRanks[slot] = rank;
+        state.patternValues[slot] = this._getPatternValue(state, partitioning, pattern, rank, reflected);
     }
 
     /**
@@ -477,9 +748,6 @@ public final class FifteenPuzzle implements SearchDomain {
                 break;
             }
             default: {
-                if (this.pdbRemainsOnDisk) {
-                    return this._computeHDNoMDFromDisk(state);
-                }
                 return this._computeHDNoMD(state);
             }
         }
@@ -533,24 +801,8 @@ public final class FifteenPuzzle implements SearchDomain {
      * @return The computed hash value
      */
     public long _getHashNIndex(int[] permutation) {
-        int actualLength = permutation.length - 1;
-        // initialize hash value to empty
-        long hash = 0;
-        // for each remaining position in permutation
-        for (int i = 0; i < actualLength + 1; ++i) {
-            // initially digit is value in permutation
-            int digit = permutation[i];
-            // for each previous element in permutation
-            for (int j = 0; j < i; ++j) {
-                // previous position contains smaller value - so decrement digit
-                if (permutation[j] < permutation[i]) {
-                    --digit;
-                }
-            }
-            // multiply digit by appropriate factor
-            hash = hash * (FifteenPuzzle.this.tilesNumber - i) + digit;
-        }
-        return hash / (FifteenPuzzle.this.tilesNumber - actualLength);
+        // The blank (the last element) isn't part of the rank
+        return PermutationRanking.rankPartial(permutation, 0, permutation.length - 1, this.tilesNumber);
     }
 
     @Override
@@ -603,9 +855,27 @@ public final class FifteenPuzzle implements SearchDomain {
     }
 
     @Override
-    public State copy(State s) {
-        TileState ts = (TileState) s;
-        TileState copy = new TileState();
+    public int getOperatorTypesCount() {
+        return FifteenPuzzle.MOVE_TYPES_COUNT;
+    }
+
+    @Override
+    public int getOperatorType(State state, int index) {
+        return this.operatorsTypes[((TileState) state).blank][index];
+    }
+
+    @Override
+    public boolean[][] getMovePruningTable() {
+        return FifteenPuzzle.MOVE_PRUNING_TABLE;
+    }
+
+    /**
+     * Copies a state into another state (the arrays of the target are reused if possible)
+     *
+     * @param ts The state to copy
+     * @param copy The state to overwrite
+     */
+    private void _copy(TileState ts, TileState copy) {
         // Copy the tiles
         System.arraycopy(ts.tiles, 0, copy.tiles, 0, ts.tiles.length);
         // Copy the positions of the tiles
@@ -614,6 +884,26 @@ public final class FifteenPuzzle implements SearchDomain {
         copy.blank = ts.blank;
         copy.h = ts.h;
         copy.d = ts.d;
+        copy.parent = null;
+        // The operators which were applied to the copied state can't be undone on the copy
+        copy.undoCount = 0;
+        // The cached PDB values (if any) are updated on the copy by applyOperator
+        if (ts.patternRanks == null) {
+            copy.patternRanks = null;
+            copy.patternValues = null;
+        } else if (copy.patternRanks == null || copy.patternRanks.length != ts.patternRanks.length) {
+            copy.patternRanks = ts.patternRanks.clone();
+            copy.patternValues = ts.patternValues.clone();
+        } else {
+            System.arraycopy(ts.patternRanks, 0, copy.patternRanks, 0, ts.patternRanks.length);
+            System.arraycopy(ts.patternValues, 0, copy.patternValues, 0, ts.patternValues.length);
+        }
+    }
+
+    @Override
+    public State copy(State s) {
+        TileState copy = new TileState();
+        this._copy((TileState) s, copy);
         return copy;
     }
 
@@ -643,7 +933,112 @@ public final class FifteenPuzzle implements SearchDomain {
     @Override
     public State applyOperator(State s, Operator op) {
         TileState ts = (TileState) copy(s);
+        this._move(ts, (FifteenPuzzleOperator) op);
+        return ts;
+    }
+
+    @Override
+    public State createScratchState() {
+        return new TileState();
+    }
+
+    @Override
+    public int getPackedLongsCount() {
+        return 1;
+    }
+
+    @Override
+    public void applyOperator(State state, Operator op, State child) {
+        TileState ts = (TileState) child;
+        this._copy((TileState) state, ts);
+        this._move(ts, (FifteenPuzzleOperator) op);
+    }
+
+    /**
+     * @param ts A state
+     *
+     * @return Whether the state caches the ranks of the patterns of the current partitioning and reflection (an
+     *         unpacked state doesn't, and neither does a state whose ranks were cached before reflection was switched)
+     */
+    private boolean _hasPatternRanks(TileState ts) {
+        return ts.patternRanks != null &&
+                ts.patternRanks.length == (this.useReflection ? 2 : 1) * this._getPartitioning().firstTiles.length;
+    }
+
+    /**
+     * @param partitioning The current partitioning
+     * @param tile A tile
+     *
+     * @return The index of the reflected pattern of the tile in the cached arrays of the states
+     */
+    private int _getReflectedSlot(Partitioning partitioning, int tile) {
+        return partitioning.firstTiles.length + partitioning.patternOfTile[this.reflectedIndexes[tile]];
+    }
+
+    @Override
+    public double applyInPlace(State state, Operator op) {
+        TileState ts = (TileState) state;
         FifteenPuzzleOperator fop = (FifteenPuzzleOperator) op;
+        int record = ts._addUndoRecord();
+        ts.undoBlanks[record] = ts.blank;
+        ts.undoH[record] = ts.h;
+        ts.undoD[record] = ts.d;
+        if (this.heuristicType != HeuristicType.MD) {
+            // The ranks are cached before the move, so the move changes (and the undo restores) only the slots of the
+            // moved tile
+            if (!this._hasPatternRanks(ts)) {
+                this._computeHDNoMD(ts);
+            }
+            Partitioning partitioning = this._getPartitioning();
+            int tile = ts.tiles[fop.value];
+            int slot = partitioning.patternOfTile[tile];
+            ts.undoRanks[2 * record] = ts.patternRanks[slot];
+            ts.undoValues[2 * record] = ts.patternValues[slot];
+            if (this.useReflection) {
+                int reflectedSlot = this._getReflectedSlot(partitioning, tile);
+                ts.undoRanks[2 * record + 1] = ts.patternRanks[reflectedSlot];
+                ts.undoValues[2 * record + 1] = ts.patternValues[reflectedSlot];
+            }
+        }
+        this._move(ts, fop);
+        // The operator computes its cost from the resulting state only
+        return fop.getCost(ts, null);
+    }
+
+    @Override
+    public void undo(State state) {
+        TileState ts = (TileState) state;
+        int record = --ts.undoCount;
+        int previousBlank = ts.undoBlanks[record];
+        // The moved tile is located at the previous position of the blank
+        int tile = ts.tiles[previousBlank];
+        ts.tiles[ts.blank] = tile;
+        ts.tiles[previousBlank] = 0;
+        ts.h = ts.undoH[record];
+        ts.d = ts.undoD[record];
+        if (this.heuristicType != HeuristicType.MD) {
+            ts.positionsOfTiles[tile] = ts.blank;
+            ts.positionsOfTiles[0] = previousBlank;
+            Partitioning partitioning = this._getPartitioning();
+            int slot = partitioning.patternOfTile[tile];
+            ts.patternRanks[slot] = ts.undoRanks[2 * record];
+            ts.patternValues[slot] = ts.undoValues[2 * record];
+            if (this.useReflection) {
+                int reflectedSlot = this._getReflectedSlot(partitioning, tile);
+                ts.patternRanks[reflectedSlot] = ts.undoRanks[2 * record + 1];
+                ts.patternValues[reflectedSlot] = ts.undoValues[2 * record + 1];
+            }
+        }
+        ts.blank = previousBlank;
+    }
+
+    /**
+     * Moves the blank of the given state (and updates the h and d values of the state)
+     *
+     * @param ts The state to change
+     * @param fop The operator to apply
+     */
+    private void _move(TileState ts, FifteenPuzzleOperator fop) {
         // Get the updated position of the blank
         int futureBlankPosition = fop.value;
         // Get the tile that is currently located at a position that will be converted to blank in the next step
@@ -661,17 +1056,44 @@ public final class FifteenPuzzle implements SearchDomain {
             ts.tiles[futureBlankPosition] = 0;
             ts.positionsOfTiles[currentTileAtFutureBlankPosition] = ts.blank;
             ts.positionsOfTiles[0] = futureBlankPosition;
+            int previousTilePosition = futureBlankPosition;
+            int newTilePosition = ts.blank;
             ts.blank = futureBlankPosition;
-            double[] computedHD = this._computeHDNoMD(ts);
-            ts.h = computedHD[0];
-            ts.d = computedHD[1];
+            if (!this._hasPatternRanks(ts)) {
+                // No cached ranks (e.g. an unpacked state) or reflection was switched after the ranks were cached
+                this._computeHDNoMD(ts);
+            } else {
+                // Only the pattern of the moved tile (and the reflected pattern of its reflection) is re-ranked
+                Partitioning partitioning = this._getPartitioning();
+                this._updatePatternRank(ts, partitioning, partitioning.patternOfTile[currentTileAtFutureBlankPosition],
+                        currentTileAtFutureBlankPosition, previousTilePosition, newTilePosition, false);
+                if (this.useReflection) {
+                    int reflectedTile = this.reflectedIndexes[currentTileAtFutureBlankPosition];
+                    this._updatePatternRank(ts, partitioning,
+                            this._getReflectedSlot(partitioning, currentTileAtFutureBlankPosition), reflectedTile,
+                            this.reflectedIndexes[previousTilePosition], this.reflectedIndexes[newTilePosition], true);
+                }
+                this._sumPatternValues(ts);
+            }
         }
-        return ts;
     }
 
     @Override
     public PackedElement pack(State s) {
-        TileState ts = (TileState) s;
+        return new PackedElement(this._packTiles((TileState) s));
+    }
+
+    @Override
+    public void pack(State state, long[] words) {
+        words[0] = this._packTiles((TileState) state);
+    }
+
+    /**
+     * @param ts The state to pack
+     *
+     * @return The tiles of the state, packed into a single long
+     */
+    private long _packTiles(TileState ts) {
         long result = 0;
         // TODO: Sounds that the value of blank is unnecessary
         assert ts.tiles[ts.blank] == 0;
@@ -681,7 +1103,7 @@ public final class FifteenPuzzle implements SearchDomain {
         for (int i = 0; i < this.tilesNumber; ++i) {
             result = (result << 4) | ts.tiles[i];
         }
-        return new PackedElement(result);
+        return result;
     }
 
     /**
@@ -717,8 +1139,30 @@ public final class FifteenPuzzle implements SearchDomain {
     @Override
     public State unpack(PackedElement packed) {
         assert packed.getLongsCount() == 1;
-        long firstPacked = packed.getFirst();
         TileState ts = new TileState();
+        this._unpack(packed.getFirst(), ts);
+        return ts;
+    }
+
+    @Override
+    public void unpack(long[] words, State state) {
+        TileState ts = (TileState) state;
+        ts.h = 0;
+        ts.d = 0;
+        ts.parent = null;
+        // The cached PDB values (if any) are recomputed from the tiles
+        ts.patternRanks = null;
+        ts.patternValues = null;
+        this._unpack(words[0], ts);
+    }
+
+    /**
+     * Unpacks the tiles into the given state and computes its h and d values
+     *
+     * @param firstPacked The packed tiles
+     * @param ts The state to fill (whose h and d values are 0)
+     */
+    private void _unpack(long firstPacked, TileState ts) {
         ts.blank = -1;
         // Start from end and go to start
         for (int i = this.tilesNumber - 1; i >= 0; --i) {
@@ -743,7 +1187,6 @@ public final class FifteenPuzzle implements SearchDomain {
             ts.h = computedHD[0];
             ts.d = computedHD[1];
         }
-        return ts;
     }
 
     /**
@@ -758,13 +1201,50 @@ public final class FifteenPuzzle implements SearchDomain {
         private double h;
         private double d;
 
+        // The ranks of the patterns of the state and their PDB values (only if a PDB heuristic is used): the reflected
+        // patterns (if reflection is used) follow the regular ones
+        private long[] patternRanks;
+        private int[] patternValues;
+
         private TileState parent = null;
 
+        // The records of the operators which were applied in place and weren't undone yet (see applyInPlace): the
+        // previous blank, h and d, and the previous ranks and PDB values of the two slots of the moved tile
+        private int undoCount;
+        private int[] undoBlanks;
+        private double[] undoH;
+        private double[] undoD;
+        private long[] undoRanks;
+        private int[] undoValues;
+
         /**
          * A default constructor (required for the {@see initialState()} function
          */
         private TileState() { }
 
+        /**
+         * Adds an undo record (the arrays of the records grow on demand)
+         *
+         * @return The index of the added record
+         */
+        private int _addUndoRecord() {
+            if (this.undoBlanks == null) {
+                this.undoBlanks = new int[64];
+                this.undoH = new double[64];
+                this.undoD = new double[64];
+                this.undoRanks = new long[2 * 64];
+                this.undoValues = new int[2 * 64];
+            } else if (this.undoCount == this.undoBlanks.length) {
+                int capacity = 2 * this.undoBlanks.length;
+                this.undoBlanks = Arrays.copyOf(this.undoBlanks, capacity);
+                this.undoH = Arrays.copyOf(this.undoH, capacity);
+                this.undoD = Arrays.copyOf(this.undoD, capacity);
+                this.undoRanks = Arrays.copyOf(this.undoRanks, 2 * capacity);
+                this.undoValues = Arrays.copyOf(this.undoValues, 2 * capacity);
+            }
+            return this.undoCount++;
+        }
+
         /**
          * A copy constructor
          *
@@ -782,20 +1262,17 @@ public final class FifteenPuzzle implements SearchDomain {
         }
 
         /**
-         * Creates a permutation array for computing hash indexes in the PDBs
+         * Computes the hash index of a pattern in the PDBs
          *
-         * @param permutationLengthNoBlank The length of the permutation array
-         *                                 (will be actually greater by 1 - for having the blank at the end)
-         * @param firstTileIndex The index of the first tile to create the permutation from
+         * @param permutationLengthNoBlank The number of tiles in the pattern
+         * @param firstTileIndex The index of the first tile of the pattern
          *                       (assumes each PDB is constructed of sequential tiles)
          * @return The computed index in the relevant PDB
          */
         private long _getHashNIndex(int permutationLengthNoBlank, int firstTileIndex) {
-            int[] permutation = new int[permutationLengthNoBlank + 1];
-            // The last element of the permutation array always contains the blank
-            permutation[permutationLengthNoBlank] = this.positionsOfTiles[0];
-            System.arraycopy(this.positionsOfTiles, firstTileIndex, permutation, 0, permutationLengthNoBlank);
-            return FifteenPuzzle.this._getHashNIndex(permutation);
+            // The positions of the pattern tiles are ranked in place (the blank isn't part of the rank)
+            return PermutationRanking.rankPartial(this.positionsOfTiles, firstTileIndex, permutationLengthNoBlank,
+                    FifteenPuzzle.this.tilesNumber);
         }
 
         /**
@@ -829,46 +1306,6 @@ public final class FifteenPuzzle implements SearchDomain {
             return FifteenPuzzle.this._getHashNIndex(permutation);
         }
 
-        private long getHash7Index() {
-            return this._getHashNIndex(7, 1);
-        }
-
-        private long getHash7ReflectionIndex() {
-            return this._getHashNReflectionIndex(7, 1);
-        }
-
-        private long getHash8Index() {
-            return this._getHashNIndex(8, 8);
-        }
-
-        private long getHash8ReflectionIndex() {
-            return this._getHashNReflectionIndex(8, 8);
-        }
-
-        private long getHash5_1Index() {
-            return this._getHashNIndex(5, 1);
-        }
-
-        private long getHash5_1ReflectIndex() {
-            return this._getHashNReflectionIndex(5, 1);
-        }
-
-        private long getHash5_2Index() {
-            return this._getHashNIndex(5, 6);
-        }
-
-        private long getHash5_2ReflectIndex() {
-            return this._getHashNReflectionIndex(5, 6);
-        }
-
-        private long getHash5_3Index() {
-            return this._getHashNIndex(5, 11);
-        }
-
-        private long getHash5_3ReflectIndex() {
-            return this._getHashNReflectionIndex(5, 11);
-        }
-
         @Override
         public boolean equals(Object object) {
             try {
@@ -957,95 +1394,115 @@ public final class FifteenPuzzle implements SearchDomain {
     }
 
     /**
-     * Read a permutation index from the DB
+     * Reads a single PDB table from the given file (or gets it from the registry if it was already read)
      *
-     * @param inputStream The DB of permutations
+     * @param pdbFileName The name of the PDB file
+     * @param permutationsCount The number of permutations assumed to be in the file
+     * @param firstTile The first tile of the pattern of the PDB
+     * @param length The number of tiles in the pattern of the PDB
+     * @param encoding The representation of the table in memory
      *
-     * @return The read index
+     * @return An initialized table that contains all the distances for the permutations
      *
      * @throws IOException If something wrong occurred
      */
-    private long _readIndex(DataInputStream inputStream) throws IOException {
-        return inputStream.readInt() & 0xffffffffl;
+    private PatternDatabase _readSinglePDB(final String pdbFileName, final int permutationsCount,
+                                           final int firstTile, final int length, final PDBEncoding encoding)
+            throws IOException {
+        final boolean mapped = this.pdbRemainsOnDisk;
+        String layout = (mapped ? "indexed-mapped-" : "indexed-") + permutationsCount;
+        if (encoding == PDBEncoding.NIBBLE) {
+            // The compressed values depend on the pattern
+            layout += "-nibble-" + firstTile + "-" + length;
+        }
+        return HeuristicTableRegistry.acquire(pdbFileName, layout,
+                new HeuristicTableRegistry.Loader<PatternDatabase>() {
+                    @Override
+                    public PatternDatabase load() throws IOException {
+                        System.out.println("[INFO] Reading PDB from " + pdbFileName);
+                        PatternDatabase toReturn;
+                        if (mapped) {
+                            toReturn = PatternDatabase.readIndexedMapped(pdbFileName, permutationsCount);
+                        } else {
+                            toReturn = PatternDatabase.readIndexed(pdbFileName, permutationsCount);
+                        }
+                        System.out.println("[INFO] Finished reading PDB from " + pdbFileName);
+                        if (encoding == PDBEncoding.NIBBLE) {
+                            toReturn = FifteenPuzzle.this._compressPDB(toReturn, firstTile, length);
+                        }
+                        return toReturn;
+                    }
+                });
     }
 
     /**
-     * Reads a single PDB table from the given file
+     * Compresses a PDB into 4 bits per entry, by storing (value - MD) / 2 for each pattern (see PDBEncoding)
      *
-     * @param pdbFileName The name of the PDB file
-     * @param permutationsCount The number of permutations assumed to be in the file
+     * @param pdb The table to compress
+     * @param firstTile The first tile of the pattern of the PDB
+     * @param length The number of tiles in the pattern of the PDB
      *
-     * @return An initialized map that contains all the distances for the permutations
+     * @return The compressed table
      *
-     * @throws IOException If something wrong occurred
+     * @throws IOException If a value of the PDB can't be represented in 4 bits (no value is silently changed)
      */
-    private LongByteHashMap _readSinglePDB(String pdbFileName, int permutationsCount) throws IOException {
-        LongByteHashMap toReturn = new LongByteHashMap((int)(permutationsCount * FifteenPuzzle.PDB_ENTRIES_INCREASE));
-        // Each permutation index is stored as int
-        DataInputStream inputStream = new DataInputStream(new FileInputStream(pdbFileName));
-        for (long i = 0; i < permutationsCount; ++i) {
-            // Debug
-            if (i % 999 == 0) {
-                System.out.print("\r[INFO] Read " + (i + 1) + "/" + permutationsCount + " values");
+    private NibblePatternDatabase _compressPDB(PatternDatabase pdb, int firstTile, int length) throws IOException {
+        NibblePatternDatabase compressed = new NibblePatternDatabase(pdb.getEntriesCount());
+        int[] positions = new int[length];
+        for (long rank = 0; rank < pdb.getEntriesCount(); ++rank) {
+            PermutationRanking.unrankPartial(rank, length, this.tilesNumber, positions);
+            int md = 0;
+            for (int i = 0; i < length; ++i) {
+                md += this._computeManhattanDistance(positions[i], firstTile + i);
             }
-            // First, read the hash value of the permutation
-            long hashValue = this._readIndex(inputStream);
-            // Now, read the distance
-            byte distance = inputStream.readByte();
-            if (hashValue >= permutationsCount) {
-                System.out.println("[ERROR] Invalid hash value found in PDB " + pdbFileName +
-                        "(hash: " + hashValue + ", distance: " + distance + ")");
-                throw new IOException();
+            int value = pdb.get(rank);
+            int delta = value - md;
+            if (delta < 0 || (delta & 1) != 0 || delta / 2 > NibblePatternDatabase.MAX_VALUE) {
+                throw new IOException("PDB value " + value + " (MD " + md + ", rank " + rank + ") can't be " +
+                        "stored in 4 bits");
             }
-            // Debug:
-            /*
-            if (toReturn.containsKey(hashValue)) {
-                System.out.println((int)toReturn.get(hashValue));
-                System.out.println((int) distance);
-                assert toReturn.get(hashValue) == distance;
-            } else {
-                toReturn.put(hashValue, distance);
-            }*/
-            toReturn.put(hashValue, distance);
+            compressed.put(rank, delta / 2);
         }
-        // Last new line
-        System.out.println();
-        return toReturn;
+        System.out.println("[INFO] Compressed the PDB of tiles " + firstTile + "-" + (firstTile + length - 1) +
+                " into 4 bits per entry");
+        return compressed;
     }
 
-    private void _readPDB78(String pdb7FileName, String pdb8FileName) throws IOException {
-        // Read PDB 7
-        if (this.pdbRemainsOnDisk) {
-            this.pdb7File = new RandomAccessFile(pdb7FileName, "r");
-        } else {
-            System.out.println("[INFO] Reading PDB from " + pdb7FileName);
-            this.pdb7 = this._readSinglePDB(pdb7FileName, FifteenPuzzle.TABLE_SIZE_PDB7);
-            System.out.println("[INFO] Finished reading PDB from " + pdb7FileName);
-        }
-        // Read PDB 8
-        if (this.pdbRemainsOnDisk) {
-            this.pdb8File = new RandomAccessFile(pdb8FileName, "r");
-        } else {
-            System.out.println("[INFO] Reading PDB from " + pdb8FileName);
-            this.pdb8 = this._readSinglePDB(pdb8FileName, FifteenPuzzle.TABLE_SIZE_PDB8);
-            System.out.println("[INFO] Finished reading PDB from " + pdb8FileName);
-        }
+    /**
+     * @param index The index of the PDB in the partitioning
+     *
+     * @return The encoding of the PDB
+     */
+    private PDBEncoding _getPDBEncoding(int index) {
+        // A single encoding applies to all the PDBs
+        return (this.pdbEncodings.length == 1) ? this.pdbEncodings[0] : this.pdbEncodings[index];
     }
 
+    private void _readPDB78(String pdb7FileName, String pdb8FileName) throws IOException {
+        PatternDatabase previous7 = this.pdb7;
+        PatternDatabase previous8 = this.pdb8;
+        this.pdb7 = this._readSinglePDB(pdb7FileName, FifteenPuzzle.TABLE_SIZE_PDB7, 1, 7, this._getPDBEncoding(0));
+        this.pdb8 = this._readSinglePDB(pdb8FileName, FifteenPuzzle.TABLE_SIZE_PDB8, 8, 8, this._getPDBEncoding(1));
+        // The previous PDBs (if any) are no longer used by this instance - they are released only after the new ones
+        // were acquired, so setting the same files again doesn't drop (and re-read) the tables
+        HeuristicTableRegistry.release(previous7);
+        HeuristicTableRegistry.release(previous8);
+    }
 
     private void _readPDB555(String pdb5_1FileName, String pdb5_2FileName, String pdb5_3FileName) throws IOException {
-        // Read PDB 5_1
-        System.out.println("[INFO] Reading PDB from " + pdb5_1FileName);
-        this.pdb5_1 = this._readSinglePDB(pdb5_1FileName, FifteenPuzzle.TABLE_SIZE_PDB5);
-        System.out.println("[INFO] Finished reading PDB from " + pdb5_1FileName);
-        // Read PDB 5_2
-        System.out.println("[INFO] Reading PDB from " + pdb5_2FileName);
-        this.pdb5_2 = this._readSinglePDB(pdb5_2FileName, FifteenPuzzle.TABLE_SIZE_PDB5);
-        System.out.println("[INFO] Finished reading PDB from " + pdb5_2FileName);
-        // Read PDB 5_3
-        System.out.println("[INFO] Reading PDB from " + pdb5_3FileName);
-        this.pdb5_3 = this._readSinglePDB(pdb5_3FileName, FifteenPuzzle.TABLE_SIZE_PDB5);
-        System.out.println("[INFO] Finished reading PDB from " + pdb5_3FileName);
+        PatternDatabase previous5_1 = this.pdb5_1;
+        PatternDatabase previous5_2 = this.pdb5_2;
+        PatternDatabase previous5_3 = this.pdb5_3;
+        this.pdb5_1 = this._readSinglePDB(pdb5_1FileName, FifteenPuzzle.TABLE_SIZE_PDB5, 1, 5,
+                this._getPDBEncoding(0));
+        this.pdb5_2 = this._readSinglePDB(pdb5_2FileName, FifteenPuzzle.TABLE_SIZE_PDB5, 6, 5,
+                this._getPDBEncoding(1));
+        this.pdb5_3 = this._readSinglePDB(pdb5_3FileName, FifteenPuzzle.TABLE_SIZE_PDB5, 11, 5,
+                this._getPDBEncoding(2));
+        // The previous PDBs (if any) are no longer used by this instance (released after the new ones were acquired)
+        HeuristicTableRegistry.release(previous5_1);
+        HeuristicTableRegistry.release(previous5_2);
+        HeuristicTableRegistry.release(previous5_3);
     }
 
     /**
@@ -1091,6 +1548,45 @@ public final class FifteenPuzzle implements SearchDomain {
                 this.pdbRemainsOnDisk = Boolean.parseBoolean(value);
                 break;
             }
+            case "pdb-encoding": {
+                if (this.heuristicType == HeuristicType.MD) {
+                    System.out.println("[ERROR] The type of the heuristic function must involve PDB");
+                    throw new IllegalArgumentException();
+                }
+                // Either a single encoding or an encoding for each PDB file (must be set before the files)
+                String[] split = value.trim().split(",");
+                int filesCount = (this.heuristicType == HeuristicType.PDB78) ? 2 : 3;
+                if (split.length != 1 && split.length != filesCount) {
+                    System.out.println("[ERROR] Invalid format for pdb-encoding: should be a single encoding or " +
+                            filesCount + " encodings separated by commas");
+                    throw new IllegalArgumentException();
+                }
+                PDBEncoding[] encodings = new PDBEncoding[split.length];
+                for (int i = 0; i < split.length; ++i) {
+                    switch (split[i].trim()) {
+                        case "raw": {
+                            encodings[i] = PDBEncoding.RAW;
+                            break;
+                        }
+                        case "nibble": {
+                            encodings[i] = PDBEncoding.NIBBLE;
+                            break;
+                        }
+                        case "mod3": {
+                            System.out.println("[ERROR] The mod3 encoding requires a consistent PDB, and the " +
+                                    "additive PDBs of FifteenPuzzle aren't consistent (use nibble)");
+                            throw new IllegalArgumentException();
+                        }
+                        default: {
+                            System.out.println("[ERROR] Illegal PDB encoding: " + split[i] +
+                                    " (should be raw or nibble)");
+                            throw new IllegalArgumentException();
+                        }
+                    }
+                }
+                this.pdbEncodings = encodings;
+                break;
+            }
             case "pdb-555-files": {
                 if (heuristicType != HeuristicType.PDB555) {
                     System.out.println("[ERROR] Heuristic type isn't pdb-555 - can't set pdb file");
@@ -1176,7 +1672,7 @@ public final class FifteenPuzzle implements SearchDomain {
             // All the operators have the same cost
             TileState ts = (TileState) s;
             int tile = ts.tiles[value];
-            return FifteenPuzzle.this._getTileCost(tile);
+            return FifteenPuzzle.this.tileCosts[tile];
         }
 
         @Override
@@ -1,17 +1,23 @@
 package org.cs4j.core.domains;
 
+import org.cs4j.core.InPlaceSearchDomain;
+import org.cs4j.core.ReleasableSearchDomain;
+import org.cs4j.core.ReplicableSearchDomain;
 import org.cs4j.core.SearchDomain;
+import org.cs4j.core.collections.HeuristicTableRegistry;
 import org.cs4j.core.collections.PackedElement;
 import org.cs4j.core.collections.Pair;
 import org.cs4j.core.collections.PairInt;
 
 import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,7 +25,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.Vector;
 
 /**
  * Represents some grid (not a full problem!!!, only the grid!!!
@@ -30,7 +35,7 @@ import java.util.Vector;
  * Note: The grid is 1-based
  * </p>
  */
-public class GridPathFinding implements SearchDomain {
+public class GridPathFinding implements InPlaceSearchDomain, ReplicableSearchDomain, ReleasableSearchDomain {
 
     private static final int NUM_MOVES = 4;
 
@@ -42,6 +47,9 @@ public class GridPathFinding implements SearchDomain {
 
     private static final int RANDOM_PIVOTS_INDEXES_COUNT = 5000000;
 
+    // The number of distances read at once from the pivots DB file
+    private static final int PIVOTS_DB_READ_BUFFER_SIZE = 1 << 16;
+
     // Declare the parameters that can be tunes before running the search
     static
     {
@@ -95,8 +103,14 @@ public class GridPathFinding implements SearchDomain {
     // Required for the TDH heuristic
     private int[] orderedPivots;
 
-    private Map<Integer, Map<Integer, Double>> distancesFromPivots;
+    // The distances of all the locations from all the pivots: the distances of each location are stored
+    // consecutively (distance of location l from pivot i is at [l * orderedPivots.length + i])
+    private float[] distancesFromPivots;
+    // The pivots DB which was read from a file (shared through the HeuristicTableRegistry), or null
+    private Pair<int[], float[]> pivotsDB;
 
+    // The operators are immutable, so a single instance of each one is shared by all the states
+    private GridPathFindingOperator[] operators;
     private GridPathFindingOperator[] reverseOperators;
 
     // The cost of the optimal solution
@@ -308,6 +322,10 @@ public class GridPathFinding implements SearchDomain {
         // 8 is the maximum count of Vacuum Robot operators
         // (4 for regular moves and more 4 for diagonals)
         this.reverseOperators = new GridPathFindingOperator[8];
+        this.operators = new GridPathFindingOperator[this.map.possibleMovesCount];
+        for (int i = 0; i < this.map.possibleMovesCount; i++) {
+            this.operators[i] = new GridPathFindingOperator(i);
+        }
         int reversedMovesCount = 0;
         // Go over all the possible moves
         for (int i = 0; i < this.map.possibleMovesCount; i++) {
@@ -319,7 +337,7 @@ public class GridPathFinding implements SearchDomain {
                     continue;
                 }
                 // Define operator j to be reverse of operator i
-                this.reverseOperators[i] = new GridPathFindingOperator(j);
+                this.reverseOperators[i] = this.operators[j];
                 // Count the number of found 'reverse pairs'
                 ++reversedMovesCount;
                 break;
@@ -721,14 +739,57 @@ public class GridPathFinding implements SearchDomain {
 
         this.heavy = other.heavy;
         this.agentLocationBitMask = other.agentLocationBitMask;
+        this.operators = other.operators;
+        this.reverseOperators = other.reverseOperators;
+
+        this.heuristicType = other.heuristicType;
+        this.pivotsCount = other.pivotsCount;
+        this.orderedPivots = other.orderedPivots;
+        this.distancesFromPivots = other.distancesFromPivots;
+        this.pivotsDB = other.pivotsDB;
+        HeuristicTableRegistry.retain(this.pivotsDB);
+        this.randomPivotsCount = other.randomPivotsCount;
+        this.randomPivotsIndexes = other.randomPivotsIndexes;
+    }
+
+    /**
+     * A constructor which is used by replicate(): all the data of the other problem is shared (it isn't modified
+     * after the initialization, so the instances can be used concurrently)
+     *
+     * @param other The GridPathFinding problem to replicate
+     */
+    private GridPathFinding(GridPathFinding other) {
+        this.startX = other.startX;
+        this.startY = other.startY;
+        this.heavy = other.heavy;
+        this.agentLocationBitMask = other.agentLocationBitMask;
+        this.map = other.map;
+        this.goals = other.goals;
+        this.goalsPairs = other.goalsPairs;
+        this.operators = other.operators;
         this.reverseOperators = other.reverseOperators;
 
         this.heuristicType = other.heuristicType;
         this.pivotsCount = other.pivotsCount;
         this.orderedPivots = other.orderedPivots;
         this.distancesFromPivots = other.distancesFromPivots;
+        this.pivotsDB = other.pivotsDB;
+        HeuristicTableRegistry.retain(this.pivotsDB);
         this.randomPivotsCount = other.randomPivotsCount;
         this.randomPivotsIndexes = other.randomPivotsIndexes;
+
+        this.optimalSolutionCost = other.optimalSolutionCost;
+    }
+
+    @Override
+    public void releaseHeuristicTables() {
+        HeuristicTableRegistry.release(this.pivotsDB);
+        this.pivotsDB = null;
+    }
+
+    @Override
+    public SearchDomain replicate() {
+        return new GridPathFinding(this);
     }
 
     /**
@@ -753,12 +814,12 @@ public class GridPathFinding implements SearchDomain {
      * @return The computed heuristic value or -1 in case one of the distances is unreachable or 0 and failIf0 is true
      */
     private double _computeDHForSinglePivot(int startLocation, int pivotIndex, int goalLocation, boolean failIf0) {
-        int currentPivot = this.orderedPivots[pivotIndex];
-        double distanceFromAgentToPivot = this.distancesFromPivots.get(currentPivot).get(startLocation);
+        int pivotsStride = this.orderedPivots.length;
+        double distanceFromAgentToPivot = this.distancesFromPivots[startLocation * pivotsStride + pivotIndex];
         if ((failIf0 && distanceFromAgentToPivot == 0) || distanceFromAgentToPivot < 0) {
             return -1;
         }
-        double distanceFromPivotToGoal = this.distancesFromPivots.get(currentPivot).get(goalLocation);
+        double distanceFromPivotToGoal = this.distancesFromPivots[goalLocation * pivotsStride + pivotIndex];
         if ((failIf0 && distanceFromPivotToGoal == 0) || distanceFromPivotToGoal < 0) {
             return -1;
         }
@@ -776,42 +837,51 @@ public class GridPathFinding implements SearchDomain {
     /**
      * Compute the heuristic value of a given state
      *
+     * NOTE: The values are stored directly in the state (no array is allocated, since the function is called for
+     *       each generated state)
+     *
      * @param s The state whose heuristic value should be computed
-     * @return The computed value
      */
-    private double[] computeHD(GridPathFindingState s) {
+    private void computeHD(GridPathFindingState s) {
         assert this.goalsPairs.size() == 1;
         // Compute also the Manhattan Distance
-        int md = Utils.calcManhattanDistance(
-                this.map.getPosition(s.agentLocation),
-                // TODO: Deals with a single goal only!
-                this.goalsPairs.get(0));
+        // TODO: Deals with a single goal only!
+        PairInt goal = this.goalsPairs.get(0);
+        int md = Math.abs(s.agentLocation % this.map.mapWidth - goal.first) +
+                Math.abs(s.agentLocation / this.map.mapWidth - goal.second);
         int currentGoal = this.goals.get(0);
         double maxDistance;
 
         switch (this.heuristicType) {
             // A simple Manhattan distance
             case MD: {
-                return new double[]{md, md};
+                s.h = md;
+                s.d = md;
+                return;
             }
             // A simple DH heuristic, but, choose max from DH and MD
             case DH_FURTHEST: {
                 maxDistance = 0.0d;
+                // The distances of a location from all the pivots are adjacent - so just scan both ranges
+                int agentBase = s.agentLocation * this.orderedPivots.length;
+                int goalBase = currentGoal * this.orderedPivots.length;
                 for (int i = 0; i < this.pivotsCount; ++i) {
-                    // Compute the heuristic value for this pivot, don't return -1 if the distance from one of the
-                    // pivots is 0
-                    double diff = this._computeDHForSinglePivot(
-                            s.agentLocation,
-                            this.orderedPivots[i],
-                            currentGoal,
-                            false);
+                    float distanceFromAgentToPivot = this.distancesFromPivots[agentBase + i];
+                    float distanceFromPivotToGoal = this.distancesFromPivots[goalBase + i];
+                    // Ignore pivots that are unreachable from start or from goal
+                    if (distanceFromAgentToPivot < 0 || distanceFromPivotToGoal < 0) {
+                        continue;
+                    }
+                    double diff = Math.abs(distanceFromAgentToPivot - distanceFromPivotToGoal);
                     if (diff > maxDistance) {
                         maxDistance = diff;
                     }
                 }
                 // Take the maximum value (chose from MD and DH)
                 double maxValue = Math.max(maxDistance, md);
-                return new double[]{maxValue, maxValue};
+                s.h = maxValue;
+                s.d = maxValue;
+                return;
             }
             // Take the average between DH (no max with MD) and MD; if DH == 0 => Take only MD
             case DH_MD_AVERAGE_MD_IF_DH_IS_0: {
@@ -831,9 +901,13 @@ public class GridPathFinding implements SearchDomain {
                 // If DH is greater than 0 => return the average, otherwise, return only MD
                 if (maxDistance > 0) {
                     double val = (md + maxDistance) / 2;
-                    return new double[]{val, val};
+                    s.h = val;
+                    s.d = val;
+                    return;
                 } else {
-                    return new double[]{md, md};
+                    s.h = md;
+                    s.d = md;
+                    return;
                 }
             }
             case DH_RANDOM_PIVOT: {
@@ -845,7 +919,9 @@ public class GridPathFinding implements SearchDomain {
                         false);
                 // Take the maximum value (chose from MD and DH)
                 double maxValue = Math.max(diff, md);
-                return new double[]{maxValue, maxValue};
+                s.h = maxValue;
+                s.d = maxValue;
+                return;
             }
             case DH_RANDOM_PIVOTS: {
                 maxDistance = 0.0d;
@@ -871,11 +947,15 @@ public class GridPathFinding implements SearchDomain {
                 }
                 // Take the maximum value (chose from MD and DH)
                 double maxValue = Math.max(maxDistance, md);
-                return new double[]{maxValue, maxValue};
+                s.h = maxValue;
+                s.d = maxValue;
+                return;
             }
             case RANDOM_DH_MD: {
                 if (this.pack(s).getLongsSum() % 2 == 0) {
-                    return new double[]{md, md};
+                    s.h = md;
+                    s.d = md;
+                    return;
                 }
                 // The pivot index is calculated using the packed value (takes the first long only ...)
                 double diff = this._computeDHForSinglePivot(
@@ -883,10 +963,13 @@ public class GridPathFinding implements SearchDomain {
                         (int)(this.pack(s).getLongsSum() % this.pivotsCount),
                         currentGoal,
                         false);
-                return new double[] {diff, diff};
+                s.h = diff;
+                s.d = diff;
+                return;
             }
         }
-        return new double[]{0, 0};
+        s.h = 0;
+        s.d = 0;
     }
 
     @Override
@@ -924,8 +1007,10 @@ public class GridPathFinding implements SearchDomain {
         // The depth of the search
         private int depth;
 
-        // All the possible operators
+        // All the possible operators (the first opsCount entries; the array is reused when the state is overwritten)
         private GridPathFindingOperator[] ops = null;
+        // -1 means that the operators haven't been initialized yet
+        private int opsCount = -1;
 
         private GridPathFindingState parent = null;
 
@@ -969,9 +1054,7 @@ public class GridPathFinding implements SearchDomain {
          * An auxiliary function for calculating the h and d values of the current state
          */
         private void computeHD() {
-            double[] p = GridPathFinding.this.computeHD(this);
-            this.h = p[0];
-            this.d = p[1];
+            GridPathFinding.this.computeHD(this);
         }
 
         @Override
@@ -1110,31 +1193,66 @@ public class GridPathFinding implements SearchDomain {
      *
      * @param pivotsPDBFile The input file which contains the pivots
      *
-     * @return The created map of pivots : pivot => map : location => distance
+     * @return The pivots and the distances of all the locations from them (see distancesFromPivots for the layout)
      *
      * @throws IOException In something wrong occurred
      */
-    private Pair<int[], Map<Integer, Map<Integer, Double>>> _readPivotsDB(String pivotsPDBFile) throws IOException {
+    private Pair<int[], float[]> _readPivotsDB(String pivotsPDBFile) throws IOException {
         System.out.println("[INFO] Reading pivots DB from " + pivotsPDBFile);
-        DataInputStream inputStream = new DataInputStream(new FileInputStream(pivotsPDBFile));
-        // First, read count of pivots
-        int pivotsCount = inputStream.readInt();
-        // Next read the pivots
-        int[] pivots = new int[pivotsCount];
-        for (int i = 0; i < pivotsCount; ++i) {
-            pivots[i] = inputStream.readInt();
+        try (FileChannel channel = new FileInputStream(pivotsPDBFile).getChannel()) {
+            // First, read count of pivots
+            ByteBuffer header = ByteBuffer.allocate(Integer.SIZE / Byte.SIZE);
+            this._readFully(channel, header, pivotsPDBFile);
+            int pivotsCount = header.getInt();
+            if (pivotsCount <= 0 || (long)pivotsCount * this.map.mapSize > Integer.MAX_VALUE) {
+                System.out.println("[ERROR] Invalid pivots count: " + pivotsCount);
+                throw new IOException();
+            }
+            // Next read the pivots
+            int[] pivots = new int[pivotsCount];
+            ByteBuffer pivotsBuffer = ByteBuffer.allocate(pivotsCount * Integer.SIZE / Byte.SIZE);
+            this._readFully(channel, pivotsBuffer, pivotsPDBFile);
+            pivotsBuffer.asIntBuffer().get(pivots);
+            // Finally, read the distances (the file contains all the distances of a pivot after the other, so
+            // transpose them while reading)
+            float[] distances = new float[this.map.mapSize * pivotsCount];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    GridPathFinding.PIVOTS_DB_READ_BUFFER_SIZE * Double.SIZE / Byte.SIZE);
+            for (int pivotIndex = 0; pivotIndex < pivotsCount; ++pivotIndex) {
+                int location = 0;
+                while (location < this.map.mapSize) {
+                    buffer.clear();
+                    int toRead = Math.min(this.map.mapSize - location, GridPathFinding.PIVOTS_DB_READ_BUFFER_SIZE);
+                    buffer.limit(toRead * Double.SIZE / Byte.SIZE);
+                    this._readFully(channel, buffer, pivotsPDBFile);
+                    DoubleBuffer read = buffer.asDoubleBuffer();
+                    while (read.hasRemaining()) {
+                        distances[location++ * pivotsCount + pivotIndex] = (float)read.get();
+                    }
+                }
+            }
+            System.out.println("[INFO] Finished reading pivots DB from " + pivotsPDBFile);
+            return new Pair<>(pivots, distances);
         }
-        Map<Integer, Map<Integer, Double>> distancesMap = new HashMap<>();
-        // Finally, read the distances
-        for (int pivot : pivots) {
-            Map<Integer, Double> currentDistancesMap = new HashMap<>();
-            for (int i = 0; i < this.map.mapSize; ++i) {
-                currentDistancesMap.put(i, inputStream.readDouble());
+    }
+
+    /**
+     * Fills the remaining part of the given buffer from the channel and flips the buffer
+     *
+     * @param channel The channel to read from
+     * @param buffer The buffer to fill
+     * @param fileName The name of the read file (for the error message)
+     *
+     * @throws IOException If the file ended before the buffer was filled
+     */
+    private void _readFully(FileChannel channel, ByteBuffer buffer, String fileName) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                System.out.println("[ERROR] Unexpected end of pivots DB file " + fileName);
+                throw new IOException();
             }
-            distancesMap.put(pivot, currentDistancesMap);
         }
-        System.out.println("[INFO] Finished reading pivots DB from " + pivotsPDBFile);
-        return new Pair<>(pivots, distancesMap);
+        buffer.flip();
     }
 
     @Override
@@ -1205,7 +1323,18 @@ public class GridPathFinding implements SearchDomain {
             }
             case "pivots-distances-db-file": {
                 try {
-                    Pair<int[], Map<Integer, Map<Integer, Double>>> readData = this._readPivotsDB(value);
+                    final String pivotsPDBFile = value;
+                    Pair<int[], float[]> readData = HeuristicTableRegistry.acquire(pivotsPDBFile,
+                            "pivots-" + this.map.mapSize,
+                            new HeuristicTableRegistry.Loader<Pair<int[], float[]>>() {
+                                @Override
+                                public Pair<int[], float[]> load() throws IOException {
+                                    return GridPathFinding.this._readPivotsDB(pivotsPDBFile);
+                                }
+                            });
+                    // The previous pivots DB (if any) is no longer used by this instance
+                    HeuristicTableRegistry.release(this.pivotsDB);
+                    this.pivotsDB = readData;
                     this.orderedPivots = readData.getKey();
                     this.distancesFromPivots = readData.getValue();
                     // Debug:
@@ -1316,9 +1445,7 @@ public class GridPathFinding implements SearchDomain {
         GridPathFindingState state = new GridPathFindingState();
         state.agentLocation = this.map.getLocationIndex(this.startX, this.startY);
         // Compute the initial mapHeight and d values and fill the state with that values
-        double hd[] = this.computeHD(state);
-        state.h = hd[0];
-        state.d = hd[1];
+        this.computeHD(state);
         // System.out.println(this.dumpState(state));
         // Return the created state
         return state;
@@ -1327,7 +1454,13 @@ public class GridPathFinding implements SearchDomain {
     @Override
     public boolean isGoal(State state) {
         GridPathFindingState grs = (GridPathFindingState)state;
-        return this.goals.contains(grs.agentLocation);
+        // Avoid boxing the location (called for each expanded state)
+        for (int i = 0; i < this.goals.size(); ++i) {
+            if (this.goals.get(i) == grs.agentLocation) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -1336,31 +1469,31 @@ public class GridPathFinding implements SearchDomain {
      * @param state The state whose operators should be initialized
      */
     private void _initOps(GridPathFindingState state) {
-        // An empty vector of operators
-        Vector<GridPathFindingOperator> possibleOperators = new Vector<>();
+        if (state.ops == null) {
+            state.ops = new GridPathFindingOperator[GridPathFinding.NUM_MOVES];
+        }
+        state.opsCount = 0;
         // Go ovr all the possible moves
         for (int i = 0; i < GridPathFinding.NUM_MOVES; ++i) {
             if (this._isValidMove(state.agentLocation, this.map.possibleMoves[i])) {
-                possibleOperators.add(new GridPathFindingOperator(i));
+                state.ops[state.opsCount++] = this.operators[i];
             }
         }
-        // Finally, create the possible operators array
-        state.ops = possibleOperators.toArray(new GridPathFindingOperator[possibleOperators.size()]);
     }
 
     @Override
     public int getNumOperators(State state) {
         GridPathFindingState grs = (GridPathFindingState) state;
-        if (grs.ops == null) {
+        if (grs.opsCount == -1) {
             this._initOps(grs);
         }
-        return grs.ops.length;
+        return grs.opsCount;
     }
 
     @Override
     public Operator getOperator(State state, int index) {
         GridPathFindingState grs = (GridPathFindingState)state;
-        if (grs.ops == null) {
+        if (grs.opsCount == -1) {
             this._initOps(grs);
         }
         return grs.ops[index];
@@ -1398,7 +1531,7 @@ public class GridPathFinding implements SearchDomain {
      * @param dst The destination state which is filled from the unpacked value
      */
     private void _unpackLite(long packed, GridPathFindingState dst) {
-        dst.ops = null;
+        dst.opsCount = -1;
         // Finally, unpack the location of the robot
         dst.agentLocation = (int) (packed & this.agentLocationBitMask);
     }
@@ -1412,9 +1545,7 @@ public class GridPathFinding implements SearchDomain {
     private void unpack(long packed, GridPathFindingState dst) {
         this._unpackLite(packed, dst);
         // Compute the heuristic values
-        double hd[] = this.computeHD(dst);
-        dst.h = hd[0];
-        dst.d = hd[1];
+        this.computeHD(dst);
     }
     /**
      * Unpacks the Vacuum Robot state from a long number
@@ -1441,7 +1572,7 @@ public class GridPathFinding implements SearchDomain {
         GridPathFindingState grs = (GridPathFindingState)copy(s);
         GridPathFindingOperator o = (GridPathFindingOperator)op;
 
-        grs.ops = null; // reset operators
+        grs.opsCount = -1; // reset operators
 
         // Assure the type of the operator is actually a move
         if (o.type < 0 || o.type > 3) {
@@ -1453,9 +1584,7 @@ public class GridPathFinding implements SearchDomain {
 
         grs.depth++;
 
-        double p[] = this.computeHD(grs);
-        grs.h = p[0];
-        grs.d = p[1];
+        this.computeHD(grs);
         grs.parent = s;
 
         //dumpState(s);
@@ -1463,6 +1592,39 @@ public class GridPathFinding implements SearchDomain {
         return grs;
     }
 
+    @Override
+    public GridPathFindingState createScratchState() {
+        return new GridPathFindingState();
+    }
+
+    @Override
+    public int getPackedLongsCount() {
+        return 1;
+    }
+
+    @Override
+    public void applyOperator(State state, Operator op, State child) {
+        GridPathFindingState s = (GridPathFindingState)state;
+        GridPathFindingState grs = (GridPathFindingState)child;
+        GridPathFindingOperator o = (GridPathFindingOperator)op;
+        grs.opsCount = -1; // reset operators
+        grs.agentLocation = s.agentLocation + this.map.possibleMoves[o.type].delta;
+        grs.depth = s.depth + 1;
+        // The parent will be overwritten soon, so it isn't kept
+        grs.parent = null;
+        this.computeHD(grs);
+    }
+
+    @Override
+    public void pack(State state, long[] words) {
+        words[0] = ((GridPathFindingState)state).agentLocation & this.agentLocationBitMask;
+    }
+
+    @Override
+    public void unpack(long[] words, State state) {
+        this.unpack(words[0], (GridPathFindingState)state);
+    }
+
     private final class GridPathFindingOperator implements Operator {
         // UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3
         public static final int NOP = -1;
@@ -1,7 +1,12 @@
 package org.cs4j.core.domains;
 
-import org.cs4j.core.SearchDomain;
+import org.cs4j.core.InPlaceSearchDomain;
+import org.cs4j.core.MovePruningSearchDomain;
+import org.cs4j.core.ReleasableSearchDomain;
+import org.cs4j.core.UndoableSearchDomain;
+import org.cs4j.core.collections.HeuristicTableRegistry;
 import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.collections.PatternDatabase;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -15,13 +20,26 @@ import java.util.Map;
  * The pancake problem is a famous search problem where the objective is to sort a sequence of
  * objects (pancakes) through a minimal number of prefix reversals (flips).
  */
-public class Pancakes implements SearchDomain {
+public class Pancakes implements InPlaceSearchDomain, UndoableSearchDomain, MovePruningSearchDomain,
+        ReleasableSearchDomain {
 
     private COST_FUNCTION costFunction;
     // The parameter k for GAP-k heuristic (means that k pancakes are ignored during heuristic calculation
     // [starting from 0])
     private int k;
 
+    // Whether to verify (by unpacking) that each packed state is unpacked back to the same state (for debugging)
+    private boolean verifyPacking = false;
+
+    // The heuristic which is used in addition to the gap heuristic
+    private HeuristicType heuristicType = HeuristicType.GAP;
+    // The PDB (if used) contains the pancakes pdbFirstPancake..numCakes-1 (see PancakesPDBGenerator)
+    private int pdbFirstPancake = -1;
+    private boolean pdbRemainsOnDisk = false;
+    private PatternDatabase pdb;
+    // The positions of the pattern pancakes (reused by all the PDB lookups)
+    private int[] pdbPositions;
+
     private static final Map<String, Class> PancakesPossibleParameters;
 
     // Declare the parameters that can be tunes before running the search
@@ -29,6 +47,19 @@ public class Pancakes implements SearchDomain {
     {
         PancakesPossibleParameters = new HashMap<String, Class>();
         PancakesPossibleParameters.put("GAP-k", Integer.class);
+        PancakesPossibleParameters.put("verify-packing", Boolean.class);
+        PancakesPossibleParameters.put("heuristic", String.class);
+        PancakesPossibleParameters.put("pdb-first-pancake", Integer.class);
+        PancakesPossibleParameters.put("pdb-remains-on-disk", Boolean.class);
+        PancakesPossibleParameters.put("pdb-file", String.class);
+    }
+
+    // The possible heuristics
+    public enum HeuristicType {
+        // The gap heuristic only
+        GAP,
+        // The maximum of the gap heuristic and a PDB which is built by PancakesPDBGenerator (only for UNIT costs)
+        PDB
     }
 
     // The possible cost functions
@@ -42,6 +73,9 @@ public class Pancakes implements SearchDomain {
     // The initial given state
     private int[] init;
     private Operator[] possibleOperators;
+    // The type of an operator is its index: flipping the same portion twice is redundant (there are no other
+    // redundant sequences of two flips)
+    private boolean[][] movePruningTable;
 
     private int bitsForSinglePancake;
     private long maskForSinglePancake;
@@ -66,6 +100,10 @@ public class Pancakes implements SearchDomain {
         for (int i = 0; i < this.numCakes; ++i) {
             this.possibleOperators[i] = new PancakeOperator(i + 1);
         }
+        this.movePruningTable = new boolean[this.numCakes][this.numCakes];
+        for (int i = 0; i < this.numCakes; ++i) {
+            this.movePruningTable[i][i] = true;
+        }
         // Set the maximum index (if it is not already defined)
         if (Pancakes.MAX_PANCAKE_FOR_PDB == -1) {
             this.maxPancakeForPDB = this.numCakes - 1;
@@ -219,18 +257,81 @@ public class Pancakes implements SearchDomain {
         return this._countGaps(cakes, costFunction, true);
     }
 
-    @Override
-    public PancakeState initialState() {
-        PancakeState s = new PancakeState(this.numCakes);
-        System.arraycopy(this.init, 0, s.cakes, 0, numCakes);
-        s.h = this._countGaps(s.cakes, this.costFunction);
-        s.d = this._countGaps(s.cakes, COST_FUNCTION.UNIT);
+    /**
+     * Computes the h, d and dNoGaps values of the given state
+     *
+     * @param state The state whose pancakes are set
+     */
+    private void _computeHeuristics(PancakeState state) {
+        state.h = this._countGaps(state.cakes, this.costFunction);
+        state.d = this._countGaps(state.cakes, COST_FUNCTION.UNIT);
         if (this.k == 0) {
-            s.dNoGaps = s.d;
+            state.dNoGaps = state.d;
         } else {
             // Calc d without k
-            s.dNoGaps = this._countGaps(s.cakes, COST_FUNCTION.UNIT, false);
+            state.dNoGaps = this._countGaps(state.cakes, COST_FUNCTION.UNIT, false);
         }
+        if (this.heuristicType == HeuristicType.PDB) {
+            // Both the values are admissible (and the costs are UNIT), so the maximum is used
+            int pdbValue = this._getPDBValue(state.cakes);
+            state.h = Math.max(state.h, pdbValue);
+            state.d = Math.max(state.d, pdbValue);
+        }
+    }
+
+    /**
+     * @param cakes The pancakes array
+     *
+     * @return The PDB value of the positions of the pattern pancakes
+     */
+    private int _getPDBValue(int cakes[]) {
+        int[] positions = this.pdbPositions;
+        for (int i = 0; i < this.numCakes; ++i) {
+            if (cakes[i] >= this.pdbFirstPancake) {
+                positions[cakes[i] - this.pdbFirstPancake] = i;
+            }
+        }
+        return this.pdb.get(PermutationRanking.rankPartial(positions, 0, positions.length, this.numCakes));
+    }
+
+    /**
+     * Reads the PDB of the pancakes pdbFirstPancake..numCakes-1 (or gets it from the registry if it was already read)
+     *
+     * @param pdbFileName The name of the PDB file (in the raw layout)
+     *
+     * @throws IOException If something wrong occurred
+     */
+    private void _readPDB(final String pdbFileName) throws IOException {
+        final long entriesCount = PermutationRanking.partialPermutationsCount(this.numCakes,
+                this.numCakes - this.pdbFirstPancake);
+        final boolean mapped = this.pdbRemainsOnDisk;
+        String layout = (mapped ? "raw-mapped-" : "raw-") + entriesCount;
+        PatternDatabase previous = this.pdb;
+        this.pdb = HeuristicTableRegistry.acquire(pdbFileName, layout,
+                new HeuristicTableRegistry.Loader<PatternDatabase>() {
+                    @Override
+                    public PatternDatabase load() throws IOException {
+                        PatternDatabase pdb = PatternDatabase.readRaw(pdbFileName, entriesCount, mapped);
+                        System.out.println("[INFO] Read " + entriesCount + " values from " + pdbFileName);
+                        return pdb;
+                    }
+                });
+        // The previous PDB (if any) is released only after the new one was acquired, so setting the same file again
+        // doesn't drop (and re-read) the table
+        HeuristicTableRegistry.release(previous);
+    }
+
+    @Override
+    public void releaseHeuristicTables() {
+        HeuristicTableRegistry.release(this.pdb);
+        this.pdb = null;
+    }
+
+    @Override
+    public PancakeState initialState() {
+        PancakeState s = new PancakeState(this.numCakes);
+        System.arraycopy(this.init, 0, s.cakes, 0, numCakes);
+        this._computeHeuristics(s);
         return s;
     }
 
@@ -264,23 +365,77 @@ public class Pancakes implements SearchDomain {
         return this.possibleOperators[nth];
     }
 
+    @Override
+    public int getOperatorTypesCount() {
+        return this.numCakes;
+    }
+
+    @Override
+    public int getOperatorType(State state, int index) {
+        return index;
+    }
+
+    @Override
+    public boolean[][] getMovePruningTable() {
+        return this.movePruningTable;
+    }
+
     @Override
     public State applyOperator(State state, Operator op) {
         PancakeState pancakeState = (PancakeState)copy(state);
         int pancakeOperator = ((PancakeOperator)op).value;
         // Flip the top of the stack
         pancakeState.flipTopStackPortion(pancakeOperator);
-        pancakeState.h = this._countGaps(pancakeState.cakes, this.costFunction);
-        pancakeState.d = this._countGaps(pancakeState.cakes, COST_FUNCTION.UNIT);
-        if (this.k == 0) {
-            pancakeState.dNoGaps = pancakeState.d;
-        } else {
-            // Calc d without k
-            pancakeState.dNoGaps = this._countGaps(pancakeState.cakes, COST_FUNCTION.UNIT, false);
-        }
+        this._computeHeuristics(pancakeState);
         return pancakeState;
     }
 
+    @Override
+    public State createScratchState() {
+        return new PancakeState(this.numCakes);
+    }
+
+    @Override
+    public int getPackedLongsCount() {
+        return this.packedLongsCount;
+    }
+
+    @Override
+    public void applyOperator(State state, Operator op, State child) {
+        PancakeState pancakeState = (PancakeState)child;
+        System.arraycopy(((PancakeState)state).cakes, 0, pancakeState.cakes, 0, this.numCakes);
+        pancakeState.parent = null;
+        // Flip the top of the stack
+        pancakeState.flipTopStackPortion(((PancakeOperator)op).value);
+        this._computeHeuristics(pancakeState);
+    }
+
+    @Override
+    public double applyInPlace(State state, Operator op) {
+        PancakeState pancakeState = (PancakeState)state;
+        int flip = ((PancakeOperator)op).value;
+        int record = pancakeState._addUndoRecord();
+        pancakeState.undoFlips[record] = flip;
+        pancakeState.undoValues[3 * record] = pancakeState.h;
+        pancakeState.undoValues[3 * record + 1] = pancakeState.d;
+        pancakeState.undoValues[3 * record + 2] = pancakeState.dNoGaps;
+        pancakeState.flipTopStackPortion(flip);
+        this._computeHeuristics(pancakeState);
+        // The operator computes its cost from the resulting state only
+        return op.getCost(pancakeState, null);
+    }
+
+    @Override
+    public void undo(State state) {
+        PancakeState pancakeState = (PancakeState)state;
+        int record = --pancakeState.undoCount;
+        // A flip is its own inverse, and the heuristic values are restored instead of recomputed
+        pancakeState.flipTopStackPortion(pancakeState.undoFlips[record]);
+        pancakeState.h = pancakeState.undoValues[3 * record];
+        pancakeState.d = pancakeState.undoValues[3 * record + 1];
+        pancakeState.dNoGaps = pancakeState.undoValues[3 * record + 2];
+    }
+
     @Override
     public State copy(State state) {
         return new PancakeState((PancakeState)state);
@@ -309,6 +464,17 @@ public class Pancakes implements SearchDomain {
     public PackedElement pack(State s) {
         PancakeState ps = (PancakeState)s;
         long[] packed = new long[this.packedLongsCount];
+        this.pack(ps, packed);
+        PackedElement toReturn = new PackedElement(packed);
+        if (this.verifyPacking) {
+            this._verifyPacking(ps, toReturn);
+        }
+        return toReturn;
+    }
+
+    @Override
+    public void pack(State s, long[] packed) {
+        PancakeState ps = (PancakeState)s;
         int index = 0;
         for (int i = 0; i < this.packedLongsCount; ++i) {
             long word = 0;
@@ -317,28 +483,42 @@ public class Pancakes implements SearchDomain {
             }
             packed[i] = word;
         }
-        PackedElement toReturn = new PackedElement(packed);
-        /**
-         * Debug
-         */
-        if  (!Arrays.equals(ps.cakes, ((PancakeState)this.unpack(toReturn)).cakes)) {
-            System.out.println(Arrays.toString(ps.cakes));
-            System.out.println(Arrays.toString(((PancakeState)this.unpack(toReturn)).cakes));
-            assert false;
+    }
+
+    /**
+     * Assures that the given packed state is unpacked back to the given state (used only if verify-packing is set,
+     * since unpacking recomputes the heuristic)
+     *
+     * @param state The packed state
+     * @param packed The result of packing the state
+     */
+    private void _verifyPacking(PancakeState state, PackedElement packed) {
+        int[] unpackedCakes = ((PancakeState)this.unpack(packed)).cakes;
+        if (!Arrays.equals(state.cakes, unpackedCakes)) {
+            System.out.println("[ERROR] Packing isn't reversible: " + Arrays.toString(state.cakes) + " was unpacked " +
+                    "to " + Arrays.toString(unpackedCakes));
+            throw new IllegalStateException();
         }
-        return toReturn;
     }
 
     @Override
     public State unpack(PackedElement packed) {
         PancakeState state = new PancakeState(this.numCakes);
+        this.unpack(packed.getInternal(), state);
+        return state;
+    }
+
+    @Override
+    public void unpack(long[] packed, State s) {
+        PancakeState state = (PancakeState)s;
+        state.parent = null;
         int index = this.numCakes - 1;
-        for (int i = packed.getLongsCount() - 1; i >= 0; --i) {
-            long current = packed.getLong(i);
+        for (int i = this.packedLongsCount - 1; i >= 0; --i) {
+            long current = packed[i];
             int maxIterationIndex = this.packedCakesInSingleLong;
             // In case of first iteration (starting from the end, maybe only part of the full coverage of pancakes is
             // included inside the packed long - let's calculate this count
-            if (i == packed.getLongsCount() - 1) {
+            if (i == this.packedLongsCount - 1) {
                 // E.g. if (numCakes=20; packedCakesInSingleLong=12 => maxIterationIndex=8)
                 //      if (numCakes=15; packedCakesInSingleLong=15 => maxIterationIndex=0)
                 //      if (numCakes=10; packedCakesInSingleLong=10 => maxIterationIndex=0)
@@ -353,10 +533,7 @@ public class Pancakes implements SearchDomain {
                 state.cakes[index--] = p;
             }
         }
-        state.h = this._countGaps(state.cakes, this.costFunction);
-        state.d = this._countGaps(state.cakes, COST_FUNCTION.UNIT);
-        state.dNoGaps = this._countGaps(state.cakes, COST_FUNCTION.UNIT, false);
-        return state;
+        this._computeHeuristics(state);
     }
 
     /**
@@ -371,6 +548,12 @@ public class Pancakes implements SearchDomain {
         public double dNoGaps;
         private PancakeState parent = null;
 
+        // The records of the flips which were applied in place and weren't undone yet (see applyInPlace): the flip
+        // and the previous h, d and dNoGaps values
+        private int undoCount;
+        private int[] undoFlips;
+        private double[] undoValues;
+
         /**
          * A default constructor of the class
          */
@@ -411,6 +594,22 @@ public class Pancakes implements SearchDomain {
             System.arraycopy(pancake.cakes, 0, this.cakes, 0, pancake.cakes.length);
         }
 
+        /**
+         * Adds an undo record (the arrays of the records grow on demand)
+         *
+         * @return The index of the added record
+         */
+        private int _addUndoRecord() {
+            if (this.undoFlips == null) {
+                this.undoFlips = new int[64];
+                this.undoValues = new double[3 * 64];
+            } else if (this.undoCount == this.undoFlips.length) {
+                this.undoFlips = Arrays.copyOf(this.undoFlips, 2 * this.undoFlips.length);
+                this.undoValues = Arrays.copyOf(this.undoValues, 2 * this.undoValues.length);
+            }
+            return this.undoCount++;
+        }
+
         /**
          * Pancake states are compared by comparing all the pancakes in the state
          *
@@ -543,6 +742,57 @@ public class Pancakes implements SearchDomain {
                 this.k = Integer.parseInt(value);
                 assert this.k >= 0 && this.k < this.numCakes;
                 break;
+            } case "verify-packing": {
+                this.verifyPacking = Boolean.parseBoolean(value);
+                break;
+            } case "heuristic": {
+                switch (value) {
+                    case "gap": {
+                        this.heuristicType = HeuristicType.GAP;
+                        break;
+                    }
+                    case "pdb": {
+                        if (this.costFunction != COST_FUNCTION.UNIT) {
+                            System.out.println("[ERROR] PDB heuristic is only relevant for UNIT costs");
+                            throw new IllegalArgumentException();
+                        }
+                        if (this.pdb == null) {
+                            System.out.println("[ERROR] PDB heuristic requires pdb-file to be set");
+                            throw new IllegalArgumentException();
+                        }
+                        this.heuristicType = HeuristicType.PDB;
+                        break;
+                    }
+                    default: {
+                        throw new IllegalArgumentException("Illegal heuristic type for Pancakes domain: " + value);
+                    }
+                }
+                break;
+            // Must be set before the PDB is read (using pdb-file)
+            } case "pdb-first-pancake": {
+                this.pdbFirstPancake = Integer.parseInt(value);
+                if (this.pdbFirstPancake < 0 || this.pdbFirstPancake >= this.numCakes ||
+                        this.numCakes > PermutationRanking.MAX_BIT_RANKED_VALUES) {
+                    throw new IllegalArgumentException("Invalid first pancake of the PDB: " + value);
+                }
+                this.pdbPositions = new int[this.numCakes - this.pdbFirstPancake];
+                break;
+            // Must be set before the PDB is read (using pdb-file)
+            } case "pdb-remains-on-disk": {
+                this.pdbRemainsOnDisk = Boolean.parseBoolean(value);
+                break;
+            } case "pdb-file": {
+                if (this.pdbFirstPancake == -1) {
+                    System.out.println("[ERROR] pdb-first-pancake must be set before pdb-file");
+                    throw new IllegalArgumentException();
+                }
+                try {
+                    this._readPDB(value);
+                } catch (IOException e) {
+                    System.out.println("[ERROR] Failed reading the PDB file: " + e.getMessage());
+                    throw new IllegalArgumentException();
+                }
+                break;
             } default: {
               throw new IllegalArgumentException("Invalid parameter: " + parameterName);
             }
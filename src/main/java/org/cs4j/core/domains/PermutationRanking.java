@@ -0,0 +1,183 @@
+package org.cs4j.core.domains;
+
+/**
+ * Ranking and unranking of permutations and of partial permutations, shared by all the PDB builders and lookups
+ *
+ * Two orders are supported:
+ *  1. Lexicographic - the order of the PDB files of FifteenPuzzle and TopSpin: a partial permutation of k elements
+ *     (out of n) is an array of k distinct values between 0 and n-1, and is ranked in 0..n!/(n-k)!-1
+ *  2. Myrvold and Ruskey - an order of full permutations which isn't lexicographic but can be ranked and unranked
+ *     in O(n) without any bit tricks (see "Ranking and unranking permutations in linear time", 2001)
+ *
+ * The lexicographic ranking keeps the set of the values which were already seen in a bit mask, so the number of
+ * smaller values which precede a value is computed by a single Long.bitCount instead of a scan of the prefix: the
+ * ranking is O(k) instead of O(k^2) (a scan is used in case n is greater than 64)
+ *
+ * None of the functions allocates memory: the arrays are given by the callers
+ */
+public final class PermutationRanking {
+
+    // The maximum number of values for which the bit-mask ranking is used
+    public static final int MAX_BIT_RANKED_VALUES = 64;
+
+    private PermutationRanking() { }
+
+    /**
+     * @param n The number of values
+     * @param k The length of the partial permutations
+     *
+     * @return The number of partial permutations of length k out of n values: n!/(n-k)!
+     */
+    public static long partialPermutationsCount(int n, int k) {
+        assert k >= 0 && k <= n;
+        long count = 1;
+        for (int i = 0; i < k; ++i) {
+            count *= n - i;
+        }
+        return count;
+    }
+
+    /**
+     * The lexicographic rank of a partial permutation is the sum of digit[i] * factors[i], where digit[i] is the
+     * number of values which are smaller than element[i] and don't appear before it
+     *
+     * @param n The number of values
+     * @param k The length of the partial permutations
+     *
+     * @return The weights of the digits of the lexicographic rank
+     */
+    public static long[] rankFactors(int n, int k) {
+        long[] factors = new long[k];
+        long factor = 1;
+        for (int i = k - 1; i >= 0; --i) {
+            factors[i] = factor;
+            factor *= n - i;
+        }
+        return factors;
+    }
+
+    /**
+     * Computes the lexicographic rank of a partial permutation
+     *
+     * @param elements The array which contains the partial permutation
+     * @param offset The index of the first element of the partial permutation in the array
+     * @param k The length of the partial permutation
+     * @param n The number of values
+     *
+     * @return The computed rank (between 0 and n!/(n-k)!-1)
+     */
+    public static long rankPartial(int[] elements, int offset, int k, int n) {
+        if (n > PermutationRanking.MAX_BIT_RANKED_VALUES) {
+            return PermutationRanking._rankPartialByScan(elements, offset, k, n);
+        }
+        long seen = 0;
+        long rank = 0;
+        for (int i = 0; i < k; ++i) {
+            int value = elements[offset + i];
+            long valueBit = 1L << value;
+            // The digit is the value minus the number of smaller values which were already seen
+            int digit = value - Long.bitCount(seen & (valueBit - 1));
+            seen |= valueBit;
+            rank = rank * (n - i) + digit;
+        }
+        return rank;
+    }
+
+    /**
+     * The quadratic version of rankPartial, for more than 64 values
+     */
+    private static long _rankPartialByScan(int[] elements, int offset, int k, int n) {
+        long rank = 0;
+        for (int i = 0; i < k; ++i) {
+            int value = elements[offset + i];
+            int digit = value;
+            for (int j = 0; j < i; ++j) {
+                if (elements[offset + j] < value) {
+                    --digit;
+                }
+            }
+            rank = rank * (n - i) + digit;
+        }
+        return rank;
+    }
+
+    /**
+     * Computes the partial permutation which has the given lexicographic rank
+     *
+     * @param rank The rank (between 0 and n!/(n-k)!-1)
+     * @param k The length of the partial permutation
+     * @param n The number of values (at most 64)
+     * @param output The array to fill with the partial permutation (at least k elements)
+     */
+    public static void unrankPartial(long rank, int k, int n, int[] output) {
+        assert n <= PermutationRanking.MAX_BIT_RANKED_VALUES;
+        // First, extract the digits (from the last one)
+        for (int i = k - 1; i >= 0; --i) {
+            output[i] = (int) (rank % (n - i));
+            rank /= n - i;
+        }
+        // Now, each digit is the index of the value among the values which weren't used yet
+        long free = (n == 64) ? -1L : ((1L << n) - 1);
+        for (int i = 0; i < k; ++i) {
+            long candidates = free;
+            for (int digit = output[i]; digit > 0; --digit) {
+                // Drop the lowest free value
+                candidates &= candidates - 1;
+            }
+            int value = Long.numberOfTrailingZeros(candidates);
+            free &= ~(1L << value);
+            output[i] = value;
+        }
+    }
+
+    /**
+     * Computes the Myrvold and Ruskey rank of a permutation of 0..n-1
+     *
+     * @param permutation The permutation (isn't changed)
+     * @param n The length of the permutation
+     * @param work A temporary array of at least n elements
+     * @param inverseWork Another temporary array of at least n elements
+     *
+     * @return The computed rank (between 0 and n!-1)
+     */
+    public static long rankMyrvoldRuskey(int[] permutation, int n, int[] work, int[] inverseWork) {
+        System.arraycopy(permutation, 0, work, 0, n);
+        for (int i = 0; i < n; ++i) {
+            inverseWork[permutation[i]] = i;
+        }
+        long rank = 0;
+        long factor = 1;
+        for (int m = n; m > 1; --m) {
+            int last = work[m - 1];
+            // Move the value m-1 to the last position (and the last value to its position)
+            int positionOfMax = inverseWork[m - 1];
+            work[m - 1] = m - 1;
+            work[positionOfMax] = last;
+            inverseWork[last] = positionOfMax;
+            inverseWork[m - 1] = m - 1;
+            rank += last * factor;
+            factor *= m;
+        }
+        return rank;
+    }
+
+    /**
+     * Computes the permutation which has the given Myrvold and Ruskey rank
+     *
+     * @param rank The rank (between 0 and n!-1)
+     * @param n The length of the permutation
+     * @param output The array to fill with the permutation (at least n elements)
+     */
+    public static void unrankMyrvoldRuskey(long rank, int n, int[] output) {
+        for (int i = 0; i < n; ++i) {
+            output[i] = i;
+        }
+        for (int m = n; m > 1; --m) {
+            int position = (int) (rank % m);
+            int tmp = output[m - 1];
+            output[m - 1] = output[position];
+            output[position] = tmp;
+            rank /= m;
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package org.cs4j.core.domains;
 
-import com.carrotsearch.hppc.LongByteHashMap;
+import org.cs4j.core.ReleasableSearchDomain;
 import org.cs4j.core.SearchDomain;
+import org.cs4j.core.collections.HeuristicTableRegistry;
+import org.cs4j.core.collections.Mod3PatternDatabase;
+import org.cs4j.core.collections.NibblePatternDatabase;
 import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.collections.PatternDatabase;
 
 import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -21,12 +23,14 @@ import java.util.Random;
  * Created by user on 17/12/2015.
  *
  */
-public class TopSpin implements SearchDomain {
+public class TopSpin implements ReleasableSearchDomain {
 
     private static final int INDEX_OF_PDB_INDEX = 0;
     private static final int INDEX_OF_PDB_ENTRIES_COUNT = 1;
     private static final int INDEX_OF_PDB_TOKENS_ARRAY = 2;
     private static final int INDEX_OF_PDB_FILENAME = 3;
+    // Optional
+    private static final int INDEX_OF_PDB_ENCODING = 4;
 
     private int init[];
     private Operator[] possibleOperators;
@@ -38,6 +42,25 @@ public class TopSpin implements SearchDomain {
     //private boolean operatorsMatrix[][];
 
     private Map<Integer, SinglePDB> pdbs;
+    // Whether the PDBs which are read later are memory-mapped instead of being read into the heap
+    private boolean pdbRemainsOnDisk;
+    // Whether the PDB values of each state are cached in the state (required by the mod3 encoding)
+    private boolean pdbValuesCached;
+
+    /**
+     * The representation of a PDB in memory:
+     *  RAW - a byte per entry
+     *  NIBBLE - 4 bits per entry (the values must be at most 15)
+     *  MOD3 - the value modulo 3 (1.6 bits per entry): the value of a state is decoded from the value of its parent,
+     *         and the value of a state without a parent (e.g. the initial state) is found by a descent to the goal
+     *         in the abstract space. Requires a PDB in which the values of neighbouring abstract states differ by at
+     *         most 1 (e.g. a PDB which was built by TopSpinPDBGenerator)
+     */
+    private enum PDBEncoding {
+        RAW,
+        NIBBLE,
+        MOD3
+    }
 
     private int[] tokensForGoalCheck;
     private int[] reflectedTokens;
@@ -64,6 +87,7 @@ public class TopSpin implements SearchDomain {
     {
         TopSpinPossibleParameters = new HashMap<>();
         TopSpinPossibleParameters.put("heuristic", String.class);
+        TopSpinPossibleParameters.put("pdb-remains-on-disk", Boolean.class);
         TopSpinPossibleParameters.put("pdb-data", String.class);
     }
 
@@ -107,7 +131,13 @@ public class TopSpin implements SearchDomain {
                 break;
             }
             */
-            // The data for a single PDB in the following format: "<index>|<entries-count>|<tokens-array>|<filename>"
+            // Must be set before the relevant PDBs are read (using pdb-data)
+            case "pdb-remains-on-disk": {
+                this.pdbRemainsOnDisk = Boolean.parseBoolean(value);
+                break;
+            }
+            // The data for a single PDB in the following format:
+            // "<index>-<entries-count>-<tokens-array>-<filename>[-<encoding>]" (the encoding is raw, nibble or mod3)
             case "pdb-data": {
                 if (this.actualPDBsCount >= TopSpin.MAX_PDBS_COUNT) {
                     System.out.println("[ERROR] Can't deal with more than " + TopSpin.MAX_PDBS_COUNT + " pdbs");
@@ -115,19 +145,43 @@ public class TopSpin implements SearchDomain {
                 }
                 ++this.actualPDBsCount;
                 String[] splittedPDBData = value.split("-");
-                assert splittedPDBData.length == 4;
-                int index = Integer.parseInt(splittedPDBData[TopSpin.INDEX_OF_PDB_INDEX]);
-                // Check if a PDB for the given index was already read
-                if (this.pdbs.containsKey(index)) {
-                    SinglePDB previous = this.pdbs.get(index);
-                    System.out.println("[WARNING] A PDB with index " + index + " was already read from " +
-                            previous.getPdbFileName());
+                assert splittedPDBData.length == 4 || splittedPDBData.length == 5;
+                PDBEncoding encoding = PDBEncoding.RAW;
+                if (splittedPDBData.length == 5) {
+                    switch (splittedPDBData[TopSpin.INDEX_OF_PDB_ENCODING]) {
+                        case "raw": {
+                            break;
+                        }
+                        case "nibble": {
+                            encoding = PDBEncoding.NIBBLE;
+                            break;
+                        }
+                        case "mod3": {
+                            encoding = PDBEncoding.MOD3;
+                            this.pdbValuesCached = true;
+                            break;
+                        }
+                        default: {
+                            System.out.println("[ERROR] Illegal PDB encoding: " +
+                                    splittedPDBData[TopSpin.INDEX_OF_PDB_ENCODING] +
+                                    " (should be raw, nibble or mod3)");
+                            throw new IllegalArgumentException();
+                        }
+                    }
                 }
+                int index = Integer.parseInt(splittedPDBData[TopSpin.INDEX_OF_PDB_INDEX]);
                 long entriesCount = Long.parseLong(splittedPDBData[TopSpin.INDEX_OF_PDB_ENTRIES_COUNT]);
                 int[] tokensArray = Utils.stringToIntegerArray(splittedPDBData[TopSpin.INDEX_OF_PDB_TOKENS_ARRAY]);
                 String pdbFileName = splittedPDBData[TopSpin.INDEX_OF_PDB_FILENAME];
-                SinglePDB currentPDB = new SinglePDB(entriesCount, tokensArray, pdbFileName, true);
-                this.pdbs.put(index, currentPDB);
+                SinglePDB currentPDB = new SinglePDB(entriesCount, tokensArray, pdbFileName, encoding, true);
+                // Check if a PDB for the given index was already read (it is released only after the new one was
+                // acquired, so setting the same file again doesn't drop and re-read the table)
+                SinglePDB previous = this.pdbs.put(index, currentPDB);
+                if (previous != null) {
+                    System.out.println("[WARNING] A PDB with index " + index + " was already read from " +
+                            previous.getPdbFileName());
+                    HeuristicTableRegistry.release(previous.pdb);
+                }
                 break;
             }
             default: {
@@ -233,6 +287,19 @@ public class TopSpin implements SearchDomain {
         this.pdbs = other.pdbs;
         this.actualPDBsCount = other.actualPDBsCount;
         this.heuristicType = other.heuristicType;
+        this.pdbValuesCached = other.pdbValuesCached;
+        for (SinglePDB pdb : this.pdbs.values()) {
+            HeuristicTableRegistry.retain(pdb.pdb);
+        }
+    }
+
+    @Override
+    public void releaseHeuristicTables() {
+        for (SinglePDB pdb : this.pdbs.values()) {
+            HeuristicTableRegistry.release(pdb.pdb);
+        }
+        // The map may be shared with the instance this one was copied from (which still uses the PDBs)
+        this.pdbs = new HashMap<>();
     }
 
     @Override
@@ -295,7 +362,14 @@ public class TopSpin implements SearchDomain {
 
         double hMax = 0;
 
+        // The cached values of the state are the values of its parent (if the state was created by applyOperator)
+        boolean parentValuesCached = (state.pdbValues != null && state.pdbValues.length == this.pdbs.size());
+        if (this.pdbValuesCached && !parentValuesCached) {
+            state.pdbValues = new int[this.pdbs.size()];
+        }
+
         int index = 0;
+        int slot = 0;
         for (Map.Entry<Integer, SinglePDB> currentPDBEntry : this.pdbs.entrySet()) {
             SinglePDB currentPDB = currentPDBEntry.getValue();
             int zeroToken = currentPDB.getFirstTokenInPattern();
@@ -303,13 +377,18 @@ public class TopSpin implements SearchDomain {
             if (zeroToken >= 0) {
                 this._calculateReflection(this.tokensNumber - zeroToken, state.tokens);
                 try {
-                    double currentHValue = currentPDB.getH(this.reflectedTokens);
+                    int parentValue = parentValuesCached ? state.pdbValues[slot] : -1;
+                    int currentHValue = currentPDB.getH(this.reflectedTokens, parentValue);
+                    if (state.pdbValues != null) {
+                        state.pdbValues[slot] = currentHValue;
+                    }
                     this.allHeuristicValues[index++] = currentHValue;
                     hMax = Math.max(hMax, currentHValue);
                 } catch (InvalidKeyException e) {
                     // Bypass
                 }
             }
+            ++slot;
         }
         // Finally, calculate the H and D values
         switch (this.heuristicType) {
@@ -473,6 +552,8 @@ public class TopSpin implements SearchDomain {
         private int tokens[] = new int[TopSpin.this.tokensNumber];
         public double h;
         public double d;
+        // The value of each PDB (only if some PDB requires the values of the parents, see PDBEncoding)
+        private int[] pdbValues;
 
         private TopSpinState parent = null;
 
@@ -493,6 +574,9 @@ public class TopSpin implements SearchDomain {
             this.tokens = new int[tss.tokens.length];
             // Copy the tokens
             System.arraycopy(tss.tokens, 0, this.tokens, 0, tss.tokens.length);
+            if (tss.pdbValues != null) {
+                this.pdbValues = tss.pdbValues.clone();
+            }
             this.parent = tss.parent;
         }
 
@@ -563,16 +647,26 @@ public class TopSpin implements SearchDomain {
         }
     }
 
+    /**
+     * @param position A position of a token
+     * @param start The first position of the reversed window
+     * @param spinSize The size of the window
+     * @param tokensNumber The number of tokens
+     *
+     * @return The position of the token after the window is reversed
+     */
+    private static int _reverse(int position, int start, int spinSize, int tokensNumber) {
+        int offset = (position - start + tokensNumber) % tokensNumber;
+        if (offset >= spinSize) {
+            return position;
+        }
+        return (start + spinSize - 1 - offset) % tokensNumber;
+    }
+
     /**
      * A class that contains all the relevant information for a single PDB of the TopSpin problem
      */
     private class SinglePDB {
-        // When reading some PDB create a map with the required size * PDB_ENTRIES_INCREASE
-        // (in order to disallow map copying)
-        private static final double PDB_ENTRIES_INCREASE = 1.1d;
-        // Print some debugging information every DEBUG_PRINT_GAP entries of the PDB
-        private static final int DEBUG_PRINT_GAP = 999;
-
         private long entriesCount;
         private String pdbFileName;
 
@@ -587,7 +681,13 @@ public class TopSpin implements SearchDomain {
         // The positions of the tokens for a given state in order to calculate the heuristic value
         private int[] tokensPositionsForHeuristicCalculation;
 
-        private LongByteHashMap pdb;
+        private PatternDatabase pdb;
+        private PDBEncoding encoding;
+
+        // The rank of the abstract goal and temporary arrays for the descent to the goal (only for MOD3 encoding)
+        private long goalIndex;
+        private int[] descentLocations;
+        private int[] neighbourLocations;
 
         /**
          * @return The index of the first token in the pattern this PDB refers to
@@ -611,23 +711,9 @@ public class TopSpin implements SearchDomain {
          * @return The converted index
          */
         public long __getHashNIndex(int[] locationsOfTokens) {
-            // initialize hash value to empty
-            long hash = 0;
-            // for each remaining position in permutation
-            for (int i = 0; i < this.tokensInPattern.length - 1; ++i) {
-                // initially digit is value in permutation
-                int digit = locationsOfTokens[i];
-                // for each previous element in permutation
-                for (int j = 0; j < i; ++j) {
-                    // previous position contains smaller value - so decrement digit
-                    if (locationsOfTokens[j] < locationsOfTokens[i]) {
-                        --digit;
-                    }
-                }
-                // multiply digit by appropriate factor
-                hash = hash * ((TopSpin.this.tokensNumber - 1) - i) + digit;
-            }
-            return hash;
+            // Token 0 is always at location 0, so only the other locations are ranked
+            return PermutationRanking.rankPartial(locationsOfTokens, 0, this.tokensInPattern.length - 1,
+                    TopSpin.this.tokensNumber - 1);
         }
 
         /**
@@ -680,6 +766,18 @@ public class TopSpin implements SearchDomain {
         }
 
         public double getH(int[] tokens) throws InvalidKeyException {
+            return this.getH(tokens, -1);
+        }
+
+        /**
+         * @param tokens The state (array of tokens)
+         * @param parentValue The value of the parent state in this PDB (or -1 if it isn't known)
+         *
+         * @return The value of the state in this PDB
+         *
+         * @throws InvalidKeyException If the rank of the state is out of the PDB
+         */
+        public int getH(int[] tokens, int parentValue) throws InvalidKeyException {
             long index = this._getHashIndex(tokens);
             // Assert index is valid
             if (index < 0 || index >= this.entriesCount) {
@@ -687,32 +785,99 @@ public class TopSpin implements SearchDomain {
                         ": should be between 0 and " + (this.entriesCount - 1) + ", given: " + index);
                 throw new InvalidKeyException();
             }
-            return this.pdb.get(index);
+            if (!this.pdb.requiresParentValue()) {
+                return this.pdb.get(index);
+            } else if (parentValue < 0) {
+                return this._getHByDescent(index);
+            }
+            return this.pdb.get(index, parentValue);
         }
 
         /**
-         * The function reads the PDB data from the file
+         * Finds the value of an abstract state in a PDB which stores only the residues of the values (modulo 3): each
+         * step moves to a neighbour whose residue is smaller by 1, which is a neighbour whose value is smaller by 1
+         * (since the PDB is consistent), so the value is the number of steps until the abstract goal is reached
+         *
+         * @param index The rank of the abstract state (its locations are in tokensPositionsForHeuristicCalculation)
+         *
+         * @return The value of the abstract state
+         */
+        private int _getHByDescent(long index) {
+            int n = TopSpin.this.tokensNumber;
+            int k = this.tokensInPattern.length - 1;
+            int[] locations = this.descentLocations;
+            int[] neighbour = this.neighbourLocations;
+            System.arraycopy(this.tokensPositionsForHeuristicCalculation, 0, locations, 0, k);
+            int h = 0;
+            while (index != this.goalIndex) {
+                int requiredResidue = (this.pdb.get(index) + 2) % 3;
+                boolean found = false;
+                // The abstract state is rotated, so all the n positions of the turnstile are considered
+                for (int start = 0; start < n && !found; ++start) {
+                    int zeroPosition = TopSpin._reverse(0, start, TopSpin.this.spinSize, n);
+                    for (int i = 0; i < k; ++i) {
+                        int position = TopSpin._reverse(locations[i] + 1, start, TopSpin.this.spinSize, n);
+                        neighbour[i] = ((position - zeroPosition + n) % n) - 1;
+                    }
+                    long neighbourIndex = PermutationRanking.rankPartial(neighbour, 0, k, n - 1);
+                    if (this.pdb.get(neighbourIndex) == requiredResidue) {
+                        int[] tmp = locations;
+                        locations = neighbour;
+                        neighbour = tmp;
+                        index = neighbourIndex;
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    throw new IllegalStateException("The PDB in " + this.pdbFileName + " isn't consistent, so it " +
+                            "can't be stored modulo 3");
+                }
+                ++h;
+            }
+            return h;
+        }
+
+        /**
+         * The function reads the PDB data from the file (or gets it from the registry if it was already read)
          *
          * @throws IOException If something wrong occurred
          */
         private void _readPDB() throws IOException {
-            this.pdb = new LongByteHashMap((int)(this.entriesCount * SinglePDB.PDB_ENTRIES_INCREASE));
-            // Each permutation index is stored as int
-            DataInputStream inputStream = new DataInputStream(new FileInputStream(this.pdbFileName));
-            long hashValue = 0;
-            long i = 0;
-            for (; i < this.entriesCount; ++i) {
-                // Debug
-                if (i % SinglePDB.DEBUG_PRINT_GAP == 0) {
-                    System.out.print("\r[INFO] Read " + (i + 1) + "/" + this.entriesCount + " values");
-                }
-                // Read the distance
-                byte distance = inputStream.readByte();
-                this.pdb.put(hashValue++, distance);
+            final boolean mapped = TopSpin.this.pdbRemainsOnDisk;
+            final PDBEncoding encoding = this.encoding;
+            String layout = (mapped ? "raw-mapped-" : "raw-") + this.entriesCount;
+            if (encoding != PDBEncoding.RAW) {
+                layout += "-" + encoding;
             }
-            System.out.print("\r[INFO] Read " + i + "/" + this.entriesCount + " values");
-            // Last new line
-            System.out.println();
+            this.pdb = HeuristicTableRegistry.acquire(this.pdbFileName, layout,
+                    new HeuristicTableRegistry.Loader<PatternDatabase>() {
+                        @Override
+                        public PatternDatabase load() throws IOException {
+                            // The values are stored sequentially (a single byte for each rank)
+                            PatternDatabase pdb = PatternDatabase.readRaw(SinglePDB.this.pdbFileName,
+                                    SinglePDB.this.entriesCount, mapped);
+                            System.out.println("[INFO] Read " + SinglePDB.this.entriesCount + " values from " +
+                                    SinglePDB.this.pdbFileName);
+                            switch (encoding) {
+                                case NIBBLE: {
+                                    try {
+                                        pdb = NibblePatternDatabase.compress(pdb);
+                                    } catch (IllegalArgumentException e) {
+                                        throw new IOException(e.getMessage());
+                                    }
+                                    break;
+                                }
+                                case MOD3: {
+                                    pdb = new Mod3PatternDatabase(pdb);
+                                    break;
+                                }
+                                default: {
+                                    break;
+                                }
+                            }
+                            return pdb;
+                        }
+                    });
         }
 
         /**
@@ -721,9 +886,11 @@ public class TopSpin implements SearchDomain {
          * @param entriesCount The number of entries in the PDB
          * @param tokensInPattern The pattern which is represented by the PDB (only the relevant tokens)
          * @param pdbFileName The name of the file where the PDB is stored
+         * @param encoding The representation of the PDB in memory
          * @param readImmediately Whether to read the PDB immediately (or delay its reading to later time)
          */
-        private SinglePDB(long entriesCount, int[] tokensInPattern, String pdbFileName, boolean readImmediately) {
+        private SinglePDB(long entriesCount, int[] tokensInPattern, String pdbFileName, PDBEncoding encoding,
+                          boolean readImmediately) {
             assert readImmediately == true;
             this.tokenBelongsToPattern = new boolean[TopSpin.this.tokensNumber];
             this.locationOfPatternInTokens = new int[TopSpin.this.tokensNumber];
@@ -732,6 +899,7 @@ public class TopSpin implements SearchDomain {
             this.entriesCount = entriesCount;
             this.tokensInPattern = tokensInPattern;
             this.pdbFileName = pdbFileName;
+            this.encoding = encoding;
 
             if (readImmediately) {
                 try {
@@ -753,6 +921,15 @@ public class TopSpin implements SearchDomain {
                     }
                     // This array will be recalculated for each heuristic calculation
                     this.tokensPositionsForHeuristicCalculation = new int[this.tokensInPattern.length + 1];
+                    if (this.encoding == PDBEncoding.MOD3) {
+                        // In the goal, each token t is located at position t (i.e. location t - 1)
+                        this.descentLocations = new int[this.tokensInPattern.length];
+                        this.neighbourLocations = new int[this.tokensInPattern.length];
+                        for (int i = 1; i < this.tokensInPattern.length; ++i) {
+                            this.descentLocations[i - 1] = this.tokensInPattern[i] - 1;
+                        }
+                        this.goalIndex = this.__getHashNIndex(this.descentLocations);
+                    }
                 } catch (IOException e) {
                     // Delimit the percentage of read printing
                     System.out.println();
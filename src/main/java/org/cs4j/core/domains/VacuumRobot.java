@@ -42,6 +42,18 @@ public class VacuumRobot implements SearchDomain {
 
     public enum COST_FUNCTION {HEAVY, LITE, UNIT};
 
+    // Whether to verify (by unpacking) that each packed state is unpacked back to the same state (for debugging)
+    private boolean verifyPacking = false;
+
+    private static final Map<String, Class> VacuumRobotPossibleParameters;
+
+    // Declare the parameters that can be tuned before running the search
+    static
+    {
+        VacuumRobotPossibleParameters = new HashMap<>();
+        VacuumRobot.VacuumRobotPossibleParameters.put("verify-packing", Boolean.class);
+    }
+
     // An array of pre-computed {h, d} pairs, each one based on some combination of dirty
     // locations (any combination is defined by a binary vector)
     // NOTE: The location of the robot is not considered while building the array
@@ -1314,22 +1326,29 @@ public class VacuumRobot implements SearchDomain {
         }
 
         PackedElement toReturn = new PackedElement(packed);
-
-        /**
-         * Debug: perform unpack after packing and assure results are ok
-         */
-        if ((((VacuumRobotState)this.unpack(toReturn)).robotLocation != state.robotLocation) ||
-                (((VacuumRobotState)this.unpack(toReturn)).dirt != state.dirt)) {
-            assert false;
+        if (this.verifyPacking) {
+            this._verifyPacking(state, toReturn);
         }
-
-        /*
-         * VacuumRobotState test = unpack(packed);
-         * assert(test.equals(state));
-         */
         return toReturn;
     }
 
+    /**
+     * Assures that the given packed state is unpacked back to the given state (used only if verify-packing is set,
+     * since unpacking recomputes the heuristic)
+     *
+     * @param state The packed state
+     * @param packed The result of packing the state
+     */
+    private void _verifyPacking(VacuumRobotState state, PackedElement packed) {
+        VacuumRobotState unpacked = (VacuumRobotState)this.unpack(packed);
+        if (unpacked.robotLocation != state.robotLocation || unpacked.dirt != state.dirt) {
+            System.out.println("[ERROR] Packing isn't reversible: (robot: " + state.robotLocation + ", dirt: " +
+                    state.dirt + ") was unpacked to (robot: " + unpacked.robotLocation + ", dirt: " +
+                    unpacked.dirt + ")");
+            throw new IllegalStateException();
+        }
+    }
+
     /**
      * An auxiliary function for unpacking Vacuum Robot state from a long number.
      * This function performs the actual unpacking
@@ -1783,12 +1802,20 @@ public class VacuumRobot implements SearchDomain {
 
     @Override
     public Map<String, Class> getPossibleParameters() {
-        return null;
+        return VacuumRobot.VacuumRobotPossibleParameters;
     }
 
     @Override
     public void setAdditionalParameter(String parameterName, String value) {
-        throw new NotImplementedException();
+        switch (parameterName) {
+            case "verify-packing": {
+                this.verifyPacking = Boolean.parseBoolean(value);
+                break;
+            }
+            default: {
+                throw new NotImplementedException();
+            }
+        }
     }
 
 }
\ No newline at end of file
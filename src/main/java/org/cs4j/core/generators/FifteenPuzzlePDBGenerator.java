@@ -1 +1,170 @@
-// TODO
\ No newline at end of file
+package org.cs4j.core.generators;
+
+import org.cs4j.core.domains.PermutationRanking;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Generates the additive PDBs of the FifteenPuzzle (7-8 and 5-5-5 partitionings) in the indexed layout which is read
+ * by FifteenPuzzle
+ *
+ * An abstract state is the positions of the pattern tiles and of the blank, ranked lexicographically (the blank is
+ * the last element). Moving a pattern tile costs 1 and moving any other tile costs 0, and the PDB entry of a state
+ * is the rank without the blank, so each entry gets the minimal cost over all the positions of the blank (the same
+ * index which is computed by FifteenPuzzle).
+ */
+public class FifteenPuzzlePDBGenerator implements PDBBuilder.Abstraction {
+    private static final int WIDTH = 4;
+    private static final int TILES_NUMBER = FifteenPuzzlePDBGenerator.WIDTH * FifteenPuzzlePDBGenerator.WIDTH;
+    // The moves of the blank: up, down, left and right
+    private static final int MAX_MOVES = 4;
+
+    private final int firstTile;
+    private final int patternLength;
+
+    /**
+     * The constructor of the class
+     *
+     * @param firstTile The first tile of the pattern
+     * @param patternLength The number of tiles in the pattern (the tiles are firstTile..firstTile+patternLength-1)
+     */
+    public FifteenPuzzlePDBGenerator(int firstTile, int patternLength) {
+        assert firstTile > 0 && firstTile + patternLength <= FifteenPuzzlePDBGenerator.TILES_NUMBER;
+        this.firstTile = firstTile;
+        this.patternLength = patternLength;
+    }
+
+    @Override
+    public long getStatesCount() {
+        return PermutationRanking.partialPermutationsCount(FifteenPuzzlePDBGenerator.TILES_NUMBER,
+                this.patternLength + 1);
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return PermutationRanking.partialPermutationsCount(FifteenPuzzlePDBGenerator.TILES_NUMBER, this.patternLength);
+    }
+
+    @Override
+    public long getEntry(long state) {
+        // The blank is the last digit of the rank
+        return state / (FifteenPuzzlePDBGenerator.TILES_NUMBER - this.patternLength);
+    }
+
+    @Override
+    public long[] getGoals() {
+        int[] positions = new int[this.patternLength + 1];
+        for (int i = 0; i < this.patternLength; ++i) {
+            positions[i] = this.firstTile + i;
+        }
+        // The blank is at position 0
+        positions[this.patternLength] = 0;
+        return new long[]{
+                PermutationRanking.rankPartial(positions, 0, positions.length, FifteenPuzzlePDBGenerator.TILES_NUMBER)};
+    }
+
+    @Override
+    public int getMaxPredecessorsCount() {
+        return FifteenPuzzlePDBGenerator.MAX_MOVES;
+    }
+
+    @Override
+    public PDBBuilder.Expander createExpander() {
+        final int blankIndex = this.patternLength;
+        final int[] positions = new int[this.patternLength + 1];
+        // The index of the pattern tile at each position (-1 if the position contains a non-pattern tile)
+        final int[] occupants = new int[FifteenPuzzlePDBGenerator.TILES_NUMBER];
+        return new PDBBuilder.Expander() {
+            @Override
+            public int getPredecessors(long state, long[] predecessors, int[] costs) {
+                PermutationRanking.unrankPartial(state, positions.length, FifteenPuzzlePDBGenerator.TILES_NUMBER,
+                        positions);
+                Arrays.fill(occupants, -1);
+                for (int i = 0; i < blankIndex; ++i) {
+                    occupants[positions[i]] = i;
+                }
+                int blank = positions[blankIndex];
+                int row = blank / FifteenPuzzlePDBGenerator.WIDTH;
+                int column = blank % FifteenPuzzlePDBGenerator.WIDTH;
+                int count = 0;
+                for (int move = 0; move < FifteenPuzzlePDBGenerator.MAX_MOVES; ++move) {
+                    int target;
+                    if (move == 0 && row > 0) {
+                        target = blank - FifteenPuzzlePDBGenerator.WIDTH;
+                    } else if (move == 1 && row < FifteenPuzzlePDBGenerator.WIDTH - 1) {
+                        target = blank + FifteenPuzzlePDBGenerator.WIDTH;
+                    } else if (move == 2 && column > 0) {
+                        target = blank - 1;
+                    } else if (move == 3 && column < FifteenPuzzlePDBGenerator.WIDTH - 1) {
+                        target = blank + 1;
+                    } else {
+                        continue;
+                    }
+                    // The moves are reversible, so the predecessors are the successors
+                    int tile = occupants[target];
+                    positions[blankIndex] = target;
+                    if (tile != -1) {
+                        positions[tile] = blank;
+                    }
+                    predecessors[count] = PermutationRanking.rankPartial(positions, 0, positions.length,
+                            FifteenPuzzlePDBGenerator.TILES_NUMBER);
+                    costs[count] = (tile != -1) ? 1 : 0;
+                    ++count;
+                    // Restore the state
+                    positions[blankIndex] = blank;
+                    if (tile != -1) {
+                        positions[tile] = target;
+                    }
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Builds the PDBs of a partitioning
+     *
+     * @param args The arguments: the partitioning (pdb-78 or pdb-555), the names of the output files separated by
+     *             commas (in the format of the pdb-78-files and pdb-555-files parameters of FifteenPuzzle) and
+     *             optionally the number of threads
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Usage: <pdb-78|pdb-555> <output-files (comma separated)> [threads-count]");
+            System.exit(-1);
+        }
+        int[] firstTiles;
+        int[] lengths;
+        switch (args[0]) {
+            case "pdb-78": {
+                firstTiles = new int[]{1, 8};
+                lengths = new int[]{7, 8};
+                break;
+            }
+            case "pdb-555": {
+                firstTiles = new int[]{1, 6, 11};
+                lengths = new int[]{5, 5, 5};
+                break;
+            }
+            default: {
+                throw new IOException("Invalid partitioning: " + args[0]);
+            }
+        }
+        String[] fileNames = args[1].split(",");
+        if (fileNames.length != firstTiles.length) {
+            throw new IOException("Expected " + firstTiles.length + " output files: " + args[1]);
+        }
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3) {
+            threadsCount = GeneralInstancesGenerator.readIntNumber(args[2], 1, -1, "# of threads");
+        }
+        for (int i = 0; i < firstTiles.length; ++i) {
+            System.out.println("[INFO] Building the PDB of tiles " + firstTiles[i] + "-" +
+                    (firstTiles[i] + lengths[i] - 1) + " into " + fileNames[i]);
+            FifteenPuzzlePDBGenerator abstraction = new FifteenPuzzlePDBGenerator(firstTiles[i], lengths[i]);
+            new PDBBuilder(abstraction, threadsCount).build(fileNames[i], PDBBuilder.Layout.INDEXED);
+        }
+        System.out.println("Done.");
+    }
+}
@@ -0,0 +1,424 @@
+package org.cs4j.core.generators;
+
+import org.cs4j.core.collections.MappedPatternDatabase;
+import org.cs4j.core.collections.PatternDatabase;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Builds a PDB of a permutation domain by a parallel, level-synchronous, backward breadth-first search over the
+ * abstract state space (from the abstract goals)
+ *
+ * The abstract states are identified by their ranks (0..getStatesCount()-1) and the domain supplies the abstract
+ * predecessors of each state, with costs of 0 or 1 (0-cost moves are the moves which don't move a pattern tile, e.g.
+ * moves of the blank with a non-pattern tile in additive PDBs). The PDB entry of an abstract state may collapse several
+ * states (e.g. all the positions of the blank), in which case the entry gets the minimal cost of these states.
+ *
+ * The search keeps a 2-bit status for each abstract state (unseen, current level, next level or closed) in an array
+ * of longs which is updated by CAS, so all the workers expand the states of the current level concurrently. The states
+ * of a level are expanded until no state is added to the level (by 0-cost moves), and then the next level becomes the
+ * current one.
+ *
+ * The statuses are always kept on the heap (a quarter of a byte per state); the values of the PDB are kept on the heap
+ * if they fit, and otherwise are written directly to a memory-mapped file.
+ */
+public final class PDBBuilder {
+
+    /**
+     * The abstract state space of a pattern
+     */
+    public interface Abstraction {
+        /**
+         * @return The number of abstract states (the ranks of the states are 0..getStatesCount()-1)
+         */
+        long getStatesCount();
+
+        /**
+         * @return The number of entries in the PDB
+         */
+        long getEntriesCount();
+
+        /**
+         * @param state The rank of an abstract state
+         *
+         * @return The PDB entry of the state
+         */
+        long getEntry(long state);
+
+        /**
+         * @return The ranks of the abstract goals
+         */
+        long[] getGoals();
+
+        /**
+         * @return The maximum number of predecessors of a single abstract state
+         */
+        int getMaxPredecessorsCount();
+
+        /**
+         * @return A new expander (each worker of the search uses its own expander)
+         */
+        Expander createExpander();
+    }
+
+    /**
+     * Computes the predecessors of abstract states (an expander is used by a single thread)
+     */
+    public interface Expander {
+        /**
+         * @param state The rank of the abstract state
+         * @param predecessors The array to fill with the ranks of the predecessors
+         * @param costs The array to fill with the costs of the moves from the predecessors (0 or 1)
+         *
+         * @return The number of the predecessors
+         */
+        int getPredecessors(long state, long[] predecessors, int[] costs);
+    }
+
+    /**
+     * The layouts of the written PDB files (see {@link PatternDatabase})
+     */
+    public enum Layout {
+        // The value of rank i at byte i (TopSpin and Pancakes)
+        RAW,
+        // (int rank, byte value) records (FifteenPuzzle)
+        INDEXED
+    }
+
+    // The statuses of the abstract states (2 bits for each state, 32 states in each long)
+    private static final int STATUS_UNSEEN = 0;
+    private static final int STATUS_CURRENT = 1;
+    private static final int STATUS_NEXT = 2;
+    private static final int STATUS_CLOSED = 3;
+    // The low bit of each status in a long
+    private static final long LOW_BITS_MASK = 0x5555555555555555L;
+
+    // The value of the entries which weren't reached yet
+    private static final int UNSET_VALUE = 0xff;
+    // The number of longs of statuses which are handled as a single unit of work
+    private static final int CHUNK_WORDS = 1 << 12;
+    // The part of the free heap which can be used for the values of the PDB
+    private static final double HEAP_VALUES_FRACTION = 0.5;
+
+    private final Abstraction abstraction;
+    private final int threadsCount;
+    private boolean forceMapped;
+
+    /**
+     * The values of the PDB: either an array on the heap or a mapped file
+     */
+    private static final class Values {
+        private final byte[] array;
+        private final MappedPatternDatabase mapped;
+
+        private Values(byte[] array, MappedPatternDatabase mapped) {
+            this.array = array;
+            this.mapped = mapped;
+        }
+
+        private int get(long entry) {
+            return (this.array != null) ? (this.array[(int) entry] & 0xff) : this.mapped.get(entry);
+        }
+
+        private void set(long entry, int value) {
+            if (this.array != null) {
+                this.array[(int) entry] = (byte) value;
+            } else {
+                this.mapped.put(entry, (byte) value);
+            }
+        }
+    }
+
+    /**
+     * The constructor of the class
+     *
+     * @param abstraction The abstract state space of the pattern
+     * @param threadsCount The number of workers of the search
+     */
+    public PDBBuilder(Abstraction abstraction, int threadsCount) {
+        if (abstraction.getStatesCount() > ((long) Integer.MAX_VALUE << 5)) {
+            throw new IllegalArgumentException("Too many abstract states: " + abstraction.getStatesCount());
+        }
+        this.abstraction = abstraction;
+        this.threadsCount = threadsCount;
+        this.forceMapped = false;
+    }
+
+    /**
+     * @param forceMapped Whether to write the values directly to a mapped file even if they fit in the heap
+     */
+    public void setForceMapped(boolean forceMapped) {
+        this.forceMapped = forceMapped;
+    }
+
+    /**
+     * Changes the status of an abstract state (atomically)
+     *
+     * @param statuses The statuses of all the states
+     * @param state The rank of the state
+     * @param fromStatuses A mask of the statuses which can be changed (bit i stands for status i)
+     * @param to The new status
+     *
+     * @return Whether the status was changed (false if the state had a status which isn't in fromStatuses)
+     */
+    private static boolean _changeStatus(AtomicLongArray statuses, long state, int fromStatuses, int to) {
+        int word = (int) (state >>> 5);
+        int shift = (int) (state & 31) << 1;
+        while (true) {
+            long current = statuses.get(word);
+            int status = (int) (current >>> shift) & 3;
+            if ((fromStatuses & (1 << status)) == 0) {
+                return false;
+            }
+            long updated = (current & ~(3L << shift)) | ((long) to << shift);
+            if (statuses.compareAndSet(word, current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Runs a single pass over all the statuses by all the workers
+     *
+     * @param executor The executor of the workers
+     * @param tasks The tasks of the workers (each one takes chunks of words from nextChunk and returns a count)
+     * @param nextChunk The index of the next chunk to handle
+     *
+     * @return The sum of the counts returned by the workers
+     */
+    private long _runPass(ExecutorService executor, List<Callable<Long>> tasks, AtomicInteger nextChunk)
+            throws IOException {
+        nextChunk.set(0);
+        long sum = 0;
+        try {
+            for (Future<Long> future : executor.invokeAll(tasks)) {
+                sum += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The PDB build was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return sum;
+    }
+
+    /**
+     * Allocates the values of the PDB: on the heap if they fit, and otherwise in a mapped file
+     *
+     * @param mappedFileName The name of the raw file to map (if required)
+     */
+    private Values _allocateValues(String mappedFileName) throws IOException {
+        long entriesCount = this.abstraction.getEntriesCount();
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        if (!this.forceMapped && entriesCount <= PatternDatabase.MAX_ARRAY_ENTRIES &&
+                entriesCount < freeHeap * PDBBuilder.HEAP_VALUES_FRACTION) {
+            byte[] array = new byte[(int) entriesCount];
+            Arrays.fill(array, (byte) PDBBuilder.UNSET_VALUE);
+            return new Values(array, null);
+        }
+        System.out.println("[INFO] The PDB values are written to the mapped file " + mappedFileName);
+        MappedPatternDatabase mapped = PatternDatabase.createRawMapped(mappedFileName, entriesCount);
+        for (long entry = 0; entry < entriesCount; ++entry) {
+            mapped.put(entry, (byte) PDBBuilder.UNSET_VALUE);
+        }
+        return new Values(null, mapped);
+    }
+
+    /**
+     * Builds the PDB and writes it to a file
+     *
+     * @param fileName The name of the output file
+     * @param layout The layout of the output file
+     *
+     * @throws IOException If something wrong occurred
+     */
+    public void build(String fileName, Layout layout) throws IOException {
+        final long statesCount = this.abstraction.getStatesCount();
+        final long entriesCount = this.abstraction.getEntriesCount();
+        final int wordsCount = (int) ((statesCount + 31) >>> 5);
+        final int chunksCount = (wordsCount + PDBBuilder.CHUNK_WORDS - 1) / PDBBuilder.CHUNK_WORDS;
+        final AtomicLongArray statuses = new AtomicLongArray(wordsCount);
+        // In case of an indexed layout, the mapped values (if required) are kept near the file - where
+        // PatternDatabase.readIndexedMapped looks for them
+        final String mappedFileName = (layout == Layout.RAW) ? fileName : fileName + ".raw";
+        final Values values = this._allocateValues(mappedFileName);
+
+        for (long goal : this.abstraction.getGoals()) {
+            PDBBuilder._changeStatus(statuses, goal, 1 << PDBBuilder.STATUS_UNSEEN, PDBBuilder.STATUS_CURRENT);
+        }
+
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final int[] depth = new int[1];
+        // The tasks that expand the current level (each one returns the number of states added to the current level)
+        List<Callable<Long>> expansionTasks = new ArrayList<>(this.threadsCount);
+        for (int t = 0; t < this.threadsCount; ++t) {
+            final Expander expander = this.abstraction.createExpander();
+            final long[] predecessors = new long[this.abstraction.getMaxPredecessorsCount()];
+            final int[] costs = new int[predecessors.length];
+            expansionTasks.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long addedToCurrent = 0;
+                    for (int chunk = nextChunk.getAndIncrement(); chunk < chunksCount;
+                         chunk = nextChunk.getAndIncrement()) {
+                        int lastWord = Math.min(wordsCount, (chunk + 1) * PDBBuilder.CHUNK_WORDS);
+                        for (int word = chunk * PDBBuilder.CHUNK_WORDS; word < lastWord; ++word) {
+                            long status = statuses.get(word);
+                            // The states of the current level (binary 01)
+                            long currentBits = status & ~(status >>> 1) & PDBBuilder.LOW_BITS_MASK;
+                            while (currentBits != 0) {
+                                long state = ((long) word << 5) + (Long.numberOfTrailingZeros(currentBits) >>> 1);
+                                currentBits &= currentBits - 1;
+                                // Only the owner of the word closes its states, so the state is still current
+                                PDBBuilder._changeStatus(statuses, state, 1 << PDBBuilder.STATUS_CURRENT,
+                                        PDBBuilder.STATUS_CLOSED);
+                                long entry = PDBBuilder.this.abstraction.getEntry(state);
+                                // The levels are closed by order, so the first value of an entry is the minimal one
+                                if (values.get(entry) == PDBBuilder.UNSET_VALUE) {
+                                    values.set(entry, depth[0]);
+                                }
+                                int count = expander.getPredecessors(state, predecessors, costs);
+                                for (int i = 0; i < count; ++i) {
+                                    if (costs[i] == 0) {
+                                        if (PDBBuilder._changeStatus(statuses, predecessors[i],
+                                                (1 << PDBBuilder.STATUS_UNSEEN) | (1 << PDBBuilder.STATUS_NEXT),
+                                                PDBBuilder.STATUS_CURRENT)) {
+                                            ++addedToCurrent;
+                                        }
+                                    } else {
+                                        PDBBuilder._changeStatus(statuses, predecessors[i],
+                                                1 << PDBBuilder.STATUS_UNSEEN, PDBBuilder.STATUS_NEXT);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    return addedToCurrent;
+                }
+            });
+        }
+        // The tasks that make the next level the current one (each one returns the size of the new level)
+        List<Callable<Long>> transitionTasks = new ArrayList<>(this.threadsCount);
+        for (int t = 0; t < this.threadsCount; ++t) {
+            transitionTasks.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long levelSize = 0;
+                    for (int chunk = nextChunk.getAndIncrement(); chunk < chunksCount;
+                         chunk = nextChunk.getAndIncrement()) {
+                        int lastWord = Math.min(wordsCount, (chunk + 1) * PDBBuilder.CHUNK_WORDS);
+                        for (int word = chunk * PDBBuilder.CHUNK_WORDS; word < lastWord; ++word) {
+                            long status = statuses.get(word);
+                            // The states of the next level (binary 10) become states of the current level (01)
+                            long next = (status >>> 1) & ~status & PDBBuilder.LOW_BITS_MASK;
+                            if (next != 0) {
+                                // No state is changed concurrently (all the workers only run this transition)
+                                statuses.set(word, (status & ~(next << 1)) | next);
+                                levelSize += Long.bitCount(next);
+                            }
+                        }
+                    }
+                    return levelSize;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threadsCount);
+        try {
+            long levelSize = this.abstraction.getGoals().length;
+            long closedCount = 0;
+            while (levelSize > 0) {
+                if (depth[0] >= PDBBuilder.UNSET_VALUE) {
+                    throw new IllegalStateException("PDB values exceed a single byte");
+                }
+                // Expand the level until no state is added to it (by 0-cost moves)
+                while (true) {
+                    long added = this._runPass(executor, expansionTasks, nextChunk);
+                    levelSize += added;
+                    if (added == 0) {
+                        break;
+                    }
+                }
+                closedCount += levelSize;
+                System.out.println("[INFO] Depth " + depth[0] + ": " + levelSize + " states (total " + closedCount +
+                        "/" + statesCount + ")");
+                levelSize = this._runPass(executor, transitionTasks, nextChunk);
+                ++depth[0];
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Unreachable entries (if any) get 0, which is always admissible
+        long unreachedCount = 0;
+        for (long entry = 0; entry < entriesCount; ++entry) {
+            if (values.get(entry) == PDBBuilder.UNSET_VALUE) {
+                values.set(entry, 0);
+                ++unreachedCount;
+            }
+        }
+        if (unreachedCount > 0) {
+            System.out.println("[WARNING] " + unreachedCount + " PDB entries are unreachable from the goals");
+        }
+        this._write(values, fileName, mappedFileName, layout);
+    }
+
+    /**
+     * Writes the built values in the required layout
+     */
+    private void _write(Values values, String fileName, String mappedFileName, Layout layout) throws IOException {
+        long entriesCount = this.abstraction.getEntriesCount();
+        if (values.mapped != null) {
+            values.mapped.force();
+        }
+        switch (layout) {
+            case RAW: {
+                // Mapped values are already written to the file
+                if (values.array != null) {
+                    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(fileName))) {
+                        output.write(values.array);
+                    }
+                }
+                break;
+            }
+            case INDEXED: {
+                if (entriesCount > 0xffffffffL) {
+                    throw new IllegalArgumentException("Too many entries for an indexed PDB: " + entriesCount);
+                }
+                try (DataOutputStream output =
+                             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+                    for (long entry = 0; entry < entriesCount; ++entry) {
+                        output.writeInt((int) entry);
+                        output.writeByte(values.get(entry));
+                    }
+                }
+                if (values.mapped != null) {
+                    // The raw file must not be older than the indexed one, otherwise it is converted again on read
+                    new File(mappedFileName).setLastModified(new File(fileName).lastModified());
+                }
+                break;
+            }
+        }
+        System.out.println("[INFO] Wrote " + entriesCount + " PDB values to " + fileName);
+    }
+}
@@ -3,10 +3,16 @@ package org.cs4j.core.generators;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.algorithms.EES;
 import org.cs4j.core.collections.Pair;
+import org.cs4j.core.collections.PatternDatabase;
 import org.cs4j.core.domains.Pancakes;
+import org.cs4j.core.domains.PermutationRanking;
 import org.cs4j.core.domains.Utils;
 //import org.cs4j.core.domains.PancakesWithDontCares;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -16,6 +22,14 @@ import java.util.*;
  *
  */
 public class PancakesPDBGenerator extends GeneralInstancesGenerator {
+    // The statuses of the abstract states during the retrograde search (2 bits for each state)
+    private static final long STATUS_UNSEEN = 0;
+    private static final long STATUS_CURRENT = 1;
+    private static final long STATUS_NEXT = 2;
+    // The low bit of each status in a long
+    private static final long LOW_BITS_MASK = 0x5555555555555555L;
+    private static final int MAX_PDB_VALUE = 0xff;
+
     private int size;
     private int specificStartIndex;
 
@@ -23,6 +37,9 @@ public class PancakesPDBGenerator extends GeneralInstancesGenerator {
     private int[] specific;
     private List<Integer> specificAsList;
     Map<Integer, Integer> converter;
+    // Temporary arrays for ranking the permutations of the specific pancakes
+    private int[] rankingWork;
+    private int[] rankingInverseWork;
 
     public PancakesPDBGenerator(int size, int specificStartIndex) {
         this.size = size;
@@ -34,6 +51,8 @@ public class PancakesPDBGenerator extends GeneralInstancesGenerator {
         for (int i = 0; i < this.specific.length; ++i) {
             converter.put(this.specific[i], i);
         }
+        this.rankingWork = new int[this.specific.length];
+        this.rankingInverseWork = new int[this.specific.length];
 
         this.pdb = new HashMap<>();
     }
@@ -167,34 +186,25 @@ public class PancakesPDBGenerator extends GeneralInstancesGenerator {
         return toReturn;
     }
 
-    private void swap(int[] arr, int first, int second) {
-        int tmp = arr[first];
-        arr[first] = arr[second];
-        arr[second] = tmp;
-    }
-
-    public long _getMyrvoldAndRuskeyHashValue(int[] pancakes, int[] w, int n) {
-        if (n == 1) {
-            return 0;
-        }
-        int d = pancakes[n - 1];
-        this.swap(pancakes, pancakes[n - 1], pancakes[w[n - 1]]);
-        this.swap(pancakes, w[n - 1], w[d]);
-        return d + n * _getMyrvoldAndRuskeyHashValue(pancakes, w, n - 1);
-    }
-
+    /**
+     * @param pancakes A permutation of 0..pancakes.length-1
+     *
+     * @return The Myrvold and Ruskey rank of the permutation
+     */
     public long _getMyrvoldAndRuskeyHashValue(int[] pancakes) {
-        int[] pancakesCopy = new int[pancakes.length];
-        System.arraycopy(pancakes, 0, pancakesCopy, 0, pancakes.length);
-        int[] w = new int[pancakesCopy.length];
-        for (int i = 0; i < pancakesCopy.length - 1; ++i) {
-            w[pancakesCopy[i]] = i;
-        }
-        return this._getMyrvoldAndRuskeyHashValue(pancakesCopy, w, pancakes.length);
+        return PermutationRanking.rankMyrvoldRuskey(pancakes, pancakes.length, this.rankingWork,
+                this.rankingInverseWork);
     }
 
     public Pair<Long, Long> hash(int[] pancakes,  List<Integer> specificPancakes, Map<Integer, Integer> converter) {
+        // The order of the specific pancakes (each one is converted to its index among the specific pancakes)
         int[] specific = new int[specificPancakes.size()];
+        int specificIndex = 0;
+        for (int pancake : pancakes) {
+            if (specificPancakes.contains(pancake)) {
+                specific[specificIndex++] = converter.get(pancake);
+            }
+        }
         long hash1 = this._getMyrvoldAndRuskeyHashValue(specific);
         int previousIndex = -1;
         int currentIndex = -1;
@@ -250,14 +260,135 @@ public class PancakesPDBGenerator extends GeneralInstancesGenerator {
 
     }
 
+    /**
+     * Sets the 2-bit search status of an abstract state
+     *
+     * @param statuses The packed statuses (32 states in each long)
+     * @param rank The rank of the abstract state
+     * @param status The status to set
+     */
+    private static void _setStatus(long[] statuses, int rank, long status) {
+        int shift = (rank & 31) << 1;
+        statuses[rank >>> 5] = (statuses[rank >>> 5] & ~(3L << shift)) | (status << shift);
+    }
+
+    /**
+     * @param statuses The packed statuses (32 states in each long)
+     * @param rank The rank of the abstract state
+     *
+     * @return The 2-bit search status of the abstract state
+     */
+    private static int _getStatus(long[] statuses, int rank) {
+        return (int) (statuses[rank >>> 5] >>> ((rank & 31) << 1)) & 3;
+    }
+
+    /**
+     * Builds the PDB of the specific pancakes by a single breadth-first search from the abstract goal (since each flip
+     * is its own inverse, the backward search is the same as a forward one)
+     *
+     * An abstract state is the positions of the specific pancakes (the other pancakes are don't cares), and is
+     * indexed by the lexicographic rank of these positions. The search keeps a 2-bit status for each abstract state
+     * (unseen, current level, next level or closed), so a level is scanned by skipping 32 states that aren't in the
+     * current level at once.
+     *
+     * NOTE: The PDB assumes the UNIT cost function
+     *
+     * @return The values of the PDB, indexed by the rank of the abstract state
+     */
+    public byte[] createPDBByRetrogradeSearch() {
+        int patternSize = this.specific.length;
+        long entriesCount = PermutationRanking.partialPermutationsCount(this.size, patternSize);
+        if (entriesCount > PatternDatabase.MAX_ARRAY_ENTRIES) {
+            throw new IllegalArgumentException("Too large PDB (" + entriesCount + " entries)");
+        }
+        byte[] values = new byte[(int) entriesCount];
+        long[] statuses = new long[(int) ((entriesCount + 31) >>> 5)];
+        int[] positions = new int[patternSize];
+        int[] flipped = new int[patternSize];
+        // The abstract goal: each specific pancake is located at its own position
+        for (int i = 0; i < patternSize; ++i) {
+            positions[i] = this.specific[i];
+        }
+        int goalRank = (int) PermutationRanking.rankPartial(positions, 0, patternSize, this.size);
+        PancakesPDBGenerator._setStatus(statuses, goalRank, PancakesPDBGenerator.STATUS_CURRENT);
+        long currentLevelSize = 1;
+        long totalSize = 1;
+        for (int depth = 0; currentLevelSize > 0; ++depth) {
+            if (depth + 1 > PancakesPDBGenerator.MAX_PDB_VALUE) {
+                throw new IllegalStateException("PDB values exceed a single byte");
+            }
+            System.out.println("[INFO] Depth " + depth + ": " + currentLevelSize + " states (total " + totalSize +
+                    "/" + entriesCount + ")");
+            long nextLevelSize = 0;
+            for (int word = 0; word < statuses.length; ++word) {
+                // Quickly skip words which don't contain any state of the current level (status 1 = binary 01)
+                long currentBits = statuses[word] & ~(statuses[word] >>> 1) & PancakesPDBGenerator.LOW_BITS_MASK;
+                while (currentBits != 0) {
+                    int rank = (word << 5) + (Long.numberOfTrailingZeros(currentBits) >>> 1);
+                    currentBits &= currentBits - 1;
+                    PermutationRanking.unrankPartial(rank, patternSize, this.size, positions);
+                    // Flip the top op+1 pancakes (op = 1..size-1)
+                    for (int op = 1; op < this.size; ++op) {
+                        for (int i = 0; i < patternSize; ++i) {
+                            flipped[i] = (positions[i] <= op) ? op - positions[i] : positions[i];
+                        }
+                        int childRank = (int) PermutationRanking.rankPartial(flipped, 0, patternSize, this.size);
+                        if (PancakesPDBGenerator._getStatus(statuses, childRank) ==
+                                PancakesPDBGenerator.STATUS_UNSEEN) {
+                            PancakesPDBGenerator._setStatus(statuses, childRank, PancakesPDBGenerator.STATUS_NEXT);
+                            values[childRank] = (byte) (depth + 1);
+                            ++nextLevelSize;
+                        }
+                    }
+                }
+            }
+            // Close the current level and make the next level the current one (01 -> 11, 10 -> 01)
+            for (int word = 0; word < statuses.length; ++word) {
+                long status = statuses[word];
+                long high = status & ~PancakesPDBGenerator.LOW_BITS_MASK;
+                long low = status & PancakesPDBGenerator.LOW_BITS_MASK;
+                long current = low & ~(high >>> 1);
+                long next = (high >>> 1) & ~low;
+                statuses[word] = status | (current << 1) | next;
+                statuses[word] &= ~(next << 1);
+            }
+            currentLevelSize = nextLevelSize;
+            totalSize += nextLevelSize;
+        }
+        assert totalSize == entriesCount;
+        return values;
+    }
+
+    /**
+     * Builds the PDB by a retrograde search and writes it in the raw layout (a single byte for each rank)
+     *
+     * @param fileName The name of the output file
+     *
+     * @throws IOException If something wrong occurred
+     */
+    public void writeRetrogradePDB(String fileName) throws IOException {
+        byte[] values = this.createPDBByRetrogradeSearch();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(fileName))) {
+            output.write(values);
+        }
+    }
+
     /**
      * This main function generates the PDB
      *
-     * @param args The arguments to main - should contain only the size of the Pancakes problem
+     * @param args The arguments to main - the size of the Pancakes problem, the first pancake of the pattern (the
+     *             pattern contains all the pancakes from this one) and the name of the output file
      */
-    public static void main(String[] args) {
-        PancakesPDBGenerator generator = new PancakesPDBGenerator(17, 10);
-        generator.createPDB();
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: <pancakes-count> <first-pancake-of-pattern> <output-file>");
+            System.exit(-1);
+        }
+        int size = GeneralInstancesGenerator.readIntNumber(args[0], 2, PermutationRanking.MAX_BIT_RANKED_VALUES,
+                "# of pancakes");
+        int firstPancake = GeneralInstancesGenerator.readIntNumber(args[1], 0, size - 1, "first pancake");
+        PancakesPDBGenerator generator = new PancakesPDBGenerator(size, firstPancake);
+        generator.writeRetrogradePDB(args[2]);
         System.out.println("Done.");
     }
 }
@@ -1,14 +1,11 @@
 package org.cs4j.core.generators;
 
-import org.cs4j.core.SearchAlgorithm;
-import org.cs4j.core.SearchDomain;
-import org.cs4j.core.SearchResult;
-import org.cs4j.core.algorithms.WAStar;
 import org.cs4j.core.collections.Pair;
 import org.cs4j.core.collections.PairInt;
 import org.cs4j.core.domains.GridPathFinding;
 import org.cs4j.core.domains.Utils;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -212,121 +209,114 @@ public class PivotsDBGenerator {
     }
 
     /**
-     * Finds a returns the minimum cost of reaching goal location from start location (on the given grid)
-     * The cost is found by running an optimal-cost search algorithm (e.g. AStar)
+     * Computes the minimum costs of reaching all the locations of the grid from the given source location
+     *
+     * The distances are computed by a single breadth-first sweep over the grid (all the moves of GridPathFinding are
+     * 4-connected and of unit cost, so BFS order is also the order of Dijkstra)
+     *
+     * NOTE: Distances are symmetric on this grid, so the result also contains the costs of reaching the source
      *
      * @param grid The grid to find distances on
-     * @param startLocation The start location on the grid
-     * @param goalLocation The goal location on the grid
+     * @param source The source location on the grid
      *
-     * @return The found distance
+     * @return An array of the distances from the source (NO_SOLUTION for blocked and unreachable locations)
      */
-    private double _minDistance(GridMap grid, int startLocation, int goalLocation) {
-        SearchAlgorithm alg = new WAStar();
-        SearchDomain domain =
-                new GridPathFinding(
-                        grid.mapWidth,
-                        grid.mapHeight,
-                        grid.map,
-                        startLocation, goalLocation);
-        SearchResult result = alg.search(domain);
-        if (result.hasSolution()) {
-            return result.getSolutions().get(0).getCost();
+    private double[] _computeDistancesFrom(GridMap grid, int source) {
+        double[] distances = new double[grid.mapSize];
+        Arrays.fill(distances, PivotsDBGenerator.NO_SOLUTION);
+        // Each location enters the queue at most once, so a plain array suffices
+        int[] queue = new int[grid.mapSize];
+        int head = 0;
+        int tail = 0;
+        distances[source] = 0.0d;
+        queue[tail++] = source;
+        while (head < tail) {
+            int location = queue[head++];
+            double nextDistance = distances[location] + 1.0d;
+            int x = location % grid.mapWidth;
+            int y = location / grid.mapWidth;
+            // South, North, West and East neighbors (as the moves of GridPathFinding)
+            if (y + 1 < grid.mapHeight) {
+                tail = this._visit(grid, location + grid.mapWidth, nextDistance, distances, queue, tail);
+            }
+            if (y > 0) {
+                tail = this._visit(grid, location - grid.mapWidth, nextDistance, distances, queue, tail);
+            }
+            if (x > 0) {
+                tail = this._visit(grid, location - 1, nextDistance, distances, queue, tail);
+            }
+            if (x + 1 < grid.mapWidth) {
+                tail = this._visit(grid, location + 1, nextDistance, distances, queue, tail);
+            }
         }
-        return PivotsDBGenerator.NO_SOLUTION;
+        return distances;
     }
 
     /**
-     * Finds whether the given value is inside the given array
+     * Sets the distance of the given location and pushes it to the queue if it wasn't reached before
      *
-     * @param arr The array to look in
-     * @param value The value to look for
-     *
-     * @return Whether value is inside arr
+     * @return The updated tail of the queue
      */
-    private boolean contains(int[] arr, int value) {
-        for (double current : arr) {
-            if (current == value) {
-                return true;
-            }
+    private int _visit(GridMap grid, int location, double distance, double[] distances, int[] queue, int tail) {
+        if (distances[location] == PivotsDBGenerator.NO_SOLUTION && !grid.isBlocked(location)) {
+            distances[location] = distance;
+            queue[tail++] = location;
         }
-        return false;
+        return tail;
     }
 
     /**
-     * The function computes pivots for a given grid and stores them
+     * The function computes pivots for a given grid, along with the distances from each pivot to all the locations
+     *
+     * After each pivot is chosen, the distances from it are computed by a single sweep over the grid and added to the
+     * sums of distances of all the locations - the next pivot is the location whose sum of distances from all the
+     * previous pivots is the largest (the farthest point)
      *
      * @param grid The grid for which pivots should be computed
      *
      * @param pivotsCount The computed pivots count
      *
-     * @return The computed pivots and distances from them
+     * @return The computed pivots and distances from them (distances[i] contains the distances from pivot i)
      */
-    private Pair<int[], Map<Integer, Map<Integer, Double>>> _computePivotsAndDistances(GridMap grid, int pivotsCount) {
+    private Pair<int[], double[][]> _computePivotsAndDistances(GridMap grid, int pivotsCount) {
         int pivots[] = new int[pivotsCount];
-        System.out.println("[INFO] The file will be at least " +
-                this._getPivotsFileSize(grid.mapSize, pivots.length) + " MB");
-        Map<Integer, Map<Integer, Double>> allDistances = new HashMap<>();
+        double[][] distances = new double[pivotsCount][];
+        double[] sumsOfDistances = new double[grid.mapSize];
+        boolean[] isPivot = new boolean[grid.mapSize];
         // Choose the first pivot - left-most and top-most free location
         pivots[0] = this._chooseFirstPivotByMostLeftTop(grid);
         assert pivots[0] != -1;
         System.out.println("[INFO] First pivot is : " + grid.getPosition(pivots[0]) + " - " + pivots[0]);
-        // For each pivot to look for
-        for (int currentPivotIndex = 1; currentPivotIndex < pivotsCount; ++currentPivotIndex) {
-            Map<Integer, Double> currentDistances = new HashMap<>();
-            System.out.println("[INFO] Looking for pivot " + currentPivotIndex);
+        for (int currentPivotIndex = 0; ; ++currentPivotIndex) {
+            int pivot = pivots[currentPivotIndex];
+            isPivot[pivot] = true;
+            distances[currentPivotIndex] = this._computeDistancesFrom(grid, pivot);
+            if (currentPivotIndex == pivotsCount - 1) {
+                break;
+            }
+            // Update the sums and look for the farthest location (unreachable locations don't contribute)
+            double[] currentDistances = distances[currentPivotIndex];
             double maxSumOfDistances = 0.0d;
             int locationWithMaxSumOfDistances = -1;
-            // Go over all the possible locations
             for (int i = 0; i < grid.mapSize; ++i) {
-                // Debug
-                if (i % 999 == 0) {
-                    System.out.print("\r[INFO] Searched over " + (i + 1) + "/" + grid.mapSize + " locations");
-                }
-                // i can't be a pivot
-                if (this.contains(pivots, i)) {
-                    currentDistances.put(i, 0.0d);
-                    continue;
-                }
-                if (grid.isBlocked(i)) {
-                    currentDistances.put(i, PivotsDBGenerator.NO_SOLUTION);
-                    continue;
+                if (currentDistances[i] > 0) {
+                    sumsOfDistances[i] += currentDistances[i];
                 }
-                double currentSumOfDistances = 0.0d;
-                for (int k = 0; k < currentPivotIndex; ++k) {
-                    double currentValue = 0;
-                    if (i != pivots[k]) {
-                        if (k < currentPivotIndex - 1) {
-                            currentValue = allDistances.get(pivots[k]).get(i);
-                        // Otherwise, k == currentPivotIndex - 1
-                        } else {
-                            currentValue = this._minDistance(grid, pivots[k], i);
-                            currentDistances.put(i, currentValue);
-                        }
-                    } else if (k == currentPivotIndex - 1) {
-                        currentDistances.put(i, 0.0d);
-                    }
-                    // Here, we of course have the value of distances[pivots[k]][i] correctly set
-                    if (currentValue > 0) {
-                        currentSumOfDistances += currentValue;
-                    }
-                }
-                if (currentSumOfDistances > maxSumOfDistances) {
-                    maxSumOfDistances = currentSumOfDistances;
+                if (!isPivot[i] && sumsOfDistances[i] > maxSumOfDistances) {
+                    maxSumOfDistances = sumsOfDistances[i];
                     locationWithMaxSumOfDistances = i;
                 }
             }
-            System.out.println();
-            // Location was found
-            assert locationWithMaxSumOfDistances != -1;
-            pivots[currentPivotIndex] = locationWithMaxSumOfDistances;
-            System.out.println("[INFO] Pivot " + currentPivotIndex + " is : " +
-                    grid.getPosition(pivots[currentPivotIndex]) + " - " + pivots[currentPivotIndex]);
-            allDistances.put(pivots[currentPivotIndex - 1], currentDistances);
-            //gridCopy.map[pivots[currentPivotIndex]] = 'Y';
+            if (locationWithMaxSumOfDistances == -1) {
+                System.out.println("[ERROR] Can't find " + pivotsCount + " pivots: only " + (currentPivotIndex + 1) +
+                        " locations are reachable");
+                throw new IllegalArgumentException();
+            }
+            pivots[currentPivotIndex + 1] = locationWithMaxSumOfDistances;
+            System.out.println("[INFO] Pivot " + (currentPivotIndex + 1) + " is : " +
+                    grid.getPosition(locationWithMaxSumOfDistances) + " - " + locationWithMaxSumOfDistances);
         }
-        //System.out.println(gridCopy.toString());
-        return new Pair<>(pivots, allDistances);
+        return new Pair<>(pivots, distances);
     }
 
     /**
@@ -339,55 +329,44 @@ public class PivotsDBGenerator {
      * @return The computed pivots count
      */
     private int[] _computePivots(GridMap grid, int pivotsCount) {
-        int pivots[] = new int[pivotsCount];
-        // Choose the first pivot - left-most and top-most free location
-        pivots[0] = this._chooseFirstPivotByMostLeftTop(grid);
-        assert pivots[0] != -1;
-        System.out.println("[INFO] First pivot is : " + grid.getPosition(pivots[0]));
-        // For each pivot to look for
-        for (int currentPivotIndex = 1; currentPivotIndex < pivotsCount; ++currentPivotIndex) {
-            System.out.println("[INFO] Looking for pivot " + currentPivotIndex);
-            double maxSumOfDistances = 0.0d;
-            int locationWithMaxSunOfDistances = -1;
-            // Go over all the possible locations
-            for (int i = 0; i < grid.mapSize; ++i) {
-                // Debug
-                if (i % 999 == 0) {
-                    System.out.print("\r[INFO] Searched over " + (i + 1) + "/" + grid.mapSize +
-                            " locations");
-                }
-                if (this.contains(pivots, i)) {
-                    continue;
-                }
-                if (grid.isBlocked(i)) {
-                    continue;
-                }
-                double currentSumOfDistances = 0.0d;
-                for (int k = 0; k < currentPivotIndex; ++k) {
-                    double currentValue = 0;
-                    if (i != pivots[k]) {
-                        currentValue = this._minDistance(grid, pivots[k], i);
-                    }
-                    // Here, we of course have the value of distances[pivots[k]][i] correctly set
-                    if (currentValue > 0) {
-                        currentSumOfDistances += currentValue;
-                    }
-                }
-                if (currentSumOfDistances > maxSumOfDistances) {
-                    maxSumOfDistances = currentSumOfDistances;
-                    locationWithMaxSunOfDistances = i;
-                }
+        return this._computePivotsAndDistances(grid, pivotsCount).getKey();
+    }
+
+    /**
+     * Writes the pivots and the distances from them to the given file (see _storePivots for the format)
+     *
+     * @param grid The grid the pivots belong to
+     * @param pivots The pivots
+     * @param distances The distances from each pivot to all the locations of the grid
+     * @param outputFile The output file to store the pivots in
+     *
+     * @throws IOException If something wrong occurred
+     */
+    private void _writePivots(GridMap grid, int[] pivots, double[][] distances, String outputFile)
+            throws IOException {
+        DataOutputStream writer =
+                new DataOutputStream(
+                        new BufferedOutputStream(
+                                new FileOutputStream(outputFile)));
+        System.out.println("[INFO] Creating pivots file " + outputFile);
+        System.out.println("[INFO] The file will be at least " +
+                this._getPivotsFileSize(grid.mapSize, pivots.length) + " MB");
+        // Write pivots count
+        writer.writeInt(pivots.length);
+        // Write the pivots
+        for (int pivot : pivots) {
+            writer.writeInt(pivot);
+        }
+        // Write the distances for each pivot
+        for (int pivotIndex = 0; pivotIndex < pivots.length; ++pivotIndex) {
+            System.out.println("[INFO] Writing all distances for pivot # " +
+                    (pivotIndex + 1) + "/" + pivots.length + " " + grid.getPosition(pivots[pivotIndex]));
+            for (double distance : distances[pivotIndex]) {
+                writer.writeDouble(distance);
             }
-            System.out.println();
-            // Location was found
-            assert locationWithMaxSunOfDistances != -1;
-            pivots[currentPivotIndex] = locationWithMaxSunOfDistances;
-            System.out.println("[INFO] Pivot " + currentPivotIndex + " is : " +
-                    grid.getPosition(pivots[currentPivotIndex]));
-            //gridCopy.map[pivots[currentPivotIndex]] = 'Y';
         }
-        //System.out.println(gridCopy.toString());
-        return pivots;
+        writer.close();
+        System.out.println("[INFO] Done creating pivots file " + outputFile);
     }
 
     /**
@@ -420,36 +399,11 @@ public class PivotsDBGenerator {
      *       <all-distances-from-pivot-n>
      */
     private void _storePivots(GridMap grid, int[] pivots, String outputFile) throws IOException {
-        DataOutputStream writer = new DataOutputStream(new FileOutputStream(outputFile));
-        System.out.println("[INFO] Creating pivots file " + outputFile);
-        System.out.println("[INFO] The file will be at least " +
-                this._getPivotsFileSize(grid.mapSize, pivots.length) + " MB");
-        // Write pivots count
-        writer.writeInt(pivots.length);
-        // Write the pivots
-        for (int pivot : pivots) {
-            writer.writeInt(pivot);
-        }
-        // Write the distances for each pivot
+        double[][] distances = new double[pivots.length][];
         for (int pivotIndex = 0; pivotIndex < pivots.length; ++pivotIndex) {
-            int pivot = pivots[pivotIndex];
-            System.out.println("[INFO] Writing all distances for pivot # " +
-                    (pivotIndex + 1) + "/" + pivots.length + " " + grid.getPosition(pivot));
-            for (int i = 0; i < grid.mapSize; ++i) {
-                if (i % 999 == 0) {
-                    System.out.print("\r[INFO] Wrote " + (i + 1) + "/" + grid.mapSize + " distances");
-                }
-                if (i == pivot) {
-                    writer.writeDouble(0.0d);
-                } else {
-                    writer.writeDouble(this._minDistance(grid, i, pivot));
-                }
-            }
-            // Add a newline
-            System.out.println();
+            distances[pivotIndex] = this._computeDistancesFrom(grid, pivots[pivotIndex]);
         }
-        writer.close();
-        System.out.println("[INFO] Done creating pivots file " + outputFile);
+        this._writePivots(grid, pivots, distances, outputFile);
     }
 
     /**
@@ -586,40 +540,8 @@ public class PivotsDBGenerator {
                                                  int pivotsCount,
                                                  String outputFile) throws IOException {
         GridMap gridCopy = new GridMap(width, height, grid);
-        Pair<int[], Map<Integer, Map<Integer, Double>>> pivotsAndDistances =
-                this._computePivotsAndDistances(gridCopy, pivotsCount);
-        int[] pivots = pivotsAndDistances.getKey();
-        Map<Integer, Map<Integer, Double>> allDistances = pivotsAndDistances.getValue();
-        System.out.println(Arrays.toString(allDistances.keySet().toArray()));
-        DataOutputStream writer = new DataOutputStream(new FileOutputStream(outputFile));
-        // Write pivots count
-        writer.writeInt(pivots.length);
-        // Write the pivots
-        for (int pivot : pivots) {
-            writer.writeInt(pivot);
-        }
-        // Write the distances for each pivot
-        for (int pivotIndex = 0; pivotIndex < pivots.length; ++pivotIndex) {
-            int pivot = pivots[pivotIndex];
-            Map<Integer, Double> currentDistances = allDistances.get(pivot);
-            System.out.println("[INFO] Writing all distances for pivot # " +
-                    (pivotIndex + 1) + "/" + pivots.length + " " + gridCopy.getPosition(pivot));
-            for (int i = 0; i < gridCopy.mapSize; ++i) {
-                if (i % 999 == 0) {
-                    System.out.print("\r[INFO] Wrote " + (i + 1) + "/" + gridCopy.mapSize + " distances");
-                }
-                if (currentDistances != null) {
-                    writer.writeDouble(currentDistances.get(i));
-                } else  if (i == pivot) {
-                    writer.writeDouble(0.0d);
-                } else {
-                    writer.writeDouble(this._minDistance(gridCopy, i, pivot));
-                }
-            }
-            // Add a newline
-            System.out.println();
-        }
-        writer.close();
+        Pair<int[], double[][]> pivotsAndDistances = this._computePivotsAndDistances(gridCopy, pivotsCount);
+        this._writePivots(gridCopy, pivotsAndDistances.getKey(), pivotsAndDistances.getValue(), outputFile);
     }
 
     /**
@@ -0,0 +1,134 @@
+package org.cs4j.core.generators;
+
+import org.cs4j.core.domains.PermutationRanking;
+import org.cs4j.core.domains.Utils;
+
+import java.io.IOException;
+
+/**
+ * Generates a PDB of the TopSpin problem in the raw layout which is read by TopSpin (see the pdb-data parameter)
+ *
+ * An abstract state is the locations of the pattern tokens, after the tokens are rotated such that token 0 is at
+ * location 0 (the locations of the other tokens are 1..tokensNumber-1, and are ranked as 0..tokensNumber-2, like in
+ * TopSpin). Since the state is rotated, all the tokensNumber positions of the turnstile are considered for each move.
+ */
+public class TopSpinPDBGenerator implements PDBBuilder.Abstraction {
+    private final int tokensNumber;
+    private final int spinSize;
+    // The tokens of the pattern (except token 0)
+    private final int[] patternTokens;
+
+    /**
+     * The constructor of the class
+     *
+     * @param tokensNumber The number of tokens
+     * @param spinSize The size of the turnstile
+     * @param patternTokens The tokens of the pattern except token 0 (which is always part of the pattern)
+     */
+    public TopSpinPDBGenerator(int tokensNumber, int spinSize, int[] patternTokens) {
+        assert tokensNumber <= PermutationRanking.MAX_BIT_RANKED_VALUES;
+        this.tokensNumber = tokensNumber;
+        this.spinSize = spinSize;
+        this.patternTokens = patternTokens;
+    }
+
+    @Override
+    public long getStatesCount() {
+        return PermutationRanking.partialPermutationsCount(this.tokensNumber - 1, this.patternTokens.length);
+    }
+
+    @Override
+    public long getEntriesCount() {
+        return this.getStatesCount();
+    }
+
+    @Override
+    public long getEntry(long state) {
+        return state;
+    }
+
+    @Override
+    public long[] getGoals() {
+        int[] locations = new int[this.patternTokens.length];
+        for (int i = 0; i < locations.length; ++i) {
+            locations[i] = this.patternTokens[i] - 1;
+        }
+        return new long[]{PermutationRanking.rankPartial(locations, 0, locations.length, this.tokensNumber - 1)};
+    }
+
+    @Override
+    public int getMaxPredecessorsCount() {
+        return this.tokensNumber;
+    }
+
+    @Override
+    public PDBBuilder.Expander createExpander() {
+        final int[] locations = new int[this.patternTokens.length];
+        final int[] flipped = new int[this.patternTokens.length];
+        return new PDBBuilder.Expander() {
+            @Override
+            public int getPredecessors(long state, long[] predecessors, int[] costs) {
+                int n = TopSpinPDBGenerator.this.tokensNumber;
+                int spinSize = TopSpinPDBGenerator.this.spinSize;
+                PermutationRanking.unrankPartial(state, locations.length, n - 1, locations);
+                // Each move is its own inverse, so the predecessors are the successors
+                for (int start = 0; start < n; ++start) {
+                    // The new position of token 0 (which is at position 0 before the move)
+                    int zeroPosition = TopSpinPDBGenerator._reverse(0, start, spinSize, n);
+                    for (int i = 0; i < locations.length; ++i) {
+                        int position = TopSpinPDBGenerator._reverse(locations[i] + 1, start, spinSize, n);
+                        // Rotate the tokens back such that token 0 is at position 0
+                        flipped[i] = ((position - zeroPosition + n) % n) - 1;
+                    }
+                    predecessors[start] = PermutationRanking.rankPartial(flipped, 0, flipped.length, n - 1);
+                    costs[start] = 1;
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * @param position A position of a token
+     * @param start The first position of the reversed window
+     * @param spinSize The size of the window
+     * @param tokensNumber The number of tokens
+     *
+     * @return The position of the token after the window is reversed
+     */
+    private static int _reverse(int position, int start, int spinSize, int tokensNumber) {
+        int offset = (position - start + tokensNumber) % tokensNumber;
+        if (offset >= spinSize) {
+            return position;
+        }
+        return (start + spinSize - 1 - offset) % tokensNumber;
+    }
+
+    /**
+     * Builds a single PDB
+     *
+     * @param args The arguments: the number of tokens, the size of the turnstile, the tokens of the pattern (in the
+     *             format of the pdb-data parameter of TopSpin, e.g. [0,1,2,3,4,5] - the first token is ignored since
+     *             the PDB is always anchored at token 0), the output file and optionally the number of threads
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4 || args.length > 5) {
+            System.out.println("Usage: <tokens-number> <spin-size> <tokens-array> <output-file> [threads-count]");
+            System.exit(-1);
+        }
+        int tokensNumber = GeneralInstancesGenerator.readIntNumber(args[0], 2,
+                PermutationRanking.MAX_BIT_RANKED_VALUES, "# of tokens");
+        int spinSize = GeneralInstancesGenerator.readIntNumber(args[1], 2, tokensNumber, "spin size");
+        int[] tokensArray = Utils.stringToIntegerArray(args[2]);
+        int[] patternTokens = new int[tokensArray.length - 1];
+        System.arraycopy(tokensArray, 1, patternTokens, 0, patternTokens.length);
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+        if (args.length == 5) {
+            threadsCount = GeneralInstancesGenerator.readIntNumber(args[4], 1, -1, "# of threads");
+        }
+        TopSpinPDBGenerator abstraction = new TopSpinPDBGenerator(tokensNumber, spinSize, patternTokens);
+        System.out.println("[INFO] Building a PDB of " + abstraction.getEntriesCount() + " entries into " + args[3]);
+        new PDBBuilder(abstraction, threadsCount).build(args[3], PDBBuilder.Layout.RAW);
+        System.out.println("Done.");
+    }
+}
@@ -0,0 +1,491 @@
+package org.cs4j.core.mains;
+
+import org.cs4j.core.BufferedResultsWriter;
+import org.cs4j.core.ReleasableSearchDomain;
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchResult;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a whole experiment - the matrix of (instance x algorithm x parameters) - on a work-stealing pool
+ *
+ * The jobs are submitted in decreasing order of their estimated cost (so the long jobs don't remain for the end of the
+ * experiment) and are taken by the workers in this order. Each worker keeps the last domain it has loaded: the jobs of
+ * the same instance reuse it, and the jobs of other instances pass it to the loader as the previous domain (so the
+ * PDBs and the other heuristic tables are loaded only once by each worker).
+ *
+ * The results are passed to a single sink as soon as each job finishes.
+ */
+public class ExperimentScheduler {
+
+    /**
+     * Loads the domain of an instance
+     */
+    public interface DomainLoader {
+        /**
+         * @param previous The domain which was previously loaded by the same worker (null for the first domain) - its
+         *                 heuristic data can be reused by the loaded domain (e.g. new FifteenPuzzle(previous, is))
+         * @param instance The id of the instance to load
+         *
+         * @return The loaded domain or null if the instance doesn't exist
+         */
+        SearchDomain load(SearchDomain previous, int instance) throws IOException;
+    }
+
+    /**
+     * Creates a new (unconfigured) instance of an algorithm for each job
+     */
+    public interface AlgorithmFactory {
+        SearchAlgorithm create();
+    }
+
+    /**
+     * Estimates the relative cost of a job (only the order of the estimations matters)
+     */
+    public interface CostEstimator {
+        double estimate(Job job);
+    }
+
+    /**
+     * Receives the results of the jobs
+     *
+     * NOTE: The sink is called concurrently by all the workers
+     */
+    public interface ResultSink {
+        /**
+         * @param job The finished job
+         * @param result The result of the search or null if the search ran out of memory
+         */
+        void accept(Job job, SearchResult result);
+    }
+
+    /**
+     * A single run: an algorithm with specific parameters on a single instance
+     */
+    public static final class Job {
+        private final int instance;
+        private final String algorithmName;
+        private final AlgorithmFactory factory;
+        private final Map<String, String> parameters;
+        private double estimatedCost;
+
+        private Job(int instance, String algorithmName, AlgorithmFactory factory, Map<String, String> parameters) {
+            this.instance = instance;
+            this.algorithmName = algorithmName;
+            this.factory = factory;
+            this.parameters = Collections.unmodifiableMap(parameters);
+        }
+
+        public int getInstance() {
+            return this.instance;
+        }
+
+        public String getAlgorithmName() {
+            return this.algorithmName;
+        }
+
+        public Map<String, String> getParameters() {
+            return this.parameters;
+        }
+
+        /**
+         * @param name The name of the parameter
+         *
+         * @return The value of the parameter (or null if the job doesn't have this parameter)
+         */
+        public String getParameter(String name) {
+            return this.parameters.get(name);
+        }
+
+        public double getEstimatedCost() {
+            return this.estimatedCost;
+        }
+
+        @Override
+        public String toString() {
+            return "Instance: " + this.instance + ", Algorithm: " + this.algorithmName + ", " + this.parameters;
+        }
+    }
+
+    /**
+     * The algorithms of the experiment and the values of their parameters
+     */
+    private static final class AlgorithmEntry {
+        private final String name;
+        private final AlgorithmFactory factory;
+        private final Map<String, String[]> parameters;
+
+        private AlgorithmEntry(String name, AlgorithmFactory factory, Map<String, String[]> parameters) {
+            this.name = name;
+            this.factory = factory;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * The domain which was last loaded by a worker
+     */
+    private static final class LoadedDomain {
+        private int instance;
+        private SearchDomain domain;
+    }
+
+    private final DomainLoader loader;
+    private final List<AlgorithmEntry> algorithms;
+    private int parallelism;
+    private CostEstimator estimator;
+    // If null, the default budgets of the algorithms are used
+    private SearchBudget budget;
+
+    /**
+     * The constructor of the class
+     *
+     * @param loader The loader of the domains of the instances
+     */
+    public ExperimentScheduler(DomainLoader loader) {
+        this.loader = loader;
+        this.algorithms = new ArrayList<>();
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.estimator = null;
+        this.budget = null;
+    }
+
+    /**
+     * Adds an algorithm to the experiment: the algorithm is run with each combination of the values of its parameters
+     *
+     * @param name The name of the algorithm (for the logs and for the sink)
+     * @param factory Creates the instances of the algorithm
+     * @param parameters The possible values of each parameter (can be null)
+     */
+    public void addAlgorithm(String name, AlgorithmFactory factory, Map<String, String[]> parameters) {
+        this.algorithms.add(new AlgorithmEntry(name, factory,
+                (parameters == null) ? new LinkedHashMap<String, String[]>() : parameters));
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            System.out.println("[ERROR] The number of workers must be > 0");
+            throw new IllegalArgumentException();
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param estimator Estimates the costs of the jobs (if not set, the jobs are run in the order of the matrix)
+     */
+    public void setCostEstimator(CostEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * @param budget The budget of each one of the searches (if not set, the default budgets of the algorithms are used)
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Adds all the combinations of the values of the parameters (starting from the given one) to the jobs list
+     */
+    private void _addCombinations(int instance, AlgorithmEntry algorithm, List<String> names, int index,
+                                  Map<String, String> current, List<Job> jobs) {
+        if (index == names.size()) {
+            jobs.add(new Job(instance, algorithm.name, algorithm.factory, new LinkedHashMap<>(current)));
+            return;
+        }
+        String name = names.get(index);
+        for (String value : algorithm.parameters.get(name)) {
+            current.put(name, value);
+            this._addCombinations(instance, algorithm, names, index + 1, current, jobs);
+        }
+        current.remove(name);
+    }
+
+    /**
+     * Plans the jobs of the experiment
+     *
+     * @param firstInstance The id of the first instance
+     * @param lastInstance The id of the last instance (inclusive)
+     *
+     * @return The jobs in the order they will be run (the most expensive first)
+     */
+    public List<Job> plan(int firstInstance, int lastInstance) {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = firstInstance; i <= lastInstance; ++i) {
+            for (AlgorithmEntry algorithm : this.algorithms) {
+                this._addCombinations(i, algorithm, new ArrayList<>(algorithm.parameters.keySet()), 0,
+                        new HashMap<String, String>(), jobs);
+            }
+        }
+        if (this.estimator != null) {
+            for (Job job : jobs) {
+                job.estimatedCost = this.estimator.estimate(job);
+            }
+            // The sort is stable, so the jobs of the same cost remain in the order of the matrix
+            Collections.sort(jobs, new Comparator<Job>() {
+                @Override
+                public int compare(Job a, Job b) {
+                    return Double.compare(b.estimatedCost, a.estimatedCost);
+                }
+            });
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all the jobs of the experiment
+     *
+     * @param firstInstance The id of the first instance
+     * @param lastInstance The id of the last instance (inclusive)
+     * @param sink Receives the results of the jobs
+     */
+    public void run(int firstInstance, int lastInstance, ResultSink sink) {
+        this.run(this.plan(firstInstance, lastInstance), sink);
+    }
+
+    /**
+     * Runs the given jobs (in the given order) and returns after all of them are finished
+     *
+     * @param jobs The jobs to run
+     * @param sink Receives the results of the jobs
+     */
+    public void run(List<Job> jobs, ResultSink sink) {
+        // FIFO mode: the workers take the jobs in the order of their submission
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                null, true);
+        // All the domains of the workers are kept, so their heuristic tables can be released at the end
+        final List<LoadedDomain> allLoadedDomains = Collections.synchronizedList(new ArrayList<LoadedDomain>());
+        ThreadLocal<LoadedDomain> loadedDomains = new ThreadLocal<LoadedDomain>() {
+            @Override
+            protected LoadedDomain initialValue() {
+                LoadedDomain loaded = new LoadedDomain();
+                allLoadedDomains.add(loaded);
+                return loaded;
+            }
+        };
+        AtomicInteger finished = new AtomicInteger();
+        System.out.println("[INFO] Running " + jobs.size() + " jobs with " + this.parallelism + " workers");
+        List<JobTask> tasks = new ArrayList<>(jobs.size());
+        try {
+            for (Job job : jobs) {
+                JobTask task = new JobTask(job, sink, loadedDomains, finished, jobs.size());
+                tasks.add(task);
+                pool.execute(task);
+            }
+            // Blocks until each task is done (no polling)
+            for (JobTask task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+            synchronized (allLoadedDomains) {
+                for (LoadedDomain loaded : allLoadedDomains) {
+                    ExperimentScheduler._releaseHeuristicTables(loaded.domain);
+                    loaded.domain = null;
+                }
+            }
+        }
+        System.out.println("[INFO] All the " + jobs.size() + " jobs finished");
+    }
+
+    /**
+     * Releases the heuristic tables of a domain which is no longer used (see ReleasableSearchDomain)
+     *
+     * @param domain The domain (may be null)
+     */
+    private static void _releaseHeuristicTables(SearchDomain domain) {
+        if (domain instanceof ReleasableSearchDomain) {
+            ((ReleasableSearchDomain) domain).releaseHeuristicTables();
+        }
+    }
+
+    /**
+     * Runs a single job on a worker of the pool
+     */
+    private final class JobTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final ResultSink sink;
+        private final ThreadLocal<LoadedDomain> loadedDomains;
+        private final AtomicInteger finished;
+        private final int jobsCount;
+
+        private JobTask(Job job, ResultSink sink, ThreadLocal<LoadedDomain> loadedDomains, AtomicInteger finished,
+                        int jobsCount) {
+            this.job = job;
+            this.sink = sink;
+            this.loadedDomains = loadedDomains;
+            this.finished = finished;
+            this.jobsCount = jobsCount;
+        }
+
+        /**
+         * Returns the domain of the instance of the job (loads it if the worker didn't load it yet)
+         *
+         * @return The domain or null if the instance doesn't exist
+         */
+        private SearchDomain _getDomain() throws IOException {
+            LoadedDomain loaded = this.loadedDomains.get();
+            if (loaded.domain == null || loaded.instance != this.job.instance) {
+                SearchDomain domain;
+                try {
+                    domain = ExperimentScheduler.this.loader.load(loaded.domain, this.job.instance);
+                } catch (FileNotFoundException e) {
+                    domain = null;
+                }
+                if (domain == null) {
+                    return null;
+                }
+                // The new domain holds its own references to the heuristic tables it shares with the previous one
+                ExperimentScheduler._releaseHeuristicTables(loaded.domain);
+                loaded.instance = this.job.instance;
+                loaded.domain = domain;
+            }
+            return loaded.domain;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                SearchDomain domain = this._getDomain();
+                if (domain == null) {
+                    System.out.println("[WARNING] Instance " + this.job.instance + " doesn't exist - skipping");
+                    return;
+                }
+                SearchAlgorithm algorithm = this.job.factory.create();
+                for (Map.Entry<String, String> parameter : this.job.parameters.entrySet()) {
+                    algorithm.setAdditionalParameter(parameter.getKey(), parameter.getValue());
+                }
+                if (ExperimentScheduler.this.budget != null) {
+                    algorithm.setBudget(ExperimentScheduler.this.budget);
+                }
+                SearchResult result;
+                try {
+                    result = algorithm.search(domain);
+                } catch (OutOfMemoryError e) {
+                    result = null;
+                }
+                this.sink.accept(this.job, result);
+                System.out.println("[INFO] Done " + this.finished.incrementAndGet() + "/" + this.jobsCount + " (" +
+                        this.job + ")" + ((result == null) ? ": OutOfMemory" : ""));
+            } catch (IOException | RuntimeException e) {
+                // A failure of a single job doesn't stop the experiment
+                System.out.println("[ERROR] Job failed (" + this.job + "): " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A sink which writes a row for each group of jobs (e.g. the AR and the NR runs of the same instance and weight)
+     *
+     * A row is written once all its jobs are finished; the columns of the jobs are written in the order of their
+     * indexes (e.g. first AR and then NR). The rows are queued to a BufferedResultsWriter, so the workers don't wait
+     * for the file.
+     */
+    public static abstract class RowsSink implements ResultSink {
+        private final BufferedResultsWriter output;
+        private final int jobsPerRow;
+        // The rows whose jobs weren't all finished: the first element of each row is the key
+        private final Map<String, double[][]> pendingRows;
+
+        /**
+         * The constructor of the class
+         *
+         * @param output The output of the rows
+         * @param jobsPerRow The number of jobs in each row
+         */
+        protected RowsSink(BufferedResultsWriter output, int jobsPerRow) {
+            this.output = output;
+            this.jobsPerRow = jobsPerRow;
+            this.pendingRows = new HashMap<>();
+        }
+
+        /**
+         * @return The first columns of the row of the job (e.g. the instance and the weight)
+         */
+        protected abstract double[] getRowKey(Job job);
+
+        /**
+         * @return The index of the job in its row
+         */
+        protected abstract int getIndexInRow(Job job);
+
+        /**
+         * @param result The result of the search or null if the search ran out of memory
+         *
+         * @return The columns of the result
+         */
+        protected abstract double[] getColumns(SearchResult result);
+
+        @Override
+        public void accept(Job job, SearchResult result) {
+            double[] keyColumns = this.getRowKey(job);
+            String key = Arrays.toString(keyColumns);
+            double[] columns = this.getColumns(result);
+            double[][] row;
+            synchronized (this) {
+                row = this.pendingRows.get(key);
+                if (row == null) {
+                    row = new double[this.jobsPerRow + 1][];
+                    row[0] = keyColumns;
+                    this.pendingRows.put(key, row);
+                }
+                row[this.getIndexInRow(job) + 1] = columns;
+                for (double[] current : row) {
+                    if (current == null) {
+                        return;
+                    }
+                }
+                this.pendingRows.remove(key);
+            }
+            // Only this thread has the completed row now
+            int length = 0;
+            for (double[] current : row) {
+                length += current.length;
+            }
+            double[] line = new double[length];
+            int offset = 0;
+            for (double[] current : row) {
+                System.arraycopy(current, 0, line, offset, current.length);
+                offset += current.length;
+            }
+            try {
+                this.output.write(line);
+            } catch (IOException e) {
+                System.out.println("[ERROR] Failed writing the row " + key + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Closes the output (the rows whose jobs weren't all finished aren't written)
+         *
+         * @throws IOException If writing the rows failed
+         */
+        public void close() throws IOException {
+            synchronized (this) {
+                if (!this.pendingRows.isEmpty()) {
+                    System.out.println("[WARNING] " + this.pendingRows.size() + " incomplete rows weren't written: " +
+                            this.pendingRows.keySet());
+                }
+            }
+            this.output.close();
+        }
+    }
+}
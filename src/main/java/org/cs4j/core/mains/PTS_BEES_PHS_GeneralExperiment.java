@@ -1,10 +1,13 @@
 package org.cs4j.core.mains;
 
+import org.cs4j.core.BufferedResultsWriter;
 import org.cs4j.core.OutputResult;
 import org.cs4j.core.SearchAlgorithm;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.SearchResult.Solution;
+import org.cs4j.core.SearchResultSchema;
+import org.cs4j.core.SearchResultSchema.Column;
 import org.cs4j.core.algorithms.BEES;
 import org.cs4j.core.algorithms.PHS;
 import org.cs4j.core.algorithms.PTS;
@@ -20,11 +23,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Created by sepetnit on 11/5/2015.
@@ -37,7 +40,12 @@ public class PTS_BEES_PHS_GeneralExperiment {
      ******************************************************************************************************************/
 
     private static final String TEMP_DIR = "C:\\Windows\\Temp\\";
-    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    // The columns of each run (the same values as _getSolutionResult, _getNoSolutionResult and _getOutOfMemoryResult)
+    private static final SearchResultSchema RUN_SCHEMA =
+            new SearchResultSchema(Column.SOLVED, Column.LENGTH, Column.COST, Column.GENERATED,
+                    Column.FIRST_ITERATION_EXPANDED, Column.EXPANDED, Column.DUPLICATES, Column.UPDATED_IN_OPEN,
+                    Column.REOPENED, Column.ITERATIONS, Column.WALL_TIME_MILLIS);
 
     /*******************************************************************************************************************
      * Private  fields
@@ -49,6 +57,17 @@ public class PTS_BEES_PHS_GeneralExperiment {
      * Private methods
      ******************************************************************************************************************/
 
+    /**
+     * Creates a header line for writing into output
+     *
+     * @return The created header line
+     */
+    private String _getHeader() {
+        return "InstanceID,MaxCost," +
+                "AR-Slv,AR-Dep,AR-Ggl,AR-Gen,AR-FExp,AR-Exp,AR-Dup,AR-Oup,AR-Rep,AR-Itc,AR-Tme," +
+                "NR-Slv,NR-Dep,NR-Ggl,NR-Gen,NR-FExp,NR-Exp,NR-Dup,NR-Oup,NR-Rep,NR-Itc,NR-Tme";
+    }
+
     /***
      * Write a header line into the output
      * @param outputResult The output result which points to a file
@@ -56,11 +75,7 @@ public class PTS_BEES_PHS_GeneralExperiment {
      */
     private void _writeHeaderLineToOutput(OutputResult outputResult) throws IOException {
         // Write the header line
-        outputResult.writeln(
-                "InstanceID,MaxCost," +
-                        "AR-Slv,AR-Dep,AR-Ggl,AR-Gen,AR-FExp,AR-Exp,AR-Dup,AR-Oup,AR-Rep,AR-Itc,AR-Tme," +
-                        "NR-Slv,NR-Dep,NR-Ggl,NR-Gen,NR-FExp,NR-Exp,NR-Dup,NR-Oup,NR-Rep,NR-Itc,NR-Tme"
-        );
+        outputResult.writeln(this._getHeader());
     }
 
     /**
@@ -169,6 +184,22 @@ public class PTS_BEES_PHS_GeneralExperiment {
         return output;
     }
 
+    /**
+     * Returns the writer of the rows of a multi-threaded experiment (the header line is written immediately)
+     *
+     * @param outputPath The output path (can be null and in this case a random file is created)
+     *
+     * @return The created writer
+     */
+    private BufferedResultsWriter _createResultsWriter(String outputPath) throws IOException {
+        if (outputPath == null) {
+            outputPath = PTS_BEES_PHS_GeneralExperiment.TEMP_DIR + UUID.randomUUID().toString().replace("-", "") +
+                    ".search";
+        }
+        // The same file as the one of OutputResult (which overwrites an existing file)
+        return new BufferedResultsWriter(outputPath + ".csv", this._getHeader().split(","));
+    }
+
     /*******************************************************************************************************************
      * Max costs handling
      ******************************************************************************************************************/
@@ -197,80 +228,6 @@ public class PTS_BEES_PHS_GeneralExperiment {
         return Utils.integerListToArray(maxCostsAsList);
     }
 
-    /*******************************************************************************************************************
-     * Private class for MultiThreaded run
-     ******************************************************************************************************************/
-
-    private class WorkerThread implements Runnable {
-        private int threadID;
-        // The names of all the result files are stored in this (synchronized) list
-        private List<String> resultFiles;
-        private SearchAlgorithm algorithm;
-        private SearchDomain domain;
-        private String problemDescription;
-        private OutputResult output;
-
-        /**
-         * The constructor of the worker thread
-         *
-         * @param threadID ID of the thread (for debugging reasons)
-         * @param domain The domain to run on
-         * @param algorithm The algorithm to run
-         * @param description The description of the problem (can be null)
-         * @param resultFiles The result files list - to add the result later
-         *
-         * @throws IOException If something wrong occurred
-         */
-        public WorkerThread(int threadID,
-                            SearchDomain domain,
-                            SearchAlgorithm algorithm,
-                            String description,
-                            List<String> resultFiles) throws IOException {
-
-            this.threadID = threadID;
-            this.resultFiles = resultFiles;
-            this.algorithm = algorithm;
-            this.domain = domain;
-            this.problemDescription = (description != null)? " (" +description+ ") " : "";
-            //System.out.println("Created Thread with ID " + threadID);
-        }
-
-        @Override
-        public void run() {
-            System.out.println("[INFO] Thread " + this.threadID + " is now running " + this.problemDescription);
-            // Setup the output
-            try {
-                this.output = PTS_BEES_PHS_GeneralExperiment.this.getOutputResult(null, false);
-                System.out.println("[INFO] Thread " + this.threadID + " will be written to " + this.output.getFname());
-            } catch (IOException e) {
-                this.resultFiles.add("Failed (Alg: " + this.algorithm.toString() +
-                        ", Domain: " + domain.toString() + ")");
-                return;
-            }
-            // Otherwise, run
-            try {
-                SearchResult result = this.algorithm.search(this.domain);
-                System.out.println("[INFO] Thread " + this.threadID + " is Done");
-                // No solution
-                if (!result.hasSolution()) {
-                    this.output.appendNewResult(PTS_BEES_PHS_GeneralExperiment.this._getNoSolutionResult(result));
-                    System.out.println("[INFO] Thread " + this.threadID + this.problemDescription + ": NoSolution");
-                } else {
-                    double[] resultData = PTS_BEES_PHS_GeneralExperiment.this._getSolutionResult(result);
-                    this.output.appendNewResult(resultData);
-                    System.out.println("[INFO] Thread" + this.threadID + this.problemDescription + ": " +
-                            Arrays.toString(resultData));
-                }
-            } catch (OutOfMemoryError e) {
-                this.output.appendNewResult(PTS_BEES_PHS_GeneralExperiment.this._getOutOfMemoryResult());
-                System.out.println("[INFO] Thread " + this.threadID + this.problemDescription + ": OutOfMemory");
-            }
-            this.output.close();
-            this.resultFiles.add(this.output.getFname());
-            System.out.println("Thread " + this.threadID + " is done :)");
-        }
-    }
-
     /*******************************************************************************************************************
      * Public member definitions
      ******************************************************************************************************************/
@@ -479,7 +436,11 @@ public class PTS_BEES_PHS_GeneralExperiment {
     }
 
     /**
-     * Runs an experiment using the WAStar and EES algorithms using MULTIPLE THREADS!
+     * Runs an experiment using the PTS algorithm using MULTIPLE THREADS!
+     *
+     * The jobs are run by an {@link ExperimentScheduler} (the highest max costs first, since these are the most
+     * expensive runs) and each row (AR and NR of an instance and a max cost) is written as soon as both its runs are
+     * finished.
      *
      * @param firstInstance The id of the first instance to solve
      * @param instancesCount The number of instances to solve
@@ -490,14 +451,6 @@ public class PTS_BEES_PHS_GeneralExperiment {
      */
     public void runExperimentMultiThreaded(int firstInstance, int instancesCount, int[] maxCosts, String outputPath)
             throws IOException {
-        // -1 is because the main thread should also receive CPU
-        // Another -1 : for the system ...
-        int actualThreadCount = PTS_BEES_PHS_GeneralExperiment.THREAD_COUNT - 2;
-        ExecutorService executor = Executors.newFixedThreadPool(actualThreadCount);
-        List<String> resultFiles = new ArrayList<>();
-        System.out.println("[INFO] Created thread pool with " + actualThreadCount + " threads");
-        List<String> syncResultFiles = Collections.synchronizedList(resultFiles);
-
         int[] realMaxCosts = maxCosts;
 
         // in case the maxCosts were not given - let's create some default costs array
@@ -509,48 +462,74 @@ public class PTS_BEES_PHS_GeneralExperiment {
             );
         }
 
-        try {
-            int threadID = 0;
-            System.out.println("[INFO] Creating threads ... ");
-            // Go over all the possible combinations and solve!
-            for (int i = firstInstance; i <= instancesCount; ++i) {
-                for (int maxCost : realMaxCosts) {
-                    for (boolean reopen : this.reopenPossibilities) {
-                        // Create the domain by reading the relevant instance file
-                        SearchDomain domain =
-                                DomainsCreation.create15PuzzleInstanceFromKorfInstancesPDB555(i + ".in");
-                        // Bypass not found files
-                        if (domain == null) {
-                            continue;
-                        }
-                        SearchAlgorithm alg = new PTS();
-                        alg.setAdditionalParameter("maxCost", maxCost + "");
-                        alg.setAdditionalParameter("reopen", reopen + "");
-                        Runnable worker = new WorkerThread(
-                                threadID++,
-                                domain, alg,
-                                "Instance: " + i + ", MaxCost: " + maxCost + ", Reopen: " + reopen,
-                                syncResultFiles);
-                        executor.execute(worker);
-                    }
+        final boolean[] reopenPossibilities = this.reopenPossibilities;
+        String[] maxCostValues = new String[realMaxCosts.length];
+        for (int i = 0; i < realMaxCosts.length; ++i) {
+            maxCostValues[i] = realMaxCosts[i] + "";
+        }
+        String[] reopenValues = new String[reopenPossibilities.length];
+        for (int i = 0; i < reopenPossibilities.length; ++i) {
+            reopenValues[i] = reopenPossibilities[i] + "";
+        }
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("max-cost", maxCostValues);
+        parameters.put("reopen", reopenValues);
+
+        ExperimentScheduler scheduler = new ExperimentScheduler(new ExperimentScheduler.DomainLoader() {
+            @Override
+            public SearchDomain load(SearchDomain previous, int instance) throws IOException {
+                // Create the domain by reading the relevant instance file (the PDBs are read only once by a worker)
+                if (previous == null) {
+                    return DomainsCreation.create15PuzzleInstanceFromKorfInstancesPDB555(instance + ".in");
                 }
+                return DomainsCreation.create15PuzzleInstanceFromKorfInstances(previous, instance + ".in");
             }
-            System.out.println("[INFO] Done creating " + threadID + " threads. Now waits them for finishing");
-            executor.shutdown();
-            while (!executor.isTerminated()) {
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e) {
-                    // Do nothing
-                }
+        });
+        scheduler.addAlgorithm("pts", new ExperimentScheduler.AlgorithmFactory() {
+            @Override
+            public SearchAlgorithm create() {
+                return new PTS();
             }
-        } finally {
-            for (String filename : syncResultFiles) {
-                System.out.println(Utils.fileToString(filename).trim());
-                System.out.println("[WARNING] Deleting " + filename + "(result: " + new File(filename).delete() + ")");
+        }, parameters);
+        // PTS expands more nodes as the max cost grows (the bound prunes less), and reopening only adds expansions
+        scheduler.setCostEstimator(new ExperimentScheduler.CostEstimator() {
+            @Override
+            public double estimate(ExperimentScheduler.Job job) {
+                double maxCost = Double.parseDouble(job.getParameter("max-cost"));
+                return (Boolean.parseBoolean(job.getParameter("reopen")) ? 2 : 1) * maxCost;
             }
+        });
+
+        ExperimentScheduler.RowsSink sink =
+                new ExperimentScheduler.RowsSink(this._createResultsWriter(outputPath),
+                        reopenPossibilities.length) {
+                    @Override
+                    protected double[] getRowKey(ExperimentScheduler.Job job) {
+                        return new double[]{job.getInstance(), Double.parseDouble(job.getParameter("max-cost"))};
+                    }
+
+                    @Override
+                    protected int getIndexInRow(ExperimentScheduler.Job job) {
+                        // First AR, then NR
+                        boolean reopen = Boolean.parseBoolean(job.getParameter("reopen"));
+                        for (int i = 0; i < reopenPossibilities.length; ++i) {
+                            if (reopenPossibilities[i] == reopen) {
+                                return i;
+                            }
+                        }
+                        throw new IllegalStateException();
+                    }
+
+                    @Override
+                    protected double[] getColumns(SearchResult result) {
+                        return PTS_BEES_PHS_GeneralExperiment.RUN_SCHEMA.getValues(result);
+                    }
+                };
+        try {
+            scheduler.run(firstInstance, instancesCount, sink);
+        } finally {
+            sink.close();
         }
-        System.out.println("Finished all threads");
     }
 
     /*******************************************************************************************************************
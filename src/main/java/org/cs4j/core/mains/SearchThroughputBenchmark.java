@@ -0,0 +1,616 @@
+package org.cs4j.core.mains;
+
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchBudget;
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchResult;
+import org.cs4j.core.SearchResult.Solution;
+import org.cs4j.core.algorithms.BEES;
+import org.cs4j.core.algorithms.DP;
+import org.cs4j.core.algorithms.EES;
+import org.cs4j.core.algorithms.IDAstar;
+import org.cs4j.core.algorithms.PHS;
+import org.cs4j.core.algorithms.PTS;
+import org.cs4j.core.algorithms.RBFS;
+import org.cs4j.core.algorithms.WAStar;
+import org.cs4j.core.domains.DockyardRobot;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.GridPathFinding;
+import org.cs4j.core.domains.Pancakes;
+import org.cs4j.core.domains.TopSpin;
+import org.cs4j.core.domains.VacuumRobot;
+import org.cs4j.core.metrics.CsvSearchListener;
+import org.cs4j.core.metrics.SamplingSearchListener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs whole searches on pinned instance sets and writes machine-readable results, so runs of different builds can be
+ * compared.
+ *
+ * The status of a run is solved, unsolved, out-of-memory or budget-<limit> (e.g. budget-wall-time) if the search was
+ * stopped by its budget.
+ *
+ * For each (instance, algorithm) pair, the following values are reported: the solution, the counters and the wall and
+ * CPU times of the search result, the expansion and generation rates, the peak usage of the heap during the search
+ * and the time spent in GC.
+ *
+ * Usage: SearchThroughputBenchmark [options] instance-set [instance-set ...]
+ *
+ * where instance-set is either a pinned set (korf100, pancakes40, brc202d) or domain:directory (the domain is one of
+ * fifteenpuzzle, pancakes, topspin, gridpathfinding, vacuumrobot, dockyardrobot and the directory contains the
+ * instances 1.in, 2.in, ...)
+ *
+ * Options:
+ *  -algorithms a1,a2,...   The algorithms to run (default: all) - wastar, ees, bees, pts, phs, dp, idastar, rbfs
+ *  -instances first-last   The range of the instances to run in each set (default: 1-100)
+ *  -param name=value       A parameter of the algorithms (set on each algorithm which has this parameter)
+ *  -domain-param name=value A parameter of the domains (e.g. heuristic=pdb-78)
+ *  -warmup N               The number of unrecorded runs of each algorithm on the first instance (default: 0)
+ *  -max-time-millis N      The wall time budget of each search (the budget options replace the default budgets of
+ *                          the algorithms)
+ *  -max-expanded N         The expansions budget of each search
+ *  -max-generated N        The generations budget of each search
+ *  -max-heap-bytes N       The (approximate) heap budget of each search
+ *  -format csv|json        The format of the output (default: csv)
+ *  -output file            The output file (default: the standard output, along with the log of the searches)
+ *  -metrics-csv file       A file to write the samples of the progress of the searches into (see CsvSearchListener)
+ *  -metrics-interval N     The number of expansions between two samples (default: 10000)
+ */
+public class SearchThroughputBenchmark {
+
+    private static final String[] ALL_ALGORITHMS =
+            new String[]{"wastar", "ees", "bees", "pts", "phs", "dp", "idastar", "rbfs"};
+
+    // The pinned instance sets: name -> {domain, directory}
+    private static final Map<String, String[]> PINNED_SETS;
+
+    static {
+        PINNED_SETS = new LinkedHashMap<>();
+        PINNED_SETS.put("korf100", new String[]{"fifteenpuzzle", "input/fifteenpuzzle/korf100"});
+        PINNED_SETS.put("pancakes40", new String[]{"pancakes", "input/pancakes/generated-40"});
+        PINNED_SETS.put("brc202d", new String[]{"gridpathfinding", "input/gridpathfinding/generated/brc202d.map"});
+    }
+
+    private static final String[] COLUMNS = new String[]{
+            "set", "instance", "algorithm", "status", "cost", "length",
+            "expanded", "generated", "duplicates", "reopened", "iterations",
+            "wallTimeMillis", "cpuTimeMillis", "expandedPerSecond", "generatedPerSecond",
+            "peakHeapBytes", "gcTimeMillis", "gcCount"};
+
+    private List<String> algorithms = new ArrayList<>();
+    private Map<String, String> algorithmParameters = new LinkedHashMap<>();
+    private Map<String, String> domainParameters = new LinkedHashMap<>();
+    private int firstInstance = 1;
+    private int lastInstance = 100;
+    private int warmupRuns = 0;
+    // If null, the default budgets of the algorithms are used
+    private SearchBudget budget = null;
+    // If null, the progress of the searches isn't sampled
+    private CsvSearchListener metricsListener = null;
+
+    /*******************************************************************************************************************
+     * Output
+     ******************************************************************************************************************/
+
+    /**
+     * Writes the records of the runs (each record contains a value for each one of the COLUMNS)
+     */
+    private static abstract class RecordsWriter {
+        protected final PrintWriter out;
+
+        protected RecordsWriter(PrintWriter out) {
+            this.out = out;
+        }
+
+        abstract void begin();
+
+        abstract void write(Object[] values);
+
+        abstract void end();
+    }
+
+    private static class CsvRecordsWriter extends RecordsWriter {
+
+        private CsvRecordsWriter(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        void begin() {
+            this.out.println(SearchThroughputBenchmark._join(SearchThroughputBenchmark.COLUMNS));
+            this.out.flush();
+        }
+
+        @Override
+        void write(Object[] values) {
+            this.out.println(SearchThroughputBenchmark._join(values));
+            // Don't lose the finished runs if the benchmark is stopped
+            this.out.flush();
+        }
+
+        @Override
+        void end() { }
+    }
+
+    private static class JsonRecordsWriter extends RecordsWriter {
+        private boolean first;
+
+        private JsonRecordsWriter(PrintWriter out) {
+            super(out);
+        }
+
+        private static String _value(Object value) {
+            if (value instanceof String) {
+                return "\"" + ((String) value).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            } else if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+                return "null";
+            }
+            return value.toString();
+        }
+
+        @Override
+        void begin() {
+            this.out.println("{");
+            this.out.println("  \"started\": " + JsonRecordsWriter._value(
+                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date())) + ",");
+            this.out.println("  \"java\": " + JsonRecordsWriter._value(System.getProperty("java.version")) + ",");
+            this.out.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",");
+            this.out.println("  \"maxHeapBytes\": " + Runtime.getRuntime().maxMemory() + ",");
+            this.out.print("  \"runs\": [");
+            this.first = true;
+        }
+
+        @Override
+        void write(Object[] values) {
+            StringBuilder sb = new StringBuilder(this.first ? "\n    {" : ",\n    {");
+            for (int i = 0; i < values.length; ++i) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append("\"").append(SearchThroughputBenchmark.COLUMNS[i]).append("\": ");
+                sb.append(JsonRecordsWriter._value(values[i]));
+            }
+            sb.append("}");
+            this.out.print(sb);
+            this.out.flush();
+            this.first = false;
+        }
+
+        @Override
+        void end() {
+            this.out.println("\n  ]");
+            this.out.println("}");
+        }
+    }
+
+    private static String _join(Object[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    /*******************************************************************************************************************
+     * Creation of domains and algorithms
+     ******************************************************************************************************************/
+
+    /**
+     * Creates a domain by its name and sets the domain parameters which it has
+     *
+     * @param domainName The name of the domain
+     * @param instanceFile The file which contains the instance
+     *
+     * @return The created domain
+     */
+    private SearchDomain _createDomain(String domainName, File instanceFile) throws IOException {
+        SearchDomain domain;
+        try (InputStream is = new FileInputStream(instanceFile)) {
+            switch (domainName) {
+                case "fifteenpuzzle": {
+                    domain = new FifteenPuzzle(is);
+                    break;
+                }
+                case "pancakes": {
+                    domain = new Pancakes(is);
+                    break;
+                }
+                case "topspin": {
+                    domain = new TopSpin(is);
+                    break;
+                }
+                case "gridpathfinding": {
+                    domain = new GridPathFinding(is);
+                    break;
+                }
+                case "vacuumrobot": {
+                    domain = new VacuumRobot(is);
+                    break;
+                }
+                case "dockyardrobot": {
+                    domain = new DockyardRobot(is);
+                    break;
+                }
+                default: {
+                    System.out.println("[ERROR] Unknown domain: " + domainName);
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+        Map<String, Class> possibleParameters = domain.getPossibleParameters();
+        for (Map.Entry<String, String> parameter : this.domainParameters.entrySet()) {
+            if (possibleParameters != null && possibleParameters.containsKey(parameter.getKey())) {
+                domain.setAdditionalParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        return domain;
+    }
+
+    /**
+     * Creates an algorithm by its name and sets the algorithm parameters which it has
+     *
+     * @param algorithmName The name of the algorithm
+     *
+     * @return The created algorithm
+     */
+    private SearchAlgorithm _createAlgorithm(String algorithmName) {
+        SearchAlgorithm algorithm;
+        switch (algorithmName) {
+            case "wastar": {
+                algorithm = new WAStar();
+                break;
+            }
+            case "ees": {
+                algorithm = new EES();
+                break;
+            }
+            case "bees": {
+                algorithm = new BEES();
+                break;
+            }
+            case "pts": {
+                algorithm = new PTS();
+                break;
+            }
+            case "phs": {
+                algorithm = new PHS();
+                break;
+            }
+            case "dp": {
+                algorithm = new DP();
+                break;
+            }
+            case "idastar": {
+                algorithm = new IDAstar();
+                break;
+            }
+            case "rbfs": {
+                algorithm = new RBFS();
+                break;
+            }
+            default: {
+                System.out.println("[ERROR] Unknown algorithm: " + algorithmName);
+                throw new IllegalArgumentException();
+            }
+        }
+        Map<String, Class> possibleParameters = algorithm.getPossibleParameters();
+        for (Map.Entry<String, String> parameter : this.algorithmParameters.entrySet()) {
+            if (possibleParameters != null && possibleParameters.containsKey(parameter.getKey())) {
+                algorithm.setAdditionalParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        if (this.budget != null) {
+            algorithm.setBudget(this.budget);
+        }
+        if (this.metricsListener != null) {
+            algorithm.setListener(this.metricsListener);
+        }
+        return algorithm;
+    }
+
+    /*******************************************************************************************************************
+     * Measurement
+     ******************************************************************************************************************/
+
+    private static long _gcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(bean.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static long _gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(bean.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static void _resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * NOTE: The peaks of the different pools may occur in different times, so this is an upper bound of the actual
+     *       peak of the heap
+     */
+    private static long _peakHeap() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    private static double _perSecond(long count, long nanos) {
+        return nanos > 0 ? count * 1e9d / nanos : Double.NaN;
+    }
+
+    /**
+     * Runs a single search and returns the record of the run
+     */
+    private Object[] _run(String setName, String domainName, File instanceFile, int instance, String algorithmName)
+            throws IOException {
+        SearchDomain domain = this._createDomain(domainName, instanceFile);
+        SearchAlgorithm algorithm = this._createAlgorithm(algorithmName);
+        // Start from a clean heap, so the garbage of the previous run isn't counted
+        System.gc();
+        SearchThroughputBenchmark._resetPeakHeap();
+        long gcTimeBefore = SearchThroughputBenchmark._gcTimeMillis();
+        long gcCountBefore = SearchThroughputBenchmark._gcCount();
+        SearchResult result = null;
+        String status;
+        try {
+            result = algorithm.search(domain);
+            if (result.hasSolution()) {
+                status = "solved";
+            } else if (result.getExceededLimit() != null) {
+                status = "budget-" + result.getExceededLimit().name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+            } else {
+                status = "unsolved";
+            }
+        } catch (OutOfMemoryError e) {
+            status = "out-of-memory";
+        }
+        long peakHeap = SearchThroughputBenchmark._peakHeap();
+        long gcTime = SearchThroughputBenchmark._gcTimeMillis() - gcTimeBefore;
+        long gcCount = SearchThroughputBenchmark._gcCount() - gcCountBefore;
+        if (result == null) {
+            return new Object[]{setName, instance, algorithmName, status, -1.0d, -1,
+                    0L, 0L, 0L, 0L, 0L, 0L, 0L, Double.NaN, Double.NaN, peakHeap, gcTime, gcCount};
+        }
+        double cost = -1;
+        int length = -1;
+        if (result.hasSolution()) {
+            Solution solution = result.getSolutions().get(0);
+            cost = solution.getCost();
+            length = solution.getLength();
+        }
+        long wallTimeNanos = result.getWallTimeNanos();
+        return new Object[]{setName, instance, algorithmName, status, cost, length,
+                result.getExpanded(),
+                result.getGenerated(),
+                result.getDuplicates(),
+                result.getReopened(),
+                result.getIterationsCount(),
+                result.getWallTimeMillis(),
+                result.getCpuTimeMillis(),
+                SearchThroughputBenchmark._perSecond(result.getExpanded(), wallTimeNanos),
+                SearchThroughputBenchmark._perSecond(result.getGenerated(), wallTimeNanos),
+                peakHeap,
+                gcTime,
+                gcCount};
+    }
+
+    /**
+     * Runs all the algorithms on all the instances of the given set
+     *
+     * @param setName The name of the set (as given in the command line)
+     * @param writer The writer of the records
+     */
+    private void _runSet(String setName, RecordsWriter writer) throws IOException {
+        String[] set = SearchThroughputBenchmark.PINNED_SETS.get(setName);
+        if (set == null) {
+            int separator = setName.indexOf(':');
+            if (separator == -1) {
+                System.out.println("[ERROR] Unknown instance set: " + setName);
+                throw new IllegalArgumentException();
+            }
+            set = new String[]{setName.substring(0, separator), setName.substring(separator + 1)};
+        }
+        String domainName = set[0];
+        File directory = new File(set[1]);
+        for (String algorithmName : this.algorithms) {
+            for (int i = 0; i < this.warmupRuns; ++i) {
+                this._run(setName, domainName, new File(directory, this.firstInstance + ".in"),
+                        this.firstInstance, algorithmName);
+            }
+        }
+        for (int instance = this.firstInstance; instance <= this.lastInstance; ++instance) {
+            File instanceFile = new File(directory, instance + ".in");
+            if (!instanceFile.exists()) {
+                System.err.println("[WARNING] Instance " + instanceFile + " doesn't exist - skipping");
+                continue;
+            }
+            for (String algorithmName : this.algorithms) {
+                writer.write(this._run(setName, domainName, instanceFile, instance, algorithmName));
+            }
+        }
+    }
+
+    /*******************************************************************************************************************
+     * Command line
+     ******************************************************************************************************************/
+
+    private static void _putParameter(Map<String, String> parameters, String parameter) {
+        int separator = parameter.indexOf('=');
+        if (separator == -1) {
+            System.out.println("[ERROR] Invalid parameter (should be name=value): " + parameter);
+            throw new IllegalArgumentException();
+        }
+        parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+    }
+
+    private static void _printUsage() {
+        System.err.println("Usage: SearchThroughputBenchmark [-algorithms a1,a2,...] [-instances first-last] " +
+                "[-param name=value] [-domain-param name=value] [-warmup N] [-max-time-millis N] " +
+                "[-max-expanded N] [-max-generated N] [-max-heap-bytes N] [-format csv|json] [-output file] " +
+                "instance-set [instance-set ...]");
+        System.err.println("  instance-set: one of " + SearchThroughputBenchmark.PINNED_SETS.keySet() +
+                " or domain:directory");
+    }
+
+    public static void main(String[] args) throws IOException {
+        SearchThroughputBenchmark benchmark = new SearchThroughputBenchmark();
+        String format = "csv";
+        String output = null;
+        String metricsFile = null;
+        int metricsInterval = SamplingSearchListener.DEFAULT_SAMPLE_INTERVAL;
+        SearchBudget budget = SearchBudget.UNLIMITED;
+        List<String> sets = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].startsWith("-") && i + 1 == args.length) {
+                SearchThroughputBenchmark._printUsage();
+                return;
+            }
+            switch (args[i]) {
+                case "-algorithms": {
+                    for (String algorithmName : args[++i].split(",")) {
+                        benchmark.algorithms.add(algorithmName.trim().toLowerCase(Locale.ENGLISH));
+                    }
+                    break;
+                }
+                case "-instances": {
+                    String[] range = args[++i].split("-");
+                    benchmark.firstInstance = Integer.parseInt(range[0]);
+                    benchmark.lastInstance = Integer.parseInt(range[range.length - 1]);
+                    break;
+                }
+                case "-param": {
+                    SearchThroughputBenchmark._putParameter(benchmark.algorithmParameters, args[++i]);
+                    break;
+                }
+                case "-domain-param": {
+                    SearchThroughputBenchmark._putParameter(benchmark.domainParameters, args[++i]);
+                    break;
+                }
+                case "-warmup": {
+                    benchmark.warmupRuns = Integer.parseInt(args[++i]);
+                    break;
+                }
+                case "-max-time-millis": {
+                    budget = budget.withMaxWallTimeMillis(Long.parseLong(args[++i]));
+                    break;
+                }
+                case "-max-expanded": {
+                    budget = budget.withMaxExpanded(Long.parseLong(args[++i]));
+                    break;
+                }
+                case "-max-generated": {
+                    budget = budget.withMaxGenerated(Long.parseLong(args[++i]));
+                    break;
+                }
+                case "-max-heap-bytes": {
+                    budget = budget.withMaxHeapBytes(Long.parseLong(args[++i]));
+                    break;
+                }
+                case "-format": {
+                    format = args[++i];
+                    break;
+                }
+                case "-output": {
+                    output = args[++i];
+                    break;
+                }
+                case "-metrics-csv": {
+                    metricsFile = args[++i];
+                    break;
+                }
+                case "-metrics-interval": {
+                    metricsInterval = Integer.parseInt(args[++i]);
+                    break;
+                }
+                default: {
+                    sets.add(args[i]);
+                }
+            }
+        }
+        if (sets.isEmpty()) {
+            SearchThroughputBenchmark._printUsage();
+            return;
+        }
+        if (budget != SearchBudget.UNLIMITED) {
+            benchmark.budget = budget;
+        }
+        if (benchmark.algorithms.isEmpty()) {
+            for (String algorithmName : SearchThroughputBenchmark.ALL_ALGORITHMS) {
+                benchmark.algorithms.add(algorithmName);
+            }
+        }
+        PrintWriter out = (output == null) ?
+                new PrintWriter(new OutputStreamWriter(System.out)) :
+                new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+        RecordsWriter writer;
+        switch (format) {
+            case "csv": {
+                writer = new CsvRecordsWriter(out);
+                break;
+            }
+            case "json": {
+                writer = new JsonRecordsWriter(out);
+                break;
+            }
+            default: {
+                System.out.println("[ERROR] Unknown output format: " + format);
+                throw new IllegalArgumentException();
+            }
+        }
+        if (metricsFile != null) {
+            benchmark.metricsListener = new CsvSearchListener(metricsFile, metricsInterval);
+        }
+        writer.begin();
+        try {
+            for (String set : sets) {
+                benchmark._runSet(set, writer);
+            }
+        } finally {
+            writer.end();
+            out.flush();
+            if (output != null) {
+                out.close();
+            }
+            if (benchmark.metricsListener != null) {
+                benchmark.metricsListener.close();
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package org.cs4j.core.mains;
 
+import org.cs4j.core.BufferedResultsWriter;
 import org.cs4j.core.OutputResult;
 import org.cs4j.core.SearchAlgorithm;
 import org.cs4j.core.SearchDomain;
 import org.cs4j.core.SearchResult;
 import org.cs4j.core.SearchResult.Solution;
+import org.cs4j.core.SearchResultSchema;
+import org.cs4j.core.SearchResultSchema.Column;
 import org.cs4j.core.algorithms.EES;
 import org.cs4j.core.algorithms.WAStar;
 import org.cs4j.core.data.Weights;
@@ -14,8 +17,6 @@ import org.cs4j.core.domains.*;
 import java.io.*;
 import java.nio.file.FileAlreadyExistsException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Created by sepetnit on 11/5/2015.
@@ -28,7 +29,11 @@ public class WAStar_EES_GeneralExperiment {
      ******************************************************************************************************************/
 
     private static final String TEMP_DIR = "C:\\Windows\\Temp\\";
-    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    // The columns of each run (the same values as _getSolutionResult, _getNoSolutionResult and _getOutOfMemoryResult)
+    private static final SearchResultSchema RUN_SCHEMA =
+            new SearchResultSchema(Column.SOLVED, Column.LENGTH, Column.COST, Column.GENERATED, Column.EXPANDED,
+                    Column.DUPLICATES, Column.UPDATED_IN_OPEN, Column.REOPENED, Column.WALL_TIME_MILLIS);
 
     /*******************************************************************************************************************
      * Private  fields
@@ -179,82 +184,20 @@ public class WAStar_EES_GeneralExperiment {
         return output;
     }
 
-    /*******************************************************************************************************************
-     * Private class for MultiThreaded run
-     ******************************************************************************************************************/
-
-    private class WorkerThread implements Runnable {
-        private int threadID;
-        // The names of all the result files are stored in this (synchronized) list
-        private List<String> resultFiles;
-        private SearchAlgorithm algorithm;
-        private SearchDomain domain;
-        private String problemDescription;
-        private String outputFilePrefix;
-        private OutputResult output;
-
-        /**
-         * The constructor of the worker thread
-         *
-         * @param threadID ID of the thread (for debugging reasons)
-         * @param domain The domain to run on
-         * @param algorithm The algorithm to run
-         * @param description The description of the problem (can be null)
-         * @param outputFilePrefix The prefix that should be added to the created output file
-         * @param resultFiles The result files list - to add the result later
-         *
-         * @throws IOException If something wrong occurred
-         */
-        public WorkerThread(int threadID,
-                            SearchDomain domain,
-                            SearchAlgorithm algorithm,
-                            String description,
-                            String outputFilePrefix,
-                            List<String> resultFiles) throws IOException {
-
-            this.threadID = threadID;
-            this.resultFiles = resultFiles;
-            this.algorithm = algorithm;
-            this.domain = domain;
-            this.problemDescription = (description != null)? " (" +description+ ") " : "";
-            this.outputFilePrefix = (outputFilePrefix != null)? outputFilePrefix : "";
-            //System.out.println("Created Thread with ID " + threadID);
-        }
-
-        @Override
-        public void run() {
-            System.out.println("[INFO] Thread " + this.threadID + " is now running " + this.problemDescription);
-            // Setup the output
-            try {
-                this.output = WAStar_EES_GeneralExperiment.this.getOutputResult(null, this.outputFilePrefix, false);
-                System.out.println("[INFO] Thread " + this.threadID + " will be written to " + this.output.getFname());
-            } catch (IOException e) {
-                this.resultFiles.add("Failed (Alg: " + this.algorithm.toString() +
-                        ", Domain: " + domain.toString() + ")");
-                return;
-            }
-            // Otherwise, run
-            try {
-                SearchResult result = this.algorithm.search(this.domain);
-                System.out.println("[INFO] Thread " + this.threadID + " is Done");
-                // No solution
-                if (!result.hasSolution()) {
-                    this.output.appendNewResult(WAStar_EES_GeneralExperiment.this._getNoSolutionResult(result));
-                    System.out.println("[INFO] Thread " + this.threadID + this.problemDescription + ": NoSolution");
-                } else {
-                    double[] resultData = WAStar_EES_GeneralExperiment.this._getSolutionResult(result);
-                    this.output.appendNewResult(resultData);
-                    System.out.println("[INFO] Thread " + this.threadID + this.problemDescription + ": " +
-                            Arrays.toString(resultData));
-                }
-            } catch (OutOfMemoryError e) {
-                this.output.appendNewResult(WAStar_EES_GeneralExperiment.this._getOutOfMemoryResult());
-                System.out.println("[INFO] Thread " + this.threadID + this.problemDescription + ": OutOfMemory");
-            }
-            this.output.close();
-            this.resultFiles.add(this.output.getFname());
-            System.out.println("[INFO] Thread " + this.threadID + " is destructed");
+    /**
+     * Returns the writer of the rows of a multi-threaded experiment (the header line is written immediately)
+     *
+     * @param outputPath The output path (can be null and in this case a random file is created)
+     *
+     * @return The created writer
+     */
+    private BufferedResultsWriter _createResultsWriter(String outputPath) throws IOException {
+        if (outputPath == null) {
+            outputPath = WAStar_EES_GeneralExperiment.TEMP_DIR + UUID.randomUUID().toString().replace("-", "") +
+                    ".search";
         }
+        // The same file as the one of OutputResult (which overwrites an existing file)
+        return new BufferedResultsWriter(outputPath + ".csv", this._getHeader().split(","));
     }
 
     /*******************************************************************************************************************
@@ -491,6 +434,9 @@ public class WAStar_EES_GeneralExperiment {
     /**
      * Runs an experiment using the WAStar and EES algorithms using MULTIPLE THREADS!
      *
+     * The jobs are run by an {@link ExperimentScheduler} (the lowest weights first, since these are the most expensive
+     * runs) and each row (AR and NR of an instance and a weight) is written as soon as both its runs are finished.
+     *
      * @param firstInstance The id of the first instance to solve
      * @param instancesCount The number of instances to solve
      * @param outputPath The name of the output file (can be null : in this case a random path will be chosen)
@@ -499,146 +445,78 @@ public class WAStar_EES_GeneralExperiment {
      */
     public void runExperimentMultiThreaded(int firstInstance, int instancesCount, String outputPath)
             throws IOException {
-        // -1 is because the main thread should also receive CPU
-        // Another -1 : for the system ...
-        int actualThreadCount = WAStar_EES_GeneralExperiment.THREAD_COUNT - 2;
-        ExecutorService executor = Executors.newFixedThreadPool(actualThreadCount);
-        List<String> resultFiles = new ArrayList<>();
-        System.out.println("[INFO] Created thread pool with " + actualThreadCount + " threads");
-        List<String> syncResultFiles = Collections.synchronizedList(resultFiles);
-
         // Weights
         SingleWeight[] weights = this.weights.OPTIMAL_WEIGHTS;
         //boolean[] reopenPossibilities = this.reopenPossibilities;
-        boolean[] reopenPossibilities = this.reopenPossibilities;
+        final boolean[] reopenPossibilities = this.reopenPossibilities;
 
-        try {
-            int threadID = 0;
-            System.out.println("[INFO] Creating threads ... ");
-            // Go over all the possible combinations and solve!
-            for (int i = firstInstance; i <= instancesCount; ++i) {
+        // Mapping from real weight to weight object
+        final Map<String, SingleWeight> rawWeightToWeight = new HashMap<>();
+        String[] weightValues = new String[weights.length];
+        for (int i = 0; i < weights.length; ++i) {
+            weightValues[i] = weights[i].getWeight() + "";
+            rawWeightToWeight.put(weightValues[i], weights[i]);
+        }
+        String[] reopenValues = new String[reopenPossibilities.length];
+        for (int i = 0; i < reopenPossibilities.length; ++i) {
+            reopenValues[i] = reopenPossibilities[i] + "";
+        }
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        parameters.put("weight", weightValues);
+        parameters.put("reopen", reopenValues);
+
+        ExperimentScheduler scheduler = new ExperimentScheduler(new ExperimentScheduler.DomainLoader() {
+            @Override
+            public SearchDomain load(SearchDomain previous, int instance) throws IOException {
                 // Create the domain by reading the relevant instance file
-                for (SingleWeight w : weights) {
-                    double weight = w.getWeight();
-                    for (boolean reopen : reopenPossibilities) {
-                        SearchDomain domain =
-                                DomainsCreation.createDockyardRobotInstanceFromAutomaticallyGenerated(i + ".in");
-                        // Bypass not found files
-                        if (domain == null) {
-                            continue;
-                        }
-                        SearchAlgorithm alg = new WAStar();
-                        alg.setAdditionalParameter("weight", weight + "");
-                        alg.setAdditionalParameter("reopen", reopen + "");
-                        Runnable worker = new WorkerThread(
-                                threadID++,
-                                domain, alg,
-                                "Instance: " + i + ", Weight: " + weight + ", Reopen: " + reopen,
-                                i + "-" + weight + "-" + reopen + "-",
-                                syncResultFiles);
-                        executor.execute(worker);
-                    }
-                }
+                return DomainsCreation.createDockyardRobotInstanceFromAutomaticallyGenerated(instance + ".in");
             }
-            System.out.println("[INFO] Done creating " + threadID + " threads. Now waits them for finishing");
-            executor.shutdown();
-            while (!executor.isTerminated()) {
-                try {
-                    Thread.sleep(10000);
-                } catch (InterruptedException e) {
-                    // Do nothing
-                }
+        });
+        scheduler.addAlgorithm("wastar", new ExperimentScheduler.AlgorithmFactory() {
+            @Override
+            public SearchAlgorithm create() {
+                return new WAStar();
             }
-        } finally {
-            System.out.println("[INFO] All threads finished, unifying the data ...");
-            outputPath = this.writeAllToFile(weights, resultFiles, outputPath);
-            System.out.println("[INFO] Done - see " + outputPath);
-            int deleted = 0;
-            for (String filename : syncResultFiles) {
-                if (new File(filename).delete()) {
-                    ++deleted;
-                }
+        }, parameters);
+        // The number of expansions grows quickly as the weight decreases, and reopening only adds expansions
+        scheduler.setCostEstimator(new ExperimentScheduler.CostEstimator() {
+            @Override
+            public double estimate(ExperimentScheduler.Job job) {
+                double weight = Double.parseDouble(job.getParameter("weight"));
+                return (Boolean.parseBoolean(job.getParameter("reopen")) ? 2 : 1) / weight;
             }
-            System.out.println("[WARNING] Deleted " + deleted + "/" + syncResultFiles.size() + " temp files");
-        }
-    }
+        });
 
-    /**
-     * Takes all the single files written by multi-threaded run, and unifies them to a single file
-     * @param weights The weights used in the run
-     * @param resultFiles A collection of the result files
-     * @param outputPath The name of the output file to write the output
-     *
-     * @return The name of the final output file
-     *
-     * @throws IOException If something wrong occurred
-     */
-    private String writeAllToFile(SingleWeight[] weights,
-                                  List<String> resultFiles,
-                                  String outputPath) throws IOException {
-        OutputResult output = null;
-        try {
-            // Get new output result (and write the header)
-            output = this.getOutputResult(outputPath, null, true);
-        } catch (IOException e) {
-            System.err.println("[ERROR] Got exception creating output: " + e.getMessage());
-            System.out.println("[WARNING] Writing result to screen");
-            System.exit(-1);
-        }
-
-        // Mapping from real weight to weight object
-
-        Map<Double, SingleWeight> rawWeightToWeight = new HashMap<>();
-        for (SingleWeight current : weights) {
-            rawWeightToWeight.put(current.getWeight(), current);
-        }
+        ExperimentScheduler.RowsSink sink =
+                new ExperimentScheduler.RowsSink(this._createResultsWriter(outputPath),
+                        reopenPossibilities.length) {
+                    @Override
+                    protected double[] getRowKey(ExperimentScheduler.Job job) {
+                        SingleWeight w = rawWeightToWeight.get(job.getParameter("weight"));
+                        return new double[]{job.getInstance(), w.wg, w.wh, w.getWeight()};
+                    }
 
-        Map<String, String> outputMap = new HashMap<>();
-
-        // Go over all the result files and take their output
-        for (String filename : resultFiles) {
-            // System.out.println("[INFO] Working with file " + filename);
-            // Get the basename from the file
-            String baseName = new File(filename).getName();
-            String[] split = baseName.split("-");
-            assert split.length == 4;
-            int instanceID = Integer.parseInt(split[0]);
-            double weight = Double.parseDouble(split[1]);
-            boolean reopen = Boolean.parseBoolean(split[2]);
-            SingleWeight currentWeight = rawWeightToWeight.get(weight);
-            assert currentWeight != null;
-            String currentKey = instanceID + "," + currentWeight.wh + "," + currentWeight.wg + "," + weight;
-            String currentResult = Utils.fileToString(filename).trim();
-            // If already has some data - just append, otherwise, put the new data
-            if (outputMap.containsKey(currentKey)) {
-                String previousResult = outputMap.get(currentKey);
-                // First AR, then NR
-                if (reopen) {
-                    outputMap.put(currentKey, currentResult + previousResult);
-                } else {
-                    outputMap.put(currentKey, previousResult + currentResult);
-                }
-            } else {
-                outputMap.put(currentKey, currentResult);
-            }
-        }
+                    @Override
+                    protected int getIndexInRow(ExperimentScheduler.Job job) {
+                        // First AR, then NR
+                        boolean reopen = Boolean.parseBoolean(job.getParameter("reopen"));
+                        for (int i = 0; i < reopenPossibilities.length; ++i) {
+                            if (reopenPossibilities[i] == reopen) {
+                                return i;
+                            }
+                        }
+                        throw new IllegalStateException();
+                    }
 
-        // Write the string to output or to screen
-        StringBuilder sb = new StringBuilder();
-        for (String key : outputMap.keySet()) {
-            sb.append(key);
-            sb.append(",");
-            sb.append(outputMap.get(key));
-            sb.append("\n");
-        }
-        if (output != null) {
-            output.write(sb.toString());
-            output.close();
-            System.out.println("[INFO] Done writing to file " + output.getFname());
-            return output.getFname();
-        } else {
-            System.out.println(sb.toString());
-            return null;
+                    @Override
+                    protected double[] getColumns(SearchResult result) {
+                        return WAStar_EES_GeneralExperiment.RUN_SCHEMA.getValues(result);
+                    }
+                };
+        try {
+            scheduler.run(firstInstance, instancesCount, sink);
+        } finally {
+            sink.close();
         }
     }
 
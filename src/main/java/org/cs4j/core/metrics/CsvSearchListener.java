@@ -0,0 +1,96 @@
+package org.cs4j.core.metrics;
+
+import org.cs4j.core.SearchResult;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Exports the samples of the searches as a CSV time series: a row for each sample (the samples of all the searches
+ * which use the listener are written one after the other, and the first column tells the algorithm)
+ *
+ * The rows are buffered and flushed at the end of each search; call close() after the last search.
+ */
+public class CsvSearchListener extends SamplingSearchListener {
+
+    public static final String HEADER = "algorithm,elapsed-ms,expanded,generated,duplicates,reopened,open-size," +
+            "max-f,min-h,mean-h-error,expansions-per-second";
+
+    private final Writer writer;
+    // Set after the first error (the rest of the samples aren't written)
+    private boolean failed;
+
+    /**
+     * The constructor of the class - writes the header of the CSV
+     *
+     * @param writer The writer to write the rows into
+     * @param sampleInterval The number of expansions between two samples
+     *
+     * @throws IOException If the header couldn't be written
+     */
+    public CsvSearchListener(Writer writer, int sampleInterval) throws IOException {
+        super(sampleInterval);
+        this.writer = writer;
+        this.failed = false;
+        this.writer.write(CsvSearchListener.HEADER);
+        this.writer.write("\n");
+    }
+
+    /**
+     * The constructor of the class - creates (or overrides) the given CSV file
+     *
+     * @param fileName The name of the output file
+     * @param sampleInterval The number of expansions between two samples
+     *
+     * @throws IOException If the file couldn't be created
+     */
+    public CsvSearchListener(String fileName, int sampleInterval) throws IOException {
+        this(new BufferedWriter(new FileWriter(fileName)), sampleInterval);
+    }
+
+    @Override
+    protected void sampleTaken(SearchSample sample) {
+        if (this.failed) {
+            return;
+        }
+        try {
+            this.writer.write(sample.getAlgorithmName() + "," + sample.getElapsedMillis() + "," +
+                    sample.getExpanded() + "," + sample.getGenerated() + "," + sample.getDuplicates() + "," +
+                    sample.getReopened() + "," + sample.getOpenSize() + "," + sample.getMaxExpandedF() + "," +
+                    sample.getMinExpandedH() + "," +
+                    String.format(Locale.ROOT, "%.4f", sample.getMeanHeuristicError()) + "," +
+                    String.format(Locale.ROOT, "%.1f", sample.getExpansionsPerSecond()) + "\n");
+        } catch (IOException e) {
+            this._fail(e);
+        }
+    }
+
+    @Override
+    protected void searchEnded(SearchResult result) {
+        if (this.failed) {
+            return;
+        }
+        try {
+            this.writer.flush();
+        } catch (IOException e) {
+            this._fail(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying writer
+     *
+     * @throws IOException If something wrong occurred
+     */
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    private void _fail(IOException e) {
+        System.out.println("[ERROR] Failed writing the search samples: " + e.getMessage());
+        this.failed = true;
+    }
+}
@@ -0,0 +1,159 @@
+package org.cs4j.core.metrics;
+
+import org.cs4j.core.SearchListener;
+import org.cs4j.core.SearchResult;
+
+/**
+ * A listener which counts the events of a search and takes a sample of the counters (see {@link SearchSample}) once
+ * in sampleInterval expansions, and at the end of the search
+ *
+ * Each event only updates a few fields, and the clock is read only when a sample is taken, so the cost of the
+ * listener for each node is small even if the interval is small. The subclasses decide what to do with the samples
+ * (see {@link CsvSearchListener} and {@link SearchMetricsRegistry}).
+ *
+ * NOTE: The listener isn't thread-safe, a listener should be used by a single search at a time
+ */
+public abstract class SamplingSearchListener implements SearchListener {
+
+    public static final int DEFAULT_SAMPLE_INTERVAL = 10000;
+
+    private final int sampleInterval;
+
+    private String algorithmName;
+    private long startNanos;
+    private int untilNextSample;
+    private long expanded;
+    private long generated;
+    private long duplicates;
+    private long reopened;
+    private int openSize;
+    private double maxExpandedF;
+    private double minExpandedH;
+    // The f of the last expanded node and the lowest f of its children (Double.MAX_VALUE if none was generated yet)
+    private double parentF;
+    private double bestChildF;
+    // The sum and the number of the one-step errors of the heuristic (see SearchSample.getMeanHeuristicError())
+    private double heuristicErrorsSum;
+    private long heuristicErrorsCount;
+    // Required in order to compute the rate of the expansions between two samples
+    private long previousSampleNanos;
+    private long previousSampleExpanded;
+
+    /**
+     * The constructor of the class
+     *
+     * @param sampleInterval The number of expansions between two samples
+     */
+    protected SamplingSearchListener(int sampleInterval) {
+        if (sampleInterval < 1) {
+            System.out.println("[ERROR] Invalid sample interval (must be at least 1): " + sampleInterval);
+            throw new IllegalArgumentException();
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    public int getSampleInterval() {
+        return this.sampleInterval;
+    }
+
+    /**
+     * Called for each sample which is taken
+     *
+     * @param sample The taken sample
+     */
+    protected abstract void sampleTaken(SearchSample sample);
+
+    /**
+     * Called at the end of a search, after the last sample was taken (does nothing by default)
+     *
+     * @param result The result of the search
+     */
+    protected void searchEnded(SearchResult result) { }
+
+    @Override
+    public void searchStarted(String algorithmName) {
+        this.algorithmName = algorithmName;
+        this.startNanos = System.nanoTime();
+        this.untilNextSample = this.sampleInterval;
+        this.expanded = 0;
+        this.generated = 0;
+        this.duplicates = 0;
+        this.reopened = 0;
+        this.openSize = 0;
+        this.maxExpandedF = 0;
+        this.minExpandedH = Double.MAX_VALUE;
+        this.bestChildF = Double.MAX_VALUE;
+        this.heuristicErrorsSum = 0;
+        this.heuristicErrorsCount = 0;
+        this.previousSampleNanos = this.startNanos;
+        this.previousSampleExpanded = 0;
+    }
+
+    @Override
+    public void nodeExpanded(double g, double h, int openSize) {
+        this._addHeuristicError();
+        this.parentF = g + h;
+        ++this.expanded;
+        this.openSize = openSize;
+        this.maxExpandedF = Math.max(this.maxExpandedF, g + h);
+        this.minExpandedH = Math.min(this.minExpandedH, h);
+        if (--this.untilNextSample <= 0) {
+            this.untilNextSample = this.sampleInterval;
+            this._takeSample();
+        }
+    }
+
+    @Override
+    public void nodeGenerated(double g, double h) {
+        ++this.generated;
+        this.bestChildF = Math.min(this.bestChildF, g + h);
+    }
+
+    @Override
+    public void duplicateFound() {
+        ++this.duplicates;
+    }
+
+    @Override
+    public void nodeReopened() {
+        ++this.reopened;
+    }
+
+    @Override
+    public void searchFinished(SearchResult result) {
+        this._addHeuristicError();
+        this._takeSample();
+        this.searchEnded(result);
+    }
+
+    /**
+     * Adds the one-step error of the last expanded node (if any of its children was generated): the f of its best
+     * child minus its own f (0 for a perfect heuristic)
+     */
+    private void _addHeuristicError() {
+        if (this.bestChildF != Double.MAX_VALUE) {
+            this.heuristicErrorsSum += this.bestChildF - this.parentF;
+            ++this.heuristicErrorsCount;
+            this.bestChildF = Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Takes a sample of the current counters and passes it to the subclass
+     */
+    private void _takeSample() {
+        long now = System.nanoTime();
+        double expansionsPerSecond = 0;
+        if (now > this.previousSampleNanos) {
+            expansionsPerSecond = (this.expanded - this.previousSampleExpanded) * 1.0e9 /
+                    (now - this.previousSampleNanos);
+        }
+        this.previousSampleNanos = now;
+        this.previousSampleExpanded = this.expanded;
+        this.sampleTaken(new SearchSample(this.algorithmName, (now - this.startNanos) / 1000000, this.expanded,
+                this.generated, this.duplicates, this.reopened, this.openSize, this.maxExpandedF,
+                (this.expanded > 0) ? this.minExpandedH : 0,
+                (this.heuristicErrorsCount > 0) ? this.heuristicErrorsSum / this.heuristicErrorsCount : 0,
+                expansionsPerSecond));
+    }
+}
@@ -0,0 +1,103 @@
+package org.cs4j.core.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-process registry of time series of search samples: each series has a name (e.g. the name of the instance
+ * which is solved) and keeps the samples which were taken by the listeners of that series (see createListener)
+ *
+ * The registry can be used by several threads (e.g. several searches which run in parallel, each with its own
+ * listener); the samples are kept until the series is cleared.
+ */
+public final class SearchMetricsRegistry {
+
+    private static final Map<String, List<SearchSample>> SERIES = new HashMap<>();
+
+    private SearchMetricsRegistry() { }
+
+    /**
+     * Creates a listener which adds all its samples to the given series
+     *
+     * NOTE: Like any SamplingSearchListener, the listener should be used by a single search at a time
+     *
+     * @param seriesName The name of the series
+     * @param sampleInterval The number of expansions between two samples
+     *
+     * @return The created listener
+     */
+    public static SamplingSearchListener createListener(final String seriesName, int sampleInterval) {
+        return new SamplingSearchListener(sampleInterval) {
+            @Override
+            protected void sampleTaken(SearchSample sample) {
+                SearchMetricsRegistry.addSample(seriesName, sample);
+            }
+        };
+    }
+
+    /**
+     * Adds a sample to a series (the series is created if it doesn't exist)
+     *
+     * @param seriesName The name of the series
+     * @param sample The sample to add
+     */
+    public static synchronized void addSample(String seriesName, SearchSample sample) {
+        List<SearchSample> series = SearchMetricsRegistry.SERIES.get(seriesName);
+        if (series == null) {
+            series = new ArrayList<>();
+            SearchMetricsRegistry.SERIES.put(seriesName, series);
+        }
+        series.add(sample);
+    }
+
+    /**
+     * @param seriesName The name of the series
+     *
+     * @return A copy of the samples of the series (an empty list if there is no such series)
+     */
+    public static synchronized List<SearchSample> getSamples(String seriesName) {
+        List<SearchSample> series = SearchMetricsRegistry.SERIES.get(seriesName);
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(series);
+    }
+
+    /**
+     * @param seriesName The name of the series
+     *
+     * @return The last sample of the series or null if there is no such series
+     */
+    public static synchronized SearchSample getLastSample(String seriesName) {
+        List<SearchSample> series = SearchMetricsRegistry.SERIES.get(seriesName);
+        if (series == null || series.isEmpty()) {
+            return null;
+        }
+        return series.get(series.size() - 1);
+    }
+
+    /**
+     * @return The names of all the series in the registry
+     */
+    public static synchronized List<String> getSeriesNames() {
+        return new ArrayList<>(SearchMetricsRegistry.SERIES.keySet());
+    }
+
+    /**
+     * Removes a series from the registry
+     *
+     * @param seriesName The name of the series
+     */
+    public static synchronized void clear(String seriesName) {
+        SearchMetricsRegistry.SERIES.remove(seriesName);
+    }
+
+    /**
+     * Removes all the series from the registry
+     */
+    public static synchronized void clearAll() {
+        SearchMetricsRegistry.SERIES.clear();
+    }
+}
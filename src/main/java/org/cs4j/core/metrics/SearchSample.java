@@ -0,0 +1,107 @@
+package org.cs4j.core.metrics;
+
+/**
+ * A sample of the counters of a running search (see {@link SamplingSearchListener})
+ */
+public final class SearchSample {
+    private final String algorithmName;
+    private final long elapsedMillis;
+    private final long expanded;
+    private final long generated;
+    private final long duplicates;
+    private final long reopened;
+    private final int openSize;
+    private final double maxExpandedF;
+    private final double minExpandedH;
+    private final double meanHeuristicError;
+    private final double expansionsPerSecond;
+
+    SearchSample(String algorithmName, long elapsedMillis, long expanded, long generated, long duplicates,
+                 long reopened, int openSize, double maxExpandedF, double minExpandedH, double meanHeuristicError,
+                 double expansionsPerSecond) {
+        this.algorithmName = algorithmName;
+        this.elapsedMillis = elapsedMillis;
+        this.expanded = expanded;
+        this.generated = generated;
+        this.duplicates = duplicates;
+        this.reopened = reopened;
+        this.openSize = openSize;
+        this.maxExpandedF = maxExpandedF;
+        this.minExpandedH = minExpandedH;
+        this.meanHeuristicError = meanHeuristicError;
+        this.expansionsPerSecond = expansionsPerSecond;
+    }
+
+    public String getAlgorithmName() {
+        return this.algorithmName;
+    }
+
+    /**
+     * @return The time passed since the start of the search (in milliseconds)
+     */
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    public long getExpanded() {
+        return this.expanded;
+    }
+
+    public long getGenerated() {
+        return this.generated;
+    }
+
+    public long getDuplicates() {
+        return this.duplicates;
+    }
+
+    public long getReopened() {
+        return this.reopened;
+    }
+
+    /**
+     * @return The size of the open list at the last expansion before the sample
+     */
+    public int getOpenSize() {
+        return this.openSize;
+    }
+
+    /**
+     * @return The maximum f (g + h) of the nodes which were expanded so far (the f layer the search has reached)
+     */
+    public double getMaxExpandedF() {
+        return this.maxExpandedF;
+    }
+
+    /**
+     * @return The minimum h of the nodes which were expanded so far (how close the search got to a goal)
+     */
+    public double getMinExpandedH() {
+        return this.minExpandedH;
+    }
+
+    /**
+     * @return The mean one-step error of the heuristic so far: the f of the best child of an expanded node minus the f
+     *         of the node, averaged over the expanded nodes which had children (0 for a perfect heuristic)
+     */
+    public double getMeanHeuristicError() {
+        return this.meanHeuristicError;
+    }
+
+    /**
+     * @return The rate of the expansions since the previous sample
+     */
+    public double getExpansionsPerSecond() {
+        return this.expansionsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchSample{algorithm=" + this.algorithmName + ", elapsed=" + this.elapsedMillis + "ms" +
+                ", expanded=" + this.expanded + ", generated=" + this.generated +
+                ", duplicates=" + this.duplicates + ", reopened=" + this.reopened + ", open=" + this.openSize +
+                ", max-f=" + this.maxExpandedF + ", min-h=" + this.minExpandedH +
+                ", mean-h-error=" + this.meanHeuristicError +
+                ", expansions/s=" + this.expansionsPerSecond + "}";
+    }
+}
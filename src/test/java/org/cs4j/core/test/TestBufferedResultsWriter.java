@@ -0,0 +1,375 @@
+package org.cs4j.core.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cs4j.core.BufferedResultsWriter;
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchResult;
+import org.cs4j.core.SearchResultSchema;
+import org.cs4j.core.SearchResultSchema.Column;
+import org.cs4j.core.algorithms.WAStar;
+import org.cs4j.core.domains.GridPathFinding;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBufferedResultsWriter {
+
+	private static final String[] COLUMNS = {"thread", "index", "value"};
+
+	/**
+	 * A writer whose writes can be blocked (until it is released) or made to fail
+	 */
+	private static final class ControlledWriter extends StringWriter {
+		private final CountDownLatch released = new CountDownLatch(1);
+		private volatile boolean blocking;
+		private volatile boolean failing;
+
+		@Override
+		public void write(String str) {
+			if (this.failing) {
+				// StringWriter can't throw an IOException, so it is wrapped and unwrapped by FailingWriter
+				throw new IllegalStateException("Injected failure");
+			}
+			if (this.blocking) {
+				try {
+					this.released.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.write(str);
+		}
+	}
+
+	/**
+	 * Turns the failures of a ControlledWriter into IOExceptions
+	 */
+	private static final class FailingWriter extends Writer {
+		private final ControlledWriter writer;
+
+		private FailingWriter(ControlledWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			try {
+				this.writer.write(new String(buffer, offset, length));
+			} catch (IllegalStateException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		@Override
+		public void flush() { }
+
+		@Override
+		public void close() { }
+	}
+
+	@Test
+	public void testConcurrentWritesRoundTrip() throws Exception {
+		File csvFile = TestBufferedResultsWriter.createTempFile(".csv");
+		File binaryFile = TestBufferedResultsWriter.createTempFile(".bin");
+		// A small queue, so that the writing threads often wait for the writer
+		final BufferedResultsWriter writer = new BufferedResultsWriter(csvFile.getPath(), binaryFile.getPath(),
+				TestBufferedResultsWriter.COLUMNS, 16, 10);
+		final int threadsCount = 4;
+		final int rowsPerThread = 500;
+		Thread[] threads = new Thread[threadsCount];
+		final List<Throwable> failures = new ArrayList<>();
+		for (int t = 0; t < threadsCount; ++t) {
+			final int threadIndex = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < rowsPerThread; ++i) {
+							writer.write(new double[]{threadIndex, i, i * 0.25});
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		writer.close();
+		Assert.assertTrue(failures.isEmpty());
+
+		List<double[]> rows = TestBufferedResultsWriter.readCsv(csvFile, TestBufferedResultsWriter.COLUMNS);
+		Assert.assertEquals(threadsCount * rowsPerThread, rows.size());
+		// The rows of each thread are written in the order they were queued
+		int[] nextIndex = new int[threadsCount];
+		for (double[] row : rows) {
+			int thread = (int) row[0];
+			Assert.assertEquals(nextIndex[thread]++, (int) row[1]);
+			Assert.assertEquals(row[1] * 0.25, row[2], 0);
+		}
+		TestBufferedResultsWriter.assertBinaryEqualsCsv(binaryFile, TestBufferedResultsWriter.COLUMNS, rows);
+	}
+
+	@Test
+	public void testCloseWhenQueueIsFull() throws Exception {
+		final ControlledWriter csv = new ControlledWriter();
+		final BufferedResultsWriter writer = new BufferedResultsWriter(csv, null, TestBufferedResultsWriter.COLUMNS,
+				2, BufferedResultsWriter.DEFAULT_FLUSH_INTERVAL_MILLIS);
+		// The writer thread blocks on the first row, so the queue fills up and the producer waits
+		csv.blocking = true;
+		final AtomicInteger accepted = new AtomicInteger();
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		// The producer writes until the writer is closed
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (accepted.get() < 1000000) {
+						writer.write(new double[]{0, accepted.get(), 0});
+						accepted.incrementAndGet();
+					}
+				} catch (IOException e) {
+					// The writer was closed (any other failure is reported)
+					if (!"The writer is closed".equals(e.getMessage())) {
+						failures.add(e);
+					}
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}
+		});
+		producer.start();
+		TestBufferedResultsWriter.waitUntilWaiting(producer);
+		Thread closer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writer.close();
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}
+		});
+		closer.start();
+		int acceptedBeforeClose;
+		try {
+			TestBufferedResultsWriter.waitUntilWaiting(closer);
+			acceptedBeforeClose = accepted.get();
+		} finally {
+			csv.blocking = false;
+			csv.released.countDown();
+		}
+		producer.join();
+		closer.join();
+		Assert.assertTrue(failures.isEmpty());
+		// The row being written and the queued rows were accepted, and so was the row which waited for the queue
+		Assert.assertTrue(acceptedBeforeClose >= 3);
+		Assert.assertTrue(accepted.get() > acceptedBeforeClose);
+		// Exactly the accepted rows were written before the files were closed
+		String[] lines = csv.toString().split("\n");
+		Assert.assertEquals(accepted.get() + 1, lines.length);
+		for (int i = 1; i < lines.length; ++i) {
+			Assert.assertEquals("0.0," + (i - 1) + ".0,0.0", lines[i]);
+		}
+	}
+
+	@Test
+	public void testWriteAfterClose() throws IOException {
+		StringWriter csv = new StringWriter();
+		BufferedResultsWriter writer = new BufferedResultsWriter(csv, null, TestBufferedResultsWriter.COLUMNS, 4, 10);
+		writer.write(new double[]{1, 2, 3});
+		writer.close();
+		try {
+			writer.write(new double[]{4, 5, 6});
+			Assert.fail("A row was written after close()");
+		} catch (IOException e) {
+			// Expected
+		}
+		// Closing again does nothing
+		writer.close();
+		Assert.assertEquals("thread,index,value\n1.0,2.0,3.0\n", csv.toString());
+	}
+
+	@Test
+	public void testFailurePropagation() throws Exception {
+		ControlledWriter controlled = new ControlledWriter();
+		BufferedResultsWriter writer = new BufferedResultsWriter(new FailingWriter(controlled), null,
+				TestBufferedResultsWriter.COLUMNS, 4, 10);
+		controlled.failing = true;
+		writer.write(new double[]{1, 2, 3});
+		// The failure of the writer thread is reported by the next writes (once the row was written)
+		long deadline = System.currentTimeMillis() + 10000;
+		boolean failed = false;
+		while (!failed && System.currentTimeMillis() < deadline) {
+			try {
+				writer.write(new double[]{1, 2, 3});
+				Thread.sleep(1);
+			} catch (IOException e) {
+				Assert.assertEquals("Injected failure", e.getMessage());
+				failed = true;
+			}
+		}
+		Assert.assertTrue(failed);
+		try {
+			writer.close();
+			Assert.fail("The failure wasn't reported by close()");
+		} catch (IOException e) {
+			Assert.assertEquals("Injected failure", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testPeriodicFlush() throws Exception {
+		StringWriter target = new StringWriter();
+		// A large buffer, so the rows reach the target only when the writer is flushed
+		BufferedResultsWriter writer = new BufferedResultsWriter(new BufferedWriter(target, 1 << 16), null,
+				TestBufferedResultsWriter.COLUMNS, 4, 20);
+		writer.write(new double[]{1, 2, 3});
+		writer.write(new double[]{4, 5, 6});
+		String expected = "thread,index,value\n1.0,2.0,3.0\n4.0,5.0,6.0\n";
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!target.toString().equals(expected) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		// The rows were flushed without closing the writer
+		Assert.assertEquals(expected, target.toString());
+		writer.close();
+	}
+
+	@Test
+	public void testTruncatedBinaryRow() throws IOException {
+		File csvFile = TestBufferedResultsWriter.createTempFile(".csv");
+		File binaryFile = TestBufferedResultsWriter.createTempFile(".bin");
+		BufferedResultsWriter writer = new BufferedResultsWriter(csvFile.getPath(), binaryFile.getPath(),
+				TestBufferedResultsWriter.COLUMNS, 4, 10);
+		writer.write(new double[]{1, 2, 3});
+		writer.write(new double[]{4, 5, 6});
+		writer.close();
+		// A crash in the middle of the third row: a whole double and a part of another one
+		try (FileOutputStream out = new FileOutputStream(binaryFile, true)) {
+			out.write(new byte[12]);
+		}
+		Map<String, double[]> columns = BufferedResultsWriter.readBinaryColumns(binaryFile.getPath());
+		Assert.assertEquals(Arrays.asList(TestBufferedResultsWriter.COLUMNS), new ArrayList<>(columns.keySet()));
+		Assert.assertTrue(Arrays.equals(new double[]{1, 4}, columns.get("thread")));
+		Assert.assertTrue(Arrays.equals(new double[]{2, 5}, columns.get("index")));
+		Assert.assertTrue(Arrays.equals(new double[]{3, 6}, columns.get("value")));
+	}
+
+	@Test
+	public void testSchemaRoundTrip() throws IOException {
+		SearchResultSchema schema = new SearchResultSchema(Column.SOLVED, Column.LENGTH, Column.COST,
+				Column.GENERATED, Column.EXPANDED, Column.REOPENED);
+		String[] names = schema.getColumnNames("AR-");
+		Assert.assertEquals("AR-Slv", names[0]);
+
+		// A solved instance and an instance whose goal is blocked (no solution)
+		char[] map = new char[8 * 8];
+		Arrays.fill(map, '.');
+		SearchResult solved = TestBufferedResultsWriter.createAstar().search(new GridPathFinding(8, 8, map, 0, 63));
+		map[62] = GridPathFinding.OBSTACLE_MARKER;
+		map[55] = GridPathFinding.OBSTACLE_MARKER;
+		SearchResult unsolved = TestBufferedResultsWriter.createAstar().search(new GridPathFinding(8, 8, map, 0, 63));
+		Assert.assertTrue(solved.hasSolution());
+		Assert.assertTrue(!unsolved.hasSolution());
+
+		double[] solvedValues = schema.getValues(solved);
+		Assert.assertTrue(Arrays.equals(new double[]{1, solved.getSolutions().get(0).getLength(),
+				solved.getSolutions().get(0).getCost(), solved.getGenerated(), solved.getExpanded(), 0}, solvedValues));
+		double[] unsolvedValues = schema.getValues(unsolved);
+		Assert.assertTrue(Arrays.equals(new double[]{0, -1, -1, unsolved.getGenerated(), unsolved.getExpanded(), 0},
+				unsolvedValues));
+		// The search ran out of memory (there is no result)
+		double[] outOfMemoryValues = schema.getValues(null);
+		Assert.assertTrue(Arrays.equals(new double[]{-1, -1, -1, 0, 0, 0}, outOfMemoryValues));
+
+		File csvFile = TestBufferedResultsWriter.createTempFile(".csv");
+		File binaryFile = TestBufferedResultsWriter.createTempFile(".bin");
+		BufferedResultsWriter writer = new BufferedResultsWriter(csvFile.getPath(), binaryFile.getPath(), names, 4,
+				BufferedResultsWriter.DEFAULT_FLUSH_INTERVAL_MILLIS);
+		writer.write(solvedValues);
+		writer.write(unsolvedValues);
+		writer.write(outOfMemoryValues);
+		writer.close();
+
+		List<double[]> rows = TestBufferedResultsWriter.readCsv(csvFile, names);
+		Assert.assertEquals(3, rows.size());
+		Assert.assertTrue(Arrays.equals(solvedValues, rows.get(0)));
+		Assert.assertTrue(Arrays.equals(unsolvedValues, rows.get(1)));
+		Assert.assertTrue(Arrays.equals(outOfMemoryValues, rows.get(2)));
+		TestBufferedResultsWriter.assertBinaryEqualsCsv(binaryFile, names, rows);
+	}
+
+	private static SearchAlgorithm createAstar() {
+		SearchAlgorithm astar = new WAStar();
+		astar.setAdditionalParameter("weight", "1.0");
+		return astar;
+	}
+
+	private static File createTempFile(String suffix) throws IOException {
+		File file = File.createTempFile("results", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Waits until the given thread waits (for a lock or on the queue)
+	 */
+	private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.BLOCKED) {
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Reads the rows of a CSV results file (and checks its header)
+	 */
+	private static List<double[]> readCsv(File file, String[] columns) throws IOException {
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		Assert.assertEquals(String.join(",", columns), lines.get(0));
+		List<double[]> rows = new ArrayList<>();
+		for (String line : lines.subList(1, lines.size())) {
+			String[] values = line.split(",");
+			Assert.assertEquals(columns.length, values.length);
+			double[] row = new double[values.length];
+			for (int i = 0; i < values.length; ++i) {
+				row[i] = Double.parseDouble(values[i]);
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static void assertBinaryEqualsCsv(File binaryFile, String[] columns, List<double[]> rows)
+			throws IOException {
+		Map<String, double[]> binary = BufferedResultsWriter.readBinaryColumns(binaryFile.getPath());
+		Assert.assertEquals(Arrays.asList(columns), new ArrayList<>(binary.keySet()));
+		for (int i = 0; i < columns.length; ++i) {
+			double[] column = binary.get(columns[i]);
+			Assert.assertEquals(rows.size(), column.length);
+			for (int j = 0; j < column.length; ++j) {
+				Assert.assertEquals(rows.get(j)[i], column[j], 0);
+			}
+		}
+	}
+}
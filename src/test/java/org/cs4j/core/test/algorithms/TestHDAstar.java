@@ -0,0 +1,115 @@
+package org.cs4j.core.test.algorithms;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchResult;
+import org.cs4j.core.algorithms.HDAstar;
+import org.cs4j.core.algorithms.WAStar;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.GridPathFinding;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHDAstar {
+
+	private static final int[] THREADS = {1, 2, 4};
+
+	@Test
+	public void testGridPathFinding() {
+		Random random = new Random(11);
+		for (int instance = 0; instance < 8; ++instance) {
+			int size = 32 + random.nextInt(33);
+			char[] map = new char[size * size];
+			for (int i = 0; i < map.length; ++i) {
+				map[i] = (random.nextInt(100) < 25) ? GridPathFinding.OBSTACLE_MARKER : '.';
+			}
+			int start = random.nextInt(map.length);
+			int goal = random.nextInt(map.length);
+			map[start] = '.';
+			map[goal] = '.';
+			for (int threads : TestHDAstar.THREADS) {
+				for (boolean globalOrder : new boolean[]{false, true}) {
+					assertSameCost(new GridPathFinding(size, size, map.clone(), start, goal),
+							new GridPathFinding(size, size, map.clone(), start, goal), threads, globalOrder);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFifteenPuzzle() {
+		Random random = new Random(13);
+		for (int instance = 0; instance < 6; ++instance) {
+			int[] tiles = randomWalk(random, 30 + random.nextInt(50));
+			for (int threads : TestHDAstar.THREADS) {
+				for (boolean globalOrder : new boolean[]{false, true}) {
+					assertSameCost(createPuzzle(tiles), createPuzzle(tiles), threads, globalOrder);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that HDA* finds a solution of the same (optimal) cost as A* (WAStar with weight 1)
+	 */
+	private static void assertSameCost(SearchDomain astarDomain, SearchDomain hdastarDomain, int threads,
+									   boolean globalOrder) {
+		SearchAlgorithm astar = new WAStar();
+		astar.setAdditionalParameter("weight", "1.0");
+		SearchResult expected = astar.search(astarDomain);
+
+		SearchAlgorithm hdastar = new HDAstar();
+		hdastar.setAdditionalParameter("threads", threads + "");
+		hdastar.setAdditionalParameter("global-order", globalOrder + "");
+		SearchResult result = hdastar.search(hdastarDomain);
+
+		Assert.assertEquals(expected.hasSolution(), result.hasSolution());
+		if (expected.hasSolution()) {
+			Assert.assertEquals(expected.getSolutions().get(0).getCost(), result.getSolutions().get(0).getCost(), 0);
+			// The path must be a valid path (starts at the initial state and ends at a goal)
+			Assert.assertTrue(hdastarDomain.isGoal(result.getSolutions().get(0).getStates().get(
+					result.getSolutions().get(0).getStates().size() - 1)));
+		}
+	}
+
+	/**
+	 * @return The tiles of a state which is reached by a random walk of the blank from the goal
+	 */
+	private static int[] randomWalk(Random random, int steps) {
+		int[] tiles = new int[16];
+		for (int i = 0; i < tiles.length; ++i) {
+			tiles[i] = i;
+		}
+		int blank = 0;
+		for (int step = 0; step < steps; ++step) {
+			int next;
+			do {
+				switch (random.nextInt(4)) {
+					case 0: next = (blank >= 4) ? blank - 4 : -1; break;
+					case 1: next = (blank < 12) ? blank + 4 : -1; break;
+					case 2: next = (blank % 4 > 0) ? blank - 1 : -1; break;
+					default: next = (blank % 4 < 3) ? blank + 1 : -1; break;
+				}
+			} while (next == -1);
+			tiles[blank] = tiles[next];
+			tiles[next] = 0;
+			blank = next;
+		}
+		return tiles;
+	}
+
+	private static FifteenPuzzle createPuzzle(int[] tiles) {
+		StringBuilder instance = new StringBuilder("4 4\ninit:\n");
+		for (int tile : tiles) {
+			instance.append(tile).append('\n');
+		}
+		instance.append("goal:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		return new FifteenPuzzle(new ByteArrayInputStream(instance.toString().getBytes()));
+	}
+}
@@ -0,0 +1,147 @@
+package org.cs4j.core.test.algorithms;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.cs4j.core.SearchAlgorithm;
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchResult;
+import org.cs4j.core.algorithms.IDAstar;
+import org.cs4j.core.algorithms.WAStar;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.Pancakes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestIDAstar {
+
+	// No table, a table which is much smaller than the searched trees (so entries are replaced) and a large one
+	private static final int[] TRANSPOSITION_TABLE_SIZES = {0, 64, 1 << 16};
+
+	@Test
+	public void testFifteenPuzzle() {
+		Random random = new Random(17);
+		for (int instance = 0; instance < 6; ++instance) {
+			int[] tiles = randomWalk(random, 30 + random.nextInt(50));
+			double expected = solveWithAstar(createPuzzle(tiles));
+			for (boolean inPlace : new boolean[]{false, true}) {
+				for (boolean movePruning : new boolean[]{false, true}) {
+					for (int size : TestIDAstar.TRANSPOSITION_TABLE_SIZES) {
+						assertCost(expected, createPuzzle(tiles), inPlace, movePruning, size);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPancakes() {
+		Random random = new Random(19);
+		for (int instance = 0; instance < 6; ++instance) {
+			int[] cakes = new int[8];
+			for (int i = 0; i < cakes.length; ++i) {
+				cakes[i] = i;
+			}
+			for (int i = cakes.length - 1; i > 0; --i) {
+				int j = random.nextInt(i + 1);
+				int cake = cakes[i];
+				cakes[i] = cakes[j];
+				cakes[j] = cake;
+			}
+			for (Pancakes.COST_FUNCTION function : Pancakes.COST_FUNCTION.values()) {
+				// The heuristic of the heavy pancakes isn't consistent (so A* asserts when a closed state gets a
+				// lower cost): the reference is then IDA* which copies the states and prunes nothing but the reverse
+				// operators
+				double expected = (function == Pancakes.COST_FUNCTION.UNIT) ?
+						solveWithAstar(new Pancakes(cakes, function)) :
+						solveWithIDAstar(new Pancakes(cakes, function));
+				for (boolean inPlace : new boolean[]{false, true}) {
+					for (boolean movePruning : new boolean[]{false, true}) {
+						for (int size : TestIDAstar.TRANSPOSITION_TABLE_SIZES) {
+							assertCost(expected, new Pancakes(cakes, function), inPlace, movePruning, size);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The optimal cost of the solution which A* (WAStar with weight 1) finds
+	 */
+	private static double solveWithAstar(SearchDomain domain) {
+		SearchAlgorithm astar = new WAStar();
+		astar.setAdditionalParameter("weight", "1.0");
+		SearchResult result = astar.search(domain);
+		Assert.assertTrue(result.hasSolution());
+		return result.getSolutions().get(0).getCost();
+	}
+
+	/**
+	 * @return The optimal cost of the solution which IDA* without in place expansion, move pruning and a
+	 *         transposition table finds
+	 */
+	private static double solveWithIDAstar(SearchDomain domain) {
+		SearchAlgorithm idastar = new IDAstar();
+		idastar.setAdditionalParameter("in-place-expansion", "false");
+		idastar.setAdditionalParameter("move-pruning", "false");
+		idastar.setAdditionalParameter("transposition-table-size", "0");
+		SearchResult result = idastar.search(domain);
+		Assert.assertTrue(result.hasSolution());
+		return result.getSolutions().get(0).getCost();
+	}
+
+	/**
+	 * Checks that IDA* with the given parameters finds a solution of the expected (optimal) cost
+	 */
+	private static void assertCost(double expected, SearchDomain domain, boolean inPlace, boolean movePruning,
+								   int transpositionTableSize) {
+		SearchAlgorithm idastar = new IDAstar();
+		idastar.setAdditionalParameter("in-place-expansion", inPlace + "");
+		idastar.setAdditionalParameter("move-pruning", movePruning + "");
+		idastar.setAdditionalParameter("transposition-table-size", transpositionTableSize + "");
+		SearchResult result = idastar.search(domain);
+		String message = "in-place: " + inPlace + ", move-pruning: " + movePruning + ", table: " +
+				transpositionTableSize;
+		Assert.assertTrue(message, result.hasSolution());
+		Assert.assertEquals(message, expected, result.getSolutions().get(0).getCost(), 1e-9);
+	}
+
+	/**
+	 * @return The tiles of a state which is reached by a random walk of the blank from the goal
+	 */
+	private static int[] randomWalk(Random random, int steps) {
+		int[] tiles = new int[16];
+		for (int i = 0; i < tiles.length; ++i) {
+			tiles[i] = i;
+		}
+		int blank = 0;
+		for (int step = 0; step < steps; ++step) {
+			int next;
+			do {
+				switch (random.nextInt(4)) {
+					case 0: next = (blank >= 4) ? blank - 4 : -1; break;
+					case 1: next = (blank < 12) ? blank + 4 : -1; break;
+					case 2: next = (blank % 4 > 0) ? blank - 1 : -1; break;
+					default: next = (blank % 4 < 3) ? blank + 1 : -1; break;
+				}
+			} while (next == -1);
+			tiles[blank] = tiles[next];
+			tiles[next] = 0;
+			blank = next;
+		}
+		return tiles;
+	}
+
+	private static FifteenPuzzle createPuzzle(int[] tiles) {
+		StringBuilder instance = new StringBuilder("4 4\ninit:\n");
+		for (int tile : tiles) {
+			instance.append(tile).append('\n');
+		}
+		instance.append("goal:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		return new FifteenPuzzle(new ByteArrayInputStream(instance.toString().getBytes()));
+	}
+}
@@ -0,0 +1,138 @@
+package org.cs4j.core.test.collections;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.cs4j.core.collections.BucketHeap.BucketHeapElement;
+import org.cs4j.core.collections.BucketQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBucketQueue {
+
+	private static final class Element implements BucketHeapElement {
+		private final int id;
+		private double f;
+		private double g;
+		private int index = -1;
+		private int secondaryIndex = -1;
+
+		private Element(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void setIndex(int key, int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int getIndex(int key) {
+			return this.index;
+		}
+
+		@Override
+		public void setSecondaryIndex(int key, int index) {
+			this.secondaryIndex = index;
+		}
+
+		@Override
+		public int getSecondaryIndex(int key) {
+			return this.secondaryIndex;
+		}
+
+		@Override
+		public double getRank(int level) {
+			return (level == 0) ? this.f : this.g;
+		}
+
+		@Override
+		public double getF() {
+			return this.f;
+		}
+	}
+
+	// Lower f first, then higher g (as required by the queue) and then by id (so the order is total)
+	private static final Comparator<Element> COMPARATOR = new Comparator<Element>() {
+		@Override
+		public int compare(Element a, Element b) {
+			if (a.f != b.f) {
+				return Double.compare(a.f, b.f);
+			}
+			if (a.g != b.g) {
+				return Double.compare(b.g, a.g);
+			}
+			return Integer.compare(a.id, b.id);
+		}
+	};
+
+	@Test
+	public void testUnitRanks() {
+		testAgainstTreeSet(1.0, false);
+	}
+
+	@Test
+	public void testRealRanks() {
+		testAgainstTreeSet(0.5, true);
+	}
+
+	/**
+	 * Applies the same random sequence of add/poll/update/remove on a bucket queue and on a TreeSet (with the same
+	 * comparator) and compares the polled elements
+	 *
+	 * @param resolution The resolution of the queue
+	 * @param realRanks Whether to use non-integer (and sometimes infinite) ranks, so mixed buckets are created
+	 */
+	private void testAgainstTreeSet(double resolution, boolean realRanks) {
+		Random random = new Random(17);
+		BucketQueue<Element> queue = new BucketQueue<>(COMPARATOR, resolution, 0);
+		TreeSet<Element> expected = new TreeSet<>(COMPARATOR);
+		List<Element> contained = new ArrayList<>();
+		int nextId = 0;
+		for (int i = 0; i < 200000; ++i) {
+			int operation = random.nextInt(10);
+			if (operation < 4 || contained.isEmpty()) {
+				Element e = new Element(nextId++);
+				setRanks(e, random, realRanks);
+				queue.add(e);
+				expected.add(e);
+				contained.add(e);
+			} else if (operation < 7) {
+				Element polled = queue.poll();
+				Assert.assertSame(expected.pollFirst(), polled);
+				contained.remove(polled);
+			} else if (operation < 9) {
+				Element e = contained.get(random.nextInt(contained.size()));
+				expected.remove(e);
+				setRanks(e, random, realRanks);
+				queue.update(e);
+				expected.add(e);
+			} else {
+				Element e = contained.remove(random.nextInt(contained.size()));
+				Assert.assertSame(e, queue.remove(e));
+				expected.remove(e);
+			}
+			Assert.assertEquals(expected.size(), queue.size());
+			if (!expected.isEmpty()) {
+				Assert.assertSame(expected.first(), queue.peek());
+			}
+		}
+		while (!expected.isEmpty()) {
+			Assert.assertSame(expected.pollFirst(), queue.poll());
+		}
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	private static void setRanks(Element e, Random random, boolean realRanks) {
+		if (realRanks) {
+			e.f = (random.nextInt(100) == 0) ? Double.POSITIVE_INFINITY : random.nextInt(400) / 4.0 - 20;
+			e.g = random.nextInt(120) / 3.0;
+		} else {
+			e.f = random.nextInt(60);
+			e.g = random.nextInt(40);
+		}
+	}
+}
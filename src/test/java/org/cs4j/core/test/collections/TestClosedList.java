@@ -0,0 +1,59 @@
+package org.cs4j.core.test.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.PackedClosedList;
+import org.cs4j.core.collections.PackedElement;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestClosedList {
+
+	@Test
+	public void testSingleLong() {
+		testAgainstHashMap(1);
+	}
+
+	@Test
+	public void testMultiLong() {
+		testAgainstHashMap(3);
+	}
+
+	/**
+	 * Applies the same random sequence of operations on a closed list and on a HashMap and compares the results
+	 * (few distinct keys are used, so that long probing clusters are created and removed)
+	 */
+	public void testAgainstHashMap(int wordsCount) {
+		Random random = new Random(17);
+		ClosedList<Integer> closed = new PackedClosedList<>(4);
+		Map<PackedElement, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 200000; ++i) {
+			long[] words = new long[wordsCount];
+			for (int w = 0; w < wordsCount; ++w) {
+				words[w] = random.nextInt(5000);
+			}
+			PackedElement key = new PackedElement(words);
+			switch (random.nextInt(4)) {
+				case 0:
+				case 1:
+					Assert.assertEquals(expected.put(key, i), closed.put(key, i));
+					break;
+				case 2:
+					Assert.assertEquals(expected.remove(key), closed.remove(key));
+					break;
+				default:
+					Assert.assertEquals(expected.get(key), closed.get(key));
+					Assert.assertEquals(expected.containsKey(key), closed.containsKey(key));
+			}
+			Assert.assertEquals(expected.size(), closed.size());
+		}
+		for (Map.Entry<PackedElement, Integer> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue(), closed.get(entry.getKey()));
+		}
+		closed.clear();
+		Assert.assertTrue(closed.isEmpty());
+	}
+}
@@ -0,0 +1,155 @@
+package org.cs4j.core.test.collections;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.cs4j.core.collections.BinHeap;
+import org.cs4j.core.collections.ClosedList;
+import org.cs4j.core.collections.CompactClosedList;
+import org.cs4j.core.collections.CompactNodeStore;
+import org.cs4j.core.collections.CompactOpenList;
+import org.cs4j.core.collections.PackedClosedList;
+import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.collections.SearchQueueElement;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCompactLists {
+
+	private static final class Element implements SearchQueueElement {
+		private final int handle;
+		private double g;
+		private double h;
+		private int index = -1;
+
+		private Element(int handle, double g, double h) {
+			this.handle = handle;
+			this.g = g;
+			this.h = h;
+		}
+
+		@Override
+		public void setIndex(int key, int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int getIndex(int key) {
+			return this.index;
+		}
+
+		@Override
+		public double getF() {
+			return this.g + this.h;
+		}
+	}
+
+	// The order of the WAStar nodes comparator: lower weighted f first and then higher g
+	private static Comparator<Element> comparator(final double weight) {
+		return new Comparator<Element>() {
+			@Override
+			public int compare(Element a, Element b) {
+				double wfA = a.g + weight * a.h;
+				double wfB = b.g + weight * b.h;
+				if (wfA != wfB) {
+					return Double.compare(wfA, wfB);
+				}
+				return Double.compare(b.g, a.g);
+			}
+		};
+	}
+
+	@Test
+	public void testSingleWord() {
+		testAgainstObjectLists(1, 1.0);
+	}
+
+	@Test
+	public void testMultiWordWeighted() {
+		testAgainstObjectLists(3, 1.5);
+	}
+
+	/**
+	 * Runs the same random search-like sequence of operations (generate, improve a duplicate, expand, reopen) on the
+	 * compact lists and on a BinHeap and a PackedClosedList of objects and compares the results.
+	 * Few distinct states and integral costs are used, so that many duplicates and ties are created.
+	 */
+	public void testAgainstObjectLists(int wordsCount, double weight) {
+		Random random = new Random(29);
+		// Start from tiny capacities so the store, the heap and the table are grown several times
+		CompactNodeStore store = new CompactNodeStore(wordsCount, 2);
+		CompactOpenList open = new CompactOpenList(store, weight);
+		CompactClosedList closed = new CompactClosedList(store, 2);
+
+		BinHeap<Element> expectedOpen = new BinHeap<>(TestCompactLists.comparator(weight), 0);
+		ClosedList<Element> expectedClosed = new PackedClosedList<>();
+		List<Element> elements = new ArrayList<>();
+
+		long[] words = new long[wordsCount];
+		long[] stored = new long[wordsCount];
+		for (int i = 0; i < 300000; ++i) {
+			if (random.nextInt(3) == 0) {
+				// Expand
+				Element expected = expectedOpen.poll();
+				int handle = open.poll();
+				Assert.assertEquals(expected == null ? CompactNodeStore.NO_NODE : expected.handle, handle);
+				Assert.assertEquals(expectedOpen.size(), open.size());
+				continue;
+			}
+			// Generate
+			for (int w = 0; w < wordsCount; ++w) {
+				words[w] = random.nextInt(4000) - 2000;
+			}
+			double g = random.nextInt(50);
+			double h = random.nextInt(20);
+			PackedElement key = new PackedElement(words.clone());
+			Element expected = expectedClosed.get(key);
+			int handle = closed.get(words);
+			Assert.assertEquals(expected == null ? CompactNodeStore.NO_NODE : expected.handle, handle);
+			if (expected == null) {
+				handle = store.add(words, g, h, CompactNodeStore.NO_NODE, random.nextInt(4));
+				Assert.assertEquals(elements.size(), handle);
+				expected = new Element(handle, g, h);
+				elements.add(expected);
+				closed.add(handle);
+				expectedClosed.put(key, expected);
+				open.add(handle);
+				expectedOpen.add(expected);
+			} else if (g < expected.g) {
+				// A better path to a duplicate: update it in the open list or reopen it
+				store.setG(handle, g);
+				expected.g = g;
+				boolean inOpen = expected.getIndex(0) != -1;
+				Assert.assertEquals(inOpen, open.contains(handle));
+				if (inOpen) {
+					open.update(handle);
+					expectedOpen.update(expected);
+				} else {
+					open.add(handle);
+					expectedOpen.add(expected);
+				}
+			}
+			Assert.assertEquals(expectedClosed.size(), closed.size());
+			Assert.assertEquals(expectedOpen.size(), open.size());
+		}
+
+		// All the states must have been kept as they were added
+		Assert.assertEquals(elements.size(), store.size());
+		for (Element element : elements) {
+			Assert.assertEquals(element.g, store.getG(element.handle), 0);
+			Assert.assertEquals(element.h, store.getH(element.handle), 0);
+			store.getWords(element.handle, stored);
+			Assert.assertEquals(element.handle, closed.get(stored));
+			Assert.assertEquals(store.getPacked(element.handle), new PackedElement(stored.clone()));
+		}
+
+		// Empty the open lists (the order of the remaining nodes must match too)
+		while (!expectedOpen.isEmpty()) {
+			Assert.assertEquals(expectedOpen.poll().handle, open.poll());
+		}
+		Assert.assertTrue(open.isEmpty());
+		Assert.assertEquals(CompactNodeStore.NO_NODE, open.poll());
+	}
+}
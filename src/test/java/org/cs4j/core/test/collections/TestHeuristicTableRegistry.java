@@ -0,0 +1,69 @@
+package org.cs4j.core.test.collections;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.cs4j.core.collections.HeuristicTableRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHeuristicTableRegistry {
+
+	/**
+	 * Counts the reads of the table
+	 */
+	private static final class CountingLoader implements HeuristicTableRegistry.Loader<int[]> {
+		private int loads = 0;
+
+		@Override
+		public int[] load() throws IOException {
+			++this.loads;
+			return new int[]{this.loads};
+		}
+	}
+
+	@Test
+	public void testAcquireRetainRelease() throws IOException {
+		File file = File.createTempFile("table", ".pdb");
+		file.deleteOnExit();
+		String fileName = file.getPath();
+		CountingLoader loader = new CountingLoader();
+
+		int[] first = HeuristicTableRegistry.acquire(fileName, "test", loader);
+		int[] second = HeuristicTableRegistry.acquire(fileName, "test", loader);
+		// The table is read once and shared
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, loader.loads);
+		Assert.assertEquals(2, HeuristicTableRegistry.getReferencesCount(fileName, "test"));
+
+		// Another layout of the same file is another table
+		int[] other = HeuristicTableRegistry.acquire(fileName, "other", loader);
+		Assert.assertNotSame(first, other);
+		Assert.assertEquals(2, loader.loads);
+		HeuristicTableRegistry.release(other);
+		Assert.assertEquals(0, HeuristicTableRegistry.getReferencesCount(fileName, "other"));
+
+		HeuristicTableRegistry.retain(first);
+		Assert.assertEquals(3, HeuristicTableRegistry.getReferencesCount(fileName, "test"));
+		HeuristicTableRegistry.release(first);
+		HeuristicTableRegistry.release(first);
+		Assert.assertEquals(1, HeuristicTableRegistry.getReferencesCount(fileName, "test"));
+		// The table is kept as long as it is referenced
+		Assert.assertSame(first, HeuristicTableRegistry.acquire(fileName, "test", loader));
+		Assert.assertEquals(2, loader.loads);
+		HeuristicTableRegistry.release(first);
+		HeuristicTableRegistry.release(first);
+		Assert.assertEquals(0, HeuristicTableRegistry.getReferencesCount(fileName, "test"));
+
+		// Once all the references are released, the table is dropped and read again by the next acquire
+		int[] reloaded = HeuristicTableRegistry.acquire(fileName, "test", loader);
+		Assert.assertNotSame(first, reloaded);
+		Assert.assertEquals(3, loader.loads);
+		HeuristicTableRegistry.release(reloaded);
+
+		// Tables which aren't registered are ignored
+		HeuristicTableRegistry.retain(null);
+		HeuristicTableRegistry.release(null);
+		HeuristicTableRegistry.release(new int[1]);
+	}
+}
@@ -0,0 +1,87 @@
+package org.cs4j.core.test.collections;
+
+import org.cs4j.core.collections.TranspositionTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTranspositionTable {
+
+	@Test
+	public void testRevisit() {
+		TranspositionTable table = new TranspositionTable(1024, 2);
+		long[] state = {7, -3};
+		Assert.assertTrue(table.visit(state, 10));
+		// Reached again with the same or a higher cost: the subtree was already searched with at least this budget
+		Assert.assertFalse(table.visit(state, 10));
+		Assert.assertFalse(table.visit(state, 12));
+		// Reached with a lower cost: searched again and recorded with the lower cost
+		Assert.assertTrue(table.visit(state, 8));
+		Assert.assertFalse(table.visit(state, 9));
+		Assert.assertFalse(table.visit(new long[]{7, -3}, 8));
+		// Another state (which differs only in one of the words)
+		Assert.assertTrue(table.visit(new long[]{7, -4}, 100));
+	}
+
+	@Test
+	public void testStaleEntries() {
+		TranspositionTable table = new TranspositionTable(1024, 1);
+		long[] state = {42};
+		Assert.assertTrue(table.visit(state, 5));
+		Assert.assertFalse(table.visit(state, 5));
+		table.startIteration();
+		// The entry of the previous iteration doesn't prune the state (even with a higher cost)
+		Assert.assertTrue(table.visit(state, 6));
+		Assert.assertFalse(table.visit(state, 6));
+		Assert.assertTrue(table.visit(state, 5));
+	}
+
+	/**
+	 * The table has a single bucket (of 2 slots), so all the states compete for the same slots
+	 */
+	@Test
+	public void testReplacement() {
+		TranspositionTable table = new TranspositionTable(2, 3);
+		Assert.assertEquals(2, table.getCapacity());
+		long[] a = {1, 2, 3};
+		long[] b = {4, 5, 6};
+		long[] c = {7, 8, 9};
+		Assert.assertTrue(table.visit(a, 1));
+		Assert.assertTrue(table.visit(b, 5));
+		// Both the slots are current: the one with the higher g (b) is replaced
+		Assert.assertTrue(table.visit(c, 3));
+		Assert.assertFalse(table.visit(a, 1));
+		Assert.assertFalse(table.visit(c, 3));
+		Assert.assertTrue(table.visit(b, 5));
+		// Now b replaced c (a has the lower g)
+		Assert.assertFalse(table.visit(a, 1));
+		Assert.assertTrue(table.visit(c, 3));
+
+		// A stale slot is replaced before a current one, even if its g is lower
+		table = new TranspositionTable(2, 3);
+		Assert.assertTrue(table.visit(a, 1));
+		table.startIteration();
+		Assert.assertTrue(table.visit(b, 5));
+		Assert.assertTrue(table.visit(c, 3));
+		// c replaced the stale a and b is kept
+		Assert.assertFalse(table.visit(b, 5));
+		Assert.assertFalse(table.visit(c, 3));
+	}
+
+	@Test
+	public void testCapacity() {
+		// Rounded down to a power of 2
+		Assert.assertEquals(1024, new TranspositionTable(1024, 1).getCapacity());
+		Assert.assertEquals(1024, new TranspositionTable(2047, 4).getCapacity());
+		Assert.assertEquals(2, new TranspositionTable(3, 1).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new TranspositionTable(1, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWordsCount() {
+		new TranspositionTable(1024, 0);
+	}
+}
@@ -0,0 +1,134 @@
+package org.cs4j.core.test.domains;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.cs4j.core.SearchDomain;
+import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.TopSpin;
+import org.cs4j.core.generators.FifteenPuzzlePDBGenerator;
+import org.cs4j.core.generators.PDBBuilder;
+import org.cs4j.core.generators.TopSpinPDBGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the compressed (nibble and mod3) PDBs give exactly the same heuristic values as the raw PDBs
+ */
+public class TestCompressedPDBs {
+
+	private static final int STEPS = 50000;
+
+	@Test
+	public void testTopSpin() throws IOException {
+		File directory = Files.createTempDirectory("pdbs").toFile();
+		String first = buildTopSpinPDB(directory, new int[]{1, 2, 3, 4}, "first");
+		String second = buildTopSpinPDB(directory, new int[]{5, 6, 7, 8, 9}, "second");
+		TopSpin raw = createTopSpin(first, second, "raw");
+		TopSpin mod3 = createTopSpin(first, second, "mod3");
+		TopSpin nibble = createTopSpin(first, second, "nibble");
+		assertSameWalk(raw, new SearchDomain[]{mod3, nibble});
+		raw.releaseHeuristicTables();
+		mod3.releaseHeuristicTables();
+		nibble.releaseHeuristicTables();
+	}
+
+	@Test
+	public void testFifteenPuzzle() throws IOException {
+		File directory = Files.createTempDirectory("pdbs").toFile();
+		String files = buildFifteenPuzzlePDB555(directory);
+		for (String reflection : new String[]{"false", "true"}) {
+			FifteenPuzzle raw = createFifteenPuzzle(files, "raw", reflection);
+			FifteenPuzzle nibble = createFifteenPuzzle(files, "nibble", reflection);
+			// A PDB of each encoding
+			FifteenPuzzle mixed = createFifteenPuzzle(files, "nibble,raw,nibble", reflection);
+			assertSameWalk(raw, new SearchDomain[]{nibble, mixed});
+			raw.releaseHeuristicTables();
+			nibble.releaseHeuristicTables();
+			mixed.releaseHeuristicTables();
+		}
+	}
+
+	/**
+	 * Applies the same random walk on all the domains and checks that the h values of the states (and of the unpacked
+	 * states) are the same as the ones of the reference domain
+	 */
+	private static void assertSameWalk(SearchDomain reference, SearchDomain[] others) {
+		Random random = new Random(17);
+		State expected = reference.initialState();
+		State[] states = new State[others.length];
+		for (int d = 0; d < others.length; ++d) {
+			states[d] = others[d].initialState();
+			Assert.assertEquals(expected.getH(), states[d].getH(), 0);
+		}
+		for (int step = 0; step < STEPS; ++step) {
+			int index = random.nextInt(reference.getNumOperators(expected));
+			expected = reference.applyOperator(expected, reference.getOperator(expected, index));
+			for (int d = 0; d < others.length; ++d) {
+				states[d] = others[d].applyOperator(states[d], others[d].getOperator(states[d], index));
+				Assert.assertEquals("step " + step, expected.getH(), states[d].getH(), 0);
+				if (step % 100 == 0) {
+					State unpacked = others[d].unpack(others[d].pack(states[d]));
+					Assert.assertEquals("unpacked at step " + step, expected.getH(), unpacked.getH(), 0);
+				}
+			}
+		}
+	}
+
+	private static String buildTopSpinPDB(File directory, int[] patternTokens, String name) throws IOException {
+		TopSpinPDBGenerator abstraction = new TopSpinPDBGenerator(12, 4, patternTokens);
+		File file = new File(directory, name + ".pdb");
+		file.deleteOnExit();
+		new PDBBuilder(abstraction, 2).build(file.getPath(), PDBBuilder.Layout.RAW);
+		StringBuilder tokens = new StringBuilder("[0");
+		for (int token : patternTokens) {
+			tokens.append(',').append(token);
+		}
+		return abstraction.getEntriesCount() + "-" + tokens.append(']') + "-" + file.getPath();
+	}
+
+	private static TopSpin createTopSpin(String first, String second, String encoding) {
+		StringBuilder instance = new StringBuilder("12 4\ninit:\n");
+		for (int i = 0; i < 12; ++i) {
+			instance.append((i * 5) % 12).append('\n');
+		}
+		TopSpin topSpin = new TopSpin(new ByteArrayInputStream(instance.toString().getBytes()));
+		topSpin.setAdditionalParameter("pdb-data", "0-" + first + "-" + encoding);
+		topSpin.setAdditionalParameter("pdb-data", "1-" + second + "-" + encoding);
+		return topSpin;
+	}
+
+	private static String buildFifteenPuzzlePDB555(File directory) throws IOException {
+		StringBuilder files = new StringBuilder();
+		for (int firstTile = 1; firstTile <= 11; firstTile += 5) {
+			File file = new File(directory, "pdb5_" + firstTile + ".pdb");
+			file.deleteOnExit();
+			new PDBBuilder(new FifteenPuzzlePDBGenerator(firstTile, 5), 2).build(file.getPath(),
+					PDBBuilder.Layout.INDEXED);
+			files.append((files.length() == 0) ? "" : ",").append(file.getPath());
+		}
+		return files.toString();
+	}
+
+	private static FifteenPuzzle createFifteenPuzzle(String files, String encoding, String reflection) {
+		// The goal is the initial state (the walk starts from it)
+		StringBuilder instance = new StringBuilder("4 4\ninit:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		instance.append("goal:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		FifteenPuzzle puzzle = new FifteenPuzzle(new ByteArrayInputStream(instance.toString().getBytes()));
+		puzzle.setAdditionalParameter("heuristic", "pdb-555");
+		puzzle.setAdditionalParameter("pdb-encoding", encoding);
+		puzzle.setAdditionalParameter("pdb-555-files", files);
+		puzzle.setAdditionalParameter("use-reflection", reflection);
+		return puzzle;
+	}
+}
@@ -0,0 +1,269 @@
+package org.cs4j.core.test.domains;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cs4j.core.SearchDomain.Operator;
+import org.cs4j.core.SearchDomain.State;
+import org.cs4j.core.collections.PackedElement;
+import org.cs4j.core.domains.FifteenPuzzle;
+import org.cs4j.core.domains.PermutationRanking;
+import org.cs4j.core.generators.FifteenPuzzlePDBGenerator;
+import org.cs4j.core.generators.PDBBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFifteenPuzzle {
+
+	private static final int WALK_SEED = 29;
+	private static final int WALK_STEPS = 20000;
+
+	@Test
+	public void testReplicatePreservesOperatorTypes() {
+		FifteenPuzzle puzzle = new FifteenPuzzle();
+		FifteenPuzzle replica = (FifteenPuzzle) puzzle.replicate();
+		for (int blank = 0; blank < 16; ++blank) {
+			State state = puzzle.unpack(new PackedElement(packWithBlankAt(blank)));
+			State replicaState = replica.unpack(new PackedElement(packWithBlankAt(blank)));
+			int operatorsCount = puzzle.getNumOperators(state);
+			Assert.assertEquals(operatorsCount, replica.getNumOperators(replicaState));
+			for (int i = 0; i < operatorsCount; ++i) {
+				Assert.assertEquals(puzzle.getOperatorType(state, i), replica.getOperatorType(replicaState, i));
+			}
+		}
+	}
+
+	/**
+	 * The Manhattan distance of the initial state must include the tile at position 0 (it used to be skipped, so an
+	 * initial state whose only misplaced tile is there was a goal)
+	 */
+	@Test
+	public void testInitialStateManhattanDistance() {
+		int[] tiles = new int[16];
+		for (int i = 0; i < tiles.length; ++i) {
+			tiles[i] = i;
+		}
+		tiles[0] = 1;
+		tiles[1] = 0;
+		FifteenPuzzle puzzle = createPuzzle(tiles, FifteenPuzzle.COST_FUNCTION.UNIT);
+		State state = puzzle.initialState();
+		Assert.assertEquals(1, state.getH(), 0);
+		Assert.assertEquals(1, state.getD(), 0);
+		Assert.assertTrue(!puzzle.isGoal(state));
+
+		// The initial h and d must be the ones of the same state when it is unpacked (for any cost function)
+		Random random = new Random(TestFifteenPuzzle.WALK_SEED);
+		for (FifteenPuzzle.COST_FUNCTION function : FifteenPuzzle.COST_FUNCTION.values()) {
+			for (int instance = 0; instance < 100; ++instance) {
+				for (int i = tiles.length - 1; i > 0; --i) {
+					int j = random.nextInt(i + 1);
+					int tile = tiles[i];
+					tiles[i] = tiles[j];
+					tiles[j] = tile;
+				}
+				puzzle = createPuzzle(tiles, function);
+				state = puzzle.initialState();
+				State unpacked = puzzle.unpack(puzzle.pack(state));
+				Assert.assertEquals(unpacked.getH(), state.getH(), 1e-9);
+				Assert.assertEquals(unpacked.getD(), state.getD(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testApplyUndoManhattanDistance() {
+		for (FifteenPuzzle.COST_FUNCTION function : FifteenPuzzle.COST_FUNCTION.values()) {
+			int[] tiles = new int[16];
+			for (int i = 0; i < tiles.length; ++i) {
+				tiles[i] = i;
+			}
+			assertApplyUndo(createPuzzle(tiles, function));
+		}
+	}
+
+	@Test
+	public void testIncrementalRanksPDB555() throws IOException {
+		File directory = Files.createTempDirectory("pdbs").toFile();
+		StringBuilder files = new StringBuilder();
+		for (int firstTile = 1; firstTile <= 11; firstTile += 5) {
+			File file = new File(directory, "pdb5_" + firstTile + ".pdb");
+			file.deleteOnExit();
+			new PDBBuilder(new FifteenPuzzlePDBGenerator(firstTile, 5), 2).build(file.getPath(),
+					PDBBuilder.Layout.INDEXED);
+			files.append((files.length() == 0) ? "" : ",").append(file.getPath());
+		}
+		for (String reflection : new String[]{"false", "true"}) {
+			FifteenPuzzle puzzle = createPuzzle();
+			puzzle.setAdditionalParameter("heuristic", "pdb-555");
+			puzzle.setAdditionalParameter("use-reflection", reflection);
+			puzzle.setAdditionalParameter("pdb-555-files", files.toString());
+			assertIncrementalRanks(puzzle);
+			assertApplyUndo(puzzle);
+			puzzle.releaseHeuristicTables();
+		}
+	}
+
+	/**
+	 * The 7-8 PDBs are too large to be built by a test, so sparse mapped tables are used instead: a nonzero value is
+	 * stored only at the ranks of the patterns (and of the reflected ones) of the states of the walk, so an invalid
+	 * incremental rank hits a different value (usually 0)
+	 */
+	@Test
+	public void testIncrementalRanksPDB78() throws IOException {
+		File directory = Files.createTempDirectory("pdbs").toFile();
+		// Only the mapped raw files exist (see PatternDatabase.readIndexedMapped)
+		String pdb7FileName = new File(directory, "pdb7").getPath();
+		String pdb8FileName = new File(directory, "pdb8").getPath();
+		try (RandomAccessFile pdb7 = new RandomAccessFile(pdb7FileName + ".raw", "rw");
+			 RandomAccessFile pdb8 = new RandomAccessFile(pdb8FileName + ".raw", "rw")) {
+			pdb7.setLength(PermutationRanking.partialPermutationsCount(16, 7));
+			pdb8.setLength(PermutationRanking.partialPermutationsCount(16, 8));
+			FifteenPuzzle md = createPuzzle();
+			State state = md.initialState();
+			Random random = new Random(TestFifteenPuzzle.WALK_SEED);
+			for (int step = 0; step <= TestFifteenPuzzle.WALK_STEPS; ++step) {
+				int[] positions = getPositionsOfTiles(md.pack(state).getFirst());
+				writeRankValue(pdb7, rankPattern(positions, 1, 7, false));
+				writeRankValue(pdb7, rankPattern(positions, 1, 7, true));
+				writeRankValue(pdb8, rankPattern(positions, 8, 8, false));
+				writeRankValue(pdb8, rankPattern(positions, 8, 8, true));
+				Operator op = md.getOperator(state, random.nextInt(md.getNumOperators(state)));
+				state = md.applyOperator(state, op);
+			}
+		}
+		new File(pdb7FileName + ".raw").deleteOnExit();
+		new File(pdb8FileName + ".raw").deleteOnExit();
+		for (String reflection : new String[]{"false", "true"}) {
+			FifteenPuzzle puzzle = createPuzzle();
+			puzzle.setAdditionalParameter("heuristic", "pdb-78");
+			puzzle.setAdditionalParameter("pdb-remains-on-disk", "true");
+			puzzle.setAdditionalParameter("use-reflection", reflection);
+			puzzle.setAdditionalParameter("pdb-78-files", pdb7FileName + "," + pdb8FileName);
+			assertIncrementalRanks(puzzle);
+			assertApplyUndo(puzzle);
+			puzzle.releaseHeuristicTables();
+		}
+	}
+
+	/**
+	 * Checks along a random walk that the h value which is computed from the incrementally updated ranks equals the
+	 * one which is computed from scratch (by unpacking the state)
+	 */
+	private static void assertIncrementalRanks(FifteenPuzzle puzzle) {
+		State state = puzzle.initialState();
+		Random random = new Random(TestFifteenPuzzle.WALK_SEED);
+		for (int step = 0; step < TestFifteenPuzzle.WALK_STEPS; ++step) {
+			Operator op = puzzle.getOperator(state, random.nextInt(puzzle.getNumOperators(state)));
+			state = puzzle.applyOperator(state, op);
+			State unpacked = puzzle.unpack(puzzle.pack(state));
+			Assert.assertEquals("step " + step, unpacked.getH(), state.getH(), 0);
+			Assert.assertTrue(state.getH() > 0);
+		}
+	}
+
+	/**
+	 * Applies and undoes random operators on a single state (as a depth-first search does) and checks after each step
+	 * that the state, its h and d values and the costs of the operators equal those of the states which are generated
+	 * by applyOperator
+	 */
+	private static void assertApplyUndo(FifteenPuzzle puzzle) {
+		Random random = new Random(TestFifteenPuzzle.WALK_SEED);
+		State state = puzzle.copy(puzzle.initialState());
+		List<State> path = new ArrayList<>();
+		path.add(puzzle.copy(state));
+		for (int step = 0; step < TestFifteenPuzzle.WALK_STEPS; ++step) {
+			if (path.size() > 1 && random.nextInt(3) == 0) {
+				puzzle.undo(state);
+				path.remove(path.size() - 1);
+			} else {
+				State parent = path.get(path.size() - 1);
+				Operator op = puzzle.getOperator(parent, random.nextInt(puzzle.getNumOperators(parent)));
+				State child = puzzle.applyOperator(parent, op);
+				Assert.assertEquals("step " + step, op.getCost(child, parent), puzzle.applyInPlace(state, op), 0);
+				path.add(child);
+			}
+			State expected = path.get(path.size() - 1);
+			Assert.assertEquals("step " + step, puzzle.pack(expected), puzzle.pack(state));
+			Assert.assertEquals("step " + step, expected.getH(), state.getH(), 0);
+			Assert.assertEquals("step " + step, expected.getD(), state.getD(), 0);
+		}
+	}
+
+	private static FifteenPuzzle createPuzzle() {
+		// The walk starts from the goal
+		StringBuilder instance = new StringBuilder("4 4\ninit:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		instance.append("goal:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		return new FifteenPuzzle(new ByteArrayInputStream(instance.toString().getBytes()));
+	}
+
+	private static FifteenPuzzle createPuzzle(int[] tiles, FifteenPuzzle.COST_FUNCTION function) {
+		StringBuilder instance = new StringBuilder("4 4\ninit:\n");
+		for (int tile : tiles) {
+			instance.append(tile).append('\n');
+		}
+		instance.append("goal:\n");
+		for (int i = 0; i < 16; ++i) {
+			instance.append(i).append('\n');
+		}
+		return new FifteenPuzzle(new ByteArrayInputStream(instance.toString().getBytes()), function);
+	}
+
+	private static int[] getPositionsOfTiles(long packed) {
+		int[] positions = new int[16];
+		for (int position = 15; position >= 0; --position) {
+			positions[(int) (packed & 0xf)] = position;
+			packed >>>= 4;
+		}
+		return positions;
+	}
+
+	/**
+	 * Ranks a pattern in the same way as the PDB lookups (a reflected pattern is ranked in the reflected space)
+	 */
+	private static long rankPattern(int[] positions, int firstTile, int length, boolean reflected) {
+		int[] pattern = new int[length];
+		for (int i = 0; i < length; ++i) {
+			pattern[i] = reflected ? reflect(positions[reflect(firstTile + i)]) : positions[firstTile + i];
+		}
+		return PermutationRanking.rankPartial(pattern, 0, length, 16);
+	}
+
+	private static int reflect(int index) {
+		return (index % 4) * 4 + index / 4;
+	}
+
+	private static void writeRankValue(RandomAccessFile pdb, long rank) throws IOException {
+		pdb.seek(rank);
+		// Any nonzero value which depends on the rank
+		pdb.write((int) (1 + rank % 23));
+	}
+
+	/**
+	 * Packs the goal state of the puzzle in which the blank is swapped with the tile at the given position
+	 */
+	private static long packWithBlankAt(int blank) {
+		int[] tiles = new int[16];
+		for (int i = 0; i < tiles.length; ++i) {
+			tiles[i] = i;
+		}
+		tiles[0] = blank;
+		tiles[blank] = 0;
+		long packed = 0;
+		for (int tile : tiles) {
+			packed = (packed << 4) | tile;
+		}
+		return packed;
+	}
+}
@@ -0,0 +1,56 @@
+package org.cs4j.core.test.domains;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.cs4j.core.domains.PermutationRanking;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPermutationRanking {
+
+	@Test
+	public void testPartialRanksAreLexicographic() {
+		int n = 7;
+		for (int k = 1; k <= 4; ++k) {
+			int[] elements = new int[k];
+			int[] unranked = new int[k];
+			long expectedRank = 0;
+			// Go over all the k-tuples in lexicographic order and rank the ones without repetitions
+			for (long index = 0; index < (long) Math.pow(n, k); ++index) {
+				long rest = index;
+				long seen = 0;
+				boolean distinct = true;
+				for (int i = k - 1; i >= 0; --i) {
+					elements[i] = (int) (rest % n);
+					rest /= n;
+					distinct &= (seen & (1L << elements[i])) == 0;
+					seen |= 1L << elements[i];
+				}
+				if (!distinct) {
+					continue;
+				}
+				long rank = PermutationRanking.rankPartial(elements, 0, k, n);
+				Assert.assertEquals(expectedRank++, rank);
+				PermutationRanking.unrankPartial(rank, k, n, unranked);
+				Assert.assertTrue(Arrays.equals(elements, unranked));
+			}
+			Assert.assertEquals(PermutationRanking.partialPermutationsCount(n, k), expectedRank);
+		}
+	}
+
+	@Test
+	public void testMyrvoldRuskeyRoundTrip() {
+		Random random = new Random(17);
+		int n = 12;
+		int[] permutation = new int[n];
+		int[] work = new int[n];
+		int[] inverseWork = new int[n];
+		long permutationsCount = PermutationRanking.partialPermutationsCount(n, n);
+		for (int i = 0; i < 10000; ++i) {
+			long rank = (long) (random.nextDouble() * permutationsCount);
+			PermutationRanking.unrankMyrvoldRuskey(rank, n, permutation);
+			Assert.assertEquals(rank, PermutationRanking.rankMyrvoldRuskey(permutation, n, work, inverseWork));
+		}
+	}
+}